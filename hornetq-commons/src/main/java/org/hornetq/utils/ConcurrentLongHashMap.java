@@ -0,0 +1,479 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map from primitive longs to objects.
+ * <p>
+ * Keys are kept in open addressing tables of primitive longs, split in segments which are locked
+ * independently on writes, reads take no lock. Unlike a {@link java.util.concurrent.ConcurrentHashMap} there are no boxed keys
+ * and no node per entry, so a map holding millions of entries costs a few bytes per entry on top
+ * of the values.
+ * <p>
+ * Null values are not supported. {@link #keys()} and {@link #values()} return snapshots, which
+ * are consistent per segment only.
+ */
+public class ConcurrentLongHashMap<V>
+{
+   private static final int DEFAULT_SEGMENTS = 16;
+
+   private static final int MIN_SEGMENT_CAPACITY = 16;
+
+   private final Segment<V>[] segments;
+
+   private final int segmentMask;
+
+   public ConcurrentLongHashMap()
+   {
+      this(DEFAULT_SEGMENTS);
+   }
+
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int numberOfSegments)
+   {
+      int size = 1;
+
+      while (size < numberOfSegments)
+      {
+         size <<= 1;
+      }
+
+      segments = new Segment[size];
+
+      for (int i = 0; i < size; i++)
+      {
+         segments[i] = new Segment<V>();
+      }
+
+      segmentMask = size - 1;
+   }
+
+   public V get(final long key)
+   {
+      long hash = hash(key);
+      return segmentFor(hash).get(key, (int)hash);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   /**
+    * @return the previous value, or {@code null} if there was none
+    */
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      long hash = hash(key);
+      return segmentFor(hash).put(key, (int)hash, value, false);
+   }
+
+   /**
+    * @return the current value, or {@code null} if there was none and the value was put
+    */
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      long hash = hash(key);
+      return segmentFor(hash).put(key, (int)hash, value, true);
+   }
+
+   /**
+    * @return the removed value, or {@code null} if there was none
+    */
+   public V remove(final long key)
+   {
+      long hash = hash(key);
+      return segmentFor(hash).remove(key, (int)hash);
+   }
+
+   public int size()
+   {
+      int size = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         size += segment.size();
+      }
+
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      for (Segment<V> segment : segments)
+      {
+         if (segment.size() != 0)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   public void clear()
+   {
+      for (Segment<V> segment : segments)
+      {
+         segment.clear();
+      }
+   }
+
+   public long[] keys()
+   {
+      long[] keys = new long[size()];
+
+      int count = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         synchronized (segment)
+         {
+            if (count + segment.size > keys.length)
+            {
+               keys = Arrays.copyOf(keys, count + segment.size);
+            }
+
+            count = segment.copyKeys(keys, count);
+         }
+      }
+
+      return count == keys.length ? keys : Arrays.copyOf(keys, count);
+   }
+
+   public List<V> values()
+   {
+      List<V> values = new ArrayList<V>(size());
+
+      for (Segment<V> segment : segments)
+      {
+         segment.copyValues(values);
+      }
+
+      return values;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ConcurrentLongHashMap [size=" + size() + "]";
+   }
+
+   private Segment<V> segmentFor(final long hash)
+   {
+      return segments[(int)(hash >>> 32) & segmentMask];
+   }
+
+   private static void checkValue(final Object value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("null values are not supported");
+      }
+   }
+
+   /**
+    * Mixes all the bits of the key, as sequential IDs would otherwise cluster on the tables. The
+    * high half picks the segment and the low half the slot.
+    */
+   private static long hash(final long key)
+   {
+      long h = key;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   /**
+    * A linear probing table, an empty slot is one with a null value.
+    * <p>
+    * Writes hold the lock of the segment. Reads take no lock: the table is replaced as a whole on a
+    * rehash and its slots are volatile, so a reader always sees a complete key before its value.
+    * Only a removal moves entries between slots, it makes {@link #modifications} odd while doing so
+    * and a reader which saw it change under it reads again under the lock.
+    */
+   private static final class Segment<V>
+   {
+      private volatile Table table = new Table(MIN_SEGMENT_CAPACITY);
+
+      private volatile int modifications;
+
+      private volatile int size;
+
+      int size()
+      {
+         return size;
+      }
+
+      @SuppressWarnings("unchecked")
+      V get(final long key, final int hash)
+      {
+         int before = modifications;
+
+         if ((before & 1) == 0)
+         {
+            Object value = table.find(key, hash);
+
+            if (modifications == before)
+            {
+               return (V)value;
+            }
+         }
+
+         synchronized (this)
+         {
+            return (V)table.find(key, hash);
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V put(final long key, final int hash, final V value, final boolean onlyIfAbsent)
+      {
+         Table tab = table;
+
+         int mask = tab.mask;
+
+         int i = hash & mask;
+
+         for (;; i = i + 1 & mask)
+         {
+            Object current = tab.values.get(i);
+
+            if (current == null)
+            {
+               break;
+            }
+
+            if (tab.keys.get(i) == key)
+            {
+               if (!onlyIfAbsent)
+               {
+                  tab.values.set(i, value);
+               }
+
+               return (V)current;
+            }
+         }
+
+         // the key first, a reader finding the value will find the key too
+         tab.keys.set(i, key);
+         tab.values.set(i, value);
+
+         // keeping the load factor under 2/3, as probe lengths grow fast above that
+         if (++size * 3 > tab.length() * 2)
+         {
+            rehash(tab.length() * 2);
+         }
+
+         return null;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V remove(final long key, final int hash)
+      {
+         Table tab = table;
+
+         int mask = tab.mask;
+
+         int i = hash & mask;
+
+         for (;; i = i + 1 & mask)
+         {
+            Object current = tab.values.get(i);
+
+            if (current == null)
+            {
+               return null;
+            }
+
+            if (tab.keys.get(i) == key)
+            {
+               break;
+            }
+         }
+
+         V removed = (V)tab.values.get(i);
+
+         modifications++;
+
+         // shifting back the entries after the removed one, so no probe sequence is broken and
+         // there is no need for tombstones
+         for (int j = i + 1 & mask;; j = j + 1 & mask)
+         {
+            Object value = tab.values.get(j);
+
+            if (value == null)
+            {
+               break;
+            }
+
+            long movedKey = tab.keys.get(j);
+
+            int home = (int)hash(movedKey) & mask;
+
+            // the entry at j may move to i if its home slot is not in (i, j] cyclically
+            if (i <= j ? home <= i || home > j : home <= i && home > j)
+            {
+               tab.keys.set(i, movedKey);
+               tab.values.set(i, value);
+               i = j;
+            }
+         }
+
+         tab.values.set(i, null);
+
+         modifications++;
+
+         // giving the memory back after a backlog is consumed
+         if (--size * 8 < tab.length() && tab.length() > MIN_SEGMENT_CAPACITY)
+         {
+            rehash(tab.length() / 2);
+         }
+
+         return removed;
+      }
+
+      synchronized void clear()
+      {
+         table = new Table(MIN_SEGMENT_CAPACITY);
+         size = 0;
+      }
+
+      /**
+       * The caller holds the lock of the segment.
+       */
+      int copyKeys(final long[] target, final int offset)
+      {
+         Table tab = table;
+
+         int count = offset;
+
+         for (int i = 0; i < tab.length(); i++)
+         {
+            if (tab.values.get(i) != null)
+            {
+               target[count++] = tab.keys.get(i);
+            }
+         }
+
+         return count;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized void copyValues(final List<V> target)
+      {
+         Table tab = table;
+
+         for (int i = 0; i < tab.length(); i++)
+         {
+            Object value = tab.values.get(i);
+
+            if (value != null)
+            {
+               target.add((V)value);
+            }
+         }
+      }
+
+      /**
+       * Fills a new table before publishing it, the readers keep probing the old one meanwhile.
+       */
+      private void rehash(final int capacity)
+      {
+         Table old = table;
+
+         Table tab = new Table(capacity);
+
+         int mask = tab.mask;
+
+         for (int i = 0; i < old.length(); i++)
+         {
+            Object value = old.values.get(i);
+
+            if (value != null)
+            {
+               long key = old.keys.get(i);
+
+               int j = (int)hash(key) & mask;
+
+               while (tab.values.get(j) != null)
+               {
+                  j = j + 1 & mask;
+               }
+
+               tab.keys.set(j, key);
+               tab.values.set(j, value);
+            }
+         }
+
+         table = tab;
+      }
+   }
+
+   private static final class Table
+   {
+      final AtomicLongArray keys;
+
+      final AtomicReferenceArray<Object> values;
+
+      final int mask;
+
+      Table(final int capacity)
+      {
+         keys = new AtomicLongArray(capacity);
+         values = new AtomicReferenceArray<Object>(capacity);
+         mask = capacity - 1;
+      }
+
+      int length()
+      {
+         return mask + 1;
+      }
+
+      /**
+       * Probes at most the whole table, as a reader racing with a removal may not meet an empty
+       * slot where it expects one.
+       */
+      Object find(final long key, final int hash)
+      {
+         for (int i = hash & mask, probes = 0; probes <= mask; i = i + 1 & mask, probes++)
+         {
+            Object value = values.get(i);
+
+            if (value == null)
+            {
+               return null;
+            }
+
+            if (keys.get(i) == key)
+            {
+               return value;
+            }
+         }
+
+         return null;
+      }
+   }
+}
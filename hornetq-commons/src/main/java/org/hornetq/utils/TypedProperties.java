@@ -32,6 +32,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQPropertyConversionException;
 import org.hornetq.api.core.SimpleString;
 
@@ -53,6 +54,20 @@ public final class TypedProperties
 
    private Map<SimpleString, PropertyValue> properties;
 
+   /*
+    * Decoded properties are kept as they were encoded (key length, key, type, value for each entry) until they are
+    * modified, gets read the values straight from this array through the index. The arrays are never written once
+    * created so copies can share them.
+    */
+   private byte[] encoded;
+
+   private int encodedCount;
+
+   /*
+    * Open addressed table of the offsets + 1 of the entries in encoded, a 0 marks a free slot
+    */
+   private int[] index;
+
    private volatile int size;
 
    private boolean internalProperties;
@@ -67,13 +82,25 @@ public final class TypedProperties
       // Note we don't include the attributes or anything else since they already included in the memory estimate
       // of the ServerMessage
 
+      if (encoded != null)
+      {
+         return size + DataConstants.SIZE_INT * index.length;
+      }
+
       return properties == null ? 0 : size + 2 * DataConstants.SIZE_INT * properties.size();
    }
 
    public TypedProperties(final TypedProperties other)
    {
-      properties = other.properties == null ? null : new HashMap<SimpleString, PropertyValue>(other.properties);
-      size = other.size;
+      synchronized (other)
+      {
+         properties = other.properties == null ? null : new HashMap<SimpleString, PropertyValue>(other.properties);
+         encoded = other.encoded;
+         encodedCount = other.encodedCount;
+         index = other.index;
+         size = other.size;
+         internalProperties = other.internalProperties;
+      }
    }
 
    public boolean hasInternalProperties()
@@ -149,13 +176,20 @@ public final class TypedProperties
 
    public void putTypedProperties(final TypedProperties otherProps)
    {
-      if (otherProps == null || otherProps.properties == null)
+      if (otherProps == null)
+      {
+         return;
+      }
+
+      Map<SimpleString, PropertyValue> otherProperties = otherProps.materialize();
+
+      if (otherProperties == null)
       {
          return;
       }
 
       checkCreateProperties();
-      Set<Entry<SimpleString, PropertyValue>> otherEntries = otherProps.properties.entrySet();
+      Set<Entry<SimpleString, PropertyValue>> otherEntries = otherProperties.entrySet();
       for (Entry<SimpleString, PropertyValue> otherEntry : otherEntries)
       {
          doPutValue(otherEntry.getKey(), otherEntry.getValue());
@@ -425,12 +459,15 @@ public final class TypedProperties
       return doRemoveProperty(key);
    }
 
-   public boolean containsProperty(final SimpleString key)
+   public synchronized boolean containsProperty(final SimpleString key)
    {
       if (size == 0)
       {
          return false;
-
+      }
+      else if (encoded != null)
+      {
+         return findEncoded(key) >= 0;
       }
       else
       {
@@ -446,7 +483,7 @@ public final class TypedProperties
       }
       else
       {
-         return properties.keySet();
+         return materialize().keySet();
       }
    }
 
@@ -454,108 +491,55 @@ public final class TypedProperties
    {
       byte b = buffer.readByte();
 
-      if (b == DataConstants.NULL)
-      {
-         properties = null;
-      }
-      else
+      properties = null;
+      encoded = null;
+      encodedCount = 0;
+      index = null;
+      size = 0;
+      internalProperties = false;
+
+      if (b != DataConstants.NULL)
       {
          int numHeaders = buffer.readInt();
 
-         properties = new HashMap<SimpleString, PropertyValue>(numHeaders);
-         size = 0;
+         if (numHeaders == 0)
+         {
+            properties = new HashMap<SimpleString, PropertyValue>();
+            return;
+         }
+
+         // Walk the entries only to find where they end, they are decoded on demand
+         int start = buffer.readerIndex();
+         int pos = start;
 
          for (int i = 0; i < numHeaders; i++)
          {
-            int len = buffer.readInt();
-            byte[] data = new byte[len];
-            buffer.readBytes(data);
-            SimpleString key = new SimpleString(data);
-
-            byte type = buffer.readByte();
-
-            PropertyValue val;
-
-            switch (type)
-            {
-               case NULL:
-               {
-                  val = new NullValue();
-                  doPutValue(key, val);
-                  break;
-               }
-               case CHAR:
-               {
-                  val = new CharValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BOOLEAN:
-               {
-                  val = new BooleanValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BYTE:
-               {
-                  val = new ByteValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case BYTES:
-               {
-                  val = new BytesValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case SHORT:
-               {
-                  val = new ShortValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case INT:
-               {
-                  val = new IntValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case LONG:
-               {
-                  val = new LongValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case FLOAT:
-               {
-                  val = new FloatValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case DOUBLE:
-               {
-                  val = new DoubleValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               case STRING:
-               {
-                  val = new StringValue(buffer);
-                  doPutValue(key, val);
-                  break;
-               }
-               default:
-               {
-                  throw HornetQUtilBundle.BUNDLE.invalidType(type);
-               }
-            }
+            pos += DataConstants.SIZE_INT + buffer.getInt(pos);
+            byte type = buffer.getByte(pos);
+            int length = type == BYTES || type == STRING ? buffer.getInt(pos + DataConstants.SIZE_BYTE) : 0;
+            pos += valueSize(type, length);
          }
+
+         byte[] data = new byte[pos - start];
+         buffer.readBytes(data);
+
+         encoded = data;
+         encodedCount = numHeaders;
+         index = buildIndex(data, numHeaders);
+         size = data.length;
       }
    }
 
    public synchronized void encode(final HornetQBuffer buffer)
    {
-      if (properties == null)
+      if (encoded != null)
+      {
+         // untouched since decoded, the entries are written as they were read
+         buffer.writeByte(DataConstants.NOT_NULL);
+         buffer.writeInt(encodedCount);
+         buffer.writeBytes(encoded);
+      }
+      else if (properties == null)
       {
          buffer.writeByte(DataConstants.NULL);
       }
@@ -579,7 +563,7 @@ public final class TypedProperties
 
    public int getEncodeSize()
    {
-      if (properties == null)
+      if (properties == null && encoded == null)
       {
          return DataConstants.SIZE_BYTE;
       }
@@ -589,30 +573,312 @@ public final class TypedProperties
       }
    }
 
-   public void clear()
+   public synchronized void clear()
    {
-      if (properties != null)
+      if (encoded != null)
+      {
+         properties = new HashMap<SimpleString, PropertyValue>();
+         encoded = null;
+         encodedCount = 0;
+         index = null;
+      }
+      else if (properties != null)
       {
          properties.clear();
       }
+
+      size = 0;
    }
 
    @Override
    public String toString()
    {
-      return "TypedProperties[" + properties + "]";
+      return "TypedProperties[" + materialize() + "]";
    }
 
    // Private ------------------------------------------------------------------------------------
 
-   private void checkCreateProperties()
+   private synchronized void checkCreateProperties()
    {
+      materialize();
+
       if (properties == null)
       {
          properties = new HashMap<SimpleString, PropertyValue>();
       }
    }
 
+   /**
+    * Turns the encoded entries into the map, once the properties are about to be modified or iterated.
+    */
+   private synchronized Map<SimpleString, PropertyValue> materialize()
+   {
+      if (encoded != null)
+      {
+         HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(encoded);
+
+         int numHeaders = encodedCount;
+
+         properties = new HashMap<SimpleString, PropertyValue>(numHeaders);
+         encoded = null;
+         encodedCount = 0;
+         index = null;
+         size = 0;
+
+         for (int i = 0; i < numHeaders; i++)
+         {
+            int len = buffer.readInt();
+            byte[] data = new byte[len];
+            buffer.readBytes(data);
+            SimpleString key = new SimpleString(data);
+
+            doPutValue(key, readValue(buffer.readByte(), buffer));
+         }
+      }
+
+      return properties;
+   }
+
+   private static PropertyValue readValue(final byte type, final HornetQBuffer buffer)
+   {
+      switch (type)
+      {
+         case NULL:
+            return new NullValue();
+         case CHAR:
+            return new CharValue(buffer);
+         case BOOLEAN:
+            return new BooleanValue(buffer);
+         case BYTE:
+            return new ByteValue(buffer);
+         case BYTES:
+            return new BytesValue(buffer);
+         case SHORT:
+            return new ShortValue(buffer);
+         case INT:
+            return new IntValue(buffer);
+         case LONG:
+            return new LongValue(buffer);
+         case FLOAT:
+            return new FloatValue(buffer);
+         case DOUBLE:
+            return new DoubleValue(buffer);
+         case STRING:
+            return new StringValue(buffer);
+         default:
+            throw HornetQUtilBundle.BUNDLE.invalidType(type);
+      }
+   }
+
+   /**
+    * @param length the int following the type, only meaningful for the variable length types
+    * @return the size of an encoded value, type included
+    */
+   private static int valueSize(final byte type, final int length)
+   {
+      switch (type)
+      {
+         case NULL:
+            return DataConstants.SIZE_BYTE;
+         case BOOLEAN:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_BOOLEAN;
+         case BYTE:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_BYTE;
+         case CHAR:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_CHAR;
+         case SHORT:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_SHORT;
+         case INT:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_INT;
+         case FLOAT:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_FLOAT;
+         case LONG:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_LONG;
+         case DOUBLE:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_DOUBLE;
+         case BYTES:
+         case STRING:
+            return DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + length;
+         default:
+            throw HornetQUtilBundle.BUNDLE.invalidType(type);
+      }
+   }
+
+   private int[] buildIndex(final byte[] data, final int count)
+   {
+      int capacity = Integer.highestOneBit(count) << 2;
+      int mask = capacity - 1;
+      int[] table = new int[capacity];
+
+      byte[] prefix = HQ_PROPNAME.getData();
+
+      int pos = 0;
+
+      for (int i = 0; i < count; i++)
+      {
+         int keyLength = getInt(data, pos);
+         int keyStart = pos + DataConstants.SIZE_INT;
+
+         if (!internalProperties && startsWith(data, keyStart, keyLength, prefix))
+         {
+            internalProperties = true;
+         }
+
+         int slot = hash(data, keyStart, keyLength) & mask;
+
+         // a key repeated in the encoding resolves to its last value, as it would in the map
+         while (table[slot] != 0 && !keyEquals(data, table[slot] - 1, data, keyStart, keyLength))
+         {
+            slot = (slot + 1) & mask;
+         }
+
+         table[slot] = pos + 1;
+
+         int typePos = keyStart + keyLength;
+         int length = data[typePos] == BYTES || data[typePos] == STRING ? getInt(data, typePos + 1) : 0;
+         pos = typePos + valueSize(data[typePos], length);
+      }
+
+      return table;
+   }
+
+   /**
+    * @return the position of the type of the value for the key in encoded, or -1
+    */
+   private int findEncoded(final SimpleString key)
+   {
+      byte[] keyData = key.getData();
+      int mask = index.length - 1;
+      int slot = key.hashCode() & mask;
+
+      while (index[slot] != 0)
+      {
+         int pos = index[slot] - 1;
+
+         if (keyEquals(encoded, pos, keyData, 0, keyData.length))
+         {
+            return pos + DataConstants.SIZE_INT + keyData.length;
+         }
+
+         slot = (slot + 1) & mask;
+      }
+
+      return -1;
+   }
+
+   private Object readEncodedValue(final int typePos)
+   {
+      byte[] data = encoded;
+      int pos = typePos + DataConstants.SIZE_BYTE;
+
+      switch (data[typePos])
+      {
+         case NULL:
+            return null;
+         case BOOLEAN:
+            return data[pos] != 0;
+         case BYTE:
+            return data[pos];
+         case CHAR:
+            return (char)getShort(data, pos);
+         case SHORT:
+            return getShort(data, pos);
+         case INT:
+            return getInt(data, pos);
+         case FLOAT:
+            return Float.intBitsToFloat(getInt(data, pos));
+         case LONG:
+            return getLong(data, pos);
+         case DOUBLE:
+            return Double.longBitsToDouble(getLong(data, pos));
+         case BYTES:
+         case STRING:
+         {
+            int len = getInt(data, pos);
+            byte[] bytes = new byte[len];
+            System.arraycopy(data, pos + DataConstants.SIZE_INT, bytes, 0, len);
+            return data[typePos] == BYTES ? bytes : new SimpleString(bytes);
+         }
+         default:
+            throw HornetQUtilBundle.BUNDLE.invalidType(data[typePos]);
+      }
+   }
+
+   /**
+    * Same as {@link SimpleString#hashCode()} on the key bytes.
+    */
+   private static int hash(final byte[] data, final int start, final int length)
+   {
+      int hash = 0;
+      for (int i = start; i < start + length; i++)
+      {
+         hash = (hash << 5) - hash + data[i];
+      }
+      return hash;
+   }
+
+   /**
+    * Compares the key encoded at pos with the given key bytes.
+    */
+   private static boolean keyEquals(final byte[] data,
+                                    final int pos,
+                                    final byte[] key,
+                                    final int keyStart,
+                                    final int keyLength)
+   {
+      if (getInt(data, pos) != keyLength)
+      {
+         return false;
+      }
+
+      int start = pos + DataConstants.SIZE_INT;
+
+      for (int i = 0; i < keyLength; i++)
+      {
+         if (data[start + i] != key[keyStart + i])
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static boolean startsWith(final byte[] data, final int start, final int length, final byte[] prefix)
+   {
+      if (length < prefix.length)
+      {
+         return false;
+      }
+
+      for (int i = 0; i < prefix.length; i++)
+      {
+         if (data[start + i] != prefix[i])
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private static short getShort(final byte[] data, final int pos)
+   {
+      return (short)((data[pos] << 8) | (data[pos + 1] & 0xFF));
+   }
+
+   private static int getInt(final byte[] data, final int pos)
+   {
+      return (data[pos] & 0xFF) << 24 | (data[pos + 1] & 0xFF) << 16 |
+             (data[pos + 2] & 0xFF) << 8 |
+             data[pos + 3] & 0xFF;
+   }
+
+   private static long getLong(final byte[] data, final int pos)
+   {
+      return ((long)getInt(data, pos) << 32) | (getInt(data, pos + 4) & 0xFFFFFFFFL);
+   }
+
    private synchronized void doPutValue(final SimpleString key, final PropertyValue value)
    {
       if (key.startsWith(HQ_PROPNAME))
@@ -633,6 +899,8 @@ public final class TypedProperties
 
    private synchronized Object doRemoveProperty(final SimpleString key)
    {
+      materialize();
+
       if (properties == null)
       {
          return null;
@@ -652,13 +920,20 @@ public final class TypedProperties
       }
    }
 
-   private synchronized Object doGetProperty(final Object key)
+   private synchronized Object doGetProperty(final SimpleString key)
    {
       if (size == 0)
       {
          return null;
       }
 
+      if (encoded != null)
+      {
+         int typePos = findEncoded(key);
+
+         return typePos < 0 ? null : readEncodedValue(typePos);
+      }
+
       PropertyValue val = properties.get(key);
 
       if (val == null)
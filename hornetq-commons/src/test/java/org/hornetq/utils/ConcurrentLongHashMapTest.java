@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class ConcurrentLongHashMapTest extends TestCase
+{
+   public void testPutGetRemove() throws Exception
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      Assert.assertTrue(map.isEmpty());
+      Assert.assertNull(map.put(1, "a"));
+      Assert.assertNull(map.put(-1, "b"));
+      Assert.assertNull(map.put(Long.MAX_VALUE, "c"));
+
+      Assert.assertEquals(3, map.size());
+      Assert.assertEquals("a", map.get(1));
+      Assert.assertEquals("b", map.get(-1));
+      Assert.assertEquals("c", map.get(Long.MAX_VALUE));
+      Assert.assertNull(map.get(2));
+
+      Assert.assertEquals("a", map.put(1, "d"));
+      Assert.assertEquals("d", map.get(1));
+
+      Assert.assertEquals("d", map.putIfAbsent(1, "e"));
+      Assert.assertEquals("d", map.get(1));
+
+      Assert.assertEquals("d", map.remove(1));
+      Assert.assertNull(map.remove(1));
+      Assert.assertFalse(map.containsKey(1));
+      Assert.assertEquals(2, map.size());
+
+      map.clear();
+      Assert.assertTrue(map.isEmpty());
+   }
+
+   public void testNullValue() throws Exception
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      try
+      {
+         map.put(1, null);
+         Assert.fail("exception expected");
+      }
+      catch (NullPointerException expected)
+      {
+      }
+   }
+
+   public void testAgainstHashMap() throws Exception
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(4);
+
+      Map<Long, Long> expected = new HashMap<Long, Long>();
+
+      Random random = new Random(1);
+
+      // growing, then mostly removing so the segments shrink back
+      for (int round = 0; round < 2; round++)
+      {
+         for (int i = 0; i < 50000; i++)
+         {
+            long key = random.nextInt(20000);
+
+            boolean remove = round == 0 ? random.nextInt(4) == 0 : random.nextInt(4) != 0;
+
+            if (remove)
+            {
+               Assert.assertEquals(expected.remove(key), map.remove(key));
+            }
+            else
+            {
+               Assert.assertEquals(expected.put(key, (long)i), map.put(key, (long)i));
+            }
+         }
+
+         Assert.assertEquals(expected.size(), map.size());
+
+         for (long key = 0; key < 20000; key++)
+         {
+            Assert.assertEquals(expected.get(key), map.get(key));
+         }
+      }
+
+      long[] keys = map.keys();
+      Arrays.sort(keys);
+
+      Set<Long> expectedKeys = new HashSet<Long>(expected.keySet());
+      Assert.assertEquals(expectedKeys.size(), keys.length);
+
+      for (long key : keys)
+      {
+         Assert.assertTrue(expectedKeys.remove(key));
+      }
+
+      Assert.assertEquals(new HashSet<Long>(expected.values()), new HashSet<Long>(map.values()));
+   }
+
+   public void testConcurrentPuts() throws Exception
+   {
+      final ConcurrentLongHashMap<Integer> map = new ConcurrentLongHashMap<Integer>();
+
+      final int numberOfThreads = 8;
+
+      final int entries = 10000;
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int t = 0; t < numberOfThreads; t++)
+      {
+         final int offset = t * entries;
+
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               for (int i = 0; i < entries; i++)
+               {
+                  map.put(offset + i, i);
+               }
+
+               // removing half of them again
+               for (int i = 0; i < entries; i += 2)
+               {
+                  map.remove(offset + i);
+               }
+            }
+         };
+
+         threads[t].start();
+      }
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      Assert.assertEquals(numberOfThreads * entries / 2, map.size());
+
+      for (int i = 0; i < numberOfThreads * entries; i++)
+      {
+         if (i % 2 == 0)
+         {
+            Assert.assertNull(map.get(i));
+         }
+         else
+         {
+            Assert.assertEquals(Integer.valueOf(i % entries), map.get(i));
+         }
+      }
+   }
+
+   public void testReadsDuringRemovals() throws Exception
+   {
+      // a single segment, so the removals keep moving the entries the readers look for
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(1);
+
+      final int entries = 1000;
+
+      for (long i = 1; i < entries * 2; i += 2)
+      {
+         map.put(i, i);
+      }
+
+      final AtomicReference<String> failure = new AtomicReference<String>();
+
+      final long deadline = System.currentTimeMillis() + 2000;
+
+      Thread writer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            while (System.currentTimeMillis() < deadline)
+            {
+               // growing and shrinking the table too
+               for (long i = 0; i < entries * 4; i += 2)
+               {
+                  map.put(i, i);
+               }
+
+               for (long i = 0; i < entries * 4; i += 2)
+               {
+                  map.remove(i);
+               }
+            }
+         }
+      };
+
+      Thread[] readers = new Thread[4];
+
+      for (int t = 0; t < readers.length; t++)
+      {
+         readers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               while (System.currentTimeMillis() < deadline && failure.get() == null)
+               {
+                  for (long i = 1; i < entries * 2; i += 2)
+                  {
+                     Long value = map.get(i);
+
+                     if (value == null || value != i)
+                     {
+                        failure.set("key " + i + " read " + value);
+                     }
+                  }
+               }
+            }
+         };
+      }
+
+      writer.start();
+
+      for (Thread reader : readers)
+      {
+         reader.start();
+      }
+
+      writer.join();
+
+      for (Thread reader : readers)
+      {
+         reader.join();
+      }
+
+      Assert.assertNull(failure.get());
+      Assert.assertEquals(entries, map.size());
+   }
+}
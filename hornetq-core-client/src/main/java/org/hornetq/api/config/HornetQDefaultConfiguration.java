@@ -56,6 +56,10 @@ public final class HornetQDefaultConfiguration
    public static final int DEFAULT_JOURNAL_FILE_SIZE = 10485760;
    public static final int DEFAULT_JOURNAL_COMPACT_MIN_FILES = 10;
    public static final int DEFAULT_JOURNAL_COMPACT_PERCENTAGE = 30;
+   public static final boolean DEFAULT_JOURNAL_PARALLEL_ENCODING = false;
+   public static final int DEFAULT_JOURNAL_LOAD_THREADS = 1;
+   public static final int DEFAULT_JOURNAL_COMPACT_MAX_FILES = 0;
+   public static final boolean DEFAULT_JOURNAL_BUFFER_ADAPTIVE = false;
    public static final int DEFAULT_JOURNAL_MIN_FILES = 2;
    public static final int DEFAULT_JOURNAL_MAX_IO_AIO = 500;
    public static final int DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO = JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO;
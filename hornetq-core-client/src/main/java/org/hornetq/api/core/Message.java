@@ -69,6 +69,17 @@ public interface Message
 
    public static final SimpleString HDR_LARGE_BODY_SIZE = new SimpleString("_HQ_LARGE_SIZE");
 
+   /**
+    * The name of the codec which compressed the body of a regular message, the body being decompressed when it is
+    * first read.
+    */
+   public static final SimpleString HDR_BODY_CODEC = new SimpleString("_HQ_BODY_CODEC");
+
+   /**
+    * The size of a compressed body once decompressed.
+    */
+   public static final SimpleString HDR_BODY_SIZE = new SimpleString("_HQ_BODY_SIZE");
+
    public static final SimpleString HDR_SCHEDULED_DELIVERY_TIME = new SimpleString("_HQ_SCHED_DELIVERY");
 
    public static final SimpleString HDR_DUPLICATE_DETECTION_ID = new SimpleString("_HQ_DUPL_ID");
@@ -112,4 +112,24 @@ public interface ClientConsumer
     * @return the last exception thrown by a call to this consumer's MessageHandler or {@code null}
     */
    Exception getLastException();
+
+   /**
+    * Returns the window the consumer currently asks credits for.
+    * <p>
+    * It is fixed, derived from the consumer window size, unless a consumer window target time is
+    * set, in which case it varies with the rate at which the consumer processes messages.
+    *
+    * @return the current window of the consumer, in bytes
+    * @see ServerLocator#setConsumerWindowTargetTime(long)
+    */
+   int getCurrentWindowSize();
+
+   /**
+    * Returns the rate at which the consumer processes messages.
+    *
+    * @return the rate in bytes per second, or 0 unless a consumer window target time is set and the
+    *         rate was measured
+    * @see ServerLocator#setConsumerWindowTargetTime(long)
+    */
+   double getDrainRate();
 }
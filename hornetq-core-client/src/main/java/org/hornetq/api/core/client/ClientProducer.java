@@ -13,6 +13,8 @@
 
 package org.hornetq.api.core.client;
 
+import java.util.Collection;
+
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
@@ -88,6 +90,87 @@ public interface ClientProducer
     */
    void send(String address, Message message) throws HornetQException;
 
+   /**
+    * Sends a message to the ClientProducer's address without waiting for the server, and calls the
+    * handler once the server has confirmed it, after storing it for a durable message. <br>
+    * <br>
+    * Many such sends can be in flight at once regardless of
+    * {@link ServerLocator#setBlockOnDurableSend(boolean)} and
+    * {@link ServerLocator#setBlockOnNonDurableSend(boolean)}. The server confirms them in batches
+    * of {@link ServerLocator#setConfirmationWindowSize(int)} bytes, and the handlers are called in
+    * the order of the sends, on a remoting thread, so they must not block. If no confirmation window
+    * is set this blocks until the server has confirmed the message and calls the handler before
+    * returning.
+    * @param message the message to send
+    * @param handler the handler called once the server has confirmed the message
+    * @throws HornetQException if an exception occurs while sending the message
+    */
+   void send(Message message, SendAcknowledgementHandler handler) throws HornetQException;
+
+   /**
+    * Sends a message to the specified address instead of the ClientProducer's address without
+    * waiting for the server, and calls the handler once the server has confirmed it.
+    * @param address the address where the message will be sent
+    * @param message the message to send
+    * @param handler the handler called once the server has confirmed the message
+    * @throws HornetQException if an exception occurs while sending the message
+    * @see #send(Message, SendAcknowledgementHandler)
+    */
+   void send(SimpleString address, Message message, SendAcknowledgementHandler handler) throws HornetQException;
+
+   /**
+    * Sends several messages to the ClientProducer's address, in as few packets as possible. <br>
+    * <br>
+    * The server routes all the messages of a packet or none of them. A packet blocks until the
+    * server has answered if one of its messages would block when sent on its own, as set by
+    * {@link ServerLocator#setBlockOnDurableSend(boolean)} and
+    * {@link ServerLocator#setBlockOnNonDurableSend(boolean)}. The failure of such a packet is thrown
+    * from here: outside of a transaction none of its messages were routed, within one the
+    * transaction is marked as rollback only. The packets sent before were routed and the messages
+    * after it are not sent. Packets sent without blocking fail as {@link #send(Message)} does. <br>
+    * <br>
+    * Large messages, and all of them with servers that don't support batches, are sent one by one
+    * as {@link #send(Message)} does.
+    * @param messages the messages to send, in order
+    * @throws HornetQException if an exception occurs while sending the messages
+    */
+   void send(Collection<? extends Message> messages) throws HornetQException;
+
+   /**
+    * Sends several messages to the specified address instead of the ClientProducer's address, in
+    * as few packets as possible.
+    * @param address the address where the messages will be sent
+    * @param messages the messages to send, in order
+    * @throws HornetQException if an exception occurs while sending the messages
+    * @see #send(Collection)
+    */
+   void send(SimpleString address, Collection<? extends Message> messages) throws HornetQException;
+
+   /**
+    * Sends several messages to the ClientProducer's address as {@link #send(Collection)} does, and
+    * calls the handler for each message once the server has confirmed its packet. <br>
+    * <br>
+    * As with {@link #send(Message, SendAcknowledgementHandler)}, the packets are sent without
+    * waiting for the server when a confirmation window is set, and the handler is called from the
+    * confirmations. If no confirmation window is set this blocks until the server has answered for
+    * each packet and calls the handler before returning.
+    * @param messages the messages to send, in order
+    * @param handler the handler called for each message the server has routed
+    * @throws HornetQException if an exception occurs while sending the messages
+    */
+   void send(Collection<? extends Message> messages, SendAcknowledgementHandler handler) throws HornetQException;
+
+   /**
+    * Sends several messages to the specified address instead of the ClientProducer's address, and
+    * calls the handler for each message once the server has routed it.
+    * @param address the address where the messages will be sent
+    * @param messages the messages to send, in order
+    * @param handler the handler called for each message the server has routed
+    * @throws HornetQException if an exception occurs while sending the messages
+    * @see #send(Collection, SendAcknowledgementHandler)
+    */
+   void send(SimpleString address, Collection<? extends Message> messages, SendAcknowledgementHandler handler) throws HornetQException;
+
    /**
     * Closes the ClientProducer. If already closed nothing is done.
     *
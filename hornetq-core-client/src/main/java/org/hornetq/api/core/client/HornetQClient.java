@@ -42,8 +42,16 @@ public final class HornetQClient
 
    public static final boolean DEFAULT_COMPRESS_LARGE_MESSAGES = false;
 
+   public static final boolean DEFAULT_BATCH_DELIVERY = false;
+
+   public static final String DEFAULT_BODY_COMPRESSION_CODEC = null;
+
+   public static final int DEFAULT_MIN_BODY_COMPRESSION_SIZE = 1024;
+
    public static final int DEFAULT_CONSUMER_WINDOW_SIZE = 1024 * 1024;
 
+   public static final long DEFAULT_CONSUMER_WINDOW_TARGET_TIME = -1;
+
    public static final int DEFAULT_CONSUMER_MAX_RATE = -1;
 
    public static final int DEFAULT_CONFIRMATION_WINDOW_SIZE = -1;
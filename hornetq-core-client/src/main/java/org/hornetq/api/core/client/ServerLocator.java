@@ -708,6 +708,89 @@ public interface ServerLocator
 
    void setCompressLargeMessage(boolean avoidLargeMessages);
 
+   /**
+    * Returns whether the server delivers several messages to the consumers of the sessions created
+    * through this factory in one packet.
+    * <p>
+    * Default value is {@link HornetQClient#DEFAULT_BATCH_DELIVERY}.
+    *
+    * @return whether deliveries are batched
+    */
+   boolean isBatchDelivery();
+
+   /**
+    * Sets whether the server delivers several messages to the consumers of the sessions created
+    * through this factory in one packet, which saves the overhead of a packet per message for
+    * small messages. Servers that don't support it deliver the messages one by one.
+    * <p>
+    * Interceptors then see the batches instead of the {@code SESS_RECEIVE_MSG} packets.
+    *
+    * @param batchDelivery whether deliveries are batched
+    */
+   void setBatchDelivery(boolean batchDelivery);
+
+   /**
+    * Returns the name of the codec compressing the bodies of the regular messages sent by the sessions
+    * created through this factory, or {@code null} if they are not compressed.
+    * <p>
+    * Default value is {@link HornetQClient#DEFAULT_BODY_COMPRESSION_CODEC}.
+    *
+    * @return the name of the codec compressing the bodies of regular messages
+    */
+   String getBodyCompressionCodec();
+
+   /**
+    * Sets the codec compressing the bodies of the regular messages sent by the sessions created through
+    * this factory: {@code lzf}, {@code deflate} or the name of a class implementing
+    * {@link org.hornetq.spi.core.compression.BodyCodec}. A {@code null} value doesn't compress them.
+    * <p>
+    * The messages stay compressed on the server and are decompressed once their body is read, which
+    * requires consumers of this version or later.
+    *
+    * @param codec the name of the codec compressing the bodies of regular messages
+    */
+   void setBodyCompressionCodec(String codec);
+
+   /**
+    * Returns the size in bytes from which the bodies of regular messages are compressed.
+    * <p>
+    * Default value is {@link HornetQClient#DEFAULT_MIN_BODY_COMPRESSION_SIZE}.
+    *
+    * @return the size from which bodies are compressed
+    */
+   int getMinBodyCompressionSize();
+
+   /**
+    * Sets the size in bytes from which the bodies of regular messages are compressed, smaller bodies
+    * not being worth it.
+    *
+    * @param minBodyCompressionSize the size from which bodies are compressed
+    */
+   void setMinBodyCompressionSize(int minBodyCompressionSize);
+
+   /**
+    * Returns the time in milliseconds of processing that consumers buffer, -1 if their window is
+    * a fixed number of bytes.
+    * <p>
+    * Default value is {@link HornetQClient#DEFAULT_CONSUMER_WINDOW_TARGET_TIME}.
+    *
+    * @return the time of processing that consumers buffer
+    */
+   long getConsumerWindowTargetTime();
+
+   /**
+    * Sets the time in milliseconds of processing that the consumers created through this factory
+    * buffer. Their window is then sized from the rate at which they process messages and the round
+    * trip to the server, up to the consumer window size, so that slow consumers leave the messages
+    * of their queue to faster ones.
+    * <p>
+    * A value of -1 keeps the window at the consumer window size. The time has no effect on
+    * consumers without a buffer (window size of 0) or with an unbounded one (window size of -1).
+    *
+    * @param consumerWindowTargetTime the time of processing that consumers buffer
+    */
+   void setConsumerWindowTargetTime(long consumerWindowTargetTime);
+
    void addClusterTopologyListener(ClusterTopologyListener listener);
 
    void removeClusterTopologyListener(ClusterTopologyListener listener);
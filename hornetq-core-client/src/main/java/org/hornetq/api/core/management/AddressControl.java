@@ -62,6 +62,26 @@ public interface AddressControl
     */
    long getNumberOfBytesPerPage() throws Exception;
 
+   /**
+    * Returns the number of times the cursors of this address found the page they needed in the page cache.
+    */
+   long getPageCacheHits() throws Exception;
+
+   /**
+    * Returns the number of times the cursors of this address had to read a page file which was not in the page cache.
+    */
+   long getPageCacheMisses() throws Exception;
+
+   /**
+    * Returns the number of pages dropped from the page cache of this address to keep it within its bounds.
+    */
+   long getPageCacheEvictions() throws Exception;
+
+   /**
+    * Returns the memory in bytes taken by the messages decoded on the page cache of this address.
+    */
+   long getPageCacheSize() throws Exception;
+
    /**
     * Returns the names of all bindings (both queues and diverts) bound to this address
     */
@@ -140,6 +140,34 @@ public interface HornetQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns the time (in nanoseconds) a sync currently waits for other records before the internal
+    * buffer on the journal is flushed. It is the buffer timeout unless the buffer is adaptive.
+    */
+   long getJournalBufferFlushWindow();
+
+   /**
+    * Lists the number of flushes of the internal buffer on the journal by number of records, in
+    * JSON format. Each entry counts the flushes of {@code min} to {@code max} records.
+    */
+   @Operation(desc = "List the number of journal buffer flushes by number of records, in JSON format", impact = MBeanOperationInfo.INFO)
+   String listJournalBufferBatchSizesAsJSON() throws Exception;
+
+   /**
+    * Lists the number of syncs of the internal buffer on the journal by time to complete, in JSON
+    * format. Each entry counts the syncs done in {@code min} to {@code max} microseconds. The
+    * syncs are only timed when journal-buffer-adaptive is set.
+    */
+   @Operation(desc = "List the number of journal buffer syncs by time to complete in microseconds, in JSON format", impact = MBeanOperationInfo.INFO)
+   String listJournalBufferSyncLatenciesAsJSON() throws Exception;
+
+   /**
+    * Lists the statistics of the pool of direct buffers the journal, paging and large messages
+    * take their buffers from, in JSON format.
+    */
+   @Operation(desc = "List the statistics of the pool of direct buffers used for persistence, in JSON format", impact = MBeanOperationInfo.INFO)
+   String listDirectBufferPoolStatisticsAsJSON() throws Exception;
+
    /**
     * do any clients failover on a server shutdown
     */
@@ -244,4 +244,7 @@ public interface HornetQClientMessageBundle
          , format = Message.Format.MESSAGE_FORMAT)
    HornetQInterceptorRejectedPacketException interceptorRejectedPacket(String interceptionResult);
 
+   @Message(id = 119060, value = "Could not load the body codec {0}", format = Message.Format.MESSAGE_FORMAT)
+   IllegalArgumentException unknownBodyCodec(String name, @Cause Throwable e);
+
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the window of a consumer from the rate at which it consumes messages, so that it buffers
+ * about a target time of processing rather than a fixed number of bytes.
+ * <p>
+ * The window shrinks down to the largest message for slow consumers, which leave the messages of
+ * their queue to the other consumers, and grows back up to the configured window size for fast
+ * ones. It also covers two round trips to the server, so that the credits sent once half of it is
+ * consumed come back with messages before the consumer runs out of them.
+ * <p>
+ * The drain rate is measured while messages wait in the buffer, the time until the next message is
+ * taken being then the time the consumer spent on the previous one. A slower measure applies at
+ * once and a faster one is averaged in. When the consumer waits for messages its rate is doubled,
+ * once per window consumed, as it could have taken more.
+ * <p>
+ * The round trip is the shortest time from credits sent once all the previous ones were consumed
+ * to the message they bring.
+ * <p>
+ * Times are in nanoseconds, as given by {@link System#nanoTime()}.
+ */
+public final class AdaptiveConsumerWindow
+{
+   // The weight of a faster measure in the drain rate
+   private static final double RATE_WEIGHT = 0.25;
+
+   // The processing time a measure of the drain rate spans, so that it isn't made of a single message
+   private static final long MIN_MEASURE_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+
+   private final int maxWindowSize;
+
+   private final long targetTime;
+
+   private int windowSize;
+
+   // The credits given to the server and not consumed yet, whether the server still holds them or
+   // the messages they brought wait in the buffer
+   private int outstandingCredits;
+
+   private int largestMessage;
+
+   // In bytes per nanosecond, 0 until measured
+   private double drainRate;
+
+   private long measuredBytes;
+
+   private long measuredTime;
+
+   private long lastConsumption = -1;
+
+   private int lastConsumptionBytes;
+
+   private boolean lastConsumptionHadMore;
+
+   private int consumedSinceGrowth;
+
+   // 0 until measured
+   private long roundTripTime;
+
+   // When credits were last sent after all the previous ones were consumed, -1 if they brought a message since
+   private long creditsSentEmpty = -1;
+
+   /**
+    * @param windowSize the credits the consumer starts with, which is also its largest window
+    * @param targetTime the time of processing to buffer, in milliseconds
+    */
+   public AdaptiveConsumerWindow(final int windowSize, final long targetTime)
+   {
+      maxWindowSize = windowSize;
+
+      this.windowSize = windowSize;
+
+      this.targetTime = TimeUnit.MILLISECONDS.toNanos(targetTime);
+
+      outstandingCredits = windowSize;
+   }
+
+   /**
+    * @return the current window size, in bytes
+    */
+   public synchronized int getWindowSize()
+   {
+      return windowSize;
+   }
+
+   /**
+    * @return the rate at which the consumer processes messages, in bytes per second, 0 until measured
+    */
+   public synchronized double getDrainRate()
+   {
+      return drainRate * TimeUnit.SECONDS.toNanos(1);
+   }
+
+   /**
+    * @return the round trip time to the server, in nanoseconds, 0 until measured
+    */
+   public synchronized long getRoundTripTime()
+   {
+      return roundTripTime;
+   }
+
+   /**
+    * @return the bytes to consume before sending credits, half of the window
+    */
+   public synchronized int getCreditThreshold()
+   {
+      return Math.max(1, windowSize / 2);
+   }
+
+   /**
+    * Called as a message arrives from the server.
+    */
+   public synchronized void messageReceived(final long now)
+   {
+      if (creditsSentEmpty < 0)
+      {
+         return;
+      }
+
+      long time = now - creditsSentEmpty;
+
+      creditsSentEmpty = -1;
+
+      // Longer times include the time the queue was empty
+      if (roundTripTime == 0 || time < roundTripTime)
+      {
+         roundTripTime = Math.max(1, time);
+
+         resize();
+      }
+   }
+
+   /**
+    * Called as the consumer takes a message from the buffer.
+    *
+    * @param bytes the size of the message
+    * @param more whether other messages are left in the buffer
+    */
+   public synchronized void messageConsumed(final int bytes, final boolean more, final long now)
+   {
+      if (lastConsumption >= 0)
+      {
+         if (lastConsumptionHadMore)
+         {
+            // The consumer took this message as soon as it was done with the previous one
+            measuredBytes += lastConsumptionBytes;
+
+            measuredTime += now - lastConsumption;
+
+            if (measuredTime >= MIN_MEASURE_TIME)
+            {
+               double rate = (double)measuredBytes / measuredTime;
+
+               if (drainRate == 0 || rate < drainRate)
+               {
+                  drainRate = rate;
+               }
+               else
+               {
+                  drainRate += RATE_WEIGHT * (rate - drainRate);
+               }
+
+               measuredBytes = 0;
+
+               measuredTime = 0;
+
+               resize();
+            }
+         }
+         else if (drainRate > 0 && windowSize < maxWindowSize && consumedSinceGrowth >= windowSize)
+         {
+            // The consumer waited for this message
+            drainRate *= 2;
+
+            consumedSinceGrowth = 0;
+
+            resize();
+         }
+      }
+
+      lastConsumption = now;
+
+      lastConsumptionBytes = bytes;
+
+      lastConsumptionHadMore = more;
+
+      consumedSinceGrowth += bytes;
+
+      if (bytes > largestMessage)
+      {
+         largestMessage = bytes;
+
+         resize();
+      }
+   }
+
+   /**
+    * Takes the bytes consumed since credits were last sent.
+    *
+    * @return the credits to send to the server, 0 if it still holds more than the window
+    */
+   public synchronized int creditsFor(final int bytes, final long now)
+   {
+      outstandingCredits -= bytes;
+
+      int credits = windowSize - outstandingCredits;
+
+      if (credits <= 0)
+      {
+         return 0;
+      }
+
+      if (outstandingCredits <= 0)
+      {
+         creditsSentEmpty = now;
+      }
+
+      outstandingCredits += credits;
+
+      return credits;
+   }
+
+   /**
+    * Called as the consumer is given new credits from scratch, as after failover.
+    *
+    * @param credits the credits given
+    */
+   public synchronized void reset(final int credits)
+   {
+      outstandingCredits = credits;
+
+      lastConsumption = -1;
+
+      measuredBytes = 0;
+
+      measuredTime = 0;
+
+      creditsSentEmpty = -1;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "AdaptiveConsumerWindow[windowSize=" + windowSize +
+             ", drainRate=" +
+             getDrainRate() +
+             ", roundTripTime=" +
+             roundTripTime +
+             "]";
+   }
+
+   private void resize()
+   {
+      if (drainRate == 0)
+      {
+         return;
+      }
+
+      double size = drainRate * Math.max(targetTime, 2 * roundTripTime);
+
+      int minWindowSize = Math.max(1, Math.min(largestMessage, maxWindowSize));
+
+      windowSize = (int)Math.max(minWindowSize, Math.min(size, maxWindowSize));
+   }
+}
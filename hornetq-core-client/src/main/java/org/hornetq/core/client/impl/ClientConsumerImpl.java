@@ -92,6 +92,9 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private final int clientWindowSize;
 
+   // null unless the window is sized from the consumption rate
+   private final AdaptiveConsumerWindow adaptiveWindow;
+
    private final int ackBatchSize;
 
    private final PriorityLinkedList<ClientMessageInternal> buffer = new PriorityLinkedListImpl<ClientMessageInternal>(ClientConsumerImpl.NUM_PRIORITIES);
@@ -145,6 +148,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
                              final SimpleString filterString,
                              final boolean browseOnly,
                              final int clientWindowSize,
+                             final AdaptiveConsumerWindow adaptiveWindow,
                              final int ackBatchSize,
                              final TokenBucketLimiter rateLimiter,
                              final Executor executor,
@@ -171,6 +175,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       this.clientWindowSize = clientWindowSize;
 
+      this.adaptiveWindow = adaptiveWindow;
+
       this.ackBatchSize = ackBatchSize;
 
       this.queueInfo = queueInfo;
@@ -226,6 +232,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          {
             ClientMessageInternal m = null;
 
+            boolean moreBuffered = false;
+
             synchronized (this)
             {
                while ((stopped || (m = buffer.poll()) == null) && !closed && toWait > 0)
@@ -270,6 +278,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
                   start = now;
                }
+
+               moreBuffered = !buffer.isEmpty();
             }
 
             if (failedOver)
@@ -336,6 +346,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
                // if we have already pre acked we cant expire
                boolean expired = m.isExpired();
 
+               measureConsumption(m, moreBuffered);
+
                flowControlBeforeConsumption(m);
 
                if (expired)
@@ -521,6 +533,12 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       creditsToSend = 0;
 
+      if (adaptiveWindow != null)
+      {
+         // The session gives the consumer the credits of its client window again
+         adaptiveWindow.reset(clientWindowSize);
+      }
+
       failedOver = true;
 
       ackIndividually = false;
@@ -574,6 +592,11 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          return;
       }
 
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.messageReceived(System.nanoTime());
+      }
+
       if (message.getMessage().getBooleanProperty(Message.HDR_LARGE_COMPRESSED))
       {
          handleCompressedMessage(message);
@@ -803,6 +826,16 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       return buffer.size();
    }
 
+   public int getCurrentWindowSize()
+   {
+      return adaptiveWindow == null ? clientWindowSize : adaptiveWindow.getWindowSize();
+   }
+
+   public double getDrainRate()
+   {
+      return adaptiveWindow == null ? 0 : adaptiveWindow.getDrainRate();
+   }
+
    public void acknowledge(final ClientMessage message) throws HornetQException
    {
       ClientMessageInternal cmi = (ClientMessageInternal)message;
@@ -853,7 +886,23 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
    */
    public void flowControl(final int messageBytes, final boolean discountSlowConsumer) throws HornetQException
    {
-      if (clientWindowSize >= 0)
+      if (adaptiveWindow != null)
+      {
+         creditsToSend += messageBytes;
+
+         if (creditsToSend >= adaptiveWindow.getCreditThreshold())
+         {
+            final int credits = adaptiveWindow.creditsFor(creditsToSend, System.nanoTime());
+
+            creditsToSend = 0;
+
+            if (credits > 0)
+            {
+               sendCredits(credits);
+            }
+         }
+      }
+      else if (clientWindowSize >= 0)
       {
          creditsToSend += messageBytes;
 
@@ -1041,9 +1090,13 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
          failedOver = false;
 
+         boolean moreBuffered;
+
          synchronized (this)
          {
             message = buffer.poll();
+
+            moreBuffered = !buffer.isEmpty();
          }
 
          if (message != null)
@@ -1058,6 +1111,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
             boolean expired = message.isExpired();
 
+            measureConsumption(message, moreBuffered);
+
             flowControlBeforeConsumption(message);
 
             if (!expired)
@@ -1135,6 +1190,20 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       }
    }
 
+   /**
+    * Measures the drain rate of an adaptive window as a message is taken from the buffer.
+    *
+    * @param moreBuffered whether other messages were left in the buffer
+    */
+   private void measureConsumption(final ClientMessageInternal message, final boolean moreBuffered)
+   {
+      // The chunks of large messages keep coming while their body is read, so they aren't measured
+      if (adaptiveWindow != null && !message.isLargeMessage())
+      {
+         adaptiveWindow.messageConsumed(message.getFlowControlSize(), moreBuffered, System.nanoTime());
+      }
+   }
+
    private void doCleanUp(final boolean sendCloseMessage, final boolean interruptConsumer) throws HornetQException
    {
       try
@@ -26,6 +26,7 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.client.HornetQClientMessageBundle;
 import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.spi.core.compression.BodyCodec;
 
 /**
  *
@@ -69,6 +70,14 @@ public class ClientMessageImpl extends MessageImpl implements ClientMessageInter
       super(type, durable, expiration, timestamp, priority, initialMessageBufferSize);
    }
 
+   /*
+    * Copy constructor, for the copies sent on the wire
+    */
+   private ClientMessageImpl(final ClientMessageImpl other)
+   {
+      super(other);
+   }
+
    public boolean isServerMessage()
    {
       return false;
@@ -134,9 +143,44 @@ public class ClientMessageImpl extends MessageImpl implements ClientMessageInter
 
    public int getBodySize()
    {
+      decompressBody();
+
       return buffer.writerIndex() - buffer.readerIndex();
    }
 
+   @Override
+   public HornetQBuffer getBodyBuffer()
+   {
+      // A body compressed by the producer or the server is only decompressed once it is read
+      decompressBody();
+
+      return super.getBodyBuffer();
+   }
+
+   @Override
+   public HornetQBuffer getBodyBufferCopy()
+   {
+      decompressBody();
+
+      return super.getBodyBufferCopy();
+   }
+
+   public synchronized ClientMessageInternal compressedCopy(final BodyCodec codec, final int minBodySize)
+   {
+      byte[] compressed = compress(codec, minBodySize);
+
+      if (compressed == null)
+      {
+         return this;
+      }
+
+      ClientMessageImpl copy = new ClientMessageImpl(this);
+
+      copy.setCompressedBody(codec, compressed);
+
+      return copy;
+   }
+
    @Override
    public String toString()
    {
@@ -195,6 +239,9 @@ public class ClientMessageImpl extends MessageImpl implements ClientMessageInter
    @Override
    public BodyEncoder getBodyEncoder() throws HornetQException
    {
+      // The encoder reads the whole buffer, which must hold the body as it was sent
+      decompressBody();
+
       return new DecodingContext();
    }
 
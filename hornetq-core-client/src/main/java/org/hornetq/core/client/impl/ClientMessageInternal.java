@@ -15,6 +15,7 @@ package org.hornetq.core.client.impl;
 
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.spi.core.compression.BodyCodec;
 
 /**
  * A ClientMessageInternal
@@ -41,4 +42,11 @@ public interface ClientMessageInternal extends ClientMessage, MessageInternal
    void discardBody();
 
    boolean isCompressed();
+
+   /**
+    * @return a copy of this message with its body compressed, to be sent in its place, or this message if its body is
+    *         smaller than {@code minBodySize}, already compressed or would not get smaller. This message is left as it
+    *         is, so it can be sent again.
+    */
+   ClientMessageInternal compressedCopy(BodyCodec codec, int minBodySize);
 }
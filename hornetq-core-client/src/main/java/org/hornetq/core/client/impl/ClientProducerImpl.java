@@ -15,6 +15,9 @@ package org.hornetq.core.client.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -24,14 +27,19 @@ import org.hornetq.api.core.HornetQInterruptedException;
 import org.hornetq.api.core.HornetQLargeMessageException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.MessageBatchPacket;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
 import org.hornetq.core.client.HornetQClientMessageBundle;
+import org.hornetq.spi.core.compression.BodyCodec;
 import org.hornetq.utils.DeflaterReader;
 import org.hornetq.utils.HornetQBufferInputStream;
 import org.hornetq.utils.TokenBucketLimiter;
@@ -70,6 +78,10 @@ public class ClientProducerImpl implements ClientProducerInternal
 
    private final int minLargeMessageSize;
 
+   private final BodyCodec bodyCodec;
+
+   private final int minBodyCompressionSize;
+
    private final ClientProducerCredits credits;
 
    // Static ---------------------------------------------------------------------------------------
@@ -84,6 +96,8 @@ public class ClientProducerImpl implements ClientProducerInternal
                              final boolean autoGroup,
                              final SimpleString groupID,
                              final int minLargeMessageSize,
+                             final BodyCodec bodyCodec,
+                             final int minBodyCompressionSize,
                              final Channel channel)
    {
       this.channel = channel;
@@ -109,6 +123,10 @@ public class ClientProducerImpl implements ClientProducerInternal
 
       this.minLargeMessageSize = minLargeMessageSize;
 
+      this.bodyCodec = bodyCodec;
+
+      this.minBodyCompressionSize = minBodyCompressionSize;
+
       if (address != null)
       {
          credits = session.getCredits(address, false);
@@ -130,14 +148,14 @@ public class ClientProducerImpl implements ClientProducerInternal
    {
       checkClosed();
 
-      doSend(null, msg);
+      doSend(null, msg, null);
    }
 
    public void send(final SimpleString address, final Message msg) throws HornetQException
    {
       checkClosed();
 
-      doSend(address, msg);
+      doSend(address, msg, null);
    }
 
    public void send(final String address, final Message message) throws HornetQException
@@ -145,6 +163,50 @@ public class ClientProducerImpl implements ClientProducerInternal
       send(SimpleString.toSimpleString(address), message);
    }
 
+   public void send(final Message msg, final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(null, msg, handler);
+   }
+
+   public void send(final SimpleString address, final Message msg, final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(address, msg, handler);
+   }
+
+   public void send(final Collection<? extends Message> messages) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(null, messages, null);
+   }
+
+   public void send(final SimpleString address, final Collection<? extends Message> messages) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(address, messages, null);
+   }
+
+   public void send(final Collection<? extends Message> messages, final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(null, messages, handler);
+   }
+
+   public void send(final SimpleString address,
+                    final Collection<? extends Message> messages,
+                    final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      checkClosed();
+
+      doSend(address, messages, handler);
+   }
+
    public synchronized void close() throws HornetQException
    {
       if (closed)
@@ -210,7 +272,7 @@ public class ClientProducerImpl implements ClientProducerInternal
       closed = true;
    }
 
-   private void doSend(final SimpleString address, final Message msg) throws HornetQException
+   private void doSend(final SimpleString address, final Message msg, final SendAcknowledgementHandler handler) throws HornetQException
    {
       session.startCall();
 
@@ -220,20 +282,7 @@ public class ClientProducerImpl implements ClientProducerInternal
 
          ClientProducerCredits theCredits;
 
-         boolean isLarge;
-
-         // a note about the second check on the writerIndexSize,
-         // If it's a server's message, it means this is being done through the bridge or some special consumer on the
-         // server's on which case we can't' convert the message into large at the servers
-         if (msgI.getBodyInputStream() != null || msgI.isLargeMessage() ||
-            msgI.getBodyBuffer().writerIndex() > minLargeMessageSize && ! msgI.isServerMessage())
-         {
-            isLarge = true;
-         }
-         else
-         {
-            isLarge = false;
-         }
+         boolean isLarge = isLargeMessage(msgI);
 
          if (address != null)
          {
@@ -275,17 +324,232 @@ public class ClientProducerImpl implements ClientProducerInternal
             msgI.putStringProperty(Message.HDR_GROUP_ID, groupID);
          }
 
-         boolean sendBlocking = msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+         boolean sendBlocking;
+
+         if (handler == null)
+         {
+            sendBlocking = msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+         }
+         else
+         {
+            // The confirmations acknowledge the send, without them we can only wait for the response
+            sendBlocking = !session.isConfirmationWindowEnabled();
+         }
 
          session.workDone();
 
          if (isLarge)
          {
-            largeMessageSend(sendBlocking, msgI, theCredits);
+            largeMessageSend(sendBlocking, msgI, theCredits, handler);
+         }
+         else
+         {
+            sendRegularMessage(msgI, compressBody(msgI), sendBlocking, theCredits, handler);
+         }
+
+         if (sendBlocking && handler != null)
+         {
+            handler.sendAcknowledged(msg);
+         }
+      }
+      finally
+      {
+         session.endCall();
+      }
+   }
+
+   private boolean isLargeMessage(final MessageInternal msgI)
+   {
+      // a note about the second check on the writerIndexSize,
+      // If it's a server's message, it means this is being done through the bridge or some special consumer on the
+      // server's on which case we can't' convert the message into large at the servers
+      return msgI.getBodyInputStream() != null || msgI.isLargeMessage() ||
+         msgI.getBodyBuffer().writerIndex() > minLargeMessageSize && !msgI.isServerMessage();
+   }
+
+   /**
+    * @return the message to put on the wire for msgI, a compressed copy of it when the session compresses bodies
+    */
+   private MessageInternal compressBody(final MessageInternal msgI)
+   {
+      // The messages of the server, sent through a bridge, are forwarded as the bridge prepared them
+      if (msgI.isServerMessage())
+      {
+         return msgI;
+      }
+
+      if (session.getVersion() < BodyCodecs.SINCE_VERSION)
+      {
+         // The server would store and deliver the compressed body to consumers which can't decompress it, such as a
+         // consumed message sent on as it was received
+         msgI.decompressBody();
+
+         return msgI;
+      }
+
+      if (bodyCodec != null)
+      {
+         return ((ClientMessageInternal)msgI).compressedCopy(bodyCodec, minBodyCompressionSize);
+      }
+
+      return msgI;
+   }
+
+   private void doSend(final SimpleString address,
+                       final Collection<? extends Message> messages,
+                       final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      if (session.getVersion() < MessageBatchPacket.SINCE_VERSION)
+      {
+         // The server doesn't know about batches
+         for (Message msg : messages)
+         {
+            doSend(address, msg, handler);
+         }
+
+         return;
+      }
+
+      List<MessageInternal> batch = new ArrayList<MessageInternal>();
+
+      int batchSize = 0;
+
+      for (Message msg : messages)
+      {
+         MessageInternal msgI = (MessageInternal)msg;
+
+         if (isLargeMessage(msgI))
+         {
+            // Large messages go in chunks of their own, after what was batched before them
+            sendBatch(address, batch, handler);
+
+            batch = new ArrayList<MessageInternal>();
+
+            batchSize = 0;
+
+            doSend(address, msg, handler);
+         }
+         else
+         {
+            batch.add(msgI);
+
+            batchSize += msgI.getBodyBuffer().writerIndex();
+
+            // Keeps the packets about the size of the chunks of large messages
+            if (batchSize >= minLargeMessageSize)
+            {
+               sendBatch(address, batch, handler);
+
+               batch = new ArrayList<MessageInternal>();
+
+               batchSize = 0;
+            }
+         }
+      }
+
+      sendBatch(address, batch, handler);
+   }
+
+   /**
+    * Blocks if one of the messages would block when sent on its own, or if there is a handler and
+    * no confirmation window, so the failure of the batch is reported from here.
+    */
+   private void sendBatch(final SimpleString address,
+                          final List<MessageInternal> batch,
+                          final SendAcknowledgementHandler handler) throws HornetQException
+   {
+      if (batch.isEmpty())
+      {
+         return;
+      }
+
+      session.startCall();
+
+      try
+      {
+         ClientProducerCredits theCredits;
+
+         if (address != null)
+         {
+            // Anonymous
+            theCredits = session.getCredits(address, true);
+         }
+         else
+         {
+            theCredits = credits;
+         }
+
+         List<MessageInternal> wireBatch = new ArrayList<MessageInternal>(batch.size());
+
+         boolean blockingMessage = false;
+
+         for (MessageInternal msgI : batch)
+         {
+            blockingMessage |= msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+
+            session.setAddress(msgI, address != null ? address : this.address);
+
+            if (rateLimiter != null)
+            {
+               // Rate flow control
+
+               rateLimiter.limit();
+            }
+
+            if (groupID != null)
+            {
+               msgI.putStringProperty(Message.HDR_GROUP_ID, groupID);
+            }
+
+            MessageInternal wireMessage = compressBody(msgI);
+
+            wireBatch.add(wireMessage);
+
+            try
+            {
+               // This will block if credits are not available
+               theCredits.acquireCredits(wireMessage.getEncodeSize());
+            }
+            catch (InterruptedException e)
+            {
+               throw new HornetQInterruptedException(e);
+            }
+         }
+
+         boolean sendBlocking;
+
+         if (handler == null)
+         {
+            sendBlocking = blockingMessage;
          }
          else
          {
-            sendRegularMessage(msgI, sendBlocking, theCredits);
+            // The confirmations acknowledge the send, without them we can only wait for the response
+            sendBlocking = !session.isConfirmationWindowEnabled();
+         }
+
+         session.workDone();
+
+         SessionSendBatchMessage packet = new SessionSendBatchMessage(wireBatch,
+                                                                      batch,
+                                                                      sendBlocking,
+                                                                      sendBlocking ? null : handler);
+
+         if (sendBlocking)
+         {
+            channel.sendBlocking(packet, PacketImpl.NULL_RESPONSE);
+
+            if (handler != null)
+            {
+               for (MessageInternal msgI : batch)
+               {
+                  handler.sendAcknowledged(msgI);
+               }
+            }
+         }
+         else
+         {
+            channel.sendBatched(packet);
          }
       }
       finally
@@ -294,7 +558,14 @@ public class ClientProducerImpl implements ClientProducerInternal
       }
    }
 
-   private void sendRegularMessage(MessageInternal msgI, boolean sendBlocking, final ClientProducerCredits theCredits) throws HornetQException
+   /**
+    * @param wireMessage the message encoded in place of msgI, which the confirmation still reports
+    */
+   private void sendRegularMessage(final MessageInternal msgI,
+                                   final MessageInternal wireMessage,
+                                   final boolean sendBlocking,
+                                   final ClientProducerCredits theCredits,
+                                   final SendAcknowledgementHandler handler) throws HornetQException
    {
       try
       {
@@ -304,14 +575,14 @@ public class ClientProducerImpl implements ClientProducerInternal
          // Not the continuations, but this is ok since we are only interested in limiting the amount of
          // data in *memory* and continuations go straight to the disk
 
-         theCredits.acquireCredits(msgI.getEncodeSize());
+         theCredits.acquireCredits(wireMessage.getEncodeSize());
       }
       catch (InterruptedException e)
       {
          throw new HornetQInterruptedException(e);
       }
 
-      SessionSendMessage packet = new SessionSendMessage(msgI, sendBlocking);
+      SessionSendMessage packet = new SessionSendMessage(wireMessage, msgI, sendBlocking, sendBlocking ? null : handler);
 
       if (sendBlocking)
       {
@@ -339,7 +610,8 @@ public class ClientProducerImpl implements ClientProducerInternal
     */
    private void largeMessageSend(final boolean sendBlocking,
                                  final MessageInternal msgI,
-                                 final ClientProducerCredits credits) throws HornetQException
+                                 final ClientProducerCredits credits,
+                                 final SendAcknowledgementHandler handler) throws HornetQException
    {
       int headerSize = msgI.getHeadersAndPropertiesEncodeSize();
 
@@ -358,15 +630,15 @@ public class ClientProducerImpl implements ClientProducerInternal
 
       if (msgI.isServerMessage())
       {
-         largeMessageSendServer(sendBlocking, msgI, credits);
+         largeMessageSendServer(sendBlocking, msgI, credits, handler);
       }
       else if ((input = msgI.getBodyInputStream()) != null)
       {
-         largeMessageSendStreamed(sendBlocking, msgI, input, credits);
+         largeMessageSendStreamed(sendBlocking, msgI, input, credits, handler);
       }
       else
       {
-         largeMessageSendBuffered(sendBlocking, msgI, credits);
+         largeMessageSendBuffered(sendBlocking, msgI, credits, handler);
       }
    }
 
@@ -395,7 +667,8 @@ public class ClientProducerImpl implements ClientProducerInternal
     */
    private void largeMessageSendServer(final boolean sendBlocking,
                                        final MessageInternal msgI,
-                                       final ClientProducerCredits credits) throws HornetQException
+                                       final ClientProducerCredits credits,
+                                       final SendAcknowledgementHandler handler) throws HornetQException
    {
       sendInitialLargeMessageHeader(msgI, credits);
 
@@ -425,7 +698,9 @@ public class ClientProducerImpl implements ClientProducerInternal
                                                                                             bodyBuffer.toByteBuffer()
                                                                                                       .array(),
                                                                                             !lastChunk,
-                                                                                            lastChunk && sendBlocking);
+                                                                                            lastChunk && sendBlocking,
+                                                                                            lastChunk && !sendBlocking ? handler
+                                                                                                                      : null);
 
             if (sendBlocking && lastChunk)
             {
@@ -460,10 +735,11 @@ public class ClientProducerImpl implements ClientProducerInternal
     */
    private void largeMessageSendBuffered(final boolean sendBlocking,
                                          final MessageInternal msgI,
-                                         final ClientProducerCredits credits) throws HornetQException
+                                         final ClientProducerCredits credits,
+                                         final SendAcknowledgementHandler handler) throws HornetQException
    {
       msgI.getBodyBuffer().readerIndex(0);
-      largeMessageSendStreamed(sendBlocking, msgI, new HornetQBufferInputStream(msgI.getBodyBuffer()), credits);
+      largeMessageSendStreamed(sendBlocking, msgI, new HornetQBufferInputStream(msgI.getBodyBuffer()), credits, handler);
    }
 
    /**
@@ -477,7 +753,8 @@ public class ClientProducerImpl implements ClientProducerInternal
    private void largeMessageSendStreamed(final boolean sendBlocking,
                                          final MessageInternal msgI,
                                          final InputStream inputStreamParameter,
-                                         final ClientProducerCredits credits) throws HornetQException
+                                         final ClientProducerCredits credits,
+                                         final SendAcknowledgementHandler handler) throws HornetQException
    {
       boolean lastPacket = false;
 
@@ -558,11 +835,16 @@ public class ClientProducerImpl implements ClientProducerInternal
                msgI.putLongProperty(Message.HDR_LARGE_BODY_SIZE, deflaterReader.getTotalSize());
 
                msgI.getBodyBuffer().writeBytes(buff, 0, pos);
-               sendRegularMessage(msgI, sendBlocking, credits);
+               sendRegularMessage(msgI, msgI, sendBlocking, credits, handler);
                return;
             }
 
-            chunk = new SessionSendContinuationMessage(msgI, buff, false, sendBlocking, messageSize.get());
+            chunk = new SessionSendContinuationMessage(msgI,
+                                                       buff,
+                                                       false,
+                                                       sendBlocking,
+                                                       messageSize.get(),
+                                                       sendBlocking ? null : handler);
          }
          else
          {
@@ -58,8 +58,10 @@ import org.hornetq.core.protocol.core.impl.wireformat.ClusterTopologyChangeMessa
 import org.hornetq.core.protocol.core.impl.wireformat.CreateSessionMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.CreateSessionResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.DisconnectMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.MessageBatchPacket;
 import org.hornetq.core.protocol.core.impl.wireformat.NodeAnnounceMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.Ping;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SubscribeClusterTopologyUpdatesMessageV2;
 import org.hornetq.core.remoting.FailureListener;
 import org.hornetq.core.server.HornetQComponent;
@@ -878,6 +880,7 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal, C
                                                                      serverLocator.isAutoGroup(),
                                                                      ackBatchSize,
                                                                      serverLocator.getConsumerWindowSize(),
+                                                                     serverLocator.getConsumerWindowTargetTime(),
                                                                      serverLocator.getConsumerMaxRate(),
                                                                      serverLocator.getConfirmationWindowSize(),
                                                                      serverLocator.getProducerWindowSize(),
@@ -887,6 +890,8 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal, C
                                                                      serverLocator.isCacheLargeMessagesClient(),
                                                                      serverLocator.getMinLargeMessageSize(),
                                                                      serverLocator.isCompressLargeMessage(),
+                                                                     serverLocator.getBodyCompressionCodec(),
+                                                                     serverLocator.getMinBodyCompressionSize(),
                                                                      serverLocator.getInitialMessagePacketSize(),
                                                                      serverLocator.getGroupID(),
                                                                      connection,
@@ -909,6 +914,11 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal, C
 
                sessionChannel.setHandler(handler);
 
+               if (serverLocator.isBatchDelivery() && response.getServerVersion() >= MessageBatchPacket.SINCE_VERSION)
+               {
+                  session.addMetaData(SessionReceiveBatchMessage.BATCH_DELIVERY_METADATA, Boolean.TRUE.toString());
+               }
+
                return new DelegatingSession(session);
             }
             catch (Throwable t)
@@ -42,6 +42,7 @@ import org.hornetq.api.core.client.SendAcknowledgementHandler;
 import org.hornetq.api.core.client.SessionFailureListener;
 import org.hornetq.core.client.HornetQClientLogger;
 import org.hornetq.core.client.HornetQClientMessageBundle;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.CommandConfirmationHandler;
 import org.hornetq.core.protocol.core.CoreRemotingConnection;
@@ -69,6 +70,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuation
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionRequestProducerCreditsMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionUniqueAddMetaDataMessage;
@@ -86,6 +88,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionXASetTimeoutMessage
 import org.hornetq.core.protocol.core.impl.wireformat.SessionXASetTimeoutResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionXAStartMessage;
 import org.hornetq.core.remoting.FailureListener;
+import org.hornetq.spi.core.compression.BodyCodec;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 import org.hornetq.spi.core.remoting.Connection;
 import org.hornetq.utils.IDGenerator;
@@ -143,6 +146,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
    private final int consumerWindowSize;
 
+   private final long consumerWindowTargetTime;
+
    private final int consumerMaxRate;
 
    private final int confirmationWindowSize;
@@ -157,6 +162,10 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
    private final boolean compressLargeMessages;
 
+   private final BodyCodec bodyCodec;
+
+   private final int minBodyCompressionSize;
+
    private volatile int initialMessagePacketSize;
 
    private final boolean cacheLargeMessageClient;
@@ -204,6 +213,7 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
                             final boolean autoGroup,
                             final int ackBatchSize,
                             final int consumerWindowSize,
+                            final long consumerWindowTargetTime,
                             final int consumerMaxRate,
                             final int confirmationWindowSize,
                             final int producerWindowSize,
@@ -213,6 +223,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
                             final boolean cacheLargeMessageClient,
                             final int minLargeMessageSize,
                             final boolean compressLargeMessages,
+                            final String bodyCompressionCodec,
+                            final int minBodyCompressionSize,
                             final int initialMessagePacketSize,
                             final String groupID,
                             final CoreRemotingConnection remotingConnection,
@@ -255,6 +267,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
       this.consumerWindowSize = consumerWindowSize;
 
+      this.consumerWindowTargetTime = consumerWindowTargetTime;
+
       this.consumerMaxRate = consumerMaxRate;
 
       this.confirmationWindowSize = confirmationWindowSize;
@@ -271,11 +285,21 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
       this.compressLargeMessages = compressLargeMessages;
 
+      bodyCodec = bodyCompressionCodec == null ? null : BodyCodecs.getCodec(bodyCompressionCodec);
+
+      this.minBodyCompressionSize = minBodyCompressionSize;
+
       this.initialMessagePacketSize = initialMessagePacketSize;
 
       this.groupID = groupID;
 
       producerCreditManager = new ClientProducerCreditManagerImpl(this, producerWindowSize);
+
+      if (isConfirmationWindowEnabled())
+      {
+         // sends given their own handler are acknowledged through the confirmations
+         channel.setCommandConfirmationHandler(this);
+      }
    }
 
    // ClientSession implementation
@@ -747,6 +771,11 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
       return compressLargeMessages;
    }
 
+   public boolean isConfirmationWindowEnabled()
+   {
+      return confirmationWindowSize >= 0;
+   }
+
    /**
     * @return the cacheLargeMessageClient
     */
@@ -1309,19 +1338,43 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
       {
          SessionSendMessage ssm = (SessionSendMessage)packet;
 
-         sendAckHandler.sendAcknowledged(ssm.getMessage());
+         sendAcknowledged(ssm.getHandler(), ssm.getSentMessage());
       }
       else if (packet.getType() == PacketImpl.SESS_SEND_CONTINUATION)
       {
          SessionSendContinuationMessage scm = (SessionSendContinuationMessage) packet;
          if (!scm.isContinues())
          {
-            sendAckHandler.sendAcknowledged(scm.getMessage());
+            sendAcknowledged(scm.getHandler(), scm.getMessage());
+         }
+      }
+      else if (packet.getType() == PacketImpl.SESS_SEND_BATCH)
+      {
+         SessionSendBatchMessage sbm = (SessionSendBatchMessage)packet;
+
+         for (Message message : sbm.getSentMessages())
+         {
+            sendAcknowledged(sbm.getHandler(), message);
          }
       }
 
    }
 
+   /**
+    * The handler given to the send takes precedence over the one of the session.
+    */
+   private void sendAcknowledged(final SendAcknowledgementHandler handler, final Message message)
+   {
+      if (handler != null)
+      {
+         handler.sendAcknowledged(message);
+      }
+      else if (sendAckHandler != null)
+      {
+         sendAckHandler.sendAcknowledged(message);
+      }
+   }
+
    // XAResource implementation
    // --------------------------------------------------------------------
 
@@ -1859,12 +1912,21 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
       int clientWindowSize = calcWindowSize(windowSize);
 
+      AdaptiveConsumerWindow adaptiveWindow = null;
+
+      // Slow consumers and consumers without flow control keep their window
+      if (consumerWindowTargetTime > 0 && clientWindowSize > 1)
+      {
+         adaptiveWindow = new AdaptiveConsumerWindow(windowSize, consumerWindowTargetTime);
+      }
+
       ClientConsumerInternal consumer = new ClientConsumerImpl(this,
                                                                consumerID,
                                                                queueName,
                                                                filterString,
                                                                browseOnly,
                                                                clientWindowSize,
+                                                               adaptiveWindow,
                                                                ackBatchSize,
                                                                consumerMaxRate > 0 ? new TokenBucketLimiterImpl(maxRate,
                                                                                                                 false)
@@ -1902,6 +1964,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
                                                                autoGroup,
                                                                groupID == null ? null : new SimpleString(groupID),
                                                                minLargeMessageSize,
+                                                               bodyCodec,
+                                                               minBodyCompressionSize,
                                                                channel);
 
       addProducer(producer);
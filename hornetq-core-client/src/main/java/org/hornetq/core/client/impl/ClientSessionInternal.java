@@ -43,6 +43,12 @@ public interface ClientSessionInternal extends ClientSession
 
    boolean isCompressLargeMessages();
 
+   /**
+    * Whether the server confirms the packets of this session, which is what acknowledges a send
+    * given its own {@link org.hornetq.api.core.client.SendAcknowledgementHandler}.
+    */
+   boolean isConfirmationWindowEnabled();
+
    void expire(long consumerID, long messageID) throws HornetQException;
 
    void addConsumer(ClientConsumerInternal consumer);
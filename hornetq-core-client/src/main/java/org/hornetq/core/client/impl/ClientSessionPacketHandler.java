@@ -17,6 +17,7 @@ import static org.hornetq.core.protocol.core.impl.PacketImpl.EXCEPTION;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_CONTINUATION;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_LARGE_MSG;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG;
+import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG_BATCH;
 
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.ChannelHandler;
@@ -25,6 +26,7 @@ import org.hornetq.core.protocol.core.impl.PacketImpl;
 import org.hornetq.core.protocol.core.impl.wireformat.HornetQExceptionMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsFailMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
@@ -74,6 +76,17 @@ final class ClientSessionPacketHandler implements ChannelHandler
 
                break;
             }
+            case SESS_RECEIVE_MSG_BATCH:
+            {
+               SessionReceiveBatchMessage batch = (SessionReceiveBatchMessage)packet;
+
+               for (SessionReceiveMessage message : batch.getEntries())
+               {
+                  clientSession.handleReceiveMessage(message.getConsumerID(), message);
+               }
+
+               break;
+            }
             case SESS_RECEIVE_LARGE_MSG:
             {
                SessionReceiveLargeMessage message = (SessionReceiveLargeMessage)packet;
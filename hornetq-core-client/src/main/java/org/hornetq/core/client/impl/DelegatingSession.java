@@ -589,6 +589,11 @@ public class DelegatingSession implements ClientSessionInternal
       return session.isCompressLargeMessages();
    }
 
+   public boolean isConfirmationWindowEnabled()
+   {
+      return session.isConfirmationWindowEnabled();
+   }
+
    @Override
    public String toString()
    {
@@ -110,6 +110,14 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
 
    private boolean compressLargeMessage;
 
+   private boolean batchDelivery;
+
+   private String bodyCompressionCodec;
+
+   private int minBodyCompressionSize;
+
+   private long consumerWindowTargetTime;
+
    // if the system should shutdown the pool when shutting down
    private transient boolean shutdownPool;
 
@@ -479,6 +487,14 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
 
       compressLargeMessage = HornetQClient.DEFAULT_COMPRESS_LARGE_MESSAGES;
 
+      batchDelivery = HornetQClient.DEFAULT_BATCH_DELIVERY;
+
+      bodyCompressionCodec = HornetQClient.DEFAULT_BODY_COMPRESSION_CODEC;
+
+      minBodyCompressionSize = HornetQClient.DEFAULT_MIN_BODY_COMPRESSION_SIZE;
+
+      consumerWindowTargetTime = HornetQClient.DEFAULT_CONSUMER_WINDOW_TARGET_TIME;
+
       clusterConnection = false;
    }
 
@@ -1278,6 +1294,50 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
       this.compressLargeMessage = avoid;
    }
 
+   public boolean isBatchDelivery()
+   {
+      return batchDelivery;
+   }
+
+   public void setBatchDelivery(final boolean batchDelivery)
+   {
+      checkWrite();
+      this.batchDelivery = batchDelivery;
+   }
+
+   public String getBodyCompressionCodec()
+   {
+      return bodyCompressionCodec;
+   }
+
+   public void setBodyCompressionCodec(final String codec)
+   {
+      checkWrite();
+      bodyCompressionCodec = codec;
+   }
+
+   public int getMinBodyCompressionSize()
+   {
+      return minBodyCompressionSize;
+   }
+
+   public void setMinBodyCompressionSize(final int minBodyCompressionSize)
+   {
+      checkWrite();
+      this.minBodyCompressionSize = minBodyCompressionSize;
+   }
+
+   public long getConsumerWindowTargetTime()
+   {
+      return consumerWindowTargetTime;
+   }
+
+   public void setConsumerWindowTargetTime(final long consumerWindowTargetTime)
+   {
+      checkWrite();
+      this.consumerWindowTargetTime = consumerWindowTargetTime;
+   }
+
    private void checkWrite()
    {
       synchronized (stateGuard)
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.compression.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.core.client.HornetQClientMessageBundle;
+import org.hornetq.spi.core.compression.BodyCodec;
+import org.hornetq.utils.ClassloadingUtil;
+
+/**
+ * Finds the {@link BodyCodec}s by their names.
+ */
+public final class BodyCodecs
+{
+   public static final String LZF = "lzf";
+
+   public static final String DEFLATE = "deflate";
+
+   /**
+    * The first client version which understands {@link org.hornetq.api.core.Message#HDR_BODY_CODEC}, older clients
+    * must be sent and send the bodies as they were written.
+    */
+   public static final int SINCE_VERSION = 123;
+
+   private static final ConcurrentMap<String, BodyCodec> codecs = new ConcurrentHashMap<String, BodyCodec>();
+
+   static
+   {
+      codecs.put(LZF, new LZFBodyCodec());
+      codecs.put(DEFLATE, new DeflateBodyCodec());
+   }
+
+   private BodyCodecs()
+   {
+   }
+
+   /**
+    * @param name the name of a built-in codec, or the name of the class of a codec
+    * @throws IllegalArgumentException if no codec can be loaded by that name
+    */
+   public static BodyCodec getCodec(final String name)
+   {
+      BodyCodec codec = codecs.get(name);
+
+      if (codec == null)
+      {
+         try
+         {
+            codec = (BodyCodec)ClassloadingUtil.newInstanceFromClassLoader(name);
+         }
+         catch (Throwable t)
+         {
+            throw HornetQClientMessageBundle.BUNDLE.unknownBodyCodec(name, t);
+         }
+
+         BodyCodec existing = codecs.putIfAbsent(name, codec);
+
+         if (existing != null)
+         {
+            codec = existing;
+         }
+      }
+
+      return codec;
+   }
+}
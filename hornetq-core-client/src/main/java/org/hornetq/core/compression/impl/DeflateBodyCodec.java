@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.compression.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.hornetq.spi.core.compression.BodyCodec;
+
+/**
+ * A {@link BodyCodec} using the deflate algorithm of {@code java.util.zip}, slower than {@link LZFBodyCodec} but
+ * compressing better.
+ */
+public final class DeflateBodyCodec implements BodyCodec
+{
+   public String getName()
+   {
+      return BodyCodecs.DEFLATE;
+   }
+
+   public byte[] compress(final byte[] body)
+   {
+      Deflater deflater = new Deflater();
+
+      try
+      {
+         deflater.setInput(body);
+
+         deflater.finish();
+
+         ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 2 + 16);
+
+         byte[] chunk = new byte[Math.min(body.length + 16, 4096)];
+
+         while (!deflater.finished())
+         {
+            int count = deflater.deflate(chunk);
+
+            output.write(chunk, 0, count);
+         }
+
+         return output.toByteArray();
+      }
+      finally
+      {
+         deflater.end();
+      }
+   }
+
+   public byte[] decompress(final byte[] compressed, final int bodySize)
+   {
+      Inflater inflater = new Inflater();
+
+      try
+      {
+         inflater.setInput(compressed);
+
+         byte[] body = new byte[bodySize];
+
+         int read = 0;
+
+         while (read < bodySize && !inflater.finished())
+         {
+            int count = inflater.inflate(body, read, bodySize - read);
+
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+            {
+               break;
+            }
+
+            read += count;
+         }
+
+         if (read != bodySize)
+         {
+            throw new IllegalStateException("Inflated " + read + " bytes out of a body of " + bodySize);
+         }
+
+         return body;
+      }
+      catch (DataFormatException e)
+      {
+         throw new IllegalStateException(e.getMessage(), e);
+      }
+      finally
+      {
+         inflater.end();
+      }
+   }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.compression.impl;
+
+import org.hornetq.spi.core.compression.BodyCodec;
+
+/**
+ * A {@link BodyCodec} writing the format of liblzf: a fast LZ77 compression, meant for bodies repeating words and
+ * keys such as JSON or XML documents, which costs far less CPU than deflate.
+ * <p>
+ * The body is a sequence of runs, each beginning with a control byte:
+ * <ul>
+ * <li>below 32, it is followed by {@code control + 1} bytes of the body.</li>
+ * <li>otherwise its 3 high bits are the length of a back reference, 7 meaning that a byte follows to add to it, and
+ * its 5 low bits are followed by a byte making the offset of the reference. It repeats {@code length + 2} bytes found
+ * {@code offset + 1} bytes before.</li>
+ * </ul>
+ */
+public final class LZFBodyCodec implements BodyCodec
+{
+   private static final int MAX_LITERAL = 1 << 5;
+
+   private static final int MAX_OFFSET = 1 << 13;
+
+   private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+
+   private static final int MAX_HASH_BITS = 14;
+
+   private static final int MIN_HASH_BITS = 8;
+
+   public String getName()
+   {
+      return BodyCodecs.LZF;
+   }
+
+   public byte[] compress(final byte[] body)
+   {
+      int length = body.length;
+
+      // Every run of literals costs one more byte, and a reference never costs more than the bytes it repeats
+      byte[] output = new byte[length + length / MAX_LITERAL + 16];
+
+      int hashBits = Math.max(MIN_HASH_BITS, Math.min(MAX_HASH_BITS, 32 - Integer.numberOfLeadingZeros(length)));
+
+      // The positions of the last sequences of 3 bytes seen with each hash, plus one to tell them from empty slots
+      int[] positions = new int[1 << hashBits];
+
+      int in = 0;
+
+      // The first control byte of literals is written once we know how many there are
+      int out = 1;
+
+      int literals = 0;
+
+      while (in < length - 2)
+      {
+         int hash = hash(body, in, hashBits);
+
+         int reference = positions[hash] - 1;
+
+         positions[hash] = in + 1;
+
+         int offset = in - reference - 1;
+
+         if (reference >= 0 && offset < MAX_OFFSET &&
+             body[reference] == body[in] &&
+             body[reference + 1] == body[in + 1] &&
+             body[reference + 2] == body[in + 2])
+         {
+            int maxMatch = Math.min(length - in, MAX_REFERENCE);
+
+            int match = 3;
+
+            while (match < maxMatch && body[reference + match] == body[in + match])
+            {
+               match++;
+            }
+
+            out = endLiterals(output, out, literals);
+
+            int encodedMatch = match - 2;
+
+            if (encodedMatch < 7)
+            {
+               output[out++] = (byte)((offset >> 8) + (encodedMatch << 5));
+            }
+            else
+            {
+               output[out++] = (byte)((offset >> 8) + (7 << 5));
+               output[out++] = (byte)(encodedMatch - 7);
+            }
+
+            output[out++] = (byte)offset;
+
+            // Room for the control byte of the next literals
+            out++;
+
+            literals = 0;
+
+            in += match;
+         }
+         else
+         {
+            output[out++] = body[in++];
+
+            if (++literals == MAX_LITERAL)
+            {
+               output[out - literals - 1] = (byte)(literals - 1);
+
+               out++;
+
+               literals = 0;
+            }
+         }
+      }
+
+      while (in < length)
+      {
+         output[out++] = body[in++];
+
+         if (++literals == MAX_LITERAL)
+         {
+            output[out - literals - 1] = (byte)(literals - 1);
+
+            out++;
+
+            literals = 0;
+         }
+      }
+
+      out = endLiterals(output, out, literals);
+
+      byte[] compressed = new byte[out];
+
+      System.arraycopy(output, 0, compressed, 0, out);
+
+      return compressed;
+   }
+
+   public byte[] decompress(final byte[] compressed, final int bodySize)
+   {
+      byte[] body = new byte[bodySize];
+
+      int in = 0;
+
+      int out = 0;
+
+      while (in < compressed.length)
+      {
+         int control = compressed[in++] & 0xff;
+
+         if (control < MAX_LITERAL)
+         {
+            int literals = control + 1;
+
+            if (out + literals > bodySize || in + literals > compressed.length)
+            {
+               throw corrupted(bodySize);
+            }
+
+            System.arraycopy(compressed, in, body, out, literals);
+
+            in += literals;
+
+            out += literals;
+         }
+         else
+         {
+            int match = control >> 5;
+
+            int reference = out - ((control & 0x1f) << 8) - 1;
+
+            if (match == 7)
+            {
+               if (in == compressed.length)
+               {
+                  throw corrupted(bodySize);
+               }
+
+               match += compressed[in++] & 0xff;
+            }
+
+            if (in == compressed.length)
+            {
+               throw corrupted(bodySize);
+            }
+
+            reference -= compressed[in++] & 0xff;
+
+            match += 2;
+
+            if (reference < 0 || out + match > bodySize)
+            {
+               throw corrupted(bodySize);
+            }
+
+            // The reference may overlap the bytes it writes, which must then be copied one at a time
+            for (int i = 0; i < match; i++)
+            {
+               body[out++] = body[reference++];
+            }
+         }
+      }
+
+      if (out != bodySize)
+      {
+         throw corrupted(bodySize);
+      }
+
+      return body;
+   }
+
+   /**
+    * Writes the control byte of the literals ending at {@code out}, or takes back the room left for it if there are
+    * none.
+    *
+    * @return the position following the literals
+    */
+   private static int endLiterals(final byte[] output, final int out, final int literals)
+   {
+      if (literals == 0)
+      {
+         return out - 1;
+      }
+
+      output[out - literals - 1] = (byte)(literals - 1);
+
+      return out;
+   }
+
+   private static int hash(final byte[] body, final int position, final int hashBits)
+   {
+      int value = (body[position] & 0xff) << 16 | (body[position + 1] & 0xff) << 8 | body[position + 2] & 0xff;
+
+      return value * -1640531535 >>> 32 - hashBits;
+   }
+
+   private static IllegalStateException corrupted(final int bodySize)
+   {
+      return new IllegalStateException("Corrupted LZF body of " + bodySize + " bytes");
+   }
+}
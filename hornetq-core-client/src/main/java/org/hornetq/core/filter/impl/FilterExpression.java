@@ -0,0 +1,1192 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.filter.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hornetq.api.core.FilterConstants;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+
+/**
+ * An immutable and reentrant form of a parsed filter.
+ * <p>
+ * {@link FilterParser} produces a tree of {@link Operator} and {@link Identifier} objects which
+ * keep the intermediate results and the identifier values in their own fields, so a parsed filter
+ * can only be evaluated by one thread at a time. {@link #compile(Object)} translates that tree into
+ * a tree of stateless nodes: identifiers are bound at compile time either to a header accessor or
+ * to a direct property lookup on the message, literals are normalized once and LIKE patterns are
+ * compiled once.
+ * <p>
+ * Evaluation follows the same three valued logic as {@link Operator}: every node returns a
+ * {@link Boolean}, {@link Long}, {@link Double}, {@link SimpleString} or {@code null} for unknown.
+ *
+ * @see Operator
+ */
+public abstract class FilterExpression
+{
+   // Constants -----------------------------------------------------
+
+   private static final int UNKNOWN = 0;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * @param parsed the object returned by {@link FilterParser#parse(SimpleString, java.util.Map)}
+    */
+   public static FilterExpression compile(final Object parsed) throws Exception
+   {
+      if (parsed == null)
+      {
+         return new Constant(null);
+      }
+
+      Class<?> clazz = parsed.getClass();
+
+      if (clazz == Identifier.class)
+      {
+         return FilterExpression.identifier(((Identifier)parsed).getName());
+      }
+      else if (clazz == Operator.class)
+      {
+         return FilterExpression.operator((Operator)parsed);
+      }
+      else
+      {
+         return new Constant(FilterExpression.normalize(parsed));
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return {@code true} only if the expression evaluates to {@link Boolean#TRUE}; an unknown
+    *         result never matches
+    * @throws Exception if the message carries values of a type the expression can't operate on
+    */
+   public final boolean matches(final Message message) throws Exception
+   {
+      return Boolean.TRUE.equals(evaluate(message));
+   }
+
+   public abstract Object evaluate(Message message) throws Exception;
+
+   /**
+    * Returns a condition the message has to fulfil for this expression to match: a property holding
+    * a string equal to one of a set of literals, as in {@code region = 'EU'} or
+    * {@code region IN ('EU', 'US')}, on its own or as one of the terms of an AND.
+    * <p>
+    * This allows a message to be checked against many such expressions with a single lookup. A
+    * message fulfilling the condition still has to be {@link #matches(Message) matched}.
+    *
+    * @return the condition or {@code null} if there is none
+    */
+   public Equality getEquality()
+   {
+      return null;
+   }
+
+   // Private -------------------------------------------------------
+
+   private static FilterExpression identifier(final SimpleString name)
+   {
+      if (name.startsWith(FilterConstants.HORNETQ_PREFIX))
+      {
+         if (FilterConstants.HORNETQ_USERID.equals(name))
+         {
+            return new UserIDHeader();
+         }
+         else if (FilterConstants.HORNETQ_PRIORITY.equals(name))
+         {
+            return new PriorityHeader();
+         }
+         else if (FilterConstants.HORNETQ_TIMESTAMP.equals(name))
+         {
+            return new TimestampHeader();
+         }
+         else if (FilterConstants.HORNETQ_DURABLE.equals(name))
+         {
+            return new DurableHeader();
+         }
+         else if (FilterConstants.HORNETQ_EXPIRATION.equals(name))
+         {
+            return new ExpirationHeader();
+         }
+         else if (FilterConstants.HORNETQ_SIZE.equals(name))
+         {
+            return new SizeHeader();
+         }
+      }
+
+      return new Property(name);
+   }
+
+   private static FilterExpression operator(final Operator op) throws Exception
+   {
+      switch (op.operation)
+      {
+         case Operator.EQUAL:
+            return new Equal(compile(op.oper1), compile(op.oper2));
+         case Operator.DIFFERENT:
+            return new Different(compile(op.oper1), compile(op.oper2));
+         case Operator.NOT:
+            return new Not(compile(op.oper1));
+         case Operator.AND:
+            return new And(compile(op.oper1), compile(op.oper2));
+         case Operator.OR:
+            return new Or(compile(op.oper1), compile(op.oper2));
+         case Operator.GT:
+         case Operator.GE:
+         case Operator.LT:
+         case Operator.LE:
+            return new Comparison(op.operation, compile(op.oper1), compile(op.oper2));
+         case Operator.ADD:
+         case Operator.SUB:
+         case Operator.MUL:
+         case Operator.DIV:
+            return new Arithmetic(op.operation, compile(op.oper1), compile(op.oper2));
+         case Operator.NEG:
+            return new Negation(compile(op.oper1));
+         case Operator.BETWEEN:
+            return new Between(false, compile(op.oper1), compile(op.oper2), compile(op.oper3));
+         case Operator.NOT_BETWEEN:
+            return new Between(true, compile(op.oper1), compile(op.oper2), compile(op.oper3));
+         case Operator.LIKE:
+            return new Like(false, compile(op.oper1), compile(op.oper2), null);
+         case Operator.NOT_LIKE:
+            return new Like(true, compile(op.oper1), compile(op.oper2), null);
+         case Operator.LIKE_ESCAPE:
+            return new Like(false, compile(op.oper1), compile(op.oper2), compile(op.oper3));
+         case Operator.NOT_LIKE_ESCAPE:
+            return new Like(true, compile(op.oper1), compile(op.oper2), compile(op.oper3));
+         case Operator.IS_NULL:
+            return new IsNull(false, compile(op.oper1));
+         case Operator.IS_NOT_NULL:
+            return new IsNull(true, compile(op.oper1));
+         case Operator.IN:
+            return new In(false, compile(op.oper1), (Set<?>)op.oper2);
+         case Operator.NOT_IN:
+            return new In(true, compile(op.oper1), (Set<?>)op.oper2);
+         default:
+            throw new Exception("Unknown operation " + op.operation + " on filter expression " + op);
+      }
+   }
+
+   /**
+    * Converts a value into one of the types filters operate on, widening integral types to
+    * {@link Long} and floating point types to {@link Double}.
+    */
+   static Object normalize(final Object value) throws Exception
+   {
+      if (value == null)
+      {
+         return null;
+      }
+
+      Class<?> clazz = value.getClass();
+
+      if (clazz == SimpleString.class || clazz == Long.class || clazz == Double.class || clazz == Boolean.class)
+      {
+         return value;
+      }
+      else if (clazz == Integer.class || clazz == Short.class || clazz == Byte.class)
+      {
+         return Long.valueOf(((Number)value).longValue());
+      }
+      else if (clazz == Float.class)
+      {
+         return Double.valueOf(((Float)value).doubleValue());
+      }
+      else
+      {
+         throw new Exception("Bad Object: '" + clazz.getName() + "' on filter expression");
+      }
+   }
+
+   private static int typeOf(final Object value)
+   {
+      if (value == null)
+      {
+         return UNKNOWN;
+      }
+
+      Class<?> clazz = value.getClass();
+
+      if (clazz == Long.class)
+      {
+         return Operator.LONG;
+      }
+      else if (clazz == Double.class)
+      {
+         return Operator.DOUBLE;
+      }
+      else if (clazz == SimpleString.class)
+      {
+         return Operator.SIMPLE_STRING;
+      }
+      else
+      {
+         return Operator.BOOLEAN;
+      }
+   }
+
+   private static boolean isNumeric(final int type)
+   {
+      return type == Operator.LONG || type == Operator.DOUBLE;
+   }
+
+   private static Exception badObject(final int type, final FilterExpression expression)
+   {
+      return new Exception("Bad Object: '" + Operator.getClassName(type) + "' for operation: " + expression);
+   }
+
+   private static Exception badObject(final int expected, final int type, final FilterExpression expression)
+   {
+      return new Exception("Bad Object: expected '" + Operator.getClassName(expected) +
+                           "' got '" +
+                           Operator.getClassName(type) +
+                           "' for operation: " +
+                           expression);
+   }
+
+   private static Boolean asBoolean(final Object value, final FilterExpression expression) throws Exception
+   {
+      if (value == null)
+      {
+         return null;
+      }
+
+      if (value.getClass() != Boolean.class)
+      {
+         throw badObject(typeOf(value), expression);
+      }
+
+      return (Boolean)value;
+   }
+
+   /**
+    * Numerical comparison of two normalized numbers, using long arithmetic only if both are longs.
+    *
+    * @return negative, zero or positive as in {@link Comparable#compareTo(Object)}
+    */
+   private static int compareNumbers(final Object arg1, final Object arg2)
+   {
+      if (arg1.getClass() == Long.class && arg2.getClass() == Long.class)
+      {
+         long l1 = ((Long)arg1).longValue();
+         long l2 = ((Long)arg2).longValue();
+         return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+      }
+      else
+      {
+         double d1 = ((Number)arg1).doubleValue();
+         double d2 = ((Number)arg2).doubleValue();
+         return d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
+      }
+   }
+
+   private static boolean numbersEqual(final Object arg1, final Object arg2)
+   {
+      if (arg1.getClass() == Long.class && arg2.getClass() == Long.class)
+      {
+         return ((Long)arg1).longValue() == ((Long)arg2).longValue();
+      }
+      else
+      {
+         return ((Number)arg1).doubleValue() == ((Number)arg2).doubleValue();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A property that must hold one of a set of string values.
+    *
+    * @see FilterExpression#getEquality()
+    */
+   public static final class Equality
+   {
+      private final SimpleString property;
+
+      private final Set<SimpleString> values;
+
+      public Equality(final SimpleString property, final Set<SimpleString> values)
+      {
+         this.property = property;
+         this.values = Collections.unmodifiableSet(values);
+      }
+
+      private static Equality of(final FilterExpression property, final FilterExpression literal)
+      {
+         if (property instanceof Property && literal instanceof Constant)
+         {
+            Object value = ((Constant)literal).value;
+
+            if (value instanceof SimpleString)
+            {
+               return new Equality(((Property)property).name, Collections.singleton((SimpleString)value));
+            }
+         }
+         return null;
+      }
+
+      public SimpleString getProperty()
+      {
+         return property;
+      }
+
+      public Set<SimpleString> getValues()
+      {
+         return values;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Equality[" + property + " IN " + values + "]";
+      }
+   }
+
+   private static final class Constant extends FilterExpression
+   {
+      private final Object value;
+
+      Constant(final Object value)
+      {
+         this.value = value;
+      }
+
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return value;
+      }
+
+      @Override
+      public String toString()
+      {
+         return String.valueOf(value);
+      }
+   }
+
+   private static final class Property extends FilterExpression
+   {
+      private final SimpleString name;
+
+      Property(final SimpleString name)
+      {
+         this.name = name;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         return normalize(message.getObjectProperty(name));
+      }
+
+      @Override
+      public String toString()
+      {
+         return name.toString();
+      }
+   }
+
+   private static final class UserIDHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         // It's the stringified (hex) representation of a user id that can be used in a selector expression
+         return new SimpleString("ID:" + message.getUserID());
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_USERID.toString();
+      }
+   }
+
+   private static final class PriorityHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return Long.valueOf(message.getPriority());
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_PRIORITY.toString();
+      }
+   }
+
+   private static final class TimestampHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return Long.valueOf(message.getTimestamp());
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_TIMESTAMP.toString();
+      }
+   }
+
+   private static final class DurableHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return message.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_DURABLE.toString();
+      }
+   }
+
+   private static final class ExpirationHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return Long.valueOf(message.getExpiration());
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_EXPIRATION.toString();
+      }
+   }
+
+   private static final class SizeHeader extends FilterExpression
+   {
+      @Override
+      public Object evaluate(final Message message)
+      {
+         return Long.valueOf(message.getEncodeSize());
+      }
+
+      @Override
+      public String toString()
+      {
+         return FilterConstants.HORNETQ_SIZE.toString();
+      }
+   }
+
+   private abstract static class Binary extends FilterExpression
+   {
+      protected final FilterExpression left;
+
+      protected final FilterExpression right;
+
+      Binary(final FilterExpression left, final FilterExpression right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      protected abstract String operationName();
+
+      @Override
+      public String toString()
+      {
+         return operationName() + "(" + left + ", " + right + ")";
+      }
+   }
+
+   private static final class Equal extends Binary
+   {
+      Equal(final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg1 = left.evaluate(message);
+         if (arg1 == null)
+         {
+            return Boolean.FALSE;
+         }
+
+         int type1 = typeOf(arg1);
+
+         Object arg2 = right.evaluate(message);
+
+         if (isNumeric(type1))
+         {
+            if (arg2 == null)
+            {
+               return null;
+            }
+            if (!isNumeric(typeOf(arg2)))
+            {
+               return Boolean.FALSE;
+            }
+            return Boolean.valueOf(numbersEqual(arg1, arg2));
+         }
+
+         if (arg2 == null)
+         {
+            return Boolean.FALSE;
+         }
+         int type2 = typeOf(arg2);
+         if (type1 != type2)
+         {
+            throw badObject(type1, type2, this);
+         }
+         return Boolean.valueOf(arg1.equals(arg2));
+      }
+
+      @Override
+      public Equality getEquality()
+      {
+         Equality equality = Equality.of(left, right);
+         return equality != null ? equality : Equality.of(right, left);
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return "EQUAL";
+      }
+   }
+
+   private static final class Different extends Binary
+   {
+      Different(final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg1 = left.evaluate(message);
+         Object arg2 = right.evaluate(message);
+
+         if (arg1 == null)
+         {
+            return Boolean.valueOf(arg2 != null);
+         }
+
+         if (arg2 == null)
+         {
+            return null;
+         }
+
+         int type1 = typeOf(arg1);
+         int type2 = typeOf(arg2);
+
+         if (isNumeric(type1))
+         {
+            if (!isNumeric(type2))
+            {
+               return Boolean.FALSE;
+            }
+            return Boolean.valueOf(!numbersEqual(arg1, arg2));
+         }
+
+         if (type1 != type2)
+         {
+            throw badObject(type1, type2, this);
+         }
+         return Boolean.valueOf(!arg1.equals(arg2));
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return "DIFFERENT";
+      }
+   }
+
+   private static final class Not extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      Not(final FilterExpression operand)
+      {
+         this.operand = operand;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Boolean value = asBoolean(operand.evaluate(message), this);
+         if (value == null)
+         {
+            return null;
+         }
+         return value.booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "NOT(" + operand + ")";
+      }
+   }
+
+   /**
+    * <pre>
+    * | AND  |   T   |   F   |   U
+    * +------+-------+-------+-------
+    * |  T   |   T   |   F   |   U
+    * |  F   |   F   |   F   |   F
+    * |  U   |   U   |   F   |   U
+    * </pre>
+    */
+   private static final class And extends Binary
+   {
+      And(final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Boolean arg1 = asBoolean(left.evaluate(message), this);
+
+         if (arg1 != null && !arg1.booleanValue())
+         {
+            return Boolean.FALSE;
+         }
+
+         Boolean arg2 = asBoolean(right.evaluate(message), this);
+
+         if (arg2 == null)
+         {
+            return null;
+         }
+
+         if (arg1 == null)
+         {
+            return arg2.booleanValue() ? null : Boolean.FALSE;
+         }
+
+         return arg2;
+      }
+
+      @Override
+      public Equality getEquality()
+      {
+         Equality equality = left.getEquality();
+         return equality != null ? equality : right.getEquality();
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return "AND";
+      }
+   }
+
+   /**
+    * <pre>
+    * | OR   |   T   |   F   |   U
+    * +------+-------+-------+--------
+    * |  T   |   T   |   T   |   T
+    * |  F   |   T   |   F   |   U
+    * |  U   |   T   |   U   |   U
+    * </pre>
+    */
+   private static final class Or extends Binary
+   {
+      Or(final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Boolean arg1 = asBoolean(left.evaluate(message), this);
+
+         if (arg1 != null && arg1.booleanValue())
+         {
+            return Boolean.TRUE;
+         }
+
+         Boolean arg2 = asBoolean(right.evaluate(message), this);
+
+         if (arg2 != null && arg2.booleanValue())
+         {
+            return Boolean.TRUE;
+         }
+
+         if (arg1 != null && arg2 != null)
+         {
+            return Boolean.FALSE;
+         }
+
+         return null;
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return "OR";
+      }
+   }
+
+   /**
+    * GT, GE, LT and LE. Comparing anything but two numbers is false, comparing with an unknown
+    * number is unknown.
+    */
+   private static final class Comparison extends Binary
+   {
+      private final int operation;
+
+      Comparison(final int operation, final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+         this.operation = operation;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         return compare(left.evaluate(message), message);
+      }
+
+      /**
+       * The right hand side is only evaluated if the left hand side is a number.
+       */
+      Boolean compare(final Object arg1, final Message message) throws Exception
+      {
+         if (arg1 == null)
+         {
+            return null;
+         }
+
+         if (!isNumeric(typeOf(arg1)))
+         {
+            return Boolean.FALSE;
+         }
+
+         Object arg2 = right.evaluate(message);
+
+         if (arg2 == null)
+         {
+            return null;
+         }
+
+         if (!isNumeric(typeOf(arg2)))
+         {
+            return Boolean.FALSE;
+         }
+
+         int result = compareNumbers(arg1, arg2);
+
+         switch (operation)
+         {
+            case Operator.GT:
+               return Boolean.valueOf(result > 0);
+            case Operator.GE:
+               return Boolean.valueOf(result >= 0);
+            case Operator.LT:
+               return Boolean.valueOf(result < 0);
+            default:
+               return Boolean.valueOf(result <= 0);
+         }
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return Operator.operationString(operation);
+      }
+   }
+
+   private static final class Between extends FilterExpression
+   {
+      private final boolean not;
+
+      private final FilterExpression value;
+
+      private final Comparison lower;
+
+      private final Comparison upper;
+
+      Between(final boolean not,
+              final FilterExpression value,
+              final FilterExpression lowerBound,
+              final FilterExpression upperBound)
+      {
+         this.not = not;
+         this.value = value;
+         lower = new Comparison(not ? Operator.LT : Operator.GE, value, lowerBound);
+         upper = new Comparison(not ? Operator.GT : Operator.LE, value, upperBound);
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg = value.evaluate(message);
+
+         Boolean result = lower.compare(arg, message);
+
+         if (result == null)
+         {
+            return null;
+         }
+
+         // BETWEEN fails on the lower bound, NOT BETWEEN succeeds on it
+         if (result.booleanValue() == not)
+         {
+            return result;
+         }
+
+         return upper.compare(arg, message);
+      }
+
+      @Override
+      public String toString()
+      {
+         return (not ? "NOT_BETWEEN(" : "BETWEEN(") + value + ", " + lower.right + ", " + upper.right + ")";
+      }
+   }
+
+   private static final class Arithmetic extends Binary
+   {
+      private final int operation;
+
+      Arithmetic(final int operation, final FilterExpression left, final FilterExpression right)
+      {
+         super(left, right);
+         this.operation = operation;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg1 = left.evaluate(message);
+         Object arg2 = right.evaluate(message);
+
+         if (arg1 == null || arg2 == null)
+         {
+            return null;
+         }
+
+         int type1 = typeOf(arg1);
+         int type2 = typeOf(arg2);
+
+         if (!isNumeric(type1))
+         {
+            throw badObject(type1, this);
+         }
+
+         if (!isNumeric(type2))
+         {
+            throw badObject(type2, this);
+         }
+
+         if (type1 == Operator.LONG && type2 == Operator.LONG)
+         {
+            long l1 = ((Long)arg1).longValue();
+            long l2 = ((Long)arg2).longValue();
+
+            switch (operation)
+            {
+               case Operator.ADD:
+                  return Long.valueOf(l1 + l2);
+               case Operator.SUB:
+                  return Long.valueOf(l1 - l2);
+               case Operator.MUL:
+                  return Long.valueOf(l1 * l2);
+               default:
+                  return Long.valueOf(l1 / l2);
+            }
+         }
+
+         double d1 = ((Number)arg1).doubleValue();
+         double d2 = ((Number)arg2).doubleValue();
+
+         switch (operation)
+         {
+            case Operator.ADD:
+               return Double.valueOf(d1 + d2);
+            case Operator.SUB:
+               return Double.valueOf(d1 - d2);
+            case Operator.MUL:
+               return Double.valueOf(d1 * d2);
+            default:
+               return Double.valueOf(d1 / d2);
+         }
+      }
+
+      @Override
+      protected String operationName()
+      {
+         return Operator.operationString(operation);
+      }
+   }
+
+   private static final class Negation extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      Negation(final FilterExpression operand)
+      {
+         this.operand = operand;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg = operand.evaluate(message);
+
+         switch (typeOf(arg))
+         {
+            case UNKNOWN:
+               return null;
+            case Operator.LONG:
+               return Long.valueOf(-((Long)arg).longValue());
+            case Operator.DOUBLE:
+               return Double.valueOf(-((Double)arg).doubleValue());
+            default:
+               throw badObject(typeOf(arg), this);
+         }
+      }
+
+      @Override
+      public String toString()
+      {
+         return "NEG(" + operand + ")";
+      }
+   }
+
+   private static final class IsNull extends FilterExpression
+   {
+      private final boolean not;
+
+      private final FilterExpression operand;
+
+      IsNull(final boolean not, final FilterExpression operand)
+      {
+         this.not = not;
+         this.operand = operand;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         return Boolean.valueOf((operand.evaluate(message) == null) != not);
+      }
+
+      @Override
+      public String toString()
+      {
+         return (not ? "IS_NOT_NULL(" : "IS_NULL(") + operand + ")";
+      }
+   }
+
+   private static final class In extends FilterExpression
+   {
+      private final boolean not;
+
+      private final FilterExpression operand;
+
+      private final Set<?> values;
+
+      In(final boolean not, final FilterExpression operand, final Set<?> values)
+      {
+         this.not = not;
+         this.operand = operand;
+         this.values = values;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg = operand.evaluate(message);
+
+         if (arg == null)
+         {
+            // NOT IN is unknown for a missing value, IN is false
+            return not ? null : Boolean.FALSE;
+         }
+
+         if (arg.getClass() != SimpleString.class)
+         {
+            throw badObject(typeOf(arg), this);
+         }
+
+         return Boolean.valueOf(values.contains(arg) != not);
+      }
+
+      @Override
+      public Equality getEquality()
+      {
+         if (not || !(operand instanceof Property))
+         {
+            return null;
+         }
+
+         Set<SimpleString> strings = new HashSet<SimpleString>();
+
+         for (Object value : values)
+         {
+            if (!(value instanceof SimpleString))
+            {
+               return null;
+            }
+            strings.add((SimpleString)value);
+         }
+
+         return new Equality(((Property)operand).name, strings);
+      }
+
+      @Override
+      public String toString()
+      {
+         return (not ? "NOT_IN(" : "IN(") + operand + ", " + values + ")";
+      }
+   }
+
+   private static final class Like extends FilterExpression
+   {
+      private final boolean not;
+
+      private final FilterExpression operand;
+
+      private final FilterExpression pattern;
+
+      private final FilterExpression escape;
+
+      /** Compiled once if both the pattern and the escape character are literals */
+      private final RegExp regExp;
+
+      Like(final boolean not,
+           final FilterExpression operand,
+           final FilterExpression pattern,
+           final FilterExpression escape)
+      {
+         this.not = not;
+         this.operand = operand;
+         this.pattern = pattern;
+         this.escape = escape;
+
+         RegExp compiled = null;
+
+         if (pattern instanceof Constant && (escape == null || escape instanceof Constant))
+         {
+            try
+            {
+               compiled = buildRegExp(pattern.evaluate(null), escape == null ? null : escape.evaluate(null));
+            }
+            catch (Exception e)
+            {
+               // an invalid pattern is reported when the filter is evaluated, as the parsed form does
+               compiled = null;
+            }
+         }
+
+         regExp = compiled;
+      }
+
+      @Override
+      public Object evaluate(final Message message) throws Exception
+      {
+         Object arg = operand.evaluate(message);
+
+         if (arg == null)
+         {
+            return null;
+         }
+
+         if (arg.getClass() != SimpleString.class)
+         {
+            throw badObject(typeOf(arg), this);
+         }
+
+         RegExp re = regExp;
+
+         if (re == null)
+         {
+            Object patternValue = pattern.evaluate(message);
+
+            if (patternValue == null)
+            {
+               return Boolean.FALSE;
+            }
+
+            Object escapeValue = null;
+
+            if (escape != null)
+            {
+               escapeValue = escape.evaluate(message);
+
+               if (escapeValue == null)
+               {
+                  return null;
+               }
+            }
+
+            re = buildRegExp(patternValue, escapeValue);
+         }
+
+         return Boolean.valueOf(re.isMatch(arg) != not);
+      }
+
+      private RegExp buildRegExp(final Object patternValue, final Object escapeValue) throws Exception
+      {
+         if (patternValue.getClass() != SimpleString.class)
+         {
+            throw badObject(typeOf(patternValue), this);
+         }
+
+         Character escapeChar = null;
+
+         if (escapeValue != null)
+         {
+            if (escapeValue.getClass() != SimpleString.class)
+            {
+               throw badObject(typeOf(escapeValue), this);
+            }
+
+            SimpleString escapeString = (SimpleString)escapeValue;
+
+            if (escapeString.length() != 1)
+            {
+               throw new Exception("LIKE ESCAPE: Bad escape character " + escapeString.toString());
+            }
+
+            escapeChar = Character.valueOf(escapeString.charAt(0));
+         }
+
+         return new RegExp(patternValue.toString(), escapeChar);
+      }
+
+      @Override
+      public String toString()
+      {
+         return (not ? "NOT_LIKE(" : "LIKE(") + operand + ", " + pattern + (escape == null ? "" : ", " + escape) + ")";
+      }
+   }
+}
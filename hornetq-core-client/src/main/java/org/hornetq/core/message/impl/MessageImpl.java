@@ -14,7 +14,10 @@
 package org.hornetq.core.message.impl;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -23,12 +26,20 @@ import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.HornetQPropertyConversionException;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.buffers.impl.ChannelBufferWrapper;
 import org.hornetq.core.buffers.impl.ResetLimitWrappedHornetQBuffer;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.spi.core.compression.BodyCodec;
 import org.hornetq.utils.DataConstants;
 import org.hornetq.utils.TypedProperties;
 import org.hornetq.utils.UUID;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.jboss.netty.buffer.ReadOnlyChannelBuffer;
 
 /**
  * A concrete implementation of a message
@@ -86,6 +97,9 @@ public abstract class MessageImpl implements MessageInternal
 
    private boolean bufferUsed;
 
+   // true when the body of buffer is a view on the buffer of another message or packet, only the headers are ours
+   private boolean bodyShared;
+
    private UUID userID;
 
    // Constructors --------------------------------------------------
@@ -161,13 +175,16 @@ public abstract class MessageImpl implements MessageInternal
 
          if (other.buffer != null)
          {
-            createBody(other.buffer.capacity());
-
-            // We need to copy the underlying buffer too, since the different messsages thereafter might have different
-            // properties set on them, making their encoding different
-            buffer = other.buffer.copy(0, other.buffer.capacity());
+            // The messages share the buffer until one of them changes: they are both marked as used so that the one
+            // changing its headers or its body writes to a buffer of its own (see encodeToBuffer and checkCopy)
+            buffer = other.buffer.duplicate();
 
             buffer.setIndex(other.buffer.readerIndex(), other.buffer.writerIndex());
+
+            bufferUsed = true;
+            bodyShared = other.bodyShared;
+
+            other.bufferUsed = true;
          }
       }
    }
@@ -270,11 +287,43 @@ public abstract class MessageImpl implements MessageInternal
    {
       // Must copy buffer before sending it
 
-      HornetQBuffer newBuffer = buffer.copy(0, buffer.capacity());
+      return new ResetLimitWrappedHornetQBuffer(BODY_OFFSET, copyBody(), null);
+   }
 
-      newBuffer.setIndex(0, getEndOfBodyPosition());
+   public synchronized boolean compressBody(final BodyCodec codec, final int minBodySize)
+   {
+      byte[] compressed = compress(codec, minBodySize);
 
-      return new ResetLimitWrappedHornetQBuffer(BODY_OFFSET, newBuffer, null);
+      if (compressed == null)
+      {
+         return false;
+      }
+
+      setCompressedBody(codec, compressed);
+
+      return true;
+   }
+
+   public synchronized void decompressBody()
+   {
+      SimpleString codecName = properties.getSimpleStringProperty(HDR_BODY_CODEC);
+
+      if (codecName == null)
+      {
+         return;
+      }
+
+      byte[] compressed = new byte[getEndOfBodyPosition() - BODY_OFFSET];
+
+      buffer.getBytes(BODY_OFFSET, compressed);
+
+      BodyCodec codec = BodyCodecs.getCodec(codecName.toString());
+
+      replaceBody(codec.decompress(compressed, properties.getIntProperty(HDR_BODY_SIZE)));
+
+      removeProperty(HDR_BODY_CODEC);
+
+      removeProperty(HDR_BODY_SIZE);
    }
 
    public long getMessageID()
@@ -440,7 +489,7 @@ public abstract class MessageImpl implements MessageInternal
 
    public synchronized void checkCopy()
    {
-      if (!copied)
+      if (!copied || bufferUsed || bodyShared)
       {
          forceCopy();
 
@@ -470,7 +519,7 @@ public abstract class MessageImpl implements MessageInternal
    // Encode to journal or paging
    public void encode(final HornetQBuffer buff)
    {
-      encodeToBuffer();
+      encodeToBuffer(0);
 
       buff.writeBytes(buffer, BUFFER_HEADER_SPACE, endOfMessagePosition - BUFFER_HEADER_SPACE);
    }
@@ -495,17 +544,19 @@ public abstract class MessageImpl implements MessageInternal
       buff.readerIndex(start + length);
    }
 
-   public synchronized HornetQBuffer getEncodedBuffer()
+   public synchronized HornetQBuffer getEncodedBuffer(final int trailerSize)
    {
-      HornetQBuffer buff = encodeToBuffer();
+      HornetQBuffer buff = encodeToBuffer(trailerSize);
 
-      if (bufferUsed)
+      if (bufferUsed || !hasRoom(buff, endOfMessagePosition + trailerSize))
       {
-         HornetQBuffer copied = buff.copy(0, buff.capacity());
+         // Already sent or shared, or too small: the packet gets its own header and trailer around the encoded
+         // message
+         HornetQBuffer shared = shareBuffer(BUFFER_HEADER_SPACE, endOfMessagePosition, trailerSize);
 
-         copied.setIndex(0, endOfMessagePosition);
+         shared.setIndex(0, endOfMessagePosition);
 
-         return copied;
+         return shared;
       }
       else
       {
@@ -892,21 +943,43 @@ public abstract class MessageImpl implements MessageInternal
       return properties;
    }
 
+   /**
+    * @return true if the encoded buffer is being sent or is shared with copies of this message, it must not be
+    *         written to in place then
+    */
+   protected synchronized boolean isBufferUsed()
+   {
+      return bufferUsed;
+   }
+
    // This must be synchronized as it can be called concurrently id the message is being delivered
    // concurrently to
    // many queues - the first caller in this case will actually encode it
-   private synchronized HornetQBuffer encodeToBuffer()
+   // trailerSize is the room a new buffer needs after the message, for the fields of the packet sending it
+   private synchronized HornetQBuffer encodeToBuffer(final int trailerSize)
    {
       if (!bufferValid)
       {
-         if (bufferUsed)
+         int bodySize = getEndOfBodyPosition();
+
+         if (bufferUsed || bodyShared)
          {
-            // Cannot use same buffer - must copy
+            // Cannot use same buffer, but only the headers change: they are written after a view on the body
 
-            forceCopy();
-         }
+            buffer = shareBuffer(BODY_OFFSET, bodySize, DataConstants.SIZE_INT + getHeadersAndPropertiesEncodeSize() +
+                                                       trailerSize);
 
-         int bodySize = getEndOfBodyPosition();
+            buffer.setIndex(0, bodySize);
+
+            if (bodyBuffer != null)
+            {
+               bodyBuffer.setBuffer(buffer);
+            }
+
+            bufferUsed = false;
+
+            bodyShared = true;
+         }
 
          // write it
          buffer.setInt(BUFFER_HEADER_SPACE, bodySize);
@@ -966,16 +1039,148 @@ public abstract class MessageImpl implements MessageInternal
    {
       // Must copy buffer before sending it
 
-      buffer = buffer.copy(0, buffer.capacity());
+      buffer = copyBody();
+
+      if (bodyBuffer != null)
+      {
+         bodyBuffer.setBuffer(buffer);
+      }
+
+      bufferUsed = false;
+
+      bodyShared = false;
+   }
+
+   /**
+    * @return the compressed body, or null if it is smaller than {@code minBodySize}, already compressed or would not
+    *         get smaller
+    */
+   protected synchronized byte[] compress(final BodyCodec codec, final int minBodySize)
+   {
+      int bodySize = getEndOfBodyPosition() - BODY_OFFSET;
 
-      buffer.setIndex(0, getEndOfBodyPosition());
+      if (bodySize < minBodySize || properties.containsProperty(HDR_BODY_CODEC))
+      {
+         return null;
+      }
+
+      byte[] body = new byte[bodySize];
+
+      buffer.getBytes(BODY_OFFSET, body);
+
+      byte[] compressed = codec.compress(body);
+
+      return compressed.length < bodySize ? compressed : null;
+   }
+
+   /**
+    * Replaces the body by its compression made by {@link #compress(BodyCodec, int)}, recording the codec and the
+    * original size in the properties.
+    */
+   protected synchronized void setCompressedBody(final BodyCodec codec, final byte[] compressed)
+   {
+      int bodySize = getEndOfBodyPosition() - BODY_OFFSET;
+
+      replaceBody(compressed);
+
+      putStringProperty(HDR_BODY_CODEC, new SimpleString(codec.getName()));
+
+      putIntProperty(HDR_BODY_SIZE, bodySize);
+   }
+
+   /**
+    * Moves to a new buffer holding the given body, the headers are encoded again after it. The previous buffer is
+    * left as it is, as it may still be in the Netty write queue.
+    */
+   private void replaceBody(final byte[] body)
+   {
+      buffer = HornetQBuffers.dynamicBuffer(BODY_OFFSET + body.length + DataConstants.SIZE_INT +
+                                            getHeadersAndPropertiesEncodeSize());
+
+      buffer.setIndex(0, BODY_OFFSET);
+
+      buffer.writeBytes(body);
+
+      buffer.readerIndex(BODY_OFFSET);
 
       if (bodyBuffer != null)
       {
          bodyBuffer.setBuffer(buffer);
       }
 
+      bufferValid = false;
+
+      endOfBodyPosition = -1;
+
+      copied = true;
+
       bufferUsed = false;
+
+      bodyShared = false;
+   }
+
+   /**
+    * @return a new self-expanding buffer holding the body, the headers are encoded again after it
+    */
+   private HornetQBuffer copyBody()
+   {
+      int bodySize = getEndOfBodyPosition();
+
+      HornetQBuffer newBuffer = HornetQBuffers.dynamicBuffer(buffer.capacity());
+
+      newBuffer.writeBytes(buffer, 0, bodySize);
+
+      return newBuffer;
+   }
+
+   /**
+    * Creates a buffer made of a new region for the bytes before start, a read-only view on the bytes of the current
+    * buffer from start to end and a new region of extraSpace bytes after them.
+    */
+   private HornetQBuffer shareBuffer(final int start, final int end, final int extraSpace)
+   {
+      List<ChannelBuffer> components = new ArrayList<ChannelBuffer>(4);
+
+      ChannelBuffer head = ChannelBuffers.buffer(start);
+      head.writerIndex(start);
+      components.add(head);
+
+      ChannelBuffer source = buffer.channelBuffer();
+
+      List<ChannelBuffer> shared;
+
+      if (source instanceof CompositeChannelBuffer)
+      {
+         // A view of a shared buffer is flattened into its components, so views don't nest
+         shared = ((CompositeChannelBuffer)source).decompose(start, end - start);
+      }
+      else
+      {
+         shared = Collections.singletonList(source.slice(start, end - start));
+      }
+
+      for (ChannelBuffer component : shared)
+      {
+         components.add(component instanceof ReadOnlyChannelBuffer ? component
+                                                                   : ChannelBuffers.unmodifiableBuffer(component));
+      }
+
+      if (extraSpace > 0)
+      {
+         ChannelBuffer tail = ChannelBuffers.buffer(extraSpace);
+         tail.writerIndex(extraSpace);
+         components.add(tail);
+      }
+
+      return new ChannelBufferWrapper(ChannelBuffers.wrappedBuffer(components.toArray(new ChannelBuffer[components.size()])));
+   }
+
+   /**
+    * @return whether the packet can write up to size in the buffer, a self-expanding one grows as needed
+    */
+   private static boolean hasRoom(final HornetQBuffer buff, final int size)
+   {
+      return buff.capacity() >= size || buff.channelBuffer() instanceof DynamicChannelBuffer;
    }
 
    // Inner classes -------------------------------------------------
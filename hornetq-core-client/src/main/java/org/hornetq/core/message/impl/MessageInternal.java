@@ -20,6 +20,7 @@ import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.message.BodyEncoder;
+import org.hornetq.spi.core.compression.BodyCodec;
 import org.hornetq.utils.TypedProperties;
 
 /**
@@ -47,7 +48,16 @@ public interface MessageInternal extends Message
 
    boolean isServerMessage();
 
-   HornetQBuffer getEncodedBuffer();
+   /**
+    * @param trailerSize the number of bytes the packet writes after the message
+    * @return the encoded message, with room for the packet header before it and for the trailer after it
+    */
+   HornetQBuffer getEncodedBuffer(int trailerSize);
+
+   /**
+    * Writes the message as the journal stores it, in {@link #getEncodeSize()} bytes.
+    */
+   void encode(HornetQBuffer buffer);
 
    int getHeadersAndPropertiesEncodeSize();
 
@@ -64,4 +74,16 @@ public interface MessageInternal extends Message
    void setAddressTransient(SimpleString address);
 
    TypedProperties getTypedProperties();
+
+   /**
+    * Compresses the body, unless it is smaller than {@code minBodySize}, already compressed or would not get smaller.
+    *
+    * @return true if the body was compressed
+    */
+   boolean compressBody(BodyCodec codec, int minBodySize);
+
+   /**
+    * Brings back the body of a message compressed by {@link #compressBody(BodyCodec, int)}, if it is compressed.
+    */
+   void decompressBody();
 }
@@ -23,12 +23,14 @@ package org.hornetq.core.protocol;
 
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_LARGE_MSG;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG;
+import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG_BATCH;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.client.impl.ClientLargeMessageImpl;
 import org.hornetq.core.client.impl.ClientMessageImpl;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.PacketDecoder;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveClientLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
 /**
@@ -54,6 +56,11 @@ public class ClientPacketDecoder extends PacketDecoder
             packet = new SessionReceiveMessage(new ClientMessageImpl());
             break;
          }
+         case SESS_RECEIVE_MSG_BATCH:
+         {
+            packet = new SessionReceiveBatchMessage();
+            break;
+         }
          case SESS_RECEIVE_LARGE_MSG:
          {
             packet = new SessionReceiveClientLargeMessage(new ClientLargeMessageImpl());
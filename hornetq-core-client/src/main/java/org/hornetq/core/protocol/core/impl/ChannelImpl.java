@@ -34,6 +34,7 @@ import org.hornetq.core.protocol.core.CommandConfirmationHandler;
 import org.hornetq.core.protocol.core.CoreRemotingConnection;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.wireformat.HornetQExceptionMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.MessageBatchPacket;
 import org.hornetq.core.protocol.core.impl.wireformat.PacketsConfirmedMessage;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 
@@ -143,6 +144,9 @@ public final class ChannelImpl implements Channel
       {
          case PacketImpl.CLUSTER_TOPOLOGY_V2:
             return version >= 122;
+         case PacketImpl.SESS_SEND_BATCH:
+         case PacketImpl.SESS_RECEIVE_MSG_BATCH:
+            return version >= MessageBatchPacket.SINCE_VERSION;
          default:
             return true;
       }
@@ -149,6 +149,10 @@ public class PacketImpl implements Packet
 
    public static final byte SESS_PRODUCER_FAIL_CREDITS = 82;
 
+   public static final byte SESS_SEND_BATCH = 83;
+
+   public static final byte SESS_RECEIVE_MSG_BATCH = 84;
+
    // Replication
 
    public static final byte REPLICATION_RESPONSE = 90;
@@ -236,7 +240,7 @@ public class PacketImpl implements Packet
 
    public HornetQBuffer encode(final RemotingConnection connection)
    {
-      HornetQBuffer buffer = connection.createBuffer(PacketImpl.INITIAL_PACKET_SIZE);
+      HornetQBuffer buffer = connection.createBuffer(getExpectedEncodeSize());
 
       // The standard header fields
 
@@ -280,6 +284,14 @@ public class PacketImpl implements Packet
       return false;
    }
 
+   /**
+    * @return the size of the buffer the packet is encoded into, which grows if the packet doesn't fit
+    */
+   protected int getExpectedEncodeSize()
+   {
+      return PacketImpl.INITIAL_PACKET_SIZE;
+   }
+
    public void encodeRest(final HornetQBuffer buffer)
    {
    }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * A packet carrying several messages in one frame.
+ * <p>
+ * Each message is written as its length followed by the message in the form the journal stores
+ * it, and is copied into a buffer of its own when decoded, so the messages of a batch don't hold
+ * on to the frame.
+ */
+public abstract class MessageBatchPacket extends PacketImpl
+{
+   /**
+    * The first incrementing version of the protocol with batch packets.
+    */
+   public static final int SINCE_VERSION = 123;
+
+   public MessageBatchPacket(final byte type)
+   {
+      super(type);
+   }
+
+   /**
+    * @return the number of bytes the message takes in a batch
+    */
+   public static int getEncodeSize(final MessageInternal message)
+   {
+      return DataConstants.SIZE_INT + message.getEncodeSize();
+   }
+
+   protected static void encodeMessage(final HornetQBuffer buffer, final MessageInternal message)
+   {
+      int lengthPosition = buffer.writerIndex();
+
+      buffer.writeInt(0);
+
+      message.encode(buffer);
+
+      buffer.setInt(lengthPosition, buffer.writerIndex() - lengthPosition - DataConstants.SIZE_INT);
+   }
+
+   /**
+    * Decodes the next message of the batch into the given message.
+    * @return the number of bytes the message took in the batch
+    */
+   protected static int decodeMessage(final HornetQBuffer buffer, final MessageInternal message)
+   {
+      int length = buffer.readInt();
+
+      // Room for the headers of a packet ahead of the message as if it had come on its own
+      HornetQBuffer messageBuffer = HornetQBuffers.dynamicBuffer(MessageImpl.BUFFER_HEADER_SPACE + length);
+
+      messageBuffer.writerIndex(MessageImpl.BUFFER_HEADER_SPACE);
+
+      messageBuffer.writeBytes(buffer, length);
+
+      message.decodeFromBuffer(messageBuffer);
+
+      return DataConstants.SIZE_INT + length;
+   }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Delivers several messages of a consumer in one packet.
+ * <p>
+ * The client handles each message as if it had come in a {@link SessionReceiveMessage} of its own,
+ * whose size for flow control is the size the message takes in the batch.
+ */
+public class SessionReceiveBatchMessage extends MessageBatchPacket
+{
+   /**
+    * Session meta data through which a client asks for its deliveries in batches.
+    */
+   public static final String BATCH_DELIVERY_METADATA = "hornetq.batch-delivery";
+
+   private long consumerID;
+
+   private final List<MessageInternal> messages = new ArrayList<MessageInternal>();
+
+   private final List<Integer> deliveryCounts = new ArrayList<Integer>();
+
+   private List<SessionReceiveMessage> entries;
+
+   private int encodeSize = DataConstants.SIZE_LONG + DataConstants.SIZE_INT;
+
+   public SessionReceiveBatchMessage(final long consumerID)
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+
+      this.consumerID = consumerID;
+   }
+
+   public SessionReceiveBatchMessage()
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getConsumerID()
+   {
+      return consumerID;
+   }
+
+   /**
+    * Adds a message to the batch.
+    * @return the number of bytes the message takes in the batch
+    */
+   public int addMessage(final MessageInternal message, final int deliveryCount)
+   {
+      messages.add(message);
+
+      deliveryCounts.add(deliveryCount);
+
+      int size = DataConstants.SIZE_INT + getEncodeSize(message);
+
+      encodeSize += size;
+
+      return size;
+   }
+
+   /**
+    * @return the number of bytes the batch takes
+    */
+   public int getEncodeSize()
+   {
+      return encodeSize;
+   }
+
+   /**
+    * @return the messages of a decoded batch, each as if it had been delivered on its own
+    */
+   public List<SessionReceiveMessage> getEntries()
+   {
+      return entries;
+   }
+
+   @Override
+   public void encodeRest(final HornetQBuffer buffer)
+   {
+      buffer.writeLong(consumerID);
+
+      buffer.writeInt(messages.size());
+
+      for (int i = 0; i < messages.size(); i++)
+      {
+         buffer.writeInt(deliveryCounts.get(i));
+
+         encodeMessage(buffer, messages.get(i));
+      }
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer buffer)
+   {
+      consumerID = buffer.readLong();
+
+      int count = buffer.readInt();
+
+      entries = new ArrayList<SessionReceiveMessage>(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         int deliveryCount = buffer.readInt();
+
+         ClientMessageImpl message = new ClientMessageImpl();
+
+         int size = DataConstants.SIZE_INT + decodeMessage(buffer, message);
+
+         // Position the body for reading, as for a message delivered on its own
+         message.getWholeBuffer().setIndex(MessageImpl.BODY_OFFSET, message.getEndOfBodyPosition());
+
+         entries.add(new SessionReceiveMessage(consumerID, message, deliveryCount, size));
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return getParentString() + ", consumerID=" + consumerID + ", messages=" +
+             (entries == null ? messages.size() : entries.size()) + "]";
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected int getExpectedEncodeSize()
+   {
+      return PacketImpl.PACKET_HEADERS_SIZE + encodeSize;
+   }
+}
@@ -46,6 +46,16 @@ public class SessionReceiveMessage extends MessagePacket
       super(SESS_RECEIVE_MSG, message);
    }
 
+   /**
+    * A message decoded from a {@link SessionReceiveBatchMessage}, which takes {@code size} bytes of the batch.
+    */
+   SessionReceiveMessage(final long consumerID, final MessageInternal message, final int deliveryCount, final int size)
+   {
+      this(consumerID, message, deliveryCount);
+
+      this.size = size;
+   }
+
    // Public --------------------------------------------------------
 
    public long getConsumerID()
@@ -61,7 +71,7 @@ public class SessionReceiveMessage extends MessagePacket
    @Override
    public HornetQBuffer encode(final RemotingConnection connection)
    {
-      HornetQBuffer buffer = message.getEncodedBuffer();
+      HornetQBuffer buffer = message.getEncodedBuffer(DataConstants.SIZE_LONG + DataConstants.SIZE_INT);
 
       // Sanity check
       if (buffer.writerIndex() != message.getEndOfMessagePosition())
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Sends several messages in one packet, which the server routes and acknowledges together.
+ * <p>
+ * The server routes the messages of a batch all or none: it rolls back the ones already routed
+ * when one of them fails, and answers with the failure.
+ */
+public class SessionSendBatchMessage extends MessageBatchPacket
+{
+   /**
+    * Creates the messages a batch is decoded into, the decoder of the server giving its own kind
+    * of message.
+    */
+   public interface MessageFactory
+   {
+      MessageInternal createMessage();
+   }
+
+   private final MessageFactory messageFactory;
+
+   private List<MessageInternal> messages;
+
+   /**
+    * The messages given to the send, which the confirmation reports, when the packet carries compressed copies of
+    * some of them. Not encoded
+    */
+   private transient List<MessageInternal> sentMessages;
+
+   /**
+    * Used on confirmation handling, not encoded
+    */
+   private final transient SendAcknowledgementHandler handler;
+
+   private boolean requiresResponse;
+
+   private int encodeSize;
+
+   public SessionSendBatchMessage(final List<MessageInternal> messages, final boolean requiresResponse)
+   {
+      this(messages, messages, requiresResponse, null);
+   }
+
+   public SessionSendBatchMessage(final List<MessageInternal> messages,
+                                  final List<MessageInternal> sentMessages,
+                                  final boolean requiresResponse,
+                                  final SendAcknowledgementHandler handler)
+   {
+      super(SESS_SEND_BATCH);
+
+      messageFactory = null;
+
+      this.handler = handler;
+
+      this.messages = messages;
+
+      this.sentMessages = sentMessages;
+
+      this.requiresResponse = requiresResponse;
+
+      encodeSize = DataConstants.SIZE_INT + DataConstants.SIZE_BOOLEAN;
+
+      for (MessageInternal message : messages)
+      {
+         encodeSize += getEncodeSize(message);
+      }
+   }
+
+   public SessionSendBatchMessage(final MessageFactory messageFactory)
+   {
+      super(SESS_SEND_BATCH);
+
+      this.messageFactory = messageFactory;
+
+      handler = null;
+   }
+
+   // Public --------------------------------------------------------
+
+   public List<MessageInternal> getMessages()
+   {
+      return messages;
+   }
+
+   /**
+    * @return the messages given to the send, which may differ from the ones encoded
+    */
+   public List<MessageInternal> getSentMessages()
+   {
+      return sentMessages;
+   }
+
+   /**
+    * @return the handler given to this send, if any
+    */
+   public SendAcknowledgementHandler getHandler()
+   {
+      return handler;
+   }
+
+   public boolean isRequiresResponse()
+   {
+      return requiresResponse;
+   }
+
+   @Override
+   public void encodeRest(final HornetQBuffer buffer)
+   {
+      buffer.writeInt(messages.size());
+
+      for (MessageInternal message : messages)
+      {
+         encodeMessage(buffer, message);
+      }
+
+      buffer.writeBoolean(requiresResponse);
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer buffer)
+   {
+      int count = buffer.readInt();
+
+      messages = new ArrayList<MessageInternal>(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         MessageInternal message = messageFactory.createMessage();
+
+         decodeMessage(buffer, message);
+
+         messages.add(message);
+      }
+
+      requiresResponse = buffer.readBoolean();
+
+      sentMessages = messages;
+   }
+
+   @Override
+   public String toString()
+   {
+      return getParentString() + ", messages=" + (messages == null ? 0 : messages.size()) +
+             ", requiresResponse=" + requiresResponse + "]";
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected int getExpectedEncodeSize()
+   {
+      return PacketImpl.PACKET_HEADERS_SIZE + encodeSize;
+   }
+}
@@ -14,6 +14,7 @@
 package org.hornetq.core.protocol.core.impl.wireformat;
 
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
 import org.hornetq.core.message.impl.MessageInternal;
 
 /**
@@ -39,6 +40,11 @@ public class SessionSendContinuationMessage extends SessionContinuationMessage
     */
    private long messageBodySize = -1;
 
+   /**
+    * Used on confirmation handling, given to the last package only
+    */
+   private transient SendAcknowledgementHandler handler;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -71,6 +77,31 @@ public class SessionSendContinuationMessage extends SessionContinuationMessage
       this.messageBodySize = messageBodySize;
    }
 
+   /**
+    * @param body
+    * @param continues
+    * @param requiresResponse
+    * @param handler
+    */
+   public SessionSendContinuationMessage(final MessageInternal message, final byte[] body, final boolean continues, final boolean requiresResponse, final SendAcknowledgementHandler handler)
+   {
+      this(message, body, continues, requiresResponse);
+      this.handler = handler;
+   }
+
+   /**
+    * @param body
+    * @param continues
+    * @param requiresResponse
+    * @param messageBodySize
+    * @param handler
+    */
+   public SessionSendContinuationMessage(final MessageInternal message, final byte[] body, final boolean continues, final boolean requiresResponse, final long messageBodySize, final SendAcknowledgementHandler handler)
+   {
+      this(message, body, continues, requiresResponse, messageBodySize);
+      this.handler = handler;
+   }
+
    // Public --------------------------------------------------------
 
    /**
@@ -95,6 +126,14 @@ public class SessionSendContinuationMessage extends SessionContinuationMessage
       return message;
    }
 
+   /**
+    * @return the handler given to this send, if any
+    */
+   public SendAcknowledgementHandler getHandler()
+   {
+      return handler;
+   }
+
    @Override
    public void encodeRest(final HornetQBuffer buffer)
    {
@@ -14,6 +14,7 @@
 package org.hornetq.core.protocol.core.impl.wireformat;
 
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 import org.hornetq.utils.DataConstants;
@@ -27,16 +28,50 @@ public class SessionSendMessage extends MessagePacket
 
    private boolean requiresResponse;
 
+   /**
+    * Used on confirmation handling, not encoded
+    */
+   private final transient SendAcknowledgementHandler handler;
+
+   /**
+    * The message given to the send, which the confirmation reports, when the packet carries a compressed copy of it.
+    * Not encoded
+    */
+   private final transient MessageInternal sentMessage;
+
    public SessionSendMessage(final MessageInternal message, final boolean requiresResponse)
+   {
+      this(message, requiresResponse, null);
+   }
+
+   public SessionSendMessage(final MessageInternal message,
+                             final boolean requiresResponse,
+                             final SendAcknowledgementHandler handler)
+   {
+      this(message, message, requiresResponse, handler);
+   }
+
+   public SessionSendMessage(final MessageInternal message,
+                             final MessageInternal sentMessage,
+                             final boolean requiresResponse,
+                             final SendAcknowledgementHandler handler)
    {
       super(SESS_SEND, message);
 
+      this.sentMessage = sentMessage;
+
       this.requiresResponse = requiresResponse;
+
+      this.handler = handler;
    }
 
    public SessionSendMessage(final MessageInternal message)
    {
       super(SESS_SEND, message);
+
+      this.sentMessage = message;
+
+      this.handler = null;
    }
 
    // Public --------------------------------------------------------
@@ -46,6 +81,22 @@ public class SessionSendMessage extends MessagePacket
       return requiresResponse;
    }
 
+   /**
+    * @return the handler given to this send, if any
+    */
+   public SendAcknowledgementHandler getHandler()
+   {
+      return handler;
+   }
+
+   /**
+    * @return the message given to the send, which may differ from the one encoded
+    */
+   public MessageInternal getSentMessage()
+   {
+      return sentMessage;
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -53,7 +104,7 @@ public class SessionSendMessage extends MessagePacket
    @Override
    public HornetQBuffer encode(final RemotingConnection connection)
    {
-      HornetQBuffer buffer = message.getEncodedBuffer();
+      HornetQBuffer buffer = message.getEncodedBuffer(DataConstants.SIZE_BOOLEAN);
 
       // Sanity check
       if (buffer.writerIndex() != message.getEndOfMessagePosition())
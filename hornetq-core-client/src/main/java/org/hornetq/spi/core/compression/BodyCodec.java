@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.spi.core.compression;
+
+/**
+ * Compresses the bodies of regular messages.
+ * <p>
+ * A message whose body was compressed carries the name of its codec in
+ * {@link org.hornetq.api.core.Message#HDR_BODY_CODEC}, through which any client reading the body finds the codec
+ * again. The built-in codecs are named {@code lzf} and {@code deflate}, other codecs are loaded by the name of their
+ * class, which must have a public constructor without arguments and return that name from {@link #getName()}.
+ * <p>
+ * A codec is shared by all the messages using it and must be thread-safe.
+ */
+public interface BodyCodec
+{
+   /**
+    * @return the name flagging the messages compressed by this codec
+    */
+   String getName();
+
+   /**
+    * @return the compressed body
+    */
+   byte[] compress(byte[] body);
+
+   /**
+    * @param compressed a body compressed by {@link #compress(byte[])}
+    * @param bodySize the size of the body before compression
+    * @return the body as it was before compression
+    */
+   byte[] decompress(byte[] compressed, int bodySize);
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map of primitive long keys to values which keeps the insertion order, so it can be used as a
+ * FIFO queue from which any element can also be removed by key in constant time.
+ * <p>
+ * Every entry is a node of both a hash chain and a doubly linked list, keys are not boxed.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LongLinkedHashMap<V> implements Iterable<V>
+{
+   private static final int INITIAL_CAPACITY = 16;
+
+   private Node<V>[] table;
+
+   private final Node<V> header = new Node<V>(0, null);
+
+   private int size;
+
+   private int modCount;
+
+   public LongLinkedHashMap()
+   {
+      table = createTable(INITIAL_CAPACITY);
+
+      header.before = header.after = header;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public V get(final long key)
+   {
+      Node<V> node = find(key);
+
+      return node == null ? null : node.value;
+   }
+
+   /**
+    * Adds the entry at the tail, or replaces the value of an existing key keeping its position.
+    *
+    * @return the previous value of the key or {@code null}
+    */
+   public V put(final long key, final V value)
+   {
+      Node<V> node = find(key);
+
+      if (node != null)
+      {
+         V previous = node.value;
+
+         node.value = value;
+
+         return previous;
+      }
+
+      if (size >= table.length - (table.length >> 2))
+      {
+         resize(table.length << 1);
+      }
+
+      node = new Node<V>(key, value);
+
+      int index = indexOf(key, table.length);
+
+      node.next = table[index];
+
+      table[index] = node;
+
+      node.after = header;
+      node.before = header.before;
+      header.before.after = node;
+      header.before = node;
+
+      size++;
+
+      modCount++;
+
+      return null;
+   }
+
+   /**
+    * @return the removed value or {@code null}
+    */
+   public V remove(final long key)
+   {
+      int index = indexOf(key, table.length);
+
+      Node<V> previous = null;
+
+      for (Node<V> node = table[index]; node != null; node = node.next)
+      {
+         if (node.key == key)
+         {
+            if (previous == null)
+            {
+               table[index] = node.next;
+            }
+            else
+            {
+               previous.next = node.next;
+            }
+
+            unlink(node);
+
+            return node.value;
+         }
+
+         previous = node;
+      }
+
+      return null;
+   }
+
+   /**
+    * Removes the oldest entry.
+    *
+    * @return its value, or {@code null} if the map is empty
+    */
+   public V poll()
+   {
+      if (size == 0)
+      {
+         return null;
+      }
+
+      return remove(header.after.key);
+   }
+
+   /**
+    * @return the value of the oldest entry, or {@code null} if the map is empty
+    */
+   public V peek()
+   {
+      return size == 0 ? null : header.after.value;
+   }
+
+   public void clear()
+   {
+      if (size > 0)
+      {
+         table = createTable(INITIAL_CAPACITY);
+
+         header.before = header.after = header;
+
+         size = 0;
+
+         modCount++;
+      }
+   }
+
+   /**
+    * @return the values in insertion order, removing through the iterator is supported
+    */
+   public Iterator<V> iterator()
+   {
+      return new ValueIterator();
+   }
+
+   private Node<V> find(final long key)
+   {
+      for (Node<V> node = table[indexOf(key, table.length)]; node != null; node = node.next)
+      {
+         if (node.key == key)
+         {
+            return node;
+         }
+      }
+
+      return null;
+   }
+
+   private void unlink(final Node<V> node)
+   {
+      node.before.after = node.after;
+      node.after.before = node.before;
+
+      size--;
+
+      modCount++;
+   }
+
+   private void resize(final int capacity)
+   {
+      Node<V>[] newTable = createTable(capacity);
+
+      for (Node<V> node = header.after; node != header; node = node.after)
+      {
+         int index = indexOf(node.key, capacity);
+
+         node.next = newTable[index];
+
+         newTable[index] = node;
+      }
+
+      table = newTable;
+   }
+
+   private static int indexOf(final long key, final int capacity)
+   {
+      int hash = (int)(key ^ (key >>> 32));
+
+      // spread the bits, sequential ids would otherwise fill consecutive buckets only
+      hash ^= (hash >>> 20) ^ (hash >>> 12);
+
+      hash ^= (hash >>> 7) ^ (hash >>> 4);
+
+      return hash & (capacity - 1);
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <V> Node<V>[] createTable(final int capacity)
+   {
+      return new Node[capacity];
+   }
+
+   private static final class Node<V>
+   {
+      final long key;
+
+      V value;
+
+      /** next in the hash chain */
+      Node<V> next;
+
+      Node<V> before;
+
+      Node<V> after;
+
+      Node(final long key, final V value)
+      {
+         this.key = key;
+
+         this.value = value;
+      }
+   }
+
+   private final class ValueIterator implements Iterator<V>
+   {
+      private Node<V> next = header.after;
+
+      private Node<V> last;
+
+      private int expectedModCount = modCount;
+
+      public boolean hasNext()
+      {
+         return next != header;
+      }
+
+      public V next()
+      {
+         if (modCount != expectedModCount)
+         {
+            throw new ConcurrentModificationException();
+         }
+
+         if (next == header)
+         {
+            throw new NoSuchElementException();
+         }
+
+         last = next;
+
+         next = next.after;
+
+         return last.value;
+      }
+
+      public void remove()
+      {
+         if (last == null)
+         {
+            throw new IllegalStateException();
+         }
+
+         if (modCount != expectedModCount)
+         {
+            throw new ConcurrentModificationException();
+         }
+
+         LongLinkedHashMap.this.remove(last.key);
+
+         last = null;
+
+         expectedModCount = modCount;
+      }
+   }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read write lock for locks which are read all the time and almost never written.
+ * <p>
+ * Readers only increment and decrement a counter of their own stripe, so they don't contend with
+ * each other on a single lock word. A writer raises a barrier stopping new readers and waits for
+ * the counters to drain, so writers are never starved.
+ * <p>
+ * Both locks are reentrant and the owner of the write lock may take the read lock. As with
+ * {@link java.util.concurrent.locks.ReentrantReadWriteLock}, a reader can't upgrade to the write
+ * lock, and a lock must be released by the thread that took it. Conditions are not supported.
+ */
+public final class StripedReadWriteLock implements ReadWriteLock
+{
+   /** ints per stripe, so every stripe sits on its own cache line */
+   private static final int PADDING = 16;
+
+   /** times a writer yields before it starts parking while readers drain */
+   private static final int WRITER_SPINS = 100;
+
+   private static final long WRITER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+   private final int stripeMask;
+
+   private final AtomicIntegerArray readers;
+
+   private final AtomicInteger nextStripe = new AtomicInteger();
+
+   private final ThreadLocal<Reader> reader = new ThreadLocal<Reader>()
+   {
+      @Override
+      protected Reader initialValue()
+      {
+         return new Reader((nextStripe.getAndIncrement() & stripeMask) * PADDING);
+      }
+   };
+
+   private final ReentrantLock writer = new ReentrantLock();
+
+   private volatile boolean writing;
+
+   private final Lock readLock = new ReadLock();
+
+   private final Lock writeLock = new WriteLock();
+
+   public StripedReadWriteLock()
+   {
+      this(Runtime.getRuntime().availableProcessors() * 2);
+   }
+
+   public StripedReadWriteLock(final int stripes)
+   {
+      int size = 1;
+
+      while (size < stripes)
+      {
+         size <<= 1;
+      }
+
+      stripeMask = size - 1;
+
+      readers = new AtomicIntegerArray(size * PADDING);
+   }
+
+   public Lock readLock()
+   {
+      return readLock;
+   }
+
+   public Lock writeLock()
+   {
+      return writeLock;
+   }
+
+   private int readerCount()
+   {
+      int count = 0;
+
+      for (int i = 0; i < readers.length(); i += PADDING)
+      {
+         count += readers.get(i);
+      }
+
+      return count;
+   }
+
+   /**
+    * @return {@code true} if the current thread entered the read lock without waiting
+    */
+   private boolean tryEnter(final Reader current)
+   {
+      if (current.holds > 0 || writer.isHeldByCurrentThread())
+      {
+         if (current.holds++ == 0)
+         {
+            current.counted = false;
+         }
+
+         return true;
+      }
+
+      readers.incrementAndGet(current.stripe);
+
+      if (!writing)
+      {
+         current.holds = 1;
+
+         current.counted = true;
+
+         return true;
+      }
+
+      readers.decrementAndGet(current.stripe);
+
+      return false;
+   }
+
+   /**
+    * Waits for the readers to drain after raising the barrier, the caller holds the writer lock.
+    */
+   private void awaitReaders()
+   {
+      for (int spins = 0; readerCount() != 0; spins++)
+      {
+         pause(spins);
+      }
+   }
+
+   /**
+    * @param deadline as given by {@link System#nanoTime()}, or {@code 0} to wait forever
+    * @return {@code false} if the deadline passed before the readers drained
+    */
+   private boolean awaitReaders(final long deadline) throws InterruptedException
+   {
+      for (int spins = 0; readerCount() != 0; spins++)
+      {
+         if (Thread.interrupted())
+         {
+            throw new InterruptedException();
+         }
+
+         if (deadline != 0 && System.nanoTime() - deadline > 0)
+         {
+            return false;
+         }
+
+         pause(spins);
+      }
+
+      return true;
+   }
+
+   private static void pause(final int spins)
+   {
+      if (spins < WRITER_SPINS)
+      {
+         Thread.yield();
+      }
+      else
+      {
+         LockSupport.parkNanos(WRITER_PARK_NANOS);
+      }
+   }
+
+   private static final class Reader
+   {
+      final int stripe;
+
+      int holds;
+
+      /** if the outermost hold incremented the stripe */
+      boolean counted;
+
+      Reader(final int stripe)
+      {
+         this.stripe = stripe;
+      }
+   }
+
+   private final class ReadLock implements Lock
+   {
+      public void lock()
+      {
+         Reader current = reader.get();
+
+         while (!tryEnter(current))
+         {
+            // wait for the writer to be done
+            writer.lock();
+            writer.unlock();
+         }
+      }
+
+      public void lockInterruptibly() throws InterruptedException
+      {
+         Reader current = reader.get();
+
+         while (!tryEnter(current))
+         {
+            writer.lockInterruptibly();
+            writer.unlock();
+         }
+      }
+
+      public boolean tryLock()
+      {
+         return tryEnter(reader.get());
+      }
+
+      public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException
+      {
+         Reader current = reader.get();
+
+         long deadline = System.nanoTime() + unit.toNanos(time);
+
+         while (!tryEnter(current))
+         {
+            if (!writer.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            {
+               return false;
+            }
+            writer.unlock();
+         }
+
+         return true;
+      }
+
+      public void unlock()
+      {
+         Reader current = reader.get();
+
+         if (current.holds == 0)
+         {
+            throw new IllegalMonitorStateException();
+         }
+
+         if (--current.holds == 0 && current.counted)
+         {
+            readers.decrementAndGet(current.stripe);
+         }
+      }
+
+      public Condition newCondition()
+      {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+   private final class WriteLock implements Lock
+   {
+      public void lock()
+      {
+         writer.lock();
+
+         if (writer.getHoldCount() == 1)
+         {
+            writing = true;
+
+            awaitReaders();
+         }
+      }
+
+      public void lockInterruptibly() throws InterruptedException
+      {
+         writer.lockInterruptibly();
+
+         if (writer.getHoldCount() == 1)
+         {
+            writing = true;
+
+            try
+            {
+               awaitReaders(0);
+            }
+            catch (InterruptedException e)
+            {
+               release();
+
+               throw e;
+            }
+         }
+      }
+
+      public boolean tryLock()
+      {
+         if (!writer.tryLock())
+         {
+            return false;
+         }
+
+         if (writer.getHoldCount() == 1)
+         {
+            writing = true;
+
+            if (readerCount() != 0)
+            {
+               release();
+
+               return false;
+            }
+         }
+
+         return true;
+      }
+
+      public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException
+      {
+         long deadline = System.nanoTime() + unit.toNanos(time);
+
+         if (!writer.tryLock(time, unit))
+         {
+            return false;
+         }
+
+         if (writer.getHoldCount() == 1)
+         {
+            writing = true;
+
+            boolean drained = false;
+
+            try
+            {
+               drained = awaitReaders(deadline);
+            }
+            finally
+            {
+               if (!drained)
+               {
+                  release();
+               }
+            }
+
+            return drained;
+         }
+
+         return true;
+      }
+
+      public void unlock()
+      {
+         if (!writer.isHeldByCurrentThread())
+         {
+            throw new IllegalMonitorStateException();
+         }
+
+         release();
+      }
+
+      private void release()
+      {
+         if (writer.getHoldCount() == 1)
+         {
+            writing = false;
+         }
+
+         writer.unlock();
+      }
+
+      public Condition newCondition()
+      {
+         throw new UnsupportedOperationException();
+      }
+   }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.compression.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.hornetq.spi.core.compression.BodyCodec;
+
+public class BodyCodecTest extends TestCase
+{
+   private final Random random = new Random(1234);
+
+   public void testLZFRoundTrip() throws Exception
+   {
+      testRoundTrip(BodyCodecs.getCodec(BodyCodecs.LZF));
+   }
+
+   public void testDeflateRoundTrip() throws Exception
+   {
+      testRoundTrip(BodyCodecs.getCodec(BodyCodecs.DEFLATE));
+   }
+
+   public void testLZFCompressesText() throws Exception
+   {
+      byte[] body = json(100);
+
+      byte[] compressed = new LZFBodyCodec().compress(body);
+
+      assertTrue(compressed.length < body.length / 2);
+   }
+
+   public void testLZFDecompressesLiblzfFormat() throws Exception
+   {
+      // "abc" as literals, then a reference 3 bytes back repeating them over 11 bytes
+      byte[] compressed = new byte[] { 2, 'a', 'b', 'c', (byte)((7 << 5) + 0), 2, 2 };
+
+      byte[] body = new LZFBodyCodec().decompress(compressed, 14);
+
+      assertEquals("abcabcabcabcab", new String(body, "US-ASCII"));
+   }
+
+   public void testLZFRejectsCorruptedBody() throws Exception
+   {
+      byte[] compressed = new LZFBodyCodec().compress(json(10));
+
+      try
+      {
+         new LZFBodyCodec().decompress(compressed, compressed.length);
+
+         fail("body size should not match");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+   }
+
+   public void testCodecByClassName() throws Exception
+   {
+      BodyCodec codec = BodyCodecs.getCodec(ReversingCodec.class.getName());
+
+      assertTrue(codec instanceof ReversingCodec);
+
+      assertSame(codec, BodyCodecs.getCodec(ReversingCodec.class.getName()));
+   }
+
+   public void testUnknownCodec() throws Exception
+   {
+      try
+      {
+         BodyCodecs.getCodec("no.such.Codec");
+
+         fail("codec should not be found");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private void testRoundTrip(final BodyCodec codec) throws Exception
+   {
+      byte[] random = new byte[10 * 1024];
+      this.random.nextBytes(random);
+
+      byte[] zeros = new byte[100 * 1024];
+
+      byte[] mixed = new byte[64 * 1024];
+      for (int i = 0; i < mixed.length; i += 1024)
+      {
+         if ((i / 1024) % 2 == 0)
+         {
+            System.arraycopy(random, i % random.length, mixed, i, 1024);
+         }
+      }
+
+      byte[][] bodies = new byte[][] { new byte[0],
+                                       new byte[] { 1 },
+                                       new byte[] { 1, 2 },
+                                       "abcabcabc".getBytes("US-ASCII"),
+                                       random,
+                                       zeros,
+                                       mixed,
+                                       json(1),
+                                       json(1000) };
+
+      for (byte[] body : bodies)
+      {
+         byte[] compressed = codec.compress(body);
+
+         assertTrue(Arrays.equals(body, codec.decompress(compressed, body.length)));
+      }
+   }
+
+   private byte[] json(final int records) throws Exception
+   {
+      StringBuilder json = new StringBuilder("[");
+
+      for (int i = 0; i < records; i++)
+      {
+         json.append("{\"id\":").append(i)
+             .append(",\"name\":\"customer-").append(random.nextInt(1000))
+             .append("\",\"active\":").append(random.nextBoolean())
+             .append(",\"balance\":").append(random.nextInt(100000))
+             .append("},");
+      }
+
+      return json.append("]").toString().getBytes("UTF-8");
+   }
+
+   public static final class ReversingCodec implements BodyCodec
+   {
+      public String getName()
+      {
+         return ReversingCodec.class.getName();
+      }
+
+      public byte[] compress(final byte[] body)
+      {
+         return reverse(body);
+      }
+
+      public byte[] decompress(final byte[] compressed, final int bodySize)
+      {
+         return reverse(compressed);
+      }
+
+      private static byte[] reverse(final byte[] bytes)
+      {
+         byte[] reversed = new byte[bytes.length];
+
+         for (int i = 0; i < bytes.length; i++)
+         {
+            reversed[i] = bytes[bytes.length - 1 - i];
+         }
+
+         return reversed;
+      }
+   }
+}
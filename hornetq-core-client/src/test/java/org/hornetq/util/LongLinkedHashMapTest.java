@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.hornetq.utils.LongLinkedHashMap;
+
+public class LongLinkedHashMapTest extends TestCase
+{
+   private LongLinkedHashMap<String> map;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      map = new LongLinkedHashMap<String>();
+   }
+
+   public void testPutGetRemove() throws Exception
+   {
+      Assert.assertTrue(map.isEmpty());
+      Assert.assertNull(map.poll());
+      Assert.assertNull(map.peek());
+
+      Assert.assertNull(map.put(1, "a"));
+      Assert.assertNull(map.put(-1, "b"));
+      Assert.assertNull(map.put(Long.MAX_VALUE, "c"));
+      Assert.assertEquals("a", map.put(1, "d"));
+
+      Assert.assertEquals(3, map.size());
+      Assert.assertEquals("d", map.get(1));
+      Assert.assertEquals("b", map.get(-1));
+      Assert.assertEquals("c", map.get(Long.MAX_VALUE));
+      Assert.assertNull(map.get(2));
+
+      Assert.assertEquals("b", map.remove(-1));
+      Assert.assertNull(map.remove(-1));
+      Assert.assertNull(map.get(-1));
+      Assert.assertEquals(2, map.size());
+
+      map.clear();
+
+      Assert.assertTrue(map.isEmpty());
+      Assert.assertNull(map.get(1));
+   }
+
+   public void testInsertionOrder() throws Exception
+   {
+      for (long i = 0; i < 1000; i++)
+      {
+         map.put(i * 31, "v" + i);
+      }
+
+      // replacing a value keeps the position
+      map.put(0, "first");
+
+      for (long i = 1; i < 1000; i += 2)
+      {
+         map.remove(i * 31);
+      }
+
+      Assert.assertEquals("first", map.peek());
+
+      Iterator<String> iterator = map.iterator();
+
+      Assert.assertEquals("first", iterator.next());
+
+      for (long i = 2; i < 1000; i += 2)
+      {
+         Assert.assertEquals("v" + i, iterator.next());
+      }
+
+      Assert.assertFalse(iterator.hasNext());
+
+      Assert.assertEquals("first", map.poll());
+
+      for (long i = 2; i < 1000; i += 2)
+      {
+         Assert.assertEquals("v" + i, map.poll());
+      }
+
+      Assert.assertTrue(map.isEmpty());
+   }
+
+   public void testIteratorRemove() throws Exception
+   {
+      for (long i = 0; i < 10; i++)
+      {
+         map.put(i, "v" + i);
+      }
+
+      Iterator<String> iterator = map.iterator();
+
+      while (iterator.hasNext())
+      {
+         String value = iterator.next();
+
+         if (Integer.parseInt(value.substring(1)) % 3 != 0)
+         {
+            iterator.remove();
+         }
+      }
+
+      List<String> values = new ArrayList<String>();
+
+      for (String value : map)
+      {
+         values.add(value);
+      }
+
+      Assert.assertEquals(4, map.size());
+      Assert.assertEquals("[v0, v3, v6, v9]", values.toString());
+      Assert.assertNull(map.get(1));
+   }
+
+   public void testAgainstLinkedList() throws Exception
+   {
+      Random random = new Random(1);
+
+      LinkedList<Long> expected = new LinkedList<Long>();
+
+      LongLinkedHashMap<Long> actual = new LongLinkedHashMap<Long>();
+
+      long next = 0;
+
+      for (int i = 0; i < 100000; i++)
+      {
+         int op = random.nextInt(10);
+
+         if (op < 5)
+         {
+            expected.add(next);
+            actual.put(next, next);
+            next++;
+         }
+         else if (op < 8)
+         {
+            if (!expected.isEmpty())
+            {
+               Long key = expected.remove(random.nextInt(expected.size()));
+               Assert.assertEquals(key, actual.remove(key));
+            }
+         }
+         else
+         {
+            Assert.assertEquals(expected.poll(), actual.poll());
+         }
+
+         Assert.assertEquals(expected.size(), actual.size());
+      }
+
+      Iterator<Long> iterator = actual.iterator();
+
+      for (Long key : expected)
+      {
+         Assert.assertEquals(key, iterator.next());
+      }
+
+      Assert.assertFalse(iterator.hasNext());
+   }
+}
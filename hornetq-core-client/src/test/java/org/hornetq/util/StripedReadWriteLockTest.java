@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.hornetq.utils.StripedReadWriteLock;
+
+public class StripedReadWriteLockTest extends TestCase
+{
+   private StripedReadWriteLock lock;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      lock = new StripedReadWriteLock();
+   }
+
+   public void testReentrantRead() throws Exception
+   {
+      lock.readLock().lock();
+      lock.readLock().lock();
+
+      Assert.assertFalse(tryWriteFromOtherThread());
+
+      lock.readLock().unlock();
+
+      Assert.assertFalse(tryWriteFromOtherThread());
+
+      lock.readLock().unlock();
+
+      Assert.assertTrue(tryWriteFromOtherThread());
+   }
+
+   public void testReadWhileWriting() throws Exception
+   {
+      lock.writeLock().lock();
+      lock.writeLock().lock();
+
+      // the owner of the write lock may read
+      Assert.assertTrue(lock.readLock().tryLock());
+
+      Assert.assertFalse(tryReadFromOtherThread());
+
+      lock.readLock().unlock();
+      lock.writeLock().unlock();
+
+      Assert.assertFalse(tryReadFromOtherThread());
+
+      lock.writeLock().unlock();
+
+      Assert.assertTrue(tryReadFromOtherThread());
+   }
+
+   public void testUnlockNotHeld() throws Exception
+   {
+      try
+      {
+         lock.readLock().unlock();
+         Assert.fail("exception expected");
+      }
+      catch (IllegalMonitorStateException expected)
+      {
+      }
+
+      try
+      {
+         lock.writeLock().unlock();
+         Assert.fail("exception expected");
+      }
+      catch (IllegalMonitorStateException expected)
+      {
+      }
+   }
+
+   public void testWriterWaitsForReaders() throws Exception
+   {
+      lock.readLock().lock();
+
+      final CountDownLatch locked = new CountDownLatch(1);
+
+      Thread writer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            lock.writeLock().lock();
+            locked.countDown();
+            lock.writeLock().unlock();
+         }
+      };
+
+      writer.start();
+
+      Assert.assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+
+      // a pending writer stops new readers
+      Assert.assertFalse(tryReadFromOtherThread());
+
+      lock.readLock().unlock();
+
+      Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+      writer.join();
+
+      Assert.assertTrue(tryReadFromOtherThread());
+   }
+
+   public void testMutualExclusion() throws Exception
+   {
+      final int readers = 8;
+
+      final int iterations = 20000;
+
+      final AtomicInteger reading = new AtomicInteger();
+
+      final AtomicBoolean failed = new AtomicBoolean();
+
+      final AtomicBoolean done = new AtomicBoolean();
+
+      Thread[] threads = new Thread[readers];
+
+      for (int i = 0; i < readers; i++)
+      {
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               for (int j = 0; j < iterations; j++)
+               {
+                  lock.readLock().lock();
+                  try
+                  {
+                     if (reading.incrementAndGet() < 0)
+                     {
+                        failed.set(true);
+                     }
+                     reading.decrementAndGet();
+                  }
+                  finally
+                  {
+                     lock.readLock().unlock();
+                  }
+               }
+            }
+         };
+
+         threads[i].start();
+      }
+
+      Thread writer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            while (!done.get())
+            {
+               lock.writeLock().lock();
+               try
+               {
+                  // no reader can be inside while the write lock is held
+                  if (!reading.compareAndSet(0, Integer.MIN_VALUE))
+                  {
+                     failed.set(true);
+                  }
+                  else
+                  {
+                     reading.set(0);
+                  }
+               }
+               finally
+               {
+                  lock.writeLock().unlock();
+               }
+            }
+         }
+      };
+
+      writer.start();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      done.set(true);
+
+      writer.join();
+
+      Assert.assertFalse(failed.get());
+   }
+
+   private boolean tryReadFromOtherThread() throws Exception
+   {
+      final AtomicBoolean result = new AtomicBoolean();
+
+      Thread thread = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            if (lock.readLock().tryLock())
+            {
+               result.set(true);
+               lock.readLock().unlock();
+            }
+         }
+      };
+
+      thread.start();
+      thread.join();
+
+      return result.get();
+   }
+
+   private boolean tryWriteFromOtherThread() throws Exception
+   {
+      final AtomicBoolean result = new AtomicBoolean();
+
+      Thread thread = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            if (lock.writeLock().tryLock())
+            {
+               result.set(true);
+               lock.writeLock().unlock();
+            }
+         }
+      };
+
+      thread.start();
+      thread.join();
+
+      return result.get();
+   }
+}
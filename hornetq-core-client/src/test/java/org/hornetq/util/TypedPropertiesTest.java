@@ -228,6 +228,122 @@ public class TypedPropertiesTest extends TestCase
       TypedPropertiesTest.assertEqualsTypeProperties(emptyProps, decodedProps);
    }
 
+   public void testGetDecoded() throws Exception
+   {
+      SimpleString stringKey = RandomUtil.randomSimpleString();
+      SimpleString stringValue = RandomUtil.randomSimpleString();
+      byte[] bytesValue = RandomUtil.randomBytes();
+      long longValue = RandomUtil.randomLong();
+      double doubleValue = RandomUtil.randomDouble();
+
+      props.putByteProperty(new SimpleString("byte"), (byte)-3);
+      props.putBytesProperty(new SimpleString("bytes"), bytesValue);
+      props.putBooleanProperty(new SimpleString("boolean"), true);
+      props.putShortProperty(new SimpleString("short"), (short)-1234);
+      props.putIntProperty(new SimpleString("int"), -123456);
+      props.putLongProperty(new SimpleString("long"), longValue);
+      props.putFloatProperty(new SimpleString("float"), 1.5f);
+      props.putDoubleProperty(new SimpleString("double"), doubleValue);
+      props.putCharProperty(new SimpleString("char"), '\u00e9');
+      props.putNullValue(new SimpleString("null"));
+      props.putSimpleStringProperty(stringKey, stringValue);
+
+      TypedProperties decoded = encodeDecode(props);
+
+      Assert.assertFalse(decoded.hasInternalProperties());
+      Assert.assertEquals(props.getEncodeSize(), decoded.getEncodeSize());
+
+      Assert.assertEquals((byte)-3, decoded.getByteProperty(new SimpleString("byte")).byteValue());
+      CoreUnitTestCase.assertEqualsByteArrays(bytesValue, decoded.getBytesProperty(new SimpleString("bytes")));
+      Assert.assertTrue(decoded.getBooleanProperty(new SimpleString("boolean")));
+      Assert.assertEquals((short)-1234, decoded.getShortProperty(new SimpleString("short")).shortValue());
+      Assert.assertEquals(-123456, decoded.getIntProperty(new SimpleString("int")).intValue());
+      Assert.assertEquals(longValue, decoded.getLongProperty(new SimpleString("long")).longValue());
+      Assert.assertEquals(1.5f, decoded.getFloatProperty(new SimpleString("float")).floatValue());
+      Assert.assertEquals(doubleValue, decoded.getDoubleProperty(new SimpleString("double")).doubleValue());
+      Assert.assertEquals('\u00e9', decoded.getCharProperty(new SimpleString("char")).charValue());
+      Assert.assertEquals(stringValue, decoded.getSimpleStringProperty(stringKey));
+
+      Assert.assertTrue(decoded.containsProperty(new SimpleString("null")));
+      Assert.assertNull(decoded.getProperty(new SimpleString("null")));
+      Assert.assertFalse(decoded.containsProperty(key));
+      Assert.assertNull(decoded.getProperty(key));
+   }
+
+   public void testEncodeUntouched() throws Exception
+   {
+      for (int i = 0; i < 20; i++)
+      {
+         props.putIntProperty(new SimpleString("key" + i), i);
+      }
+      props.putSimpleStringProperty(new SimpleString("_HQ_internal"), RandomUtil.randomSimpleString());
+
+      HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(1024);
+      props.encode(buffer);
+
+      TypedProperties decoded = new TypedProperties();
+      decoded.decode(buffer);
+
+      Assert.assertTrue(decoded.hasInternalProperties());
+
+      HornetQBuffer reencoded = HornetQBuffers.dynamicBuffer(1024);
+      decoded.encode(reencoded);
+
+      Assert.assertEquals(decoded.getEncodeSize(), reencoded.writerIndex());
+      Assert.assertEquals(buffer.writerIndex(), reencoded.writerIndex());
+      for (int i = 0; i < buffer.writerIndex(); i++)
+      {
+         Assert.assertEquals(buffer.getByte(i), reencoded.getByte(i));
+      }
+
+      for (int i = 0; i < 20; i++)
+      {
+         Assert.assertEquals(i, decoded.getIntProperty(new SimpleString("key" + i)).intValue());
+      }
+   }
+
+   public void testModifyDecoded() throws Exception
+   {
+      SimpleString other = RandomUtil.randomSimpleString();
+
+      props.putIntProperty(key, 1);
+      props.putLongProperty(other, 2);
+
+      TypedProperties decoded = encodeDecode(props);
+      TypedProperties copy = new TypedProperties(decoded);
+
+      decoded.putIntProperty(key, 10);
+      Assert.assertEquals(props.getEncodeSize(), decoded.getEncodeSize());
+      Assert.assertEquals(10, decoded.getIntProperty(key).intValue());
+      Assert.assertEquals(2, decoded.getLongProperty(other).longValue());
+
+      Assert.assertEquals(2L, decoded.removeProperty(other));
+      Assert.assertFalse(decoded.containsProperty(other));
+
+      TypedProperties again = encodeDecode(decoded);
+      Assert.assertEquals(1, again.getPropertyNames().size());
+      Assert.assertEquals(10, again.getIntProperty(key).intValue());
+
+      // the copy does not see the changes
+      Assert.assertEquals(1, copy.getIntProperty(key).intValue());
+      Assert.assertEquals(2, copy.getLongProperty(other).longValue());
+      Assert.assertEquals(props.getPropertyNames(), copy.getPropertyNames());
+
+      copy.clear();
+      Assert.assertFalse(copy.containsProperty(key));
+      Assert.assertEquals(encodeDecode(new TypedProperties(copy)).getEncodeSize(), copy.getEncodeSize());
+   }
+
+   private static TypedProperties encodeDecode(final TypedProperties properties)
+   {
+      HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(1024);
+      properties.encode(buffer);
+
+      TypedProperties decoded = new TypedProperties();
+      decoded.decode(buffer);
+      return decoded;
+   }
+
    @Override
    protected void setUp() throws Exception
    {
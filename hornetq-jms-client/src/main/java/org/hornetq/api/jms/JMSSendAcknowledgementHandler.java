@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.api.jms;
+
+import javax.jms.Message;
+
+/**
+ * A JMSSendAcknowledgementHandler is notified once the server has confirmed a message sent with
+ * {@code HornetQMessageProducer#send(Message, JMSSendAcknowledgementHandler)}, after storing it
+ * for a persistent message.
+ * <p>
+ * It is the JMS counterpart of {@link org.hornetq.api.core.client.SendAcknowledgementHandler} and
+ * is called the same way, on a remoting thread, so it must not block.
+ */
+public interface JMSSendAcknowledgementHandler
+{
+   /**
+    * Notifies the client that a message sent asynchronously has been received by the server.
+    *
+    * @param message message sent asynchronously, as given to the send
+    */
+   void sendAcknowledged(Message message);
+}
@@ -548,6 +548,50 @@ public class HornetQConnectionFactory implements Serializable, Referenceable
       serverLocator.setCompressLargeMessage(avoidLargeMessages);
    }
 
+   public synchronized boolean isBatchDelivery()
+   {
+      return serverLocator.isBatchDelivery();
+   }
+
+   public synchronized void setBatchDelivery(final boolean batchDelivery)
+   {
+      checkWrite();
+      serverLocator.setBatchDelivery(batchDelivery);
+   }
+
+   public synchronized String getBodyCompressionCodec()
+   {
+      return serverLocator.getBodyCompressionCodec();
+   }
+
+   public synchronized void setBodyCompressionCodec(final String codec)
+   {
+      checkWrite();
+      serverLocator.setBodyCompressionCodec(codec);
+   }
+
+   public synchronized int getMinBodyCompressionSize()
+   {
+      return serverLocator.getMinBodyCompressionSize();
+   }
+
+   public synchronized void setMinBodyCompressionSize(final int minBodyCompressionSize)
+   {
+      checkWrite();
+      serverLocator.setMinBodyCompressionSize(minBodyCompressionSize);
+   }
+
+   public synchronized long getConsumerWindowTargetTime()
+   {
+      return serverLocator.getConsumerWindowTargetTime();
+   }
+
+   public synchronized void setConsumerWindowTargetTime(final long consumerWindowTargetTime)
+   {
+      checkWrite();
+      serverLocator.setConsumerWindowTargetTime(consumerWindowTargetTime);
+   }
+
    public void close()
    {
       ServerLocator locator0 = serverLocator;
@@ -35,6 +35,8 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
+import org.hornetq.api.jms.JMSSendAcknowledgementHandler;
 import org.hornetq.utils.UUID;
 import org.hornetq.utils.UUIDGenerator;
 
@@ -191,7 +193,7 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
       message.setJMSPriority(defaultPriority);
 
-      doSend(message, defaultTimeToLive, null);
+      doSend(message, defaultTimeToLive, null, null);
    }
 
    public void send(final Message message, final int deliveryMode, final int priority, final long timeToLive) throws JMSException
@@ -202,7 +204,7 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
       message.setJMSPriority(priority);
 
-      doSend(message, timeToLive, null);
+      doSend(message, timeToLive, null, null);
    }
 
    public void send(final Destination destination, final Message message) throws JMSException
@@ -218,7 +220,7 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
       message.setJMSPriority(defaultPriority);
 
-      doSend(message, defaultTimeToLive, (HornetQDestination)destination);
+      doSend(message, defaultTimeToLive, (HornetQDestination)destination, null);
    }
 
    public void send(final Destination destination,
@@ -238,7 +240,7 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
       message.setJMSPriority(priority);
 
-      doSend(message, timeToLive, (HornetQDestination)destination);
+      doSend(message, timeToLive, (HornetQDestination)destination, null);
    }
 
    // TopicPublisher Implementation ---------------------------------
@@ -295,6 +297,46 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
    // Public --------------------------------------------------------
 
+   /**
+    * Sends a message without waiting for the server, and calls the handler once the server has
+    * confirmed it, after storing it for a persistent message.
+    * <p>
+    * This needs a confirmation window set on the connection factory, without one the send blocks
+    * until the server has confirmed the message and calls the handler before returning.
+    * @see org.hornetq.api.core.client.ClientProducer#send(org.hornetq.api.core.Message, SendAcknowledgementHandler)
+    */
+   public void send(final Message message, final JMSSendAcknowledgementHandler handler) throws JMSException
+   {
+      checkClosed();
+
+      message.setJMSDeliveryMode(defaultDeliveryMode);
+
+      message.setJMSPriority(defaultPriority);
+
+      doSend(message, defaultTimeToLive, null, handler);
+   }
+
+   /**
+    * Sends a message to a destination without waiting for the server, and calls the handler once
+    * the server has confirmed it.
+    * @see #send(Message, JMSSendAcknowledgementHandler)
+    */
+   public void send(final Destination destination, final Message message, final JMSSendAcknowledgementHandler handler) throws JMSException
+   {
+      checkClosed();
+
+      if (destination != null && !(destination instanceof HornetQDestination))
+      {
+         throw new InvalidDestinationException("Not a HornetQ Destination:" + destination);
+      }
+
+      message.setJMSDeliveryMode(defaultDeliveryMode);
+
+      message.setJMSPriority(defaultPriority);
+
+      doSend(message, defaultTimeToLive, (HornetQDestination)destination, handler);
+   }
+
    @Override
    public String toString()
    {
@@ -307,7 +349,10 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
    // Private -------------------------------------------------------
 
-   private void doSend(final Message message, final long timeToLive, HornetQDestination destination) throws JMSException
+   private void doSend(final Message message,
+                       final long timeToLive,
+                       HornetQDestination destination,
+                       final JMSSendAcknowledgementHandler jmsHandler) throws JMSException
    {
       if (timeToLive == 0)
       {
@@ -435,7 +480,14 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
 
       try
       {
-         producer.send(address, coreMessage);
+         if (jmsHandler == null)
+         {
+            producer.send(address, coreMessage);
+         }
+         else
+         {
+            producer.send(address, coreMessage, new SendAcknowledgementHandlerWrapper(message, jmsHandler));
+         }
       }
       catch (HornetQException e)
       {
@@ -452,4 +504,26 @@ public class HornetQMessageProducer implements MessageProducer, QueueSender, Top
    }
 
    // Inner classes -------------------------------------------------
+
+   /**
+    * Hands the JMS message given to the send, not its core message, to the JMS handler.
+    */
+   private static final class SendAcknowledgementHandlerWrapper implements SendAcknowledgementHandler
+   {
+      private final Message message;
+
+      private final JMSSendAcknowledgementHandler handler;
+
+      SendAcknowledgementHandlerWrapper(final Message message, final JMSSendAcknowledgementHandler handler)
+      {
+         this.message = message;
+
+         this.handler = handler;
+      }
+
+      public void sendAcknowledged(final org.hornetq.api.core.Message coreMessage)
+      {
+         handler.sendAcknowledged(message);
+      }
+   }
 }
@@ -24,6 +24,12 @@ public class JournalLoadInformation
 
    private long maxID = -1;
 
+   private long readTime;
+
+   private long replayTime;
+
+   private long loadTime;
+
    public JournalLoadInformation()
    {
       super();
@@ -72,6 +78,50 @@ public class JournalLoadInformation
       this.maxID = maxID;
    }
 
+   /**
+    * Sets how long each phase of the load took, in milliseconds.
+    * <p>
+    * The times are informative only, they are not part of {@link #equals(Object)} as journals with
+    * the same contents may load at different speeds.
+    * @param readTime the time reading and decoding the files, summed over the files
+    * @param replayTime the time replaying the records of the files, summed over the files
+    * @param loadTime the whole time of the load
+    */
+   public void setLoadTimes(final long readTime, final long replayTime, final long loadTime)
+   {
+      this.readTime = readTime;
+      this.replayTime = replayTime;
+      this.loadTime = loadTime;
+   }
+
+   /**
+    * @return the time spent reading and decoding the journal files, in milliseconds. As files may
+    *         be read in parallel, this may be longer than the {@link #getLoadTime() load time}.
+    *         With a single load thread the records are replayed while they are read, and this
+    *         includes the replay
+    */
+   public long getReadTime()
+   {
+      return readTime;
+   }
+
+   /**
+    * @return the time spent replaying the records read from the journal files, in milliseconds,
+    *         only measured apart from the read with more than one load thread
+    */
+   public long getReplayTime()
+   {
+      return replayTime;
+   }
+
+   /**
+    * @return the whole time the load took, in milliseconds
+    */
+   public long getLoadTime()
+   {
+      return loadTime;
+   }
+
    @Override
    public int hashCode()
    {
@@ -112,6 +162,7 @@ public class JournalLoadInformation
    @Override
    public String toString()
    {
-      return "JournalLoadInformation [maxID=" + maxID + ", numberOfRecords=" + numberOfRecords + "]";
+      return "JournalLoadInformation [maxID=" + maxID + ", numberOfRecords=" + numberOfRecords + ", readTime=" +
+             readTime + ", replayTime=" + replayTime + ", loadTime=" + loadTime + "]";
    }
 }
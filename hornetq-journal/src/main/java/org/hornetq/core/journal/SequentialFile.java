@@ -64,6 +64,21 @@ public interface SequentialFile
 
    void write(EncodingSupport bytes, boolean sync) throws Exception;
 
+   /**
+    * Reserves the space of a write of the given size in the buffer of the file, checked through
+    * {@link #fits(int)}, so it can be encoded after the lock serializing the writes is released.
+    * The write must be encoded into the returned buffer and then {@link #release()}d, the buffer is
+    * not written to the file until it is. Writes reach the file in the order their space is reserved.
+    * @return the space to encode the write into, or null if the file has no buffer to reserve it
+    *         in, in which case the write has to go through {@link #write(EncodingSupport, boolean, IOAsyncTask)}
+    */
+   HornetQBuffer reserve(int size, boolean sync, IOAsyncTask callback) throws Exception;
+
+   /**
+    * Releases a write reserved by {@link #reserve(int, boolean, IOAsyncTask)} once it is encoded.
+    */
+   void release();
+
    /**
     * Write directly to the file without using any buffer
     * @param bytes the ByteBuffer must be compatible with the SequentialFile implementation (AIO or
@@ -16,6 +16,8 @@ package org.hornetq.core.journal;
 import java.nio.ByteBuffer;
 import java.util.List;
 
+import org.hornetq.core.journal.impl.DirectBufferPool;
+
 /**
  *
  * A SequentialFileFactory
@@ -45,7 +47,7 @@ public interface SequentialFileFactory
 
    /**
     * Note: You need to release the buffer if is used for reading operations. You don't need to do
-    * it if using writing operations (AIO Buffer Lister will take of writing operations)
+    * it if using writing operations, the file releases it once written.
     * @param size
     * @return the allocated ByteBuffer
     */
@@ -57,6 +59,12 @@ public interface SequentialFileFactory
 
    void deactivateBuffer();
 
+   /**
+    * @return the pool {@link #newBuffer(int)} and {@link #allocateDirectBuffer(int)} take their
+    *         buffers from, or {@code null} if they are not pooled
+    */
+   DirectBufferPool getBufferPool();
+
    // To be used in tests only
    ByteBuffer wrapBuffer(byte[] bytes);
 
@@ -16,7 +16,6 @@ package org.hornetq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -38,20 +37,17 @@ import org.hornetq.utils.HornetQThreadFactory;
  */
 public final class AIOSequentialFileFactory extends AbstractSequentialFileFactory
 {
-   private static final boolean trace = HornetQJournalLogger.LOGGER.isTraceEnabled();
-
-   private final ReuseBuffersController buffersControl = new ReuseBuffersController();
+   /** Called by the native layer as soon as a buffer is written, so it can be reused */
+   private final BufferCallback bufferCallback = new BufferCallback()
+   {
+      public void bufferDone(final ByteBuffer buffer)
+      {
+         releaseBuffer(buffer);
+      }
+   };
 
    private ExecutorService pollerExecutor;
 
-   // This method exists just to make debug easier.
-   // I could replace log.trace by log.info temporarily while I was debugging
-   // Journal
-   private static final void trace(final String message)
-   {
-      HornetQJournalLogger.LOGGER.trace(message);
-   }
-
    public AIOSequentialFileFactory(final String journalDir)
    {
       this(journalDir,
@@ -95,7 +91,7 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
                                    journalDir,
                                    fileName,
                                    maxIO,
-                                   buffersControl.callback,
+                                   bufferCallback,
                                    writeExecutor,
                                    pollerExecutor);
    }
@@ -112,26 +108,16 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
 
    public ByteBuffer allocateDirectBuffer(final int size)
    {
-
-      int blocks = size / 512;
-      if (size % 512 != 0)
-      {
-         blocks ++;
-      }
-
-      // The buffer on AIO has to be a multiple of 512
-      ByteBuffer buffer = AsynchronousFileImpl.newBuffer(blocks * 512);
-
-      buffer.limit(size);
-
-      return buffer;
+      // The buffer on AIO has to be a multiple of 512, which the pool takes care of
+      return getBufferPool().acquire(size);
    }
 
    public void releaseDirectBuffer(final ByteBuffer buffer)
    {
-      AsynchronousFileImpl.destroyBuffer(buffer);
+      getBufferPool().release(buffer);
    }
 
+   @Override
    public ByteBuffer newBuffer(int size)
    {
       if (size % 512 != 0)
@@ -139,7 +125,7 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
          size = (size / 512 + 1) * 512;
       }
 
-      return buffersControl.newBuffer(size);
+      return getBufferPool().acquire(size);
    }
 
    public void clearBuffer(final ByteBuffer directByteBuffer)
@@ -169,13 +155,32 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
       return pos;
    }
 
-   /* (non-Javadoc)
-    * @see org.hornetq.core.journal.SequentialFileFactory#releaseBuffer(java.nio.ByteBuffer)
+   /**
+    * The buffers have to be allocated by the native layer, aligned for direct IO.
     */
    @Override
-   public synchronized void releaseBuffer(final ByteBuffer buffer)
+   protected DirectBufferPool newBufferPool()
    {
-      AsynchronousFileImpl.destroyBuffer(buffer);
+      return new DirectBufferPool()
+      {
+         @Override
+         protected ByteBuffer allocate(final int capacity)
+         {
+            return AsynchronousFileImpl.newBuffer(capacity);
+         }
+
+         @Override
+         protected void free(final ByteBuffer buffer)
+         {
+            AsynchronousFileImpl.destroyBuffer(buffer);
+         }
+
+         @Override
+         protected void zero(final ByteBuffer buffer)
+         {
+            AsynchronousFileImpl.clearBuffer(buffer);
+         }
+      };
    }
 
    @Override
@@ -192,8 +197,6 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
    @Override
    public void stop()
    {
-      buffersControl.stop();
-
       if (pollerExecutor != null)
       {
          pollerExecutor.shutdown();
@@ -220,121 +223,6 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
       stop();
    }
 
-   /** Class that will control buffer-reuse */
-   private class ReuseBuffersController
-   {
-      private volatile long bufferReuseLastTime = System.currentTimeMillis();
-
-      /** This queue is fed by {@link JournalImpl.ReuseBuffersController.LocalBufferCallback}} which is called directly by NIO or NIO.
-       * On the case of the AIO this is almost called by the native layer as soon as the buffer is not being used any more
-       * and ready to be reused or GCed */
-      private final ConcurrentLinkedQueue<ByteBuffer> reuseBuffersQueue = new ConcurrentLinkedQueue<ByteBuffer>();
-
-      private boolean stopped = false;
-
-      final BufferCallback callback = new LocalBufferCallback();
-
-      public ByteBuffer newBuffer(final int size)
-      {
-         // if a new buffer wasn't requested in 10 seconds, we clear the queue
-         // This is being done this way as we don't need another Timeout Thread
-         // just to cleanup this
-         if (bufferSize > 0 && System.currentTimeMillis() - bufferReuseLastTime > 10000)
-         {
-            if (AIOSequentialFileFactory.trace)
-            {
-               AIOSequentialFileFactory.trace("Clearing reuse buffers queue with " + reuseBuffersQueue.size() +
-                                              " elements");
-            }
-
-            bufferReuseLastTime = System.currentTimeMillis();
-
-            clearPoll();
-         }
-
-         // if a buffer is bigger than the configured-bufferSize, we just create a new
-         // buffer.
-         if (size > bufferSize)
-         {
-            return AsynchronousFileImpl.newBuffer(size);
-         }
-         else
-         {
-            // We need to allocate buffers following the rules of the storage
-            // being used (AIO/NIO)
-            int alignedSize = calculateBlockSize(size);
-
-            // Try getting a buffer from the queue...
-            ByteBuffer buffer = reuseBuffersQueue.poll();
-
-            if (buffer == null)
-            {
-               // if empty create a new one.
-               buffer = AsynchronousFileImpl.newBuffer(bufferSize);
-
-               buffer.limit(alignedSize);
-            }
-            else
-            {
-               clearBuffer(buffer);
-
-               // set the limit of the buffer to the bufferSize being required
-               buffer.limit(alignedSize);
-            }
-
-            buffer.rewind();
-
-            return buffer;
-         }
-      }
-
-      public synchronized void stop()
-      {
-         stopped = true;
-         clearPoll();
-      }
-
-      public synchronized void clearPoll()
-      {
-         ByteBuffer reusedBuffer;
-
-         while ((reusedBuffer = reuseBuffersQueue.poll()) != null)
-         {
-            releaseBuffer(reusedBuffer);
-         }
-      }
-
-      private class LocalBufferCallback implements BufferCallback
-      {
-         public void bufferDone(final ByteBuffer buffer)
-         {
-            synchronized (ReuseBuffersController.this)
-            {
-
-               if (stopped)
-               {
-                  releaseBuffer(buffer);
-               }
-               else
-               {
-                  bufferReuseLastTime = System.currentTimeMillis();
-
-                  // If a buffer has any other than the configured bufferSize, the buffer
-                  // will be just sent to GC
-                  if (buffer.capacity() == bufferSize)
-                  {
-                     reuseBuffersQueue.offer(buffer);
-                  }
-                  else
-                  {
-                     releaseBuffer(buffer);
-                  }
-               }
-            }
-         }
-      }
-   }
-
    private static ClassLoader getThisClassLoader()
    {
       return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>()
@@ -350,7 +238,6 @@ public final class AIOSequentialFileFactory extends AbstractSequentialFileFactor
    @Override
    public String toString()
    {
-      return AIOSequentialFileFactory.class.getSimpleName() + "(buffersControl.stopped=" + buffersControl.stopped +
-               "):" + super.toString();
+      return AIOSequentialFileFactory.class.getSimpleName() + "(" + getBufferPool() + "):" + super.toString();
    }
 }
@@ -16,7 +16,6 @@ package org.hornetq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -26,7 +25,7 @@ import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
-import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  *
@@ -58,7 +57,10 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    private HornetQBuffer writingChannel;
 
-   private final Set<Long> recordsSnapshot = new ConcurrentHashSet<Long>();
+   /** the buffer under writingChannel, the file releases it once written */
+   private ByteBuffer writingBuffer;
+
+   private final ConcurrentLongHashMap<Boolean> recordsSnapshot = new ConcurrentLongHashMap<Boolean>();
 
    protected final List<JournalFile> newDataFiles = new ArrayList<JournalFile>();
 
@@ -69,7 +71,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected AbstractJournalUpdateTask(final SequentialFileFactory fileFactory,
                                        final JournalImpl journal,
                                        final JournalFilesRepository filesRepository,
-                                       final Set<Long> recordsSnapshot,
+                                       final long[] recordsSnapshot,
                                        final long nextOrderingID)
    {
       super();
@@ -77,7 +79,10 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       this.filesRepository = filesRepository;
       this.fileFactory = fileFactory;
       this.nextOrderingID = nextOrderingID;
-      this.recordsSnapshot.addAll(recordsSnapshot);
+      for (long id : recordsSnapshot)
+      {
+         this.recordsSnapshot.put(id, Boolean.TRUE);
+      }
    }
 
    // Public --------------------------------------------------------
@@ -181,19 +186,21 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
          sequentialFile.position(0);
 
          // To Fix the size of the file
-         writingChannel.writerIndex(writingChannel.capacity());
+         writingBuffer.clear();
+         writingBuffer.limit(writingChannel.capacity());
 
-         sequentialFile.writeInternal(writingChannel.toByteBuffer());
+         sequentialFile.writeInternal(writingBuffer);
          sequentialFile.close();
          newDataFiles.add(currentFile);
       }
 
       writingChannel = null;
+      writingBuffer = null;
    }
 
    public boolean lookupRecord(final long id)
    {
-      return recordsSnapshot.contains(id);
+      return recordsSnapshot.containsKey(id);
    }
 
    // Package protected ---------------------------------------------
@@ -207,9 +214,9 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    {
       flush();
 
-      ByteBuffer bufferWrite = fileFactory.newBuffer(journal.getFileSize());
+      writingBuffer = fileFactory.newBuffer(journal.getFileSize());
 
-      writingChannel = HornetQBuffers.wrappedBuffer(bufferWrite);
+      writingChannel = HornetQBuffers.wrappedBuffer(writingBuffer);
 
       currentFile = filesRepository.takeFile(false, false, false, true);
 
@@ -224,7 +231,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    protected void addToRecordsSnaptshot(final long id)
    {
-      recordsSnapshot.add(id);
+      recordsSnapshot.put(id, Boolean.TRUE);
    }
 
    /**
@@ -15,6 +15,7 @@ package org.hornetq.core.journal.impl;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -121,11 +122,10 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
 
 
-      ByteBuffer buffer = ByteBuffer.allocate(10 * 1024);
-
       for (;;)
       {
-         buffer.rewind();
+         // the buffer is released by the file once written
+         ByteBuffer buffer = factory.newBuffer(10 * 1024);
          int size = this.read(buffer);
          newFileName.writeDirect(buffer, false);
          if (size < 10 * 1024)
@@ -280,6 +280,23 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
    }
 
+   public HornetQBuffer reserve(final int size, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (timedBuffer != null)
+      {
+         return timedBuffer.reserve(size, sync, callback);
+      }
+      else
+      {
+         return null;
+      }
+   }
+
+   public void release()
+   {
+      timedBuffer.release();
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -333,6 +350,32 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
    }
 
+   /**
+    * A heap buffer would be copied by the JDK into a temporary direct buffer as big as the write,
+    * which then stays cached on the calling thread. The buffer is taken from the factory instead,
+    * and has to be released once written.
+    */
+   protected ByteBuffer newFilledBuffer(final int size, final byte fillCharacter)
+   {
+      ByteBuffer buffer = factory.newBuffer(size);
+
+      if (fillCharacter != 0)
+      {
+         byte[] chunk = new byte[Math.min(size, 4096)];
+
+         Arrays.fill(chunk, fillCharacter);
+
+         while (buffer.hasRemaining())
+         {
+            buffer.put(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+         }
+
+         buffer.flip();
+      }
+
+      return buffer;
+   }
+
    protected ByteBuffer newBuffer(int size, int limit)
    {
       size = factory.calculateBlockSize(size);
@@ -56,6 +56,11 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
 
    private final IOCriticalErrorListener critialErrorListener;
 
+   private volatile DirectBufferPool bufferPool;
+
+   /** whether the pool was given by another factory, which then starts and stops it */
+   private volatile boolean sharedBufferPool;
+
    /**
     * Asynchronous writes need to be done at another executor.
     * This needs to be done at NIO, or else we would have the callers thread blocking for the return.
@@ -83,6 +88,7 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
       this.bufferSize = bufferSize;
       this.bufferTimeout = bufferTimeout;
       this.critialErrorListener = criticalErrorListener;
+      this.bufferPool = newBufferPool();
    }
 
    public void stop()
@@ -108,6 +114,11 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
             throw new HornetQInterruptedException(e);
          }
       }
+
+      if (!sharedBufferPool)
+      {
+         bufferPool.stop();
+      }
    }
 
    public String getDirectory()
@@ -117,6 +128,11 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
 
    public void start()
    {
+      if (!sharedBufferPool)
+      {
+         bufferPool.start();
+      }
+
       if (timedBuffer != null)
       {
          timedBuffer.start();
@@ -167,8 +183,43 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
       }
    }
 
+   /**
+    * @return the buffer shared by the files of this factory, or {@code null} if writes are not
+    *         buffered
+    */
+   public TimedBuffer getTimedBuffer()
+   {
+      return timedBuffer;
+   }
+
+   public DirectBufferPool getBufferPool()
+   {
+      return bufferPool;
+   }
+
+   /**
+    * Makes this factory take its buffers from the pool of another one, so all the files of a
+    * server share the same memory. The pool is not started nor stopped by this factory.
+    */
+   public void setBufferPool(final DirectBufferPool bufferPool)
+   {
+      this.bufferPool = bufferPool;
+      sharedBufferPool = true;
+   }
+
+   public ByteBuffer newBuffer(final int size)
+   {
+      return bufferPool.acquire(size);
+   }
+
    public void releaseBuffer(final ByteBuffer buffer)
    {
+      bufferPool.release(buffer);
+   }
+
+   protected DirectBufferPool newBufferPool()
+   {
+      return new DirectBufferPool();
    }
 
    /**
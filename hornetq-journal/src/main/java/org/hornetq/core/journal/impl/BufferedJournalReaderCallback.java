@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.Arrays;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * Keeps what was read from a single journal file, so the file can be read and decoded on any
+ * thread and its records replayed later, in the same order, on the loading thread.
+ * <p>
+ * The records are held in parallel arrays, as a file may contain hundreds of thousands of them.
+ */
+final class BufferedJournalReaderCallback implements JournalReaderCallback
+{
+   private static final byte ADD = 0;
+
+   private static final byte UPDATE = 1;
+
+   private static final byte DELETE = 2;
+
+   private static final byte ADD_TX = 3;
+
+   private static final byte UPDATE_TX = 4;
+
+   private static final byte DELETE_TX = 5;
+
+   private static final byte PREPARE = 6;
+
+   private static final byte COMMIT = 7;
+
+   private static final byte ROLLBACK = 8;
+
+   private final JournalFile file;
+
+   private byte[] types = new byte[16];
+
+   /** the transaction ID, or the record ID of a non transactional delete */
+   private long[] ids = new long[16];
+
+   /** the RecordInfo, or the extra data of a prepare */
+   private Object[] values = new Object[16];
+
+   /** the number of records of a prepare or a commit */
+   private int[] numberOfRecords = new int[16];
+
+   private int count;
+
+   private boolean markedAsDataFile;
+
+   private int lastDataPosition;
+
+   private long readTime;
+
+   BufferedJournalReaderCallback(final JournalFile file)
+   {
+      this.file = file;
+   }
+
+   int getLastDataPosition()
+   {
+      return lastDataPosition;
+   }
+
+   long getReadTime()
+   {
+      return readTime;
+   }
+
+   /**
+    * Reads and decodes the whole file into this buffer.
+    */
+   void read(final SequentialFileFactory fileFactory) throws Exception
+   {
+      long start = System.currentTimeMillis();
+
+      lastDataPosition = JournalImpl.readJournalFile(fileFactory, file, this);
+
+      readTime = System.currentTimeMillis() - start;
+   }
+
+   /**
+    * Passes the records to the actual reader, in the order they were read, and releases them.
+    */
+   void replay(final JournalReaderCallback reader) throws Exception
+   {
+      if (markedAsDataFile)
+      {
+         reader.markAsDataFile(file);
+      }
+
+      for (int i = 0; i < count; i++)
+      {
+         switch (types[i])
+         {
+            case ADD:
+               reader.onReadAddRecord((RecordInfo)values[i]);
+               break;
+            case UPDATE:
+               reader.onReadUpdateRecord((RecordInfo)values[i]);
+               break;
+            case DELETE:
+               reader.onReadDeleteRecord(ids[i]);
+               break;
+            case ADD_TX:
+               reader.onReadAddRecordTX(ids[i], (RecordInfo)values[i]);
+               break;
+            case UPDATE_TX:
+               reader.onReadUpdateRecordTX(ids[i], (RecordInfo)values[i]);
+               break;
+            case DELETE_TX:
+               reader.onReadDeleteRecordTX(ids[i], (RecordInfo)values[i]);
+               break;
+            case PREPARE:
+               reader.onReadPrepareRecord(ids[i], (byte[])values[i], numberOfRecords[i]);
+               break;
+            case COMMIT:
+               reader.onReadCommitRecord(ids[i], numberOfRecords[i]);
+               break;
+            case ROLLBACK:
+               reader.onReadRollbackRecord(ids[i]);
+               break;
+            default:
+               throw new IllegalStateException("Invalid buffered record type " + types[i]);
+         }
+
+         values[i] = null;
+      }
+
+      count = 0;
+   }
+
+   public void onReadAddRecord(final RecordInfo info) throws Exception
+   {
+      add(ADD, 0, info, 0);
+   }
+
+   public void onReadUpdateRecord(final RecordInfo info) throws Exception
+   {
+      add(UPDATE, 0, info, 0);
+   }
+
+   public void onReadDeleteRecord(final long recordID) throws Exception
+   {
+      add(DELETE, recordID, null, 0);
+   }
+
+   public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(ADD_TX, transactionID, info, 0);
+   }
+
+   public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(UPDATE_TX, transactionID, info, 0);
+   }
+
+   public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(DELETE_TX, transactionID, info, 0);
+   }
+
+   public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int records) throws Exception
+   {
+      add(PREPARE, transactionID, extraData, records);
+   }
+
+   public void onReadCommitRecord(final long transactionID, final int records) throws Exception
+   {
+      add(COMMIT, transactionID, null, records);
+   }
+
+   public void onReadRollbackRecord(final long transactionID) throws Exception
+   {
+      add(ROLLBACK, transactionID, null, 0);
+   }
+
+   public void markAsDataFile(final JournalFile file)
+   {
+      markedAsDataFile = true;
+   }
+
+   private void add(final byte type, final long id, final Object value, final int records)
+   {
+      if (count == types.length)
+      {
+         int capacity = count * 2;
+         types = Arrays.copyOf(types, capacity);
+         ids = Arrays.copyOf(ids, capacity);
+         values = Arrays.copyOf(values, capacity);
+         numberOfRecords = Arrays.copyOf(numberOfRecords, capacity);
+      }
+
+      types[count] = type;
+      ids[count] = id;
+      values[count] = value;
+      numberOfRecords[count] = records;
+      count++;
+   }
+}
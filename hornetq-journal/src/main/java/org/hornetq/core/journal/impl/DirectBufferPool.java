@@ -0,0 +1,643 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A pool of direct buffers, shared by the file factories of a server so the journal, paging and
+ * large messages reuse the same native memory instead of each allocating their own.
+ * <p>
+ * Buffers are pooled by size class, the capacities being powers of two from
+ * {@link #MIN_CAPACITY} up to the maximum pooled capacity. Bigger buffers are allocated for the
+ * request only and freed straight away once released. Freed memory is given back through the JDK
+ * cleaner, so none of it waits for a GC.
+ * <p>
+ * Every buffer handed out is reference counted: {@link #acquire(int)} returns it with a count of
+ * one, {@link #retain(ByteBuffer)} adds a reference and {@link #release(ByteBuffer)} removes one,
+ * the buffer going back to the pool when none is left. Buffers that were not taken from the pool
+ * are ignored on release, which lets a file release whatever buffer it was given to write. Buffers
+ * still referenced when the pool is stopped are reported as leaked.
+ * <p>
+ * Each acquisition gets a buffer object of its own, a duplicate of the pooled one. Releasing it
+ * once more after its last reference is gone, or releasing a duplicate or a slice of it, fails
+ * instead of taking a reference from whoever holds the pooled memory then. Those are told apart
+ * from foreign buffers through the parent the JDK keeps on the views of a direct buffer.
+ */
+public class DirectBufferPool
+{
+   private static final boolean trace = HornetQJournalLogger.LOGGER.isTraceEnabled();
+
+   /** The smallest size class, a multiple of the alignment required by libaio */
+   public static final int MIN_CAPACITY = 512;
+
+   public static final int DEFAULT_MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+
+   public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+   /** if no buffer was requested for this long the pooled buffers are freed */
+   private static final long IDLE_TIMEOUT = 10000;
+
+   private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024);
+
+   /** sun.nio.ch.DirectBuffer#attachment(), the buffer a view was made from */
+   private static final Method ATTACHMENT_METHOD = attachmentMethod();
+
+   private final int maxPooledCapacity;
+
+   private final long maxPooledBytes;
+
+   private final ConcurrentLinkedQueue<Lease>[] freeLeases;
+
+   /** The leases of the buffers allocated, handed out or pooled, by their buffer */
+   private final ConcurrentHashMap<BufferKey, Lease> leases = new ConcurrentHashMap<BufferKey, Lease>();
+
+   /** The buffers handed out and not released yet, by the buffer of the acquisition */
+   private final ConcurrentHashMap<BufferKey, Acquisition> acquisitions =
+            new ConcurrentHashMap<BufferKey, Acquisition>();
+
+   private final AtomicLong pooledBytes = new AtomicLong();
+
+   private final AtomicInteger acquiredBuffers = new AtomicInteger();
+
+   private final AtomicLong acquiredBytes = new AtomicLong();
+
+   private final AtomicLong allocations = new AtomicLong();
+
+   private final AtomicLong allocatedBytes = new AtomicLong();
+
+   private final AtomicLong reuses = new AtomicLong();
+
+   private final AtomicLong frees = new AtomicLong();
+
+   private volatile long lastAcquireTime = System.currentTimeMillis();
+
+   private volatile boolean stopped;
+
+   public DirectBufferPool()
+   {
+      this(DEFAULT_MAX_POOLED_CAPACITY, DEFAULT_MAX_POOLED_BYTES);
+   }
+
+   /**
+    * @param maxPooledCapacity the capacity of the biggest buffers kept in the pool
+    * @param maxPooledBytes the total capacity of the buffers kept in the pool while not being used
+    */
+   @SuppressWarnings("unchecked")
+   public DirectBufferPool(final int maxPooledCapacity, final long maxPooledBytes)
+   {
+      if (maxPooledCapacity < MIN_CAPACITY)
+      {
+         throw new IllegalArgumentException("maxPooledCapacity must be >= " + MIN_CAPACITY +
+                                            ", it is " +
+                                            maxPooledCapacity);
+      }
+
+      this.maxPooledCapacity = sizeClassCapacity(maxPooledCapacity);
+      this.maxPooledBytes = maxPooledBytes;
+
+      freeLeases = new ConcurrentLinkedQueue[sizeClass(this.maxPooledCapacity) + 1];
+
+      for (int i = 0; i < freeLeases.length; i++)
+      {
+         freeLeases[i] = new ConcurrentLinkedQueue<Lease>();
+      }
+   }
+
+   /**
+    * @return a zeroed buffer positioned at 0 with {@code size} as its limit, its capacity may be
+    *         bigger
+    */
+   public ByteBuffer acquire(final int size)
+   {
+      long now = System.currentTimeMillis();
+
+      // there is no timer to free the buffers of an idle pool, this is done on the next request
+      if (now - lastAcquireTime > IDLE_TIMEOUT)
+      {
+         trim();
+      }
+
+      lastAcquireTime = now;
+
+      int capacity = sizeClassCapacity(size);
+
+      Lease lease = null;
+
+      if (capacity <= maxPooledCapacity)
+      {
+         lease = freeLeases[sizeClass(capacity)].poll();
+      }
+      else
+      {
+         capacity = alignedCapacity(size);
+      }
+
+      if (lease == null)
+      {
+         lease = new Lease(allocateBuffer(capacity));
+
+         leases.put(new BufferKey(lease.buffer), lease);
+
+         allocations.incrementAndGet();
+         allocatedBytes.addAndGet(capacity);
+      }
+      else
+      {
+         pooledBytes.addAndGet(-capacity);
+
+         reuses.incrementAndGet();
+      }
+
+      ByteBuffer buffer = lease.buffer.duplicate();
+
+      buffer.limit(size);
+
+      if (lease.reused())
+      {
+         zero(buffer);
+      }
+
+      Acquisition acquisition = new Acquisition(lease);
+
+      if (trace)
+      {
+         acquisition.acquiredAt = new Exception("trace");
+      }
+
+      acquisitions.put(new BufferKey(buffer), acquisition);
+
+      acquiredBuffers.incrementAndGet();
+      acquiredBytes.addAndGet(capacity);
+
+      return buffer;
+   }
+
+   /**
+    * Adds a reference to a buffer taken from this pool, it will need one more release.
+    */
+   public void retain(final ByteBuffer buffer)
+   {
+      Acquisition acquisition = acquisitions.get(new BufferKey(buffer));
+
+      if (acquisition == null)
+      {
+         checkNotPooled(buffer);
+
+         throw new IllegalArgumentException("The buffer was not taken from this pool");
+      }
+
+      for (;;)
+      {
+         int references = acquisition.references.get();
+
+         if (references == 0)
+         {
+            throw new IllegalStateException("The buffer was already released");
+         }
+
+         if (acquisition.references.compareAndSet(references, references + 1))
+         {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Removes a reference to the buffer, giving it back to the pool if it was the last one.
+    *
+    * @return {@code false} if the buffer was not taken from this pool
+    * @throws IllegalStateException if the buffer was already released
+    * @throws IllegalArgumentException if the buffer is a view of a buffer taken from this pool
+    */
+   public boolean release(final ByteBuffer buffer)
+   {
+      BufferKey key = new BufferKey(buffer);
+
+      Acquisition acquisition = acquisitions.get(key);
+
+      if (acquisition == null)
+      {
+         checkNotPooled(buffer);
+
+         return false;
+      }
+
+      for (;;)
+      {
+         int references = acquisition.references.get();
+
+         if (references == 0)
+         {
+            throw new IllegalStateException("The buffer was already released");
+         }
+
+         if (acquisition.references.compareAndSet(references, references - 1))
+         {
+            if (references > 1)
+            {
+               return true;
+            }
+            break;
+         }
+      }
+
+      acquisitions.remove(key);
+
+      Lease lease = acquisition.lease;
+
+      int capacity = lease.buffer.capacity();
+
+      acquiredBuffers.decrementAndGet();
+      acquiredBytes.addAndGet(-capacity);
+
+      if (!stopped && capacity <= maxPooledCapacity)
+      {
+         if (pooledBytes.addAndGet(capacity) <= maxPooledBytes)
+         {
+            freeLeases[sizeClass(capacity)].offer(lease);
+            return true;
+         }
+
+         pooledBytes.addAndGet(-capacity);
+      }
+
+      leases.remove(new BufferKey(lease.buffer));
+
+      freeBuffer(lease.buffer);
+
+      return true;
+   }
+
+   public void start()
+   {
+      stopped = false;
+   }
+
+   /**
+    * Frees the pooled buffers and reports the ones not released yet, those are freed when they
+    * are.
+    */
+   public void stop()
+   {
+      stopped = true;
+
+      trim();
+
+      List<Acquisition> leaked = new ArrayList<Acquisition>(acquisitions.values());
+
+      if (!leaked.isEmpty())
+      {
+         long bytes = 0;
+
+         for (Acquisition acquisition : leaked)
+         {
+            bytes += acquisition.lease.buffer.capacity();
+
+            if (acquisition.acquiredAt != null)
+            {
+               HornetQJournalLogger.LOGGER.trace("Buffer not released, acquired at", acquisition.acquiredAt);
+            }
+         }
+
+         HornetQJournalLogger.LOGGER.buffersNotReleased(leaked.size(), bytes);
+      }
+   }
+
+   /**
+    * Frees the buffers kept in the pool.
+    */
+   public void trim()
+   {
+      for (ConcurrentLinkedQueue<Lease> queue : freeLeases)
+      {
+         Lease lease;
+
+         while ((lease = queue.poll()) != null)
+         {
+            pooledBytes.addAndGet(-lease.buffer.capacity());
+
+            leases.remove(new BufferKey(lease.buffer));
+
+            freeBuffer(lease.buffer);
+         }
+      }
+   }
+
+   /**
+    * @return the number of buffers allocated, the ones reused from the pool are not counted
+    */
+   public long getAllocationCount()
+   {
+      return allocations.get();
+   }
+
+   public long getAllocatedBytes()
+   {
+      return allocatedBytes.get();
+   }
+
+   /**
+    * @return the number of requests served with a buffer from the pool
+    */
+   public long getReuseCount()
+   {
+      return reuses.get();
+   }
+
+   public long getFreeCount()
+   {
+      return frees.get();
+   }
+
+   /**
+    * @return the number of buffers handed out and not released yet
+    */
+   public int getAcquiredCount()
+   {
+      return acquiredBuffers.get();
+   }
+
+   public long getAcquiredBytes()
+   {
+      return acquiredBytes.get();
+   }
+
+   /**
+    * @return the capacity of the buffers kept in the pool, not being used
+    */
+   public long getPooledBytes()
+   {
+      return pooledBytes.get();
+   }
+
+   public int getMaxPooledCapacity()
+   {
+      return maxPooledCapacity;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "DirectBufferPool(acquired=" + acquiredBuffers +
+             ", acquiredBytes=" +
+             acquiredBytes +
+             ", pooledBytes=" +
+             pooledBytes +
+             ", allocations=" +
+             allocations +
+             ", reuses=" +
+             reuses +
+             ")";
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected ByteBuffer allocate(final int capacity)
+   {
+      return ByteBuffer.allocateDirect(capacity);
+   }
+
+   protected void free(final ByteBuffer buffer)
+   {
+      clean(buffer);
+   }
+
+   /**
+    * Zeroes the buffer up to its limit, and rewinds it.
+    */
+   protected void zero(final ByteBuffer buffer)
+   {
+      ByteBuffer zeros = ZEROS.duplicate();
+
+      while (buffer.hasRemaining())
+      {
+         zeros.clear();
+         zeros.limit(Math.min(zeros.capacity(), buffer.remaining()));
+         buffer.put(zeros);
+      }
+
+      buffer.rewind();
+   }
+
+   // Package protected ---------------------------------------------
+
+   /**
+    * There is no public API to free a direct buffer before it is collected. The JDK cleaner is
+    * used when it is there, otherwise the memory is left to the GC.
+    */
+   static void clean(final ByteBuffer buffer)
+   {
+      try
+      {
+         Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buffer);
+
+         if (cleaner != null)
+         {
+            Method cleanMethod = cleaner.getClass().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleanMethod.invoke(cleaner);
+         }
+      }
+      catch (Throwable ignored)
+      {
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Fails if the buffer is a former acquisition of this pool, or a view of a buffer of the pool.
+    */
+   private void checkNotPooled(final ByteBuffer buffer)
+   {
+      Object parent = attachment(buffer);
+
+      if (parent instanceof ByteBuffer && leases.containsKey(new BufferKey((ByteBuffer)parent)))
+      {
+         throw new IllegalStateException("The buffer was already released");
+      }
+
+      for (Object view = parent; view instanceof ByteBuffer; view = attachment((ByteBuffer)view))
+      {
+         BufferKey key = new BufferKey((ByteBuffer)view);
+
+         if (acquisitions.containsKey(key) || leases.containsKey(key))
+         {
+            throw new IllegalArgumentException("The buffer is a view of a pooled buffer, the buffer acquired has to be used instead");
+         }
+      }
+   }
+
+   private static Object attachment(final ByteBuffer buffer)
+   {
+      if (ATTACHMENT_METHOD == null || !buffer.isDirect())
+      {
+         return null;
+      }
+
+      try
+      {
+         return ATTACHMENT_METHOD.invoke(buffer);
+      }
+      catch (Throwable e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Without it, on JDKs that don't expose it, the views of pooled buffers are taken for foreign
+    * buffers.
+    */
+   private static Method attachmentMethod()
+   {
+      try
+      {
+         return Class.forName("sun.nio.ch.DirectBuffer").getMethod("attachment");
+      }
+      catch (Throwable e)
+      {
+         return null;
+      }
+   }
+
+   private ByteBuffer allocateBuffer(final int capacity)
+   {
+      try
+      {
+         return allocate(capacity);
+      }
+      catch (OutOfMemoryError e)
+      {
+         // the pooled buffers may be holding the memory needed
+         trim();
+
+         return allocate(capacity);
+      }
+   }
+
+   private void freeBuffer(final ByteBuffer buffer)
+   {
+      frees.incrementAndGet();
+
+      free(buffer);
+   }
+
+   private static int sizeClassCapacity(final int size)
+   {
+      if (size <= MIN_CAPACITY)
+      {
+         return MIN_CAPACITY;
+      }
+
+      int capacity = Integer.highestOneBit(size);
+
+      if (capacity < size)
+      {
+         // the biggest classes are not pooled anyway, and this can't overflow
+         capacity = capacity == 1 << 30 ? Integer.MAX_VALUE : capacity << 1;
+      }
+
+      return capacity;
+   }
+
+   private static int alignedCapacity(final int size)
+   {
+      return (size + MIN_CAPACITY - 1) / MIN_CAPACITY * MIN_CAPACITY;
+   }
+
+   private static int sizeClass(final int capacity)
+   {
+      return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_CAPACITY);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Lease
+   {
+      final ByteBuffer buffer;
+
+      private boolean used;
+
+      Lease(final ByteBuffer buffer)
+      {
+         this.buffer = buffer;
+      }
+
+      /**
+       * @return whether the buffer was acquired before
+       */
+      boolean reused()
+      {
+         boolean reused = used;
+         used = true;
+         return reused;
+      }
+   }
+
+   /**
+    * A buffer handed out, until its last reference is released.
+    */
+   private static final class Acquisition
+   {
+      final Lease lease;
+
+      final AtomicInteger references = new AtomicInteger(1);
+
+      /** where the buffer was acquired, only kept when tracing */
+      volatile Exception acquiredAt;
+
+      Acquisition(final Lease lease)
+      {
+         this.lease = lease;
+      }
+   }
+
+   /**
+    * ByteBuffer equality is on the content, buffers are looked up by identity.
+    */
+   private static final class BufferKey
+   {
+      private final ByteBuffer buffer;
+
+      BufferKey(final ByteBuffer buffer)
+      {
+         this.buffer = buffer;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return System.identityHashCode(buffer);
+      }
+
+      @Override
+      public boolean equals(final Object other)
+      {
+         return other instanceof BufferKey && ((BufferKey)other).buffer == buffer;
+      }
+   }
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.core.journal.RecordInfo;
 import org.hornetq.utils.Base64;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * Use this class to import the journal data from a listed file. You can use it as a main class or
@@ -138,7 +139,7 @@ public class ImportJournal
 
       long lineNumber = 0;
 
-      Map<Long, JournalRecord> journalRecords = journal.getRecords();
+      ConcurrentLongHashMap<JournalRecord> journalRecords = journal.getRecords();
 
       while ((line = buffReader.readLine()) != null)
       {
@@ -18,7 +18,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -36,6 +35,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * A JournalCompactor
@@ -54,7 +54,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    // Snapshot of transactions that were pending when the compactor started
    private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
    private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
 
@@ -63,6 +63,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     *  we cache those updates. As soon as we are done we take the right account. */
    private final LinkedList<CompactCommand> pendingCommands = new LinkedList<CompactCommand>();
 
+   /** Set when only the oldest data files are compacted, see {@link JournalImpl#setCompactMaxFiles(int)} */
+   private final boolean incremental;
+
+   /** The new files have to be ordered before the data files which are not being compacted */
+   private long orderingLimit = Long.MAX_VALUE;
+
    public static SequentialFile readControlFile(final SequentialFileFactory fileFactory,
                                                 final List<String> dataFiles,
                                                 final List<String> newFiles,
@@ -130,7 +136,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
@@ -143,10 +149,70 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final long[] recordsSnapshot,
                            final long firstFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
+      incremental = false;
+   }
+
+   /**
+    * Creates a compactor for the oldest data files only. The records of the journal are not
+    * cleared while it works, so any record still there is live and there is no snapshot to take.
+    *
+    * @param orderingLimit the ID of the first data file that is not compacted
+    */
+   public JournalCompactor(final SequentialFileFactory fileFactory,
+                           final JournalImpl journal,
+                           final JournalFilesRepository filesRepository,
+                           final long firstFileID,
+                           final long orderingLimit)
+   {
+      super(fileFactory, journal, filesRepository, new long[0], firstFileID);
+      incremental = true;
+      this.orderingLimit = orderingLimit;
+   }
+
+   public void setOrderingLimit(final long orderingLimit)
+   {
+      this.orderingLimit = orderingLimit;
+   }
+
+   /**
+    * @return true if a transaction read so far was not committed or rolled back yet
+    */
+   public boolean hasOpenTransactions()
+   {
+      return !newTransactions.isEmpty();
+   }
+
+   @Override
+   public boolean lookupRecord(final long id)
+   {
+      if (incremental)
+      {
+         // deletes are held as commands until compacting is done, so no live record goes away meanwhile
+         return journal.getRecords().containsKey(id);
+      }
+      else
+      {
+         return super.lookupRecord(id);
+      }
+   }
+
+   /**
+    * Deletes the files written so far, when the compacting is given up.
+    */
+   public void deleteNewDataFiles() throws Exception
+   {
+      flush();
+
+      for (JournalFile file : newDataFiles)
+      {
+         file.getFile().delete();
+      }
+
+      newDataFiles.clear();
    }
 
    /** This methods informs the Compactor about the existence of a pending (non committed) transaction */
@@ -211,6 +277,17 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       pendingCommands.add(new UpdateCompactCommand(id, usedFile, size));
    }
 
+   @Override
+   protected void openFile() throws Exception
+   {
+      if (nextOrderingID >= orderingLimit)
+      {
+         throw new IllegalStateException("Compacted records don't fit before the journal file " + orderingLimit);
+      }
+
+      super.openFile();
+   }
+
    private void checkSize(final int size) throws Exception
    {
       checkSize(size, -1);
@@ -632,7 +709,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    }
 
    @Override
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
@@ -26,11 +26,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -65,6 +66,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 import org.hornetq.utils.DataConstants;
 
 /**
@@ -179,10 +181,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   // Keyed by primitive longs, as there is an entry per live record
+   private final ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
@@ -198,6 +201,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // After a record is appended, the usedFile can't be changed until the positives and negatives are updated
    private final ReentrantLock lockAppend = new ReentrantLock();
 
+   // When enabled, lockAppend only covers the space claim in the buffer of the current file,
+   // each record is then encoded into its space by the appending thread once the lock is released
+   private volatile boolean parallelEncoding = false;
+
+   // When bigger than one, the data files are read and decoded by this many threads during load,
+   // while their records are still replayed one file after the other on the loading thread
+   private volatile int loadThreads = 1;
+
+   // When bigger than zero, compacting rewrites a step of the oldest data files, of about this many
+   // files, instead of the whole journal
+   private volatile int compactMaxFiles = 0;
+
    /**
     * We don't lock the journal during the whole compacting operation. During compacting we only
     * lock it (i) when gathering the initial structure, and (ii) when replicating the structures
@@ -346,7 +361,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -806,6 +821,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            addRecord.encodeReserved();
          }
       }
       finally
@@ -872,6 +889,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            updateRecord.encodeReserved();
          }
       }
       finally
@@ -941,6 +960,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            deleteRecord.encodeReserved();
          }
       }
       finally
@@ -986,6 +1007,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            addRecord.encodeReserved();
          }
       }
       finally
@@ -1044,6 +1067,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            updateRecordTX.encodeReserved();
          }
       }
       finally
@@ -1085,6 +1110,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            deleteRecordTX.encodeReserved();
          }
       }
       finally
@@ -1144,6 +1171,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            prepareRecord.encodeReserved();
          }
 
       }
@@ -1201,6 +1230,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            commitRecord.encodeReserved();
          }
 
       }
@@ -1245,6 +1276,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             lockAppend.unlock();
+
+            rollbackRecord.encodeReserved();
          }
 
       }
@@ -1450,6 +1483,271 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
    }
 
+   /**
+    * Compacts the oldest data files only, leaving the others as they are.
+    * <p>
+    * The step always starts at the oldest file, so the compacted records are still ordered before
+    * the updates, deletes and transaction completions on the files that follow. It stops before
+    * the first file a pending transaction is on, and it is as long as it frees the most files,
+    * within {@link #compactMaxFiles} if that frees any. A step is extended over the next files
+    * while a transaction read on it is not complete yet.
+    * <p>
+    * Appends are held by the compactor as on a full compacting, but the live records are not
+    * cleared. Locking the journal at the end only replaces the records that were rewritten.
+    *
+    * @return false if no step would free any file, so the whole journal should be compacted
+    */
+   private boolean compactOldestFiles() throws Exception
+   {
+      ArrayList<JournalFile> dataFiles;
+
+      int candidates;
+
+      int stepLength;
+
+      long currentFileID;
+
+      boolean previousReclaimValue = isAutoReclaim();
+
+      HornetQJournalLogger.LOGGER.debug("Starting compacting operation on the oldest journal files");
+
+      onCompactStart();
+
+      journalLock.writeLock().lock();
+      try
+      {
+         if (state != JournalState.LOADED)
+         {
+            return true;
+         }
+
+         onCompactLockingTheJournal();
+
+         dataFiles = new ArrayList<JournalFile>(filesRepository.getDataFiles());
+
+         Collections.sort(dataFiles, new JournalFileComparator());
+
+         long firstPendingFileID = Long.MAX_VALUE;
+
+         for (JournalTransaction transaction : transactions.values())
+         {
+            firstPendingFileID = Math.min(firstPendingFileID, transaction.getFirstFileID());
+         }
+
+         candidates = 0;
+
+         while (candidates < dataFiles.size() && dataFiles.get(candidates).getFileID() < firstPendingFileID)
+         {
+            candidates++;
+         }
+
+         stepLength = selectCompactStep(dataFiles, candidates);
+
+         if (stepLength == 0)
+         {
+            return false;
+         }
+
+         currentFileID = currentFile.getFileID();
+
+         setAutoReclaim(false);
+
+         compactor = new JournalCompactor(fileFactory,
+                                          this,
+                                          filesRepository,
+                                          dataFiles.get(0).getFileID(),
+                                          getOrderingLimit(dataFiles, stepLength, currentFileID));
+      }
+      finally
+      {
+         journalLock.writeLock().unlock();
+      }
+
+      JournalCompactor localCompactor = compactor;
+
+      boolean swapped = false;
+
+      try
+      {
+         Set<JournalFile> compactedFiles = new HashSet<JournalFile>();
+
+         for (int i = 0;; i++)
+         {
+            if (i == stepLength)
+            {
+               if (!localCompactor.hasOpenTransactions())
+               {
+                  break;
+               }
+
+               if (stepLength == candidates)
+               {
+                  HornetQJournalLogger.LOGGER.debug("Giving up compacting, a transaction completes after the files that can be compacted");
+                  return true;
+               }
+
+               stepLength++;
+
+               localCompactor.setOrderingLimit(getOrderingLimit(dataFiles, stepLength, currentFileID));
+            }
+
+            JournalFile file = dataFiles.get(i);
+
+            try
+            {
+               JournalImpl.readJournalFile(fileFactory, file, localCompactor);
+            }
+            catch (Throwable e)
+            {
+               HornetQJournalLogger.LOGGER.compactReadError(file);
+               throw new Exception("Error on reading compacting for " + file, e);
+            }
+
+            compactedFiles.add(file);
+         }
+
+         localCompactor.flush();
+
+         // pointcut for tests
+         onCompactDone();
+
+         List<JournalFile> filesToRemove = new ArrayList<JournalFile>(dataFiles.subList(0, stepLength));
+
+         List<JournalFile> newDatafiles = localCompactor.getNewDataFiles();
+
+         SequentialFile controlFile = createControlFile(filesToRemove, newDatafiles, null);
+
+         swapped = true;
+
+         journalLock.writeLock().lock();
+         try
+         {
+            compactor = null;
+
+            onCompactLockingTheJournal();
+
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+
+            for (long id : newRecords.keys())
+            {
+               JournalRecord newRecord = newRecords.get(id);
+
+               JournalRecord oldRecord = records.get(id);
+
+               if (oldRecord != null)
+               {
+                  newRecord.copyUpdates(oldRecord, compactedFiles);
+               }
+
+               records.put(id, newRecord);
+            }
+
+            for (JournalFile file : filesToRemove)
+            {
+               filesRepository.removeDataFile(file);
+            }
+
+            for (int i = newDatafiles.size() - 1; i >= 0; i--)
+            {
+               filesRepository.addDataFileOnTop(newDatafiles.get(i));
+            }
+
+            localCompactor.replayPendingCommands();
+         }
+         finally
+         {
+            journalLock.writeLock().unlock();
+         }
+
+         renameFiles(filesToRemove, newDatafiles);
+         deleteControlFile(controlFile);
+
+         HornetQJournalLogger.LOGGER.debug("Finished compacting " + filesToRemove.size() + " files into " +
+                                           newDatafiles.size() + " on journal");
+
+         return true;
+      }
+      finally
+      {
+         if (!swapped)
+         {
+            abortCompact(localCompactor);
+         }
+
+         setAutoReclaim(previousReclaimValue);
+      }
+   }
+
+   /**
+    * @return how many of the oldest files to compact in a step, 0 if no step would free a file
+    */
+   private int selectCompactStep(final List<JournalFile> dataFiles, final int candidates)
+   {
+      long fileCapacity = fileSize - JournalImpl.SIZE_HEADER;
+
+      long liveSize = 0;
+
+      int stepLength = 0;
+
+      int mostFreed = 0;
+
+      for (int i = 0; i < candidates; i++)
+      {
+         liveSize += dataFiles.get(i).getLiveSize();
+
+         // one file more than the live records need, as the compactor splits old records from new ones
+         long neededFiles = liveSize == 0 ? 0 : (liveSize + fileCapacity - 1) / fileCapacity + 1;
+
+         long freed = i + 1 - neededFiles;
+
+         if (freed > mostFreed && (i < compactMaxFiles || stepLength == 0))
+         {
+            stepLength = i + 1;
+            mostFreed = (int)freed;
+         }
+
+         if (i + 1 >= compactMaxFiles && stepLength > 0)
+         {
+            break;
+         }
+      }
+
+      return stepLength;
+   }
+
+   private long getOrderingLimit(final List<JournalFile> dataFiles, final int stepLength, final long currentFileID)
+   {
+      return stepLength < dataFiles.size() ? dataFiles.get(stepLength).getFileID() : currentFileID;
+   }
+
+   /**
+    * Gives up a step of compacting before anything was replaced, applying what was held meanwhile
+    * to the records as they still are.
+    */
+   private void abortCompact(final JournalCompactor localCompactor)
+   {
+      journalLock.writeLock().lock();
+      try
+      {
+         compactor = null;
+
+         localCompactor.replayPendingCommands();
+      }
+      finally
+      {
+         journalLock.writeLock().unlock();
+      }
+
+      try
+      {
+         localCompactor.deleteNewDataFiles();
+      }
+      catch (Throwable ignored)
+      {
+         // they are cleared when the journal is loaded anyway
+      }
+   }
+
    /**
     * Note: This method can't be called from the main executor, as it will invoke other methods
     * depending on it.
@@ -1467,6 +1765,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       compactorLock.writeLock().lock();
       try
       {
+         if (compactMaxFiles > 0 && compactOldestFiles())
+         {
+            return;
+         }
+
       ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
 
          boolean previousReclaimValue = isAutoReclaim();
@@ -1509,13 +1812,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             compactor = new JournalCompactor(fileFactory,
                                              this,
                                              filesRepository,
-                                             records.keySet(),
+                                             records.keys(),
                                              dataFilesToProcess.get(0).getFileID());
 
-            for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
+            for (JournalTransaction transaction : transactions.values())
             {
-               compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-               entry.getValue().setCompacting();
+               compactor.addPendingTransaction(transaction.getId(), transaction.getPositiveArray());
+               transaction.setCompacting();
             }
 
             // We will calculate the new records during compacting, what will take the position the records will take
@@ -1571,9 +1874,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             newDatafiles = localCompactor.getNewDataFiles();
 
             // Restore newRecords created during compacting
-            for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+
+            for (long id : newRecords.keys())
             {
-               records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
+               records.put(id, newRecords.get(id));
             }
 
             // Restore compacted dataFiles
@@ -1741,274 +2046,315 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // AtomicLong is used only as a reference, not as an Atomic value
       final AtomicLong maxID = new AtomicLong(-1);
 
-      for (final JournalFile file : orderedFiles)
-      {
-         JournalImpl.trace("Loading file " + file.getFile().getFileName());
+      final long loadStart = System.currentTimeMillis();
 
-         final AtomicBoolean hasData = new AtomicBoolean(false);
+      long readTime = 0;
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
-         {
+      long replayTime = 0;
 
-            private void checkID(final long id)
-            {
-               if (id > maxID.longValue())
-               {
-                  maxID.set(id);
-               }
-            }
+      final FileReader fileReader = new FileReader(orderedFiles);
 
-            public void onReadAddRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
+      try
+      {
+         for (final JournalFile file : orderedFiles)
+         {
+            JournalImpl.trace("Loading file " + file.getFile().getFileName());
 
-               hasData.set(true);
+            final AtomicBoolean hasData = new AtomicBoolean(false);
 
-               loadManager.addRecord(info);
+            JournalReaderCallback reader = new JournalReaderCallback()
+            {
 
-               records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
-            }
+               private void checkID(final long id)
+               {
+                  if (id > maxID.longValue())
+                  {
+                     maxID.set(id);
+                  }
+               }
 
-            public void onReadUpdateRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
+               public void onReadAddRecord(final RecordInfo info) throws Exception
+               {
+                  checkID(info.id);
 
-               hasData.set(true);
+                  hasData.set(true);
 
-               loadManager.updateRecord(info);
+                  loadManager.addRecord(info);
 
-               JournalRecord posFiles = records.get(info.id);
+                  records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
+               }
 
-               if (posFiles != null)
+               public void onReadUpdateRecord(final RecordInfo info) throws Exception
                {
-                  // It's legal for this to be null. The file(s) with the may
-                  // have been deleted
-                  // just leaving some updates in this file
+                  checkID(info.id);
 
-                  posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
-                  // count
-               }
-            }
+                  hasData.set(true);
 
-            public void onReadDeleteRecord(final long recordID) throws Exception
-            {
-               hasData.set(true);
+                  loadManager.updateRecord(info);
 
-               loadManager.deleteRecord(recordID);
+                  JournalRecord posFiles = records.get(info.id);
 
-               JournalRecord posFiles = records.remove(recordID);
+                  if (posFiles != null)
+                  {
+                     // It's legal for this to be null. The file(s) with the may
+                     // have been deleted
+                     // just leaving some updates in this file
 
-               if (posFiles != null)
-               {
-                  posFiles.delete(file);
+                     posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
+                     // count
+                  }
                }
-            }
-
-            public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               onReadAddRecordTX(transactionID, info);
-            }
 
-            public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
+               public void onReadDeleteRecord(final long recordID) throws Exception
+               {
+                  hasData.set(true);
 
-               checkID(info.id);
+                  loadManager.deleteRecord(recordID);
 
-               hasData.set(true);
+                  JournalRecord posFiles = records.remove(recordID);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  if (posFiles != null)
+                  {
+                     posFiles.delete(file);
+                  }
+               }
 
-               if (tx == null)
+               public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  tx = new TransactionHolder(transactionID);
-
-                  loadTransactions.put(transactionID, tx);
+                  onReadAddRecordTX(transactionID, info);
                }
 
-               tx.recordInfos.add(info);
-
-               JournalTransaction tnp = transactions.get(transactionID);
-
-               if (tnp == null)
+               public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-                  transactions.put(transactionID, tnp);
-               }
+                  checkID(info.id);
 
-               tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
-               // count
-            }
+                  hasData.set(true);
 
-            public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               hasData.set(true);
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
 
-               if (tx == null)
-               {
-                  tx = new TransactionHolder(transactionID);
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  tx.recordInfos.add(info);
 
-               tx.recordsToDelete.add(info);
+                  JournalTransaction tnp = transactions.get(transactionID);
 
-               JournalTransaction tnp = transactions.get(transactionID);
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-               if (tnp == null)
-               {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
+                     transactions.put(transactionID, tnp);
+                  }
 
-                  transactions.put(transactionID, tnp);
+                  tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
+                  // count
                }
 
-               tnp.addNegative(file, info.id);
+               public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+               {
+                  hasData.set(true);
 
-            }
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-            public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
-            {
-               hasData.set(true);
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-               if (tx == null)
-               {
-                  // The user could choose to prepare empty transactions
-                  tx = new TransactionHolder(transactionID);
+                  tx.recordsToDelete.add(info);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  JournalTransaction tnp = transactions.get(transactionID);
 
-               tx.prepared = true;
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-               tx.extraData = extraData;
+                     transactions.put(transactionID, tnp);
+                  }
 
-               JournalTransaction journalTransaction = transactions.get(transactionID);
+                  tnp.addNegative(file, info.id);
 
-               if (journalTransaction == null)
+               }
+
+               public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
                {
-                  journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+                  hasData.set(true);
 
-                  transactions.put(transactionID, journalTransaction);
-               }
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-               boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+                  if (tx == null)
+                  {
+                     // The user could choose to prepare empty transactions
+                     tx = new TransactionHolder(transactionID);
 
-               if (healthy)
-               {
-                  journalTransaction.prepare(file);
-               }
-               else
-               {
-                  HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
-                  tx.invalid = true;
-               }
-            }
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+                  tx.prepared = true;
 
-               // The commit could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but not the
-               // commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               // If we can't find it, we assume the TX was reclaimed and we
-               // ignore this
-               if (tx != null)
-               {
-                  JournalTransaction journalTransaction = transactions.remove(transactionID);
+                  tx.extraData = extraData;
+
+                  JournalTransaction journalTransaction = transactions.get(transactionID);
 
                   if (journalTransaction == null)
                   {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
+                     journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+
+                     transactions.put(transactionID, journalTransaction);
                   }
 
                   boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
 
                   if (healthy)
                   {
-                     for (RecordInfo txRecord : tx.recordInfos)
+                     journalTransaction.prepare(file);
+                  }
+                  else
+                  {
+                     HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
+                     tx.invalid = true;
+                  }
+               }
+
+               public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+               {
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
+
+                  // The commit could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but not the
+                  // commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  // If we can't find it, we assume the TX was reclaimed and we
+                  // ignore this
+                  if (tx != null)
+                  {
+                     JournalTransaction journalTransaction = transactions.remove(transactionID);
+
+                     if (journalTransaction == null)
                      {
-                        if (txRecord.isUpdate)
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+
+                     if (healthy)
+                     {
+                        for (RecordInfo txRecord : tx.recordInfos)
                         {
-                           loadManager.updateRecord(txRecord);
+                           if (txRecord.isUpdate)
+                           {
+                              loadManager.updateRecord(txRecord);
+                           }
+                           else
+                           {
+                              loadManager.addRecord(txRecord);
+                           }
                         }
-                        else
+
+                        for (RecordInfo deleteValue : tx.recordsToDelete)
                         {
-                           loadManager.addRecord(txRecord);
+                           loadManager.deleteRecord(deleteValue.id);
                         }
-                     }
 
-                     for (RecordInfo deleteValue : tx.recordsToDelete)
+                        journalTransaction.commit(file);
+                     }
+                     else
                      {
-                        loadManager.deleteRecord(deleteValue.id);
+                        HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
+
+                        journalTransaction.forget();
                      }
 
-                     journalTransaction.commit(file);
+                     hasData.set(true);
                   }
-                  else
+
+               }
+
+               public void onReadRollbackRecord(final long transactionID) throws Exception
+               {
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
+
+                  // The rollback could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but the commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  if (tx != null)
                   {
-                     HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
+                     JournalTransaction tnp = transactions.remove(transactionID);
 
-                     journalTransaction.forget();
+                     if (tnp == null)
+                     {
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     // There is no need to validate summaries/holes on
+                     // Rollbacks.. We will ignore the data anyway.
+                     tnp.rollback(file);
+
+                     hasData.set(true);
                   }
+               }
 
+               public void markAsDataFile(final JournalFile file)
+               {
                   hasData.set(true);
                }
 
-            }
+            };
 
-            public void onReadRollbackRecord(final long transactionID) throws Exception
+            int fileLastDataPos;
+
+            if (fileReader.isParallel())
             {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+               BufferedJournalReaderCallback fileRecords = fileReader.next();
 
-               // The rollback could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but the commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               if (tx != null)
-               {
-                  JournalTransaction tnp = transactions.remove(transactionID);
+               readTime += fileRecords.getReadTime();
 
-                  if (tnp == null)
-                  {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
-                  }
+               long replayStart = System.currentTimeMillis();
 
-                  // There is no need to validate summaries/holes on
-                  // Rollbacks.. We will ignore the data anyway.
-                  tnp.rollback(file);
+               fileRecords.replay(reader);
 
-                  hasData.set(true);
-               }
-            }
+               replayTime += System.currentTimeMillis() - replayStart;
 
-            public void markAsDataFile(final JournalFile file)
-            {
-               hasData.set(true);
+               fileLastDataPos = fileRecords.getLastDataPosition();
             }
+            else
+            {
+               // the records are replayed as they are read, no file is held in memory
+               long readStart = System.currentTimeMillis();
 
-         });
+               fileLastDataPos = JournalImpl.readJournalFile(fileFactory, file, reader);
 
-         if (hasData.get())
-         {
-            lastDataPos = resultLastPost;
-            filesRepository.addDataFileOnBottom(file);
-         }
-         else
-         {
-            if (changeData)
+               readTime += System.currentTimeMillis() - readStart;
+            }
+
+            if (hasData.get())
             {
-               // Empty dataFiles with no data
-               filesRepository.addFreeFile(file, false, false);
+               lastDataPos = fileLastDataPos;
+               filesRepository.addDataFileOnBottom(file);
+            }
+            else
+            {
+               if (changeData)
+               {
+                  // Empty dataFiles with no data
+                  filesRepository.addFreeFile(file, false, false);
+               }
             }
          }
       }
+      finally
+      {
+         fileReader.close();
+      }
 
       if (replicationSync == JournalState.SYNCING)
       {
@@ -2059,7 +2405,16 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       checkReclaimStatus();
 
-      return new JournalLoadInformation(records.size(), maxID.longValue());
+      JournalLoadInformation loadInformation = new JournalLoadInformation(records.size(), maxID.longValue());
+
+      loadInformation.setLoadTimes(readTime, replayTime, System.currentTimeMillis() - loadStart);
+
+      if (JournalImpl.trace)
+      {
+         JournalImpl.trace("Loaded " + orderedFiles.size() + " files with " + loadThreads + " threads: " + loadInformation);
+      }
+
+      return loadInformation;
    }
 
    /**
@@ -2194,6 +2549,49 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return autoReclaim;
    }
 
+   public final void setParallelEncoding(final boolean parallelEncoding)
+   {
+      this.parallelEncoding = parallelEncoding;
+   }
+
+   public final boolean isParallelEncoding()
+   {
+      return parallelEncoding;
+   }
+
+   public final void setLoadThreads(final int loadThreads)
+   {
+      if (loadThreads < 1)
+      {
+         throw new IllegalArgumentException("loadThreads must be at least 1");
+      }
+      this.loadThreads = loadThreads;
+   }
+
+   public final int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * When bigger than zero, compacting rewrites about this many of the oldest data files at a
+    * time, instead of the whole journal. The journal is locked only while the records that were
+    * rewritten are replaced, so appends are held for much shorter on big journals.
+    */
+   public final void setCompactMaxFiles(final int compactMaxFiles)
+   {
+      if (compactMaxFiles < 0)
+      {
+         throw new IllegalArgumentException("compactMaxFiles can't be negative");
+      }
+      this.compactMaxFiles = compactMaxFiles;
+   }
+
+   public final int getCompactMaxFiles()
+   {
+      return compactMaxFiles;
+   }
+
    /* Only meant to be used in tests. */
    @Override
    public String debug() throws Exception
@@ -2661,41 +3059,48 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
 
-      file.read(bb);
+      int journalVersion;
 
-      int journalVersion = bb.getInt();
+      long fileID;
 
-      if (journalVersion != JournalImpl.FORMAT_VERSION)
+      try
       {
-         boolean isCompatible = false;
+         file.read(bb);
 
-         for (int v : JournalImpl.COMPATIBLE_VERSIONS)
+         journalVersion = bb.getInt();
+
+         if (journalVersion != JournalImpl.FORMAT_VERSION)
          {
-            if (v == journalVersion)
+            boolean isCompatible = false;
+
+            for (int v : JournalImpl.COMPATIBLE_VERSIONS)
+            {
+               if (v == journalVersion)
+               {
+                  isCompatible = true;
+               }
+            }
+
+            if (!isCompatible)
             {
-               isCompatible = true;
+               throw HornetQJournalBundle.BUNDLE.journalFileMisMatch();
             }
          }
 
-         if (!isCompatible)
+         int readUserVersion = bb.getInt();
+
+         if (readUserVersion != userVersion)
          {
-            throw HornetQJournalBundle.BUNDLE.journalFileMisMatch();
+            throw HornetQJournalBundle.BUNDLE.journalDifferentVersion();
          }
-      }
 
-      int readUserVersion = bb.getInt();
-
-      if (readUserVersion != userVersion)
+         fileID = bb.getLong();
+      }
+      finally
       {
-         throw HornetQJournalBundle.BUNDLE.journalDifferentVersion();
+         fileFactory.releaseBuffer(bb);
       }
 
-      long fileID = bb.getLong();
-
-      fileFactory.releaseBuffer(bb);
-
-      bb = null;
-
       return new JournalFileImpl(file, fileID, journalVersion);
    }
 
@@ -2795,6 +3200,22 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // Adding fileID
       encoder.setFileID(currentFile.getRecordID());
 
+      // A sync write without a callback waits for its completion, so it can't leave the lock before being encoded
+      if (parallelEncoding && (callback != null || !sync))
+      {
+         SequentialFile file = currentFile.getFile();
+
+         HornetQBuffer reserved = file.reserve(size, sync, callback != null ? callback : DummyCallback.getInstance());
+
+         if (reserved != null)
+         {
+            // encoded by the caller through encodeReserved once lockAppend is released
+            encoder.setReserved(file, reserved);
+
+            return currentFile;
+         }
+      }
+
       if (callback != null)
       {
          currentFile.getFile().write(encoder, sync, callback);
@@ -2949,6 +3370,113 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // Inner classes
    // ---------------------------------------------------------------------------
 
+   /**
+    * Reads the data files for {@link JournalImpl#load}, in the order they have to be replayed.
+    * <p>
+    * With more than one load thread the files following the one being replayed are read and
+    * decoded in the background. Only a couple of files per thread are read ahead, as every file
+    * read is kept in memory until its records are replayed. With a single thread there is nothing
+    * to read ahead, and the load streams every file through the replay instead.
+    */
+   private final class FileReader
+   {
+      private final List<JournalFile> files;
+
+      private final ExecutorService executor;
+
+      private final LinkedList<Future<BufferedJournalReaderCallback>> pending =
+               new LinkedList<Future<BufferedJournalReaderCallback>>();
+
+      private int nextFile;
+
+      FileReader(final List<JournalFile> files)
+      {
+         this.files = files;
+
+         int threads = Math.min(loadThreads, files.size());
+
+         if (threads > 1)
+         {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+               public Thread newThread(final Runnable r)
+               {
+                  return new Thread(r, "JournalImpl::LoadExecutor");
+               }
+            });
+
+            while (nextFile < files.size() && pending.size() < threads * 2)
+            {
+               submitNext();
+            }
+         }
+         else
+         {
+            executor = null;
+         }
+      }
+
+      boolean isParallel()
+      {
+         return executor != null;
+      }
+
+      /**
+       * Only when {@link #isParallel()}.
+       */
+      BufferedJournalReaderCallback next() throws Exception
+      {
+         Future<BufferedJournalReaderCallback> future = pending.removeFirst();
+
+         if (nextFile < files.size())
+         {
+            submitNext();
+         }
+
+         try
+         {
+            return future.get();
+         }
+         catch (ExecutionException e)
+         {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Exception)
+            {
+               throw (Exception)cause;
+            }
+
+            throw new Exception(cause.getMessage(), cause);
+         }
+      }
+
+      /**
+       * Files still being read are left to finish, so they release their buffers.
+       */
+      void close()
+      {
+         if (executor != null)
+         {
+            executor.shutdown();
+         }
+      }
+
+      private void submitNext()
+      {
+         final BufferedJournalReaderCallback fileRecords = new BufferedJournalReaderCallback(files.get(nextFile++));
+
+         pending.add(executor.submit(new Callable<BufferedJournalReaderCallback>()
+         {
+            public BufferedJournalReaderCallback call() throws Exception
+            {
+               fileRecords.read(fileFactory);
+
+               return fileRecords;
+            }
+         }));
+      }
+   }
+
    // Used on Load
    private static final class TransactionHolder
    {
@@ -3022,6 +3550,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             for (int i = 0; i < pages; i++)
             {
                appendRecord(blastRecord, false, false, null, null);
+
+               blastRecord.encodeReserved();
             }
          }
          catch (Exception e)
@@ -13,10 +13,8 @@
 
 package org.hornetq.core.journal.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.hornetq.api.core.Pair;
+import java.util.Arrays;
+import java.util.Set;
 
 /**
  * This holds the relationship a record has with other files in regard to reference counting.
@@ -32,7 +30,13 @@ public class JournalRecord
 
    private final int size;
 
-   private List<Pair<JournalFile, Integer>> updateFiles;
+   // the files and sizes of the updates are kept on arrays instead of a list of pairs, as there is
+   // one JournalRecord per live record and they add up on big journals
+   private JournalFile[] updateFiles;
+
+   private int[] updateSizes;
+
+   private int updateCount;
 
    public JournalRecord(final JournalFile addFile, final int size)
    {
@@ -49,28 +53,65 @@ public class JournalRecord
    {
       if (updateFiles == null)
       {
-         updateFiles = new ArrayList<Pair<JournalFile, Integer>>();
+         updateFiles = new JournalFile[2];
+         updateSizes = new int[2];
+      }
+      else if (updateCount == updateFiles.length)
+      {
+         updateFiles = Arrays.copyOf(updateFiles, updateCount * 2);
+         updateSizes = Arrays.copyOf(updateSizes, updateCount * 2);
       }
 
-      updateFiles.add(new Pair<JournalFile, Integer>(updateFile, size));
+      updateFiles[updateCount] = updateFile;
+      updateSizes[updateCount] = size;
+      updateCount++;
 
       updateFile.incPosCount();
 
       updateFile.addSize(size);
    }
 
+   /**
+    * Takes over the updates of the record this one is replacing after compacting, except the ones
+    * on the compacted files. Their counts and sizes were taken when they were appended.
+    */
+   void copyUpdates(final JournalRecord record, final Set<JournalFile> compactedFiles)
+   {
+      for (int i = 0; i < record.updateCount; i++)
+      {
+         JournalFile updateFile = record.updateFiles[i];
+
+         if (compactedFiles.contains(updateFile))
+         {
+            continue;
+         }
+
+         if (updateFiles == null)
+         {
+            updateFiles = new JournalFile[2];
+            updateSizes = new int[2];
+         }
+         else if (updateCount == updateFiles.length)
+         {
+            updateFiles = Arrays.copyOf(updateFiles, updateCount * 2);
+            updateSizes = Arrays.copyOf(updateSizes, updateCount * 2);
+         }
+
+         updateFiles[updateCount] = updateFile;
+         updateSizes[updateCount] = record.updateSizes[i];
+         updateCount++;
+      }
+   }
+
    void delete(final JournalFile file)
    {
       file.incNegCount(addFile);
       addFile.decSize(size);
 
-      if (updateFiles != null)
+      for (int i = 0; i < updateCount; i++)
       {
-         for (Pair<JournalFile, Integer> updFile : updateFiles)
-         {
-            file.incNegCount(updFile.getA());
-            updFile.getA().decSize(updFile.getB());
-         }
+         file.incNegCount(updateFiles[i]);
+         updateFiles[i].decSize(updateSizes[i]);
       }
    }
 
@@ -80,14 +121,9 @@ public class JournalRecord
       StringBuilder buffer = new StringBuilder();
       buffer.append("JournalRecord(add=" + addFile.getFile().getFileName());
 
-      if (updateFiles != null)
+      for (int i = 0; i < updateCount; i++)
       {
-
-         for (Pair<JournalFile, Integer> update : updateFiles)
-         {
-            buffer.append(", update=" + update.getA().getFile().getFileName());
-         }
-
+         buffer.append(", update=" + updateFiles[i].getFile().getFileName());
       }
 
       buffer.append(")");
@@ -103,6 +103,25 @@ public class JournalTransaction
       }
    }
 
+   /**
+    * @return the lowest ID of the files this transaction has records on, or {@link Long#MAX_VALUE}
+    *         if it has none
+    */
+   public long getFirstFileID()
+   {
+      long firstFileID = Long.MAX_VALUE;
+
+      if (pendingFiles != null)
+      {
+         for (JournalFile file : pendingFiles)
+         {
+            firstFileID = Math.min(firstFileID, file.getFileID());
+         }
+      }
+
+      return firstFileID;
+   }
+
    public void setCompacting()
    {
       compacting = true;
@@ -0,0 +1,684 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.api.core.HornetQIOErrorException;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.journal.HornetQJournalBundle;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A SequentialFile writing and reading through {@link MappedByteBuffer}s.
+ * <p>
+ * The file is mapped lazily, in segments of a fixed size, so files bigger than 2GiB can be
+ * mapped and only the regions actually used take address space. Writes are copies into the page
+ * cache, with no system call, and {@link #sync()} forces only the segments written since the last
+ * sync. As a journal file is filled before it is used, every journal write lands on the mapping.
+ * <p>
+ * Writes past the end of the file, such as the appends on a page file, are written through the
+ * channel instead: a mapping past the end would grow the file, leaving zeros at its end after a
+ * crash. They are read through the mapping afterwards.
+ */
+public class MappedSequentialFile extends AbstractSequentialFile
+{
+   private final int segmentSize;
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   /** The write semaphore here is only used when writing asynchronously */
+   private Semaphore maxIOSemaphore;
+
+   private final int defaultMaxIO;
+
+   private int maxIO;
+
+   /** Guards the mappings below, as writes may happen on the writer executor */
+   private final Object mappingLock = new Object();
+
+   private MappedByteBuffer[] segments;
+
+   private boolean[] dirtySegments;
+
+   private boolean channelDirty;
+
+   /** The size of the file the mappings may cover */
+   private long mappableSize;
+
+   /** Where the next read or write happens, like the position of a channel */
+   private long filePosition;
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final int segmentSize,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+      this.segmentSize = segmentSize;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final int segmentSize,
+                               final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+      this.segmentSize = segmentSize;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position) throws Exception
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws Exception
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public void open(final int maxIO, final boolean useExecutor) throws Exception
+   {
+      try
+      {
+         rfile = new RandomAccessFile(getFile(), "rw");
+
+         channel = rfile.getChannel();
+
+         fileSize = channel.size();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      synchronized (mappingLock)
+      {
+         filePosition = 0;
+         mappableSize = fileSize;
+         segments = new MappedByteBuffer[0];
+         dirtySegments = new boolean[0];
+         channelDirty = false;
+      }
+
+      if (writerExecutor != null && useExecutor)
+      {
+         maxIOSemaphore = new Semaphore(maxIO);
+         this.maxIO = maxIO;
+      }
+   }
+
+   public void fill(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      ByteBuffer bb = newFilledBuffer(size, fillCharacter);
+
+      try
+      {
+         synchronized (mappingLock)
+         {
+            // the segments mapped so far may be shorter than the filled file
+            sync();
+
+            unmapSegments();
+
+            channel.write(bb, position);
+
+            channel.force(false);
+
+            fileSize = channel.size();
+
+            mappableSize = fileSize;
+
+            filePosition = 0;
+         }
+      }
+      finally
+      {
+         factory.releaseBuffer(bb);
+      }
+   }
+
+   public synchronized void waitForClose() throws Exception
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws Exception
+   {
+      super.close();
+
+      if (maxIOSemaphore != null)
+      {
+         while (!maxIOSemaphore.tryAcquire(maxIO, 60, TimeUnit.SECONDS))
+         {
+            HornetQJournalLogger.LOGGER.errorClosingFile(getFileName());
+         }
+      }
+
+      maxIOSemaphore = null;
+
+      if (channel != null)
+      {
+         synchronized (mappingLock)
+         {
+            unmapSegments();
+         }
+
+         channel.close();
+      }
+
+      if (rfile != null)
+      {
+         rfile.close();
+      }
+
+      channel = null;
+
+      rfile = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws Exception
+   {
+      try
+      {
+         if (channel == null)
+         {
+            throw new Exception("File " + this.getFileName() + " has a null channel");
+         }
+
+         int bytesRead;
+
+         synchronized (mappingLock)
+         {
+            long available = mappableSize - filePosition;
+
+            if (available <= 0 && bytes.hasRemaining())
+            {
+               bytesRead = -1;
+            }
+            else
+            {
+               bytesRead = (int)Math.min(bytes.remaining(), available);
+
+               copy(filePosition, bytes, bytesRead, false);
+
+               filePosition += bytesRead;
+            }
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         bytes.flip();
+
+         return bytesRead;
+      }
+      catch (IOException e)
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getLocalizedMessage());
+         }
+
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+
+         throw e;
+      }
+   }
+
+   public void sync() throws IOException
+   {
+      synchronized (mappingLock)
+      {
+         if (channel == null)
+         {
+            return;
+         }
+
+         for (int i = 0; i < dirtySegments.length; i++)
+         {
+            if (dirtySegments[i])
+            {
+               segments[i].force();
+               dirtySegments[i] = false;
+            }
+         }
+
+         if (channelDirty)
+         {
+            channel.force(false);
+            channelDirty = false;
+         }
+      }
+   }
+
+   public long size() throws Exception
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+      else
+      {
+         return channel.size();
+      }
+   }
+
+   @Override
+   public void position(final long pos) throws Exception
+   {
+      super.position(pos);
+
+      synchronized (mappingLock)
+      {
+         filePosition = pos;
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), maxIO, segmentSize, writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(HornetQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   /**
+    * With no TimedBuffer and no executor, the record is encoded straight into the mapping, saving
+    * the copy from an intermediate buffer.
+    */
+   @Override
+   public void write(final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (timedBuffer != null || writerExecutor != null || !isOpen())
+      {
+         super.write(bytes, sync, callback);
+         return;
+      }
+
+      int size = bytes.getEncodeSize();
+
+      try
+      {
+         synchronized (mappingLock)
+         {
+            ByteBuffer region = reserveRegion(size);
+
+            if (region == null)
+            {
+               super.write(bytes, sync, callback);
+               return;
+            }
+
+            HornetQBuffer outBuffer = HornetQBuffers.wrappedBuffer(region);
+            bytes.encode(outBuffer);
+         }
+
+         position.addAndGet(size);
+
+         if (sync)
+         {
+            sync();
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         return;
+      }
+
+      callback.done();
+   }
+
+   @Override
+   protected ByteBuffer newBuffer(int size, final int limit)
+   {
+      // as with NIO, the buffer doesn't need to be the entire size of the timed buffer
+      size = limit;
+
+      return super.newBuffer(size, limit);
+   }
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (!isOpen())
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), "File not opened");
+         }
+         else
+         {
+            throw HornetQJournalBundle.BUNDLE.fileNotOpened();
+         }
+         return;
+      }
+
+      position.addAndGet(bytes.limit());
+
+      final long offset;
+
+      synchronized (mappingLock)
+      {
+         // the place on the file is taken now, so writes on the executor keep their order
+         offset = filePosition;
+         filePosition += bytes.remaining();
+      }
+
+      if (maxIOSemaphore == null || callback == null)
+      {
+         // if maxIOSemaphore == null, that means we are not using executors and the writes are synchronous
+         try
+         {
+            doInternalWrite(offset, bytes, sync, callback);
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         }
+      }
+      else
+      {
+         // This is a flow control on writing, just like maxAIO on libaio
+         maxIOSemaphore.acquire();
+
+         writerExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  try
+                  {
+                     doInternalWrite(offset, bytes, sync, callback);
+                  }
+                  catch (IOException e)
+                  {
+                     HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                     factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), MappedSequentialFile.this);
+                     callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                  }
+                  catch (Throwable e)
+                  {
+                     HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                     callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                  }
+               }
+               finally
+               {
+                  maxIOSemaphore.release();
+               }
+            }
+         });
+      }
+   }
+
+   private void doInternalWrite(final long offset, final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException
+   {
+      try
+      {
+         synchronized (mappingLock)
+         {
+            int length = bytes.remaining();
+
+            if (offset + length <= mappableSize)
+            {
+               copy(offset, bytes, length, true);
+            }
+            else
+            {
+               channel.write(bytes, offset);
+
+               channelDirty = true;
+
+               mappableSize = Math.max(mappableSize, offset + length);
+            }
+         }
+      }
+      finally
+      {
+         factory.releaseBuffer(bytes);
+      }
+
+      if (sync)
+      {
+         sync();
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+   }
+
+   /**
+    * Takes the next {@code size} bytes of the file, when they are all on a single mapped segment.
+    * The caller holds the mapping lock.
+    *
+    * @return a buffer over the region, or {@code null} if it can't be mapped as a whole
+    */
+   private ByteBuffer reserveRegion(final int size) throws IOException
+   {
+      int index = (int)(filePosition / segmentSize);
+
+      int segmentOffset = (int)(filePosition % segmentSize);
+
+      if (filePosition + size > mappableSize || segmentOffset + size > segmentSize)
+      {
+         return null;
+      }
+
+      ByteBuffer region = segment(index, segmentOffset + size).duplicate();
+
+      region.position(segmentOffset);
+      region.limit(segmentOffset + size);
+
+      dirtySegments[index] = true;
+
+      filePosition += size;
+
+      return region.slice();
+   }
+
+   /**
+    * Copies {@code length} bytes between the buffer and the mapping at the offset, crossing
+    * segments if needed. The caller holds the mapping lock.
+    */
+   private void copy(long offset, final ByteBuffer bytes, int length, final boolean write) throws IOException
+   {
+      while (length > 0)
+      {
+         int index = (int)(offset / segmentSize);
+
+         int segmentOffset = (int)(offset % segmentSize);
+
+         int chunk = Math.min(length, segmentSize - segmentOffset);
+
+         ByteBuffer mapped = segment(index, segmentOffset + chunk).duplicate();
+
+         mapped.position(segmentOffset);
+         mapped.limit(segmentOffset + chunk);
+
+         if (write)
+         {
+            ByteBuffer source = bytes.duplicate();
+            source.limit(source.position() + chunk);
+            mapped.put(source);
+            bytes.position(bytes.position() + chunk);
+            dirtySegments[index] = true;
+         }
+         else
+         {
+            bytes.put(mapped);
+         }
+
+         offset += chunk;
+         length -= chunk;
+      }
+   }
+
+   /**
+    * @return the segment at the index, mapped for at least {@code length} bytes. The caller holds
+    *         the mapping lock.
+    */
+   private MappedByteBuffer segment(final int index, final int length) throws IOException
+   {
+      if (index >= segments.length)
+      {
+         MappedByteBuffer[] newSegments = new MappedByteBuffer[index + 1];
+         System.arraycopy(segments, 0, newSegments, 0, segments.length);
+         segments = newSegments;
+
+         boolean[] newDirtySegments = new boolean[index + 1];
+         System.arraycopy(dirtySegments, 0, newDirtySegments, 0, dirtySegments.length);
+         dirtySegments = newDirtySegments;
+      }
+
+      MappedByteBuffer segment = segments[index];
+
+      if (segment == null || segment.capacity() < length)
+      {
+         // a file being appended to is mapped again as it grows. The previous mapping is forced and
+         // released first: no buffer over it outlives the mapping lock
+         if (segment != null)
+         {
+            if (dirtySegments[index])
+            {
+               segment.force();
+               dirtySegments[index] = false;
+            }
+
+            unmap(segment);
+         }
+
+         long start = (long)index * segmentSize;
+
+         long mappedLength = Math.min(segmentSize, mappableSize - start);
+
+         segment = channel.map(FileChannel.MapMode.READ_WRITE, start, mappedLength);
+
+         segments[index] = segment;
+      }
+
+      return segment;
+   }
+
+   /**
+    * The caller holds the mapping lock, and no write is pending on the segments.
+    */
+   private void unmapSegments()
+   {
+      if (segments == null)
+      {
+         return;
+      }
+
+      for (int i = 0; i < segments.length; i++)
+      {
+         if (segments[i] != null)
+         {
+            unmap(segments[i]);
+            segments[i] = null;
+         }
+      }
+
+      segments = new MappedByteBuffer[0];
+      dirtySegments = new boolean[0];
+   }
+
+   /**
+    * There is no public API to release a mapping before the buffer is collected, which would keep
+    * the address space of every closed journal file taken until a full GC.
+    */
+   private static void unmap(final MappedByteBuffer buffer)
+   {
+      DirectBufferPool.clean(buffer);
+   }
+}
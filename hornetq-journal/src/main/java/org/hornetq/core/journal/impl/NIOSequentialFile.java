@@ -117,18 +117,18 @@ public class NIOSequentialFile extends AbstractSequentialFile
 
    public void fill(final int position, final int size, final byte fillCharacter) throws Exception
    {
-      ByteBuffer bb = ByteBuffer.allocate(size);
+      ByteBuffer bb = newFilledBuffer(size, fillCharacter);
 
-      for (int i = 0; i < size; i++)
+      try
       {
-         bb.put(fillCharacter);
-      }
-
-      bb.flip();
+         channel.position(position);
 
-      channel.position(position);
-
-      channel.write(bb);
+         channel.write(bb);
+      }
+      finally
+      {
+         factory.releaseBuffer(bb);
+      }
 
       channel.force(false);
 
@@ -368,7 +368,14 @@ public class NIOSequentialFile extends AbstractSequentialFile
     */
    private void doInternalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException
    {
-      channel.write(bytes);
+      try
+      {
+         channel.write(bytes);
+      }
+      finally
+      {
+         factory.releaseBuffer(bytes);
+      }
 
       if (sync)
       {
@@ -13,7 +13,6 @@
 
 package org.hornetq.core.journal.impl;
 
-import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 
 import org.hornetq.core.journal.IOCriticalErrorListener;
@@ -100,45 +99,12 @@ public class NIOSequentialFileFactory extends AbstractSequentialFileFactory
    public ByteBuffer allocateDirectBuffer(final int size)
    {
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
-      ByteBuffer buffer2 = null;
-      try
-      {
-         buffer2 = ByteBuffer.allocateDirect(size);
-      }
-      catch (OutOfMemoryError error)
-      {
-         // This is a workaround for the way the JDK will deal with native buffers.
-         // the main portion is outside of the VM heap
-         // and the JDK will not have any reference about it to take GC into account
-         // so we force a GC and try again.
-         WeakReference<Object> obj = new WeakReference<Object>(new Object());
-         try
-         {
-            long timeout = System.currentTimeMillis() + 5000;
-            while (System.currentTimeMillis() > timeout && obj.get() != null)
-            {
-               System.gc();
-               Thread.sleep(100);
-            }
-         }
-         catch (InterruptedException e)
-         {
-         }
-
-         buffer2 = ByteBuffer.allocateDirect(size);
-
-      }
-      return buffer2;
-   }
-
-   public void releaseDirectBuffer(ByteBuffer buffer)
-   {
-      // nothing we can do on this case. we can just have good faith on GC
+      return getBufferPool().acquire(size);
    }
 
-   public ByteBuffer newBuffer(final int size)
+   public void releaseDirectBuffer(final ByteBuffer buffer)
    {
-      return ByteBuffer.allocate(size);
+      getBufferPool().release(buffer);
    }
 
    public void clearBuffer(final ByteBuffer buffer)
@@ -21,6 +21,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -43,6 +44,12 @@ public class TimedBuffer
    // The number of tries on sleep before switching to spin
    public static final int MAX_CHECKS_ON_SLEEP = 20;
 
+   // The adaptive window never goes over this many timeouts, however slow the syncs are
+   public static final int MAX_ADAPTIVE_TIMEOUTS = 10;
+
+   // Bucket i of the histograms counts the values in [2^i, 2^(i+1))
+   public static final int HISTOGRAM_BUCKETS = 32;
+
    // Attributes ----------------------------------------------------
 
    private TimedBufferObserver bufferObserver;
@@ -76,6 +83,13 @@ public class TimedBuffer
    // can get in an inconsistent state
    private boolean delayFlush;
 
+   // the writes whose space is reserved in the buffer but which are not encoded yet,
+   // the buffer is not flushed until they are all released
+   private int pendingReservations;
+
+   // a sync asked for the buffer to be flushed straight away while writes were still being encoded
+   private boolean flushOnRelease;
+
    // for logging write rates
 
    private final boolean logRates;
@@ -93,6 +107,29 @@ public class TimedBuffer
    // no need to be volatile as every access is synchronized
    private boolean spinning = false;
 
+   // adaptive flushing: the window a sync request may wait for others to join its flush is sized
+   // from the time syncs take and the time between sync requests
+
+   private volatile boolean adaptive;
+
+   private long lastSyncRequest;
+
+   // average time between sync requests, in nanoseconds
+   private long syncRequestInterval;
+
+   // average time from a sync flush to its completion, in nanoseconds
+   private volatile long syncLatency;
+
+   private long firstPendingSync;
+
+   private volatile long flushWindow;
+
+   // the number of records on each flush
+   private final AtomicLongArray batchSizes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+   // the time from a sync flush to its completion, in microseconds
+   private final AtomicLongArray flushLatencies = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -133,6 +170,54 @@ public class TimedBuffer
       this.useSleep = useSleep;
    }
 
+   public boolean isAdaptive()
+   {
+      return adaptive;
+   }
+
+   /**
+    * When adaptive, the timeout is no longer the time a sync waits for other records to be added
+    * before it is flushed. That window is sized on the fly from the measured sync latency and the
+    * rate of sync requests:
+    * <ul>
+    * <li>if another sync request is not expected before a sync would complete, as with a single
+    * sender waiting on each send, the buffer is flushed straight away</li>
+    * <li>otherwise the sync waits up to the sync latency, bounded by {@link #MAX_ADAPTIVE_TIMEOUTS}
+    * timeouts</li>
+    * </ul>
+    */
+   public void setAdaptive(final boolean adaptive)
+   {
+      this.adaptive = adaptive;
+   }
+
+   /**
+    * @return the time, in nanoseconds, a sync may currently wait for other records before being
+    *         flushed
+    */
+   public long getFlushWindow()
+   {
+      return adaptive ? flushWindow : timeout;
+   }
+
+   /**
+    * @return the number of flushes by number of records, bucket i counting the flushes of
+    *         [2^i, 2^(i+1)) records
+    */
+   public long[] getBatchSizeHistogram()
+   {
+      return toArray(batchSizes);
+   }
+
+   /**
+    * @return the number of sync flushes by time to complete, bucket i counting the flushes done in
+    *         [2^i, 2^(i+1)) microseconds. Only the flushes done while adaptive are counted
+    */
+   public long[] getFlushLatencyHistogram()
+   {
+      return toArray(flushLatencies);
+   }
+
    public synchronized void start()
    {
       if (started)
@@ -283,11 +368,66 @@ public class TimedBuffer
 
       if (sync)
       {
-         pendingSync = true;
+         addSync();
+      }
 
-         startSpin();
+   }
+
+   /**
+    * Reserves the space of a write of the given size, checked through {@link #checkSize(int)},
+    * without encoding it. The caller encodes the write into the returned buffer and then calls
+    * {@link #release()}, the buffer is not flushed until every reserved write is released. Writes
+    * are flushed in the order their space is reserved, whatever the order they are encoded in.
+    *
+    * @return the reserved space, with its writer index at its start
+    */
+   public synchronized HornetQBuffer reserve(final int size, final boolean sync, final IOAsyncTask callback)
+   {
+      if (!started)
+      {
+         throw new IllegalStateException("TimedBuffer is not started");
+      }
+
+      delayFlush = false;
+
+      int position = buffer.writerIndex();
+
+      buffer.writerIndex(position + size);
+
+      HornetQBuffer reserved = buffer.slice(position, size);
+
+      reserved.clear();
+
+      pendingReservations++;
+
+      callbacks.add(callback);
+
+      if (sync)
+      {
+         addSync();
       }
 
+      return reserved;
+   }
+
+   /**
+    * Releases a write reserved by {@link #reserve(int, boolean, IOAsyncTask)} once it is encoded.
+    */
+   public synchronized void release()
+   {
+      pendingReservations--;
+
+      if (pendingReservations == 0)
+      {
+         notifyAll();
+
+         if (flushOnRelease)
+         {
+            flushOnRelease = false;
+
+            flush();
+         }
+      }
    }
 
    public void flush()
@@ -308,6 +448,18 @@ public class TimedBuffer
             throw new IllegalStateException("TimedBuffer is not started");
          }
 
+         while (pendingReservations > 0)
+         {
+            try
+            {
+               wait();
+            }
+            catch (InterruptedException e)
+            {
+               throw new HornetQInterruptedException(e);
+            }
+         }
+
          if ((force || !delayFlush) && buffer.writerIndex() > 0)
          {
             int pos = buffer.writerIndex();
@@ -325,6 +477,14 @@ public class TimedBuffer
 
             bufferToFlush.put(buffer.toByteBuffer().array(), 0, pos);
 
+            batchSizes.incrementAndGet(bucket(callbacks.size()));
+
+            // the latencies are only measured for the adaptive window
+            if (pendingSync && adaptive)
+            {
+               callbacks.add(new SyncLatencyCallback());
+            }
+
             bufferObserver.flushBuffer(bufferToFlush, pendingSync, callbacks);
 
             stopSpin();
@@ -349,8 +509,119 @@ public class TimedBuffer
 
    // Private -------------------------------------------------------
 
+   private void addSync()
+   {
+      boolean firstSync = !pendingSync;
+
+      pendingSync = true;
+
+      if (adaptive && syncRequested(firstSync))
+      {
+         if (pendingReservations > 0)
+         {
+            // flushed by the last release, this thread may be the one holding a reservation
+            flushOnRelease = true;
+         }
+         else
+         {
+            flush();
+         }
+      }
+      else
+      {
+         startSpin();
+      }
+   }
+
+   /**
+    * Accounts for a sync request and sizes the flush window again.
+    *
+    * @return whether the buffer should be flushed right away
+    */
+   private boolean syncRequested(final boolean firstSync)
+   {
+      long now = System.nanoTime();
+
+      if (lastSyncRequest != 0)
+      {
+         long interval = now - lastSyncRequest;
+
+         syncRequestInterval = syncRequestInterval == 0 ? interval
+                                                        : syncRequestInterval + (interval - syncRequestInterval) / 8;
+      }
+
+      lastSyncRequest = now;
+
+      if (firstSync)
+      {
+         firstPendingSync = now;
+      }
+
+      long latency = syncLatency;
+
+      if (latency == 0 || syncRequestInterval == 0 || syncRequestInterval >= latency)
+      {
+         // nobody else is expected to join the flush before this sync would be done
+         flushWindow = 0;
+
+         return true;
+      }
+
+      flushWindow = Math.min(latency, (long)timeout * MAX_ADAPTIVE_TIMEOUTS);
+
+      return now - firstPendingSync >= flushWindow;
+   }
+
+   private synchronized long getFlushDeadline()
+   {
+      return firstPendingSync + flushWindow;
+   }
+
+   private void syncDone(final long latency)
+   {
+      flushLatencies.incrementAndGet(bucket(latency / 1000));
+
+      // the completions come in order from a single thread, so there are no concurrent updates
+      long current = syncLatency;
+
+      syncLatency = current == 0 ? latency : current + (latency - current) / 8;
+   }
+
+   private static int bucket(final long value)
+   {
+      int bucket = 63 - Long.numberOfLeadingZeros(Math.max(value, 1));
+
+      return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+   }
+
+   private static long[] toArray(final AtomicLongArray histogram)
+   {
+      long[] values = new long[histogram.length()];
+
+      for (int i = 0; i < values.length; i++)
+      {
+         values[i] = histogram.get(i);
+      }
+
+      return values;
+   }
+
    // Inner classes -------------------------------------------------
 
+   private final class SyncLatencyCallback implements IOAsyncTask
+   {
+      private final long flushTime = System.nanoTime();
+
+      public void done()
+      {
+         syncDone(System.nanoTime() - flushTime);
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
@@ -421,7 +692,14 @@ public class TimedBuffer
 
             if (pendingSync)
             {
-               if (isUseSleep())
+               if (adaptive)
+               {
+                  if (bufferObserver != null && System.nanoTime() >= getFlushDeadline())
+                  {
+                     flush();
+                  }
+               }
+               else if (isUseSleep())
                {
                   // if using sleep, we will always flush
                   flush();
@@ -437,7 +715,14 @@ public class TimedBuffer
 
             }
 
-            sleepIfPossible();
+            if (adaptive)
+            {
+               sleepUntilDeadline();
+            }
+            else
+            {
+               sleepIfPossible();
+            }
 
             try
             {
@@ -504,6 +789,32 @@ public class TimedBuffer
          }
       }
 
+      /**
+       * Sleeps until the pending syncs are due, and no longer than a timeout so a change of the
+       * window is seen.
+       */
+      private void sleepUntilDeadline()
+      {
+         if (!isUseSleep() || !pendingSync)
+         {
+            return;
+         }
+
+         long remaining = Math.min(getFlushDeadline() - System.nanoTime(), timeout);
+
+         if (remaining > 0)
+         {
+            try
+            {
+               sleep((int)(remaining / 1000000), (int)(remaining % 1000000));
+            }
+            catch (InterruptedException e)
+            {
+               throw new HornetQInterruptedException(e);
+            }
+         }
+      }
+
       public void close()
       {
          closed = true;
@@ -15,6 +15,7 @@ package org.hornetq.core.journal.impl.dataformat;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.SequentialFile;
 
 /**
  * A InternalEncoder
@@ -30,6 +31,11 @@ public abstract class JournalInternalRecord implements EncodingSupport
 
    protected byte compactCount;
 
+   // the file and the space in its buffer the record is encoded into once the append lock is released
+   private SequentialFile reservedFile;
+
+   private HornetQBuffer reserved;
+
    public int getFileID()
    {
       return fileID;
@@ -71,4 +77,37 @@ public abstract class JournalInternalRecord implements EncodingSupport
    }
 
    public abstract int getEncodeSize();
+
+   /**
+    * Keeps the space reserved for the record in the buffer of file by
+    * {@link SequentialFile#reserve(int, boolean, org.hornetq.core.journal.IOAsyncTask)}.
+    */
+   public void setReserved(final SequentialFile file, final HornetQBuffer reserved)
+   {
+      reservedFile = file;
+
+      this.reserved = reserved;
+   }
+
+   /**
+    * Encodes the record into the space reserved for it, if any, and releases that space.
+    */
+   public void encodeReserved()
+   {
+      if (reserved != null)
+      {
+         try
+         {
+            encode(reserved);
+         }
+         finally
+         {
+            reservedFile.release();
+
+            reservedFile = null;
+
+            reserved = null;
+         }
+      }
+   }
 }
@@ -253,6 +253,10 @@ public interface HornetQJournalLogger extends BasicLogger
    @Message(id = 142034, value = "Exception on submitting write", format = Message.Format.MESSAGE_FORMAT)
    void errorSubmittingWrite(@Cause Throwable e);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142036, value = "{0} direct buffers holding {1} bytes were not released when the buffer pool was stopped, enable trace logging to see where they were acquired", format = Message.Format.MESSAGE_FORMAT)
+   void buffersNotReleased(Integer buffers, Long bytes);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 144000, value = "Failed to delete file {0}", format = Message.Format.MESSAGE_FORMAT)
    void errorDeletingFile(Object e);
@@ -599,6 +599,58 @@ public interface Configuration extends Serializable
     */
    void setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns whether journal records are encoded by the producing threads once their space is claimed in the journal
+    * buffer, after the journal's append lock is released.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_PARALLEL_ENCODING}.
+    */
+   boolean isJournalParallelEncoding();
+
+   /**
+    * Sets whether journal records are encoded by the producing threads once their space is claimed in the journal
+    * buffer, after the journal's append lock is released.
+    */
+   void setJournalParallelEncoding(boolean parallelEncoding);
+
+   /**
+    * Returns the number of threads reading the journal files when the journal is loaded.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of threads reading the journal files when the journal is loaded.
+    */
+   void setJournalLoadThreads(int loadThreads);
+
+   /**
+    * Returns the number of oldest data files compacted at a time, {@code 0} to compact the whole
+    * journal.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_FILES}.
+    */
+   int getJournalCompactMaxFiles();
+
+   /**
+    * Sets the number of oldest data files compacted at a time.
+    */
+   void setJournalCompactMaxFiles(int maxFiles);
+
+   /**
+    * Returns whether the time a sync waits for other records before the journal buffer is flushed
+    * is sized from the measured sync latency and sync rate, instead of being the buffer timeout.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_ADAPTIVE}.
+    */
+   boolean isJournalBufferAdaptive();
+
+   /**
+    * Sets whether the flushes of the journal buffer adapt to the sync latency and sync rate.
+    */
+   void setJournalBufferAdaptive(boolean adaptive);
+
    /**
     * Returns the number of journal files to pre-create.
     * <br>
@@ -142,6 +142,14 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalCompactPercentage = HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_PERCENTAGE;
 
+   protected boolean journalParallelEncoding = HornetQDefaultConfiguration.DEFAULT_JOURNAL_PARALLEL_ENCODING;
+
+   protected int journalLoadThreads = HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOAD_THREADS;
+
+   protected int journalCompactMaxFiles = HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_MAX_FILES;
+
+   protected boolean journalBufferAdaptive = HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_ADAPTIVE;
+
    protected int journalFileSize = HornetQDefaultConfiguration.DEFAULT_JOURNAL_FILE_SIZE;
 
    protected int journalMinFiles = HornetQDefaultConfiguration.DEFAULT_JOURNAL_MIN_FILES;
@@ -821,6 +829,46 @@ public class ConfigurationImpl implements Configuration
       journalCompactPercentage = percentage;
    }
 
+   public boolean isJournalParallelEncoding()
+   {
+      return journalParallelEncoding;
+   }
+
+   public void setJournalParallelEncoding(final boolean parallelEncoding)
+   {
+      journalParallelEncoding = parallelEncoding;
+   }
+
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int loadThreads)
+   {
+      journalLoadThreads = loadThreads;
+   }
+
+   public int getJournalCompactMaxFiles()
+   {
+      return journalCompactMaxFiles;
+   }
+
+   public void setJournalCompactMaxFiles(final int maxFiles)
+   {
+      journalCompactMaxFiles = maxFiles;
+   }
+
+   public boolean isJournalBufferAdaptive()
+   {
+      return journalBufferAdaptive;
+   }
+
+   public void setJournalBufferAdaptive(final boolean adaptive)
+   {
+      journalBufferAdaptive = adaptive;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -1077,6 +1125,10 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + journalBufferTimeout_NIO;
       result = prime * result + journalCompactMinFiles;
       result = prime * result + journalCompactPercentage;
+      result = prime * result + (journalParallelEncoding ? 1231 : 1237);
+      result = prime * result + journalLoadThreads;
+      result = prime * result + journalCompactMaxFiles;
+      result = prime * result + (journalBufferAdaptive ? 1231 : 1237);
       result = prime * result + ((journalDirectory == null) ? 0 : journalDirectory.hashCode());
       result = prime * result + journalFileSize;
       result = prime * result + journalMaxIO_AIO;
@@ -1279,6 +1331,14 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (journalCompactPercentage != other.journalCompactPercentage)
          return false;
+      if (journalParallelEncoding != other.journalParallelEncoding)
+         return false;
+      if (journalLoadThreads != other.journalLoadThreads)
+         return false;
+      if (journalCompactMaxFiles != other.journalCompactMaxFiles)
+         return false;
+      if (journalBufferAdaptive != other.journalBufferAdaptive)
+         return false;
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
@@ -125,6 +125,8 @@ public final class FileConfigurationParser
 
    private static final String PAGE_MAX_CACHE_SIZE_NODE_NAME = "page-max-cache-size";
 
+   private static final String PAGE_MAX_CACHE_BYTES_NODE_NAME = "page-max-cache-bytes";
+
    private static final String MESSAGE_COUNTER_HISTORY_DAY_LIMIT_NODE_NAME = "message-counter-history-day-limit";
 
    private static final String LVQ_NODE_NAME = "last-value-queue";
@@ -133,6 +135,16 @@ public final class FileConfigurationParser
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
 
+   private static final String FILTER_INDEX_NODE_NAME = "filter-index";
+
+   private static final String FINE_GRAINED_LOCKING_NODE_NAME = "fine-grained-locking";
+
+   private static final String OFF_HEAP_THRESHOLD_NODE_NAME = "off-heap-threshold";
+
+   private static final String BODY_COMPRESSION_CODEC_NODE_NAME = "body-compression-codec";
+
+   private static final String MIN_BODY_COMPRESSION_SIZE_NODE_NAME = "min-body-compression-size";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -507,6 +519,10 @@ public final class FileConfigurationParser
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -589,6 +605,24 @@ public final class FileConfigurationParser
                                                                          config.getJournalCompactPercentage(),
                                                                          Validators.PERCENTAGE));
 
+      config.setJournalParallelEncoding(XMLConfigurationUtil.getBoolean(e,
+                                                                        "journal-parallel-encoding",
+                                                                        config.isJournalParallelEncoding()));
+
+      config.setJournalLoadThreads(XMLConfigurationUtil.getInteger(e,
+                                                                   "journal-load-threads",
+                                                                   config.getJournalLoadThreads(),
+                                                                   Validators.GT_ZERO));
+
+      config.setJournalCompactMaxFiles(XMLConfigurationUtil.getInteger(e,
+                                                                       "journal-compact-max-files",
+                                                                       config.getJournalCompactMaxFiles(),
+                                                                       Validators.GE_ZERO));
+
+      config.setJournalBufferAdaptive(XMLConfigurationUtil.getBoolean(e,
+                                                                      "journal-buffer-adaptive",
+                                                                      config.isJournalBufferAdaptive()));
+
       config.setLogJournalWriteRate(XMLConfigurationUtil.getBoolean(e,
                                                                     "log-journal-write-rate",
                                                                     HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOG_WRITE_RATE));
@@ -864,6 +898,10 @@ public final class FileConfigurationParser
          {
             addressSettings.setPageCacheMaxSize(Integer.valueOf(child.getTextContent()));
          }
+         else if (FileConfigurationParser.PAGE_MAX_CACHE_BYTES_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageCacheMaxBytes(Long.valueOf(child.getTextContent().trim()));
+         }
          else if (FileConfigurationParser.MESSAGE_COUNTER_HISTORY_DAY_LIMIT_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
          {
             addressSettings.setMessageCounterHistoryDayLimit(Integer.valueOf(child.getTextContent()));
@@ -908,6 +946,26 @@ public final class FileConfigurationParser
          {
             addressSettings.setSendToDLAOnNoRoute(Boolean.valueOf(child.getTextContent().trim()));
          }
+         else if (FileConfigurationParser.FILTER_INDEX_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setFilterIndex(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.FINE_GRAINED_LOCKING_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setFineGrainedLocking(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.OFF_HEAP_THRESHOLD_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setOffHeapThreshold(Integer.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.BODY_COMPRESSION_CODEC_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setBodyCompressionCodec(child.getTextContent().trim());
+         }
+         else if (FileConfigurationParser.MIN_BODY_COMPRESSION_SIZE_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setMinBodyCompressionSize(Integer.valueOf(child.getTextContent().trim()));
+         }
       }
       return setting;
    }
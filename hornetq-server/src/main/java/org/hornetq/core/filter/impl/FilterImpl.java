@@ -16,7 +16,6 @@ package org.hornetq.core.filter.impl;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.hornetq.api.core.FilterConstants;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
@@ -62,11 +61,8 @@ public class FilterImpl implements Filter
 
    private final SimpleString sfilterString;
 
-   private final Map<SimpleString, Identifier> identifiers = new HashMap<SimpleString, Identifier>();
-
-   private final Object result;
-
-   private final Class<? extends Object> resultType;
+   /** immutable, so a single instance can be shared by every consumer, divert and binding using this filter */
+   private final FilterExpression expression;
 
    // Static ---------------------------------------------------------
 
@@ -103,9 +99,9 @@ public class FilterImpl implements Filter
 
       try
       {
-         result = new FilterParser().parse(sfilterString, identifiers);
+         Map<SimpleString, Identifier> identifiers = new HashMap<SimpleString, Identifier>();
 
-         resultType = result.getClass();
+         expression = FilterExpression.compile(new FilterParser().parse(sfilterString, identifiers));
       }
       catch (Throwable e)
       {
@@ -122,44 +118,11 @@ public class FilterImpl implements Filter
       return sfilterString;
    }
 
-   public synchronized boolean match(final ServerMessage message)
+   public boolean match(final ServerMessage message)
    {
       try
       {
-         // Set the identifiers values
-
-         for (Identifier id : identifiers.values())
-         {
-            Object val = null;
-
-            if (id.getName().startsWith(FilterConstants.HORNETQ_PREFIX))
-            {
-               // Look it up as header fields
-               val = getHeaderFieldValue(message, id.getName());
-            }
-
-            if (val == null)
-            {
-               val = message.getObjectProperty(id.getName());
-            }
-
-            id.setValue(val);
-
-         }
-
-         if (resultType.equals(Identifier.class))
-         {
-            return (Boolean)((Identifier)result).getValue();
-         }
-         else if (resultType.equals(Operator.class))
-         {
-            Operator op = (Operator)result;
-            return (Boolean)op.apply();
-         }
-         else
-         {
-            throw new Exception("Bad object type: " + result);
-         }
+         return expression.matches(message);
       }
       catch (Exception e)
       {
@@ -169,6 +132,16 @@ public class FilterImpl implements Filter
       }
    }
 
+   // Public -------------------------------------------------------------------------------------
+
+   /**
+    * @see FilterExpression#getEquality()
+    */
+   public FilterExpression.Equality getEquality()
+   {
+      return expression.getEquality();
+   }
+
    @Override
    public int hashCode()
    {
@@ -203,39 +176,4 @@ public class FilterImpl implements Filter
    {
       return "FilterImpl [sfilterString=" + sfilterString + "]";
    }
-
-   // Private --------------------------------------------------------------------------
-
-   private Object getHeaderFieldValue(final ServerMessage msg, final SimpleString fieldName)
-   {
-      if (FilterConstants.HORNETQ_USERID.equals(fieldName))
-      {
-         // It's the stringified (hex) representation of a user id that can be used in a selector expression
-         return new SimpleString("ID:" + msg.getUserID());
-      }
-      else if (FilterConstants.HORNETQ_PRIORITY.equals(fieldName))
-      {
-         return Integer.valueOf(msg.getPriority());
-      }
-      else if (FilterConstants.HORNETQ_TIMESTAMP.equals(fieldName))
-      {
-         return msg.getTimestamp();
-      }
-      else if (FilterConstants.HORNETQ_DURABLE.equals(fieldName))
-      {
-         return msg.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
-      }
-      else if (FilterConstants.HORNETQ_EXPIRATION.equals(fieldName))
-      {
-         return msg.getExpiration();
-      }
-      else if (FilterConstants.HORNETQ_SIZE.equals(fieldName))
-      {
-         return msg.getEncodeSize();
-      }
-      else
-      {
-         return null;
-      }
-   }
 }
@@ -47,11 +47,14 @@ import org.hornetq.api.core.management.QueueControl;
 import org.hornetq.core.config.BridgeConfiguration;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
+import org.hornetq.core.journal.impl.DirectBufferPool;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.messagecounter.MessageCounterManager;
 import org.hornetq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.persistence.config.PersistedAddressSetting;
 import org.hornetq.core.persistence.config.PersistedRoles;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.remoting.server.RemotingService;
 import org.hornetq.core.security.CheckType;
@@ -275,6 +278,87 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getJournalBufferFlushWindow()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalBuffer();
+
+         return buffer == null ? 0 : buffer.getFlushWindow();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public String listJournalBufferBatchSizesAsJSON() throws Exception
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalBuffer();
+
+         return histogramToJSON(buffer == null ? new long[0] : buffer.getBatchSizeHistogram());
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public String listJournalBufferSyncLatenciesAsJSON() throws Exception
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalBuffer();
+
+         return histogramToJSON(buffer == null ? new long[0] : buffer.getFlushLatencyHistogram());
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public String listDirectBufferPoolStatisticsAsJSON() throws Exception
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JSONObject statistics = new JSONObject();
+
+         DirectBufferPool pool = storageManager.getBufferPool();
+
+         if (pool != null)
+         {
+            statistics.put("allocations", pool.getAllocationCount());
+            statistics.put("allocatedBytes", pool.getAllocatedBytes());
+            statistics.put("reuses", pool.getReuseCount());
+            statistics.put("frees", pool.getFreeCount());
+            statistics.put("acquired", pool.getAcquiredCount());
+            statistics.put("acquiredBytes", pool.getAcquiredBytes());
+            statistics.put("pooledBytes", pool.getPooledBytes());
+         }
+
+         return statistics.toString();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public void setFailoverOnServerShutdown(boolean failoverOnServerShutdown)
    {
       checkStarted();
@@ -1995,5 +2079,36 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       return list;
    }
 
+   private TimedBuffer getJournalBuffer()
+   {
+      if (storageManager instanceof JournalStorageManager)
+      {
+         return ((JournalStorageManager)storageManager).getMessageJournalBuffer();
+      }
+      return null;
+   }
+
+   /**
+    * Bucket i of the histogram counts the values in [2^i, 2^(i+1)), only the buckets with a count
+    * are listed.
+    */
+   private static String histogramToJSON(final long[] histogram) throws Exception
+   {
+      JSONArray array = new JSONArray();
+
+      for (int i = 0; i < histogram.length; i++)
+      {
+         if (histogram[i] > 0)
+         {
+            JSONObject bucket = new JSONObject();
+            bucket.put("min", i == 0 ? 0 : 1L << i);
+            bucket.put("max", (1L << i + 1) - 1);
+            bucket.put("count", histogram[i]);
+            array.put(bucket);
+         }
+      }
+
+      return array.toString();
+   }
 }
 
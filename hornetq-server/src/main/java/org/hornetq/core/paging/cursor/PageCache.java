@@ -14,7 +14,6 @@
 package org.hornetq.core.paging.cursor;
 
 import org.hornetq.core.paging.PagedMessage;
-import org.hornetq.utils.SoftValueHashMap;
 
 /**
  * A PageCache
@@ -23,12 +22,17 @@ import org.hornetq.utils.SoftValueHashMap;
  *
  *
  */
-public interface PageCache extends SoftValueHashMap.ValueCache
+public interface PageCache
 {
    long getPageId();
 
    int getNumberOfMessages();
 
+   /**
+    * @return the memory in bytes taken by the messages decoded so far
+    */
+   long getSize();
+
    void setMessages(PagedMessage[] messages);
 
    PagedMessage[] getMessages();
@@ -62,6 +62,32 @@ public interface PageCursorProvider
 
    void setCacheMaxSize(int size);
 
+   /**
+    * @param bytes the most memory in bytes the decoded messages on the cache may take, -1 for no
+    *           limit
+    */
+   void setCacheMaxBytes(long bytes);
+
+   /**
+    * @return how many times a page was found on the cache
+    */
+   long getCacheHits();
+
+   /**
+    * @return how many times a page had to be read because it wasn't on the cache
+    */
+   long getCacheMisses();
+
+   /**
+    * @return how many pages were dropped from the cache to keep it within its bounds
+    */
+   long getCacheEvictions();
+
+   /**
+    * @return the memory in bytes taken by the decoded messages on the cache
+    */
+   long getCacheSizeBytes();
+
    /**
     * @param pageCursorImpl
     */
@@ -36,6 +36,9 @@ public class LivePageCacheImpl implements LivePageCache
 
    private boolean isLive = true;
 
+   /** the memory estimate of the messages */
+   private long size;
+
    public LivePageCacheImpl(final Page page)
    {
       this.page = page;
@@ -53,6 +56,12 @@ public class LivePageCacheImpl implements LivePageCache
       return messages.size();
    }
 
+   @Override
+   public synchronized long getSize()
+   {
+      return size;
+   }
+
    @Override
    public synchronized void setMessages(PagedMessage[] messages)
    {
@@ -102,6 +111,7 @@ public class LivePageCacheImpl implements LivePageCache
          ((LargeServerMessage)message.getMessage()).incrementDelayDeletionCount();
       }
       this.messages.add(message);
+      this.size += message.getMessage().getMemoryEstimate();
    }
 
    @Override
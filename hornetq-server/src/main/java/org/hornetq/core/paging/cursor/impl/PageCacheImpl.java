@@ -13,15 +13,26 @@
 
 package org.hornetq.core.paging.cursor.impl;
 
+import java.util.BitSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.PageCache;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.utils.DataConstants;
 
 /**
  * The caching associated to a single page.
+ * <p>
+ * The cache is built from the index of the page, and messages are only decoded from the file
+ * when they are first asked for, a read at a time. The page keeps its file open and its read
+ * buffer between the reads, until every message was decoded or the cache is closed.
+ * <p>
+ * The size of the cache is the memory taken by the index and the messages decoded so far, so it
+ * grows as the cursors read the page.
  *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
@@ -38,15 +49,33 @@ class PageCacheImpl implements PageCache
 
    private PagedMessage[] messages;
 
+   /**
+    * The file position of every message, or null once all of them were decoded
+    */
+   private int[] index;
+
+   /** the messages not decoded yet */
+   private int remaining;
+
+   private volatile boolean closed;
+
+   /** the messages already counted in the size */
+   private BitSet counted;
+
+   private volatile long size;
+
    private final Page page;
 
+   private final StorageManager storageManager;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
 
-   public PageCacheImpl(final Page page)
+   public PageCacheImpl(final Page page, final StorageManager storageManager)
    {
       this.page = page;
+      this.storageManager = storageManager;
    }
 
    // Public --------------------------------------------------------
@@ -57,19 +86,34 @@ class PageCacheImpl implements PageCache
       lock.readLock().lock();
       try
       {
-         if (messageNumber < messages.length)
+         if (messageNumber >= messages.length)
          {
-            return messages[messageNumber];
+            return null;
          }
-         else
+         else if (messages[messageNumber] != null)
          {
-            return null;
+            return messages[messageNumber];
          }
       }
       finally
       {
          lock.readLock().unlock();
       }
+
+      lock.writeLock().lock();
+      try
+      {
+         if (messages[messageNumber] == null)
+         {
+            readMessages(messageNumber);
+         }
+
+         return messages[messageNumber];
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
    }
 
    public long getPageId()
@@ -90,6 +134,34 @@ class PageCacheImpl implements PageCache
    public void setMessages(final PagedMessage[] messages)
    {
       this.messages = messages;
+      this.index = null;
+
+      long newSize = (long)messages.length * DataConstants.SIZE_LONG;
+
+      for (PagedMessage message : messages)
+      {
+         newSize += message.getMessage().getMemoryEstimate();
+      }
+
+      this.size = newSize;
+   }
+
+   /**
+    * @param index the file position of every message on the page, as read by
+    *           {@link Page#readIndex(StorageManager)}
+    */
+   public void setIndex(final int[] index)
+   {
+      this.messages = new PagedMessage[index.length];
+      this.index = index;
+      this.remaining = index.length;
+      this.counted = new BitSet(index.length);
+      this.size = (long)index.length * (DataConstants.SIZE_INT + DataConstants.SIZE_LONG);
+   }
+
+   public long getSize()
+   {
+      return size;
    }
 
    public int getNumberOfMessages()
@@ -107,6 +179,9 @@ class PageCacheImpl implements PageCache
 
    public void close()
    {
+      closed = true;
+
+      closeReader();
    }
 
    @Override
@@ -124,6 +199,101 @@ class PageCacheImpl implements PageCache
    @Override
    public PagedMessage[] getMessages()
    {
-      return messages;
+      lock.writeLock().lock();
+      try
+      {
+         for (int i = 0; index != null && i < messages.length; i++)
+         {
+            if (messages[i] == null)
+            {
+               readMessages(i);
+            }
+         }
+
+         return messages;
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private void closeReader()
+   {
+      try
+      {
+         page.closeReader();
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.pageReaderCloseError(e, page.getPageId());
+      }
+   }
+
+   /**
+    * Adds the messages a read decoded to the size, they are the first ones from messageNumber not
+    * counted yet.
+    */
+   private void countDecoded(final int messageNumber, final int decoded)
+   {
+      long newSize = size;
+
+      for (int i = messageNumber, found = 0; found < decoded && i < messages.length; i++)
+      {
+         if (messages[i] != null && !counted.get(i))
+         {
+            counted.set(i);
+            newSize += messages[i].getMessage().getMemoryEstimate();
+            found++;
+         }
+      }
+
+      size = newSize;
+   }
+
+   /**
+    * Decodes the given message and the ones after it on the same read, the write lock is held.
+    */
+   private void readMessages(final int messageNumber)
+   {
+      try
+      {
+         storageManager.beforePageRead();
+         try
+         {
+            int decoded = page.read(storageManager, index, messageNumber, messages);
+
+            remaining -= decoded;
+
+            countDecoded(messageNumber, decoded);
+         }
+         finally
+         {
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+
+      if (remaining == 0)
+      {
+         index = null;
+         counted = null;
+      }
+
+      // the cache may have been closed while reading
+      if (remaining == 0 || closed)
+      {
+         closeReader();
+      }
+
+      if (messages[messageNumber] == null)
+      {
+         throw new IllegalStateException("Message " + messageNumber + " couldn't be read from " + page);
+      }
    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.server.HornetQServerLogger;
+
+/**
+ * The page caches of an address, bounded by number of pages and by the memory taken by their
+ * decoded messages.
+ * <p>
+ * When a bound is exceeded the least recently used caches are dropped first. Caches of pages still
+ * being written, and the most recently used cache, are never dropped: the cursors are reading
+ * them. Dropped caches are closed, giving back the file and the buffer of their page reader.
+ * <p>
+ * This class is not thread safe, it is guarded by the {@link PageCursorProviderImpl}.
+ */
+final class PageCacheMap
+{
+   private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   /** in access order, so the first entry is the least recently used one */
+   private final LinkedHashMap<Long, PageCache> caches = new LinkedHashMap<Long, PageCache>(16, 0.75f, true);
+
+   /** the same caches, to look them up without changing the access order */
+   private final Map<Long, PageCache> byPageId = new HashMap<Long, PageCache>();
+
+   private int maxElements;
+
+   private long maxBytes;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   PageCacheMap(final int maxElements, final long maxBytes)
+   {
+      this.maxElements = maxElements;
+      this.maxBytes = maxBytes;
+   }
+
+   void setMaxElements(final int maxElements)
+   {
+      this.maxElements = maxElements;
+      checkCacheSize();
+   }
+
+   void setMaxBytes(final long maxBytes)
+   {
+      this.maxBytes = maxBytes;
+      checkCacheSize();
+   }
+
+   /**
+    * Looks a page up for a cursor, counting the hit or the miss. With a bound in bytes a hit checks
+    * the bounds again, as the caches grow while their messages are decoded.
+    */
+   PageCache get(final long pageId)
+   {
+      PageCache cache = caches.get(pageId);
+
+      if (cache != null)
+      {
+         hits++;
+
+         if (maxBytes >= 0)
+         {
+            checkCacheSize();
+         }
+      }
+      else
+      {
+         misses++;
+      }
+
+      return cache;
+   }
+
+   /**
+    * Looks a page up without counting it as a use.
+    */
+   PageCache peek(final long pageId)
+   {
+      return byPageId.get(pageId);
+   }
+
+   void put(final long pageId, final PageCache cache)
+   {
+      caches.put(pageId, cache);
+      byPageId.put(pageId, cache);
+      checkCacheSize();
+   }
+
+   PageCache remove(final long pageId)
+   {
+      PageCache cache = caches.remove(pageId);
+      byPageId.remove(pageId);
+
+      if (cache != null)
+      {
+         cache.close();
+      }
+
+      return cache;
+   }
+
+   /**
+    * Closes the caches of the pages not being written.
+    */
+   void closeAll()
+   {
+      for (PageCache cache : caches.values())
+      {
+         if (!cache.isLive())
+         {
+            cache.close();
+         }
+      }
+   }
+
+   int size()
+   {
+      return caches.size();
+   }
+
+   /**
+    * @return the memory taken by the messages decoded on the caches
+    */
+   long getSizeBytes()
+   {
+      long size = 0;
+
+      for (PageCache cache : caches.values())
+      {
+         size += cache.getSize();
+      }
+
+      return size;
+   }
+
+   Collection<PageCache> values()
+   {
+      return new ArrayList<PageCache>(caches.values());
+   }
+
+   long getHits()
+   {
+      return hits;
+   }
+
+   long getMisses()
+   {
+      return misses;
+   }
+
+   long getEvictions()
+   {
+      return evictions;
+   }
+
+   /**
+    * Drops the least recently used caches until both bounds are met, the sizes of the caches are
+    * read again every time as live pages keep growing.
+    */
+   void checkCacheSize()
+   {
+      int elements = caches.size();
+
+      long bytes = maxBytes >= 0 ? getSizeBytes() : 0;
+
+      Iterator<PageCache> iterator = caches.values().iterator();
+
+      // the last one is the most recently used
+      for (int i = 0; i < elements - 1 && isOverBounds(elements, bytes); i++)
+      {
+         PageCache cache = iterator.next();
+
+         if (cache.isLive())
+         {
+            continue;
+         }
+
+         iterator.remove();
+         byPageId.remove(cache.getPageId());
+
+         cache.close();
+
+         elements--;
+         bytes -= cache.getSize();
+         evictions++;
+
+         if (isTrace)
+         {
+            HornetQServerLogger.LOGGER.trace("Removing " + cache + " from the page cache");
+         }
+      }
+   }
+
+   private boolean isOverBounds(final int elements, final long bytes)
+   {
+      return maxElements > 0 && elements > maxElements || maxBytes >= 0 && bytes > maxBytes;
+   }
+}
@@ -33,10 +33,10 @@ import org.hornetq.core.paging.cursor.PagedReferenceImpl;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
 /**
  * A PageProviderIMpl
  *
@@ -67,7 +67,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   private final PageCacheMap cacheMap;
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
@@ -79,11 +79,20 @@ public class PageCursorProviderImpl implements PageCursorProvider
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, maxCacheSize, AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES);
+   }
+
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final int maxCacheSize,
+                                 final long maxCacheBytes)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.cacheMap = new PageCacheMap(maxCacheSize, maxCacheBytes);
    }
 
    // Public --------------------------------------------------------
@@ -135,16 +144,16 @@ public class PageCursorProviderImpl implements PageCursorProvider
    {
       try
       {
-         boolean needToRead = false;
+         PageCacheImpl newCache = null;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (cacheMap)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = cacheMap.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -152,8 +161,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
                   return null;
                }
 
-               cache = createPageCache(pageId);
-               needToRead = true;
+               cache = newCache = createPageCache(pageId);
                // anyone reading from this cache will have to wait reading to finish first
                // we also want only one thread reading this cache
                cache.lock();
@@ -161,13 +169,14 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                   HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               cacheMap.put(pageId, cache);
             }
          }
 
-         // Reading is done outside of the synchronized block, however
-         // the page stays locked until the entire reading is finished
-         if (needToRead)
+         // Indexing is done outside of the synchronized block, however
+         // the page stays locked until the entire index is read.
+         // The messages are only decoded as the cursors get to them
+         if (newCache != null)
          {
             Page page = null;
             try
@@ -177,8 +186,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
                storageManager.beforePageRead();
                page.open();
 
-               List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               newCache.setIndex(page.readIndex(storageManager));
             }
             finally
             {
@@ -195,6 +203,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
                storageManager.afterPageRead();
                cache.unlock();
             }
+
+            // the size of the page is only known now
+            synchronized (cacheMap)
+            {
+               cacheMap.checkCacheSize();
+            }
          }
 
          return cache;
@@ -207,22 +221,65 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (cacheMap)
       {
-         softCache.put(cache.getPageId(), cache);
+         cacheMap.put(cache.getPageId(), cache);
       }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      synchronized (cacheMap)
+      {
+         cacheMap.setMaxElements(size);
+      }
+   }
+
+   public void setCacheMaxBytes(final long bytes)
+   {
+      synchronized (cacheMap)
+      {
+         cacheMap.setMaxBytes(bytes);
+      }
+   }
+
+   public long getCacheHits()
+   {
+      synchronized (cacheMap)
+      {
+         return cacheMap.getHits();
+      }
+   }
+
+   public long getCacheMisses()
+   {
+      synchronized (cacheMap)
+      {
+         return cacheMap.getMisses();
+      }
+   }
+
+   public long getCacheEvictions()
+   {
+      synchronized (cacheMap)
+      {
+         return cacheMap.getEvictions();
+      }
+   }
+
+   public long getCacheSizeBytes()
+   {
+      synchronized (cacheMap)
+      {
+         return cacheMap.getSizeBytes();
+      }
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (cacheMap)
       {
-         return softCache.size();
+         return cacheMap.size();
       }
    }
 
@@ -266,6 +323,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
 
       waitForFuture();
+
+      synchronized (cacheMap)
+      {
+         cacheMap.closeAll();
+      }
    }
 
    private void waitForFuture()
@@ -492,9 +554,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (cacheMap)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = cacheMap.peek(depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -538,9 +600,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (cacheMap)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               cacheMap.remove((long)depagedPage.getPageId());
             }
          }
       }
@@ -603,7 +665,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      Collection<PageCache> caches;
+      synchronized (cacheMap)
+      {
+         caches = cacheMap.values();
+      }
+      for (PageCache cache : caches)
       {
          System.out.println("Cache " + cache);
       }
@@ -616,7 +683,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    /* Protected as we may let test cases to instrument the test */
    protected PageCacheImpl createPageCache(final long pageId) throws Exception
    {
-      return new PageCacheImpl(pagingStore.createPage((int)pageId));
+      return new PageCacheImpl(pagingStore.createPage((int)pageId), storageManager);
    }
 
    // Private -------------------------------------------------------
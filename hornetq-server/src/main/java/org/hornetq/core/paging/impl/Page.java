@@ -15,6 +15,7 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -48,6 +49,9 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte)'}';
 
+   /** size of the reads done when streaming through a page file */
+   private static final int READ_BUFFER_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -71,6 +75,14 @@ public final class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   /**
+    * The reader of the lazy reads, kept with its buffer between them until {@link #closeReader()}
+    */
+   private PageReader reader;
+
+   /** whether the file was opened for the lazy reads, and is to be closed with their reader */
+   private boolean readerOpenedFile;
+
    public Page(final SimpleString storeName,
                    final StorageManager storageManager,
                    final SequentialFileFactory factory,
@@ -108,75 +120,166 @@ public final class Page implements Comparable<Page>
 
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
-      size.set((int)file.size());
-      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
-      ByteBuffer directBuffer = storage.allocateDirectBuffer((int)file.size());
+      PageReader reader = new PageReader(storage);
 
       try
       {
+         int position = 0;
+         int messageSize;
 
-         file.position(0);
-         file.read(directBuffer);
+         while ((messageSize = checkRecord(reader, position, messages.size())) >= 0)
+         {
+            messages.add(decodeRecord(storage, reader, position, messageSize));
 
-         directBuffer.rewind();
+            position += messageSize + Page.SIZE_RECORD;
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
 
-         HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
-         fileBuffer.writerIndex(fileBuffer.capacity());
+      numberOfMessages.set(messages.size());
+
+      return messages;
+   }
 
-         while (fileBuffer.readable())
+   /**
+    * Reads where every message of the page starts, without decoding any of them.
+    * <p>
+    * The file is streamed through a buffer of a few KiB instead of being read whole, so indexing a
+    * page costs the same memory whatever its size.
+    * @return the file position of each message, by message number
+    */
+   public synchronized int[] readIndex(StorageManager storage) throws Exception
+   {
+      if (isDebug)
+      {
+         HornetQServerLogger.LOGGER.debug("indexing page " + this.pageId + " on address = " + storeName);
+      }
+
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      int[] index = new int[16];
+      int count = 0;
+
+      PageReader reader = new PageReader(storage);
+
+      try
+      {
+         int position = 0;
+         int messageSize;
+
+         while ((messageSize = checkRecord(reader, position, count)) >= 0)
          {
-            final int position = fileBuffer.readerIndex();
+            if (count == index.length)
+            {
+               index = Arrays.copyOf(index, count * 2);
+            }
 
-            byte byteRead = fileBuffer.readByte();
+            index[count++] = position;
 
-            if (byteRead == Page.START_BYTE)
+            position += messageSize + Page.SIZE_RECORD;
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+
+      numberOfMessages.set(count);
+
+      return Arrays.copyOf(index, count);
+   }
+
+   /**
+    * Decodes the message at {@code messageNumber}, and the ones after it which came with the same
+    * read, into the empty slots of {@code messages}.
+    * <p>
+    * The file is opened for the first read if it isn't open already. It stays open, and the read
+    * buffer stays allocated, for the next reads until {@link #closeReader()} is called.
+    * @param index as returned by {@link #readIndex(StorageManager)}
+    * @return the number of messages decoded
+    */
+   public synchronized int read(StorageManager storage, int[] index, int messageNumber, PagedMessage[] messages) throws Exception
+   {
+      if (reader == null)
+      {
+         if (!file.isOpen())
+         {
+            file.open();
+            readerOpenedFile = true;
+         }
+
+         reader = new PageReader(storage);
+      }
+
+      int decoded = 0;
+
+      try
+      {
+
+         for (int i = messageNumber; i < index.length; i++)
+         {
+            if (i > messageNumber)
             {
-               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
+               int recordSize = i + 1 < index.length ? index[i + 1] - index[i] : DataConstants.SIZE_BYTE + DataConstants.SIZE_INT;
+
+               if (!reader.holds(index[i], recordSize))
                {
-                  int messageSize = fileBuffer.readInt();
-                  int oldPos = fileBuffer.readerIndex();
-                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
-                           fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
-                  {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
-                     byte b = fileBuffer.readByte();
-                     if (b != Page.END_BYTE)
-                     {
-                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
-                        // this
-                        // constraint was already checked
-                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
-                     }
-                     msg.initMessage(storage);
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
-                     }
-                     messages.add(msg);
-                  }
-                  else
-                  {
-                     markFileAsSuspect(file.getFileName(), position, messages.size());
-                     break;
-                  }
+                  // this one would need another read
+                  break;
                }
             }
-            else
+
+            if (messages[i] != null)
+            {
+               continue;
+            }
+
+            int messageSize = checkRecord(reader, index[i], i);
+
+            if (messageSize < 0)
             {
-               markFileAsSuspect(file.getFileName(), position, messages.size());
-               break;
+               throw new IllegalStateException("Message " + i + " is not on " + this + " any more");
             }
+
+            messages[i] = decodeRecord(storage, reader, index[i], messageSize);
+
+            decoded++;
          }
       }
-      finally
+      catch (Exception e)
       {
-         storage.freeDirectBuffer(directBuffer);
+         closeReader();
+
+         throw e;
       }
 
-      numberOfMessages.set(messages.size());
+      return decoded;
+   }
 
-      return messages;
+   /**
+    * Gives back the read buffer of the lazy reads, and closes the file if it was opened for them.
+    */
+   public synchronized void closeReader() throws Exception
+   {
+      if (reader == null)
+      {
+         return;
+      }
+
+      reader.close();
+      reader = null;
+
+      if (readerOpenedFile)
+      {
+         readerOpenedFile = false;
+         file.close();
+      }
    }
 
    public synchronized void write(final PagedMessage message) throws Exception
@@ -202,6 +305,9 @@ public final class Page implements Comparable<Page>
 
       buffer.rewind();
 
+      // the buffer is given back to the factory once written
+      int bufferSize = buffer.limit();
+
       file.writeDirect(buffer, false);
 
       if (pageCache != null)
@@ -210,7 +316,7 @@ public final class Page implements Comparable<Page>
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(bufferSize);
 
       storageManager.pageWrite(message, pageId);
    }
@@ -239,9 +345,15 @@ public final class Page implements Comparable<Page>
       if (pageCache != null)
       {
          pageCache.close();
-         // leave it to the soft cache to decide when to release it now
+         // leave it to the page cache to decide when to release it now
          pageCache = null;
       }
+      if (reader != null)
+      {
+         reader.close();
+         reader = null;
+         readerOpenedFile = false;
+      }
       file.close();
    }
 
@@ -371,8 +483,169 @@ public final class Page implements Comparable<Page>
       suspiciousRecords = true;
    }
 
+   /**
+    * @return the encoded size of the message on the record at the given position, or -1 if there
+    *         are no more valid records
+    */
+   private int checkRecord(final PageReader reader, final int position, final int messageNumber) throws Exception
+   {
+      HornetQBuffer buffer = reader.load(position, DataConstants.SIZE_BYTE);
+
+      if (buffer == null)
+      {
+         return -1;
+      }
+
+      if (buffer.readByte() != Page.START_BYTE)
+      {
+         markFileAsSuspect(file.getFileName(), position, messageNumber);
+         return -1;
+      }
+
+      buffer = reader.load(position, DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+      if (buffer == null)
+      {
+         return -1;
+      }
+
+      buffer.skipBytes(DataConstants.SIZE_BYTE);
+
+      int messageSize = buffer.readInt();
+
+      if (messageSize < 0 || (long)position + messageSize + Page.SIZE_RECORD > reader.fileSize)
+      {
+         markFileAsSuspect(file.getFileName(), position, messageNumber);
+         return -1;
+      }
+
+      buffer = reader.load(position, messageSize + Page.SIZE_RECORD);
+
+      if (buffer == null || buffer.getByte(buffer.readerIndex() + messageSize + Page.SIZE_RECORD - 1) != Page.END_BYTE)
+      {
+         markFileAsSuspect(file.getFileName(), position, messageNumber);
+         return -1;
+      }
+
+      return messageSize;
+   }
+
+   private PagedMessage decodeRecord(final StorageManager storage,
+                                     final PageReader reader,
+                                     final int position,
+                                     final int messageSize) throws Exception
+   {
+      HornetQBuffer buffer = reader.load(position, messageSize + Page.SIZE_RECORD);
+
+      buffer.skipBytes(DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+      PagedMessage msg = new PagedMessageImpl();
+      msg.decode(buffer);
+      byte b = buffer.readByte();
+      if (b != Page.END_BYTE)
+      {
+         // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
+         // this
+         // constraint was already checked
+         throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+      }
+      msg.initMessage(storage);
+      if (isTrace)
+      {
+         HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
+      }
+      return msg;
+   }
+
    public SequentialFile getFile()
    {
       return file;
    }
+
+   /**
+    * Streams through the page file, keeping one read buffer in memory.
+    * <p>
+    * The buffer is only grown for records bigger than {@link #READ_BUFFER_SIZE}.
+    */
+   private final class PageReader
+   {
+      private final StorageManager storage;
+
+      private final int fileSize;
+
+      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
+      private ByteBuffer directBuffer;
+
+      private HornetQBuffer buffer;
+
+      /** the file position of the first byte on the buffer */
+      private int bufferPosition;
+
+      PageReader(final StorageManager storage) throws Exception
+      {
+         this.storage = storage;
+         fileSize = (int)file.size();
+         size.set(fileSize);
+      }
+
+      boolean holds(final int position, final int length)
+      {
+         return buffer != null && position >= bufferPosition &&
+                position + length <= bufferPosition + buffer.writerIndex();
+      }
+
+      /**
+       * @return the buffer positioned on {@code position}, holding at least {@code length} bytes,
+       *         or {@code null} if the file ends before that
+       */
+      HornetQBuffer load(final int position, final int length) throws Exception
+      {
+         if (!holds(position, length))
+         {
+            if (position + length > fileSize)
+            {
+               return null;
+            }
+
+            int capacity = Math.max(READ_BUFFER_SIZE, length);
+
+            if (directBuffer == null || directBuffer.capacity() < capacity)
+            {
+               close();
+               directBuffer = storage.allocateDirectBuffer(capacity);
+            }
+
+            directBuffer.clear();
+            directBuffer.limit(Math.min(directBuffer.capacity(), fileSize - position));
+
+            file.position(position);
+            file.read(directBuffer);
+
+            directBuffer.rewind();
+
+            buffer = HornetQBuffers.wrappedBuffer(directBuffer);
+            buffer.writerIndex(buffer.capacity());
+            bufferPosition = position;
+
+            if (!holds(position, length))
+            {
+               return null;
+            }
+         }
+
+         buffer.readerIndex(position - bufferPosition);
+
+         return buffer;
+      }
+
+      void close()
+      {
+         if (directBuffer != null)
+         {
+            storage.freeDirectBuffer(directBuffer);
+            directBuffer = null;
+            buffer = null;
+         }
+      }
+   }
 }
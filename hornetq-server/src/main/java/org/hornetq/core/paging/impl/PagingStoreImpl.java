@@ -53,9 +53,9 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 /**
  * @author <a href="mailto:clebert.suconic@jboss.com">Clebert Suconic</a>
@@ -174,7 +174,8 @@ public class PagingStoreImpl implements PagingStore
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
-         addressSettings.getPageCacheMaxSize());
+         addressSettings.getPageCacheMaxSize(),
+         addressSettings.getPageCacheMaxBytes());
 
    }
 
@@ -192,6 +193,7 @@ public class PagingStoreImpl implements PagingStore
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
+         cursorProvider.setCacheMaxBytes(addressSettings.getPageCacheMaxBytes());
       }
    }
 
@@ -807,7 +809,7 @@ public class PagingStoreImpl implements PagingStore
 
    @Override
    public boolean
-   page(ServerMessage message, final Transaction tx, RouteContextList listCtx, final ReadLock managerLock)
+   page(ServerMessage message, final Transaction tx, RouteContextList listCtx, final Lock managerLock)
       throws Exception
    {
 
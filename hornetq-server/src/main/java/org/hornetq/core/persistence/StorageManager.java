@@ -27,6 +27,7 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.Journal;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -131,6 +132,12 @@ public interface StorageManager extends HornetQComponent
        These methods will use that buffer if the inner method supports it */
    void freeDirectBuffer(ByteBuffer buffer);
 
+   /**
+    * @return the pool the files of the server take their buffers from, or {@code null} if they are
+    *         not pooled
+    */
+   DirectBufferPool getBufferPool();
+
    void clearContext();
 
    long generateUniqueID();
@@ -44,7 +44,6 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.transaction.xa.Xid;
 
@@ -68,9 +67,12 @@ import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.TransactionFailureCallback;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -115,6 +117,7 @@ import org.hornetq.utils.Base64;
 import org.hornetq.utils.DataConstants;
 import org.hornetq.utils.ExecutorFactory;
 import org.hornetq.utils.HornetQThreadFactory;
+import org.hornetq.utils.StripedReadWriteLock;
 import org.hornetq.utils.XidCodecSupport;
 
 /**
@@ -141,7 +144,8 @@ public class JournalStorageManager implements StorageManager
 
    private final BatchingIDGenerator idGenerator;
 
-   private final ReentrantReadWriteLock storageManagerLock = new ReentrantReadWriteLock(true);
+   /** written only when replication starts or stops, read by every store operation */
+   private final StripedReadWriteLock storageManagerLock = new StripedReadWriteLock();
 
    private ReplicationManager replicator;
 
@@ -167,6 +171,9 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory journalFF;
 
+   /** the buffer of the message journal, or null if its writes are not buffered */
+   private final TimedBuffer journalBuffer;
+
    private Journal messageJournal;
 
    private Journal bindingsJournal;
@@ -223,7 +230,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+          config.getJournalType() != JournalType.MAPPED)
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -238,7 +246,7 @@ public class JournalStorageManager implements StorageManager
 
       journalDir = config.getJournalDirectory();
 
-      SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
+      NIOSequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
 
       Journal localBindings = new JournalImpl(1024 * 1024,
          2,
@@ -267,30 +275,55 @@ public class JournalStorageManager implements StorageManager
       {
          HornetQServerLogger.LOGGER.journalUseAIO();
 
-         journalFF = new AIOSequentialFileFactory(journalDir,
+         AIOSequentialFileFactory aioFF = new AIOSequentialFileFactory(journalDir,
             config.getJournalBufferSize_AIO(),
             config.getJournalBufferTimeout_AIO(),
             config.isLogJournalWriteRate(),
             criticalErrorListener);
+         journalBuffer = aioFF.getTimedBuffer();
+         journalFF = aioFF;
       }
       else if (config.getJournalType() == JournalType.NIO)
       {
          HornetQServerLogger.LOGGER.journalUseNIO();
-         journalFF = new NIOSequentialFileFactory(journalDir,
+         NIOSequentialFileFactory nioFF = new NIOSequentialFileFactory(journalDir,
             true,
             config.getJournalBufferSize_NIO(),
             config.getJournalBufferTimeout_NIO(),
             config.isLogJournalWriteRate(),
             criticalErrorListener);
+         journalBuffer = nioFF.getTimedBuffer();
+         journalFF = nioFF;
+      }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         HornetQServerLogger.LOGGER.journalUseMapped();
+         MappedSequentialFileFactory mappedFF = new MappedSequentialFileFactory(journalDir,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            criticalErrorListener);
+         journalBuffer = mappedFF.getTimedBuffer();
+         journalFF = mappedFF;
       }
       else
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
       }
 
+      if (journalBuffer != null)
+      {
+         journalBuffer.setAdaptive(config.isJournalBufferAdaptive());
+      }
+
+      // all the files of the server take their buffers from the pool of the message journal, which
+      // allocates them the way its files need them
+      bindingsFF.setBufferPool(journalFF.getBufferPool());
+
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
+      JournalImpl localMessage = new JournalImpl(config.getJournalFileSize(),
          config.getJournalMinFiles(),
          config.getJournalCompactMinFiles(),
          config.getJournalCompactPercentage(),
@@ -300,12 +333,24 @@ public class JournalStorageManager implements StorageManager
          config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
             : config.getJournalMaxIO_NIO());
 
+      localMessage.setParallelEncoding(config.isJournalParallelEncoding());
+
+      localMessage.setLoadThreads(config.getJournalLoadThreads());
+
+      localMessage.setCompactMaxFiles(config.getJournalCompactMaxFiles());
+
       messageJournal = localMessage;
       originalMessageJournal = localMessage;
 
       largeMessagesDirectory = config.getLargeMessagesDirectory();
 
-      largeMessagesFactory = new NIOSequentialFileFactory(largeMessagesDirectory, false, criticalErrorListener);
+      NIOSequentialFileFactory localLargeMessagesFactory = new NIOSequentialFileFactory(largeMessagesDirectory,
+         false,
+         criticalErrorListener);
+
+      localLargeMessagesFactory.setBufferPool(journalFF.getBufferPool());
+
+      largeMessagesFactory = localLargeMessagesFactory;
 
       perfBlastPages = config.getJournalPerfBlastPages();
 
@@ -2310,6 +2355,12 @@ public class JournalStorageManager implements StorageManager
       journalFF.releaseBuffer(buffer);
    }
 
+   @Override
+   public DirectBufferPool getBufferPool()
+   {
+      return journalFF.getBufferPool();
+   }
+
    // Public -----------------------------------------------------------------------------------
 
    public Journal getMessageJournal()
@@ -2322,6 +2373,14 @@ public class JournalStorageManager implements StorageManager
       return bindingsJournal;
    }
 
+   /**
+    * @return the buffer of the message journal, or {@code null} if its writes are not buffered
+    */
+   public TimedBuffer getMessageJournalBuffer()
+   {
+      return journalBuffer;
+   }
+
    // Package protected ---------------------------------------------
 
    // This should be accessed from this package only
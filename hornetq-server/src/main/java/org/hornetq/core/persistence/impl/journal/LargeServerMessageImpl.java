@@ -122,18 +122,25 @@ public final class LargeServerMessageImpl extends ServerMessageImpl implements L
    {
       try
       {
-         // This could maybe be optimized (maybe reading directly into bufferOut)
-         ByteBuffer bufferRead = ByteBuffer.allocate(size);
+         // a direct buffer from the pool, as a heap one would be copied through a temporary direct
+         // buffer by the file channel
+         ByteBuffer bufferRead = storageManager.allocateDirectBuffer(size);
 
-         int bytesRead = context.encode(bufferRead);
-
-         bufferRead.flip();
+         try
+         {
+            int bytesRead = context.encode(bufferRead);
 
-         if (bytesRead > 0)
+            if (bytesRead > 0)
+            {
+               bufferRead.position(0);
+               bufferRead.limit(bytesRead);
+               bufferOut.writeBytes(bufferRead);
+            }
+         }
+         finally
          {
-            bufferOut.writeBytes(bufferRead.array(), 0, bytesRead);
+            storageManager.freeDirectBuffer(bufferRead);
          }
-
       }
       catch (Exception e)
       {
@@ -496,19 +503,25 @@ public final class LargeServerMessageImpl extends ServerMessageImpl implements L
 
       public int encode(final HornetQBuffer bufferOut, final int size) throws HornetQException
       {
-         // This could maybe be optimized (maybe reading directly into bufferOut)
-         ByteBuffer bufferRead = ByteBuffer.allocate(size);
+         ByteBuffer bufferRead = storageManager.allocateDirectBuffer(size);
 
-         int bytesRead = encode(bufferRead);
+         try
+         {
+            int bytesRead = encode(bufferRead);
 
-         bufferRead.flip();
+            if (bytesRead > 0)
+            {
+               bufferRead.position(0);
+               bufferRead.limit(bytesRead);
+               bufferOut.writeBytes(bufferRead);
+            }
 
-         if (bytesRead > 0)
+            return bytesRead;
+         }
+         finally
          {
-            bufferOut.writeBytes(bufferRead.array(), 0, bytesRead);
+            storageManager.freeDirectBuffer(bufferRead);
          }
-
-         return bytesRead;
       }
 
       /* (non-Javadoc)
@@ -29,6 +29,7 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.Journal;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -598,6 +599,12 @@ public class NullStorageManager implements StorageManager
       // We can just have hope on GC here :-)
    }
 
+   @Override
+   public DirectBufferPool getBufferPool()
+   {
+      return null;
+   }
+
    @Override
    public void storeID(final long journalID, final long id) throws Exception
    {
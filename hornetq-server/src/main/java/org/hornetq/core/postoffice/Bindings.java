@@ -60,6 +60,8 @@ public final class Bindings
 
    private volatile boolean routeWhenNoConsumers;
 
+   private volatile FilterIndex filterIndex;
+
    private final GroupingHandler groupingHandler;
 
    private final PagingStore pageStore;
@@ -78,6 +80,31 @@ public final class Bindings
       this.routeWhenNoConsumers = routeWhenNoConsumers;
    }
 
+   /**
+    * Enables or disables the index of the routing names by the string equality their filters
+    * depend on, so routing doesn't have to evaluate the filter of every binding.
+    *
+    * @see FilterIndex
+    */
+   public void setFilterIndex(final boolean enabled)
+   {
+      if (!enabled)
+      {
+         filterIndex = null;
+      }
+      else if (filterIndex == null)
+      {
+         FilterIndex index = new FilterIndex();
+
+         for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+         {
+            index.update(entry.getKey(), entry.getValue());
+         }
+
+         filterIndex = index;
+      }
+   }
+
    public Collection<Binding> getBindings()
    {
       return bindingsMap.values();
@@ -112,6 +139,13 @@ public final class Bindings
          }
 
          bindings.add(binding);
+
+         FilterIndex index = filterIndex;
+
+         if (index != null)
+         {
+            index.update(routingName, bindings);
+         }
       }
 
       bindingsMap.put(binding.getID(), binding);
@@ -143,6 +177,13 @@ public final class Bindings
             {
                routingNameBindingMap.remove(routingName);
             }
+
+            FilterIndex index = filterIndex;
+
+            if (index != null)
+            {
+               index.update(routingName, bindings);
+            }
          }
       }
 
@@ -281,24 +322,49 @@ public final class Bindings
             {
                HornetQServerLogger.LOGGER.trace("Routing message " + message + " on binding=" + this);
             }
-            for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+            FilterIndex index = filterIndex;
+
+            if (index != null)
             {
-               SimpleString routingName = entry.getKey();
+               for (SimpleString routingName : index.getCandidates(message))
+               {
+                  List<Binding> bindings = routingNameBindingMap.get(routingName);
 
-               List<Binding> bindings = entry.getValue();
+                  if (bindings == null)
+                  {
+                     // removed concurrently
+                     continue;
+                  }
 
-               if (bindings == null)
-               {
-                  // The value can become null if it's concurrently removed while we're iterating - this is expected
-                  // ConcurrentHashMap behaviour!
-                  continue;
+                  Binding theBinding = getNextBinding(message, routingName, bindings);
+
+                  if (theBinding != null)
+                  {
+                     theBinding.route(message, context);
+                  }
                }
+            }
+            else
+            {
+               for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+               {
+                  SimpleString routingName = entry.getKey();
 
-               Binding theBinding = getNextBinding(message, routingName, bindings);
+                  List<Binding> bindings = entry.getValue();
 
-               if (theBinding != null)
-               {
-                  theBinding.route(message, context);
+                  if (bindings == null)
+                  {
+                     // The value can become null if it's concurrently removed while we're iterating - this is expected
+                     // ConcurrentHashMap behaviour!
+                     continue;
+                  }
+
+                  Binding theBinding = getNextBinding(message, routingName, bindings);
+
+                  if (theBinding != null)
+                  {
+                     theBinding.route(message, context);
+                  }
                }
             }
          }
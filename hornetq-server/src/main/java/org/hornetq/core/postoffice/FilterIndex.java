@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.postoffice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterExpression;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * An index of the routing names of an address by the string equality their filters depend on.
+ * <p>
+ * A routing name is indexed when the filter of every one of its bindings requires the same
+ * property to hold one of a set of strings (see {@link FilterExpression#getEquality()}), e.g.
+ * {@code region = 'EU' AND price > 10}. For each message every indexed property is read once and
+ * only the routing names registered under its value, plus the ones that could not be indexed, are
+ * returned as candidates. The candidates still have their filters evaluated.
+ * <p>
+ * Updates are serialized, lookups are lock free.
+ *
+ * @see Bindings#setFilterIndex(boolean)
+ */
+final class FilterIndex
+{
+   /** property -> value -> routing names */
+   private final ConcurrentMap<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>> index = new ConcurrentHashMap<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>>();
+
+   private final Set<SimpleString> unindexed = Collections.newSetFromMap(new ConcurrentHashMap<SimpleString, Boolean>());
+
+   /** Where each indexed routing name is registered, guarded by this */
+   private final Map<SimpleString, FilterExpression.Equality> entries = new HashMap<SimpleString, FilterExpression.Equality>();
+
+   /**
+    * Re-indexes a routing name after one of its bindings was added or removed.
+    *
+    * @param bindings the current bindings of the routing name, {@code null} or empty if it was
+    *           removed
+    */
+   synchronized void update(final SimpleString routingName, final List<Binding> bindings)
+   {
+      remove(routingName);
+
+      if (bindings == null || bindings.isEmpty())
+      {
+         return;
+      }
+
+      FilterExpression.Equality equality = getEquality(bindings);
+
+      if (equality == null)
+      {
+         unindexed.add(routingName);
+         return;
+      }
+
+      ConcurrentMap<SimpleString, Set<SimpleString>> values = index.get(equality.getProperty());
+
+      if (values == null)
+      {
+         values = new ConcurrentHashMap<SimpleString, Set<SimpleString>>();
+         index.put(equality.getProperty(), values);
+      }
+
+      for (SimpleString value : equality.getValues())
+      {
+         Set<SimpleString> routingNames = values.get(value);
+
+         if (routingNames == null)
+         {
+            routingNames = Collections.newSetFromMap(new ConcurrentHashMap<SimpleString, Boolean>());
+            values.put(value, routingNames);
+         }
+
+         routingNames.add(routingName);
+      }
+
+      entries.put(routingName, equality);
+   }
+
+   /**
+    * @return the routing names whose bindings may match the message, without duplicates
+    */
+   List<SimpleString> getCandidates(final ServerMessage message)
+   {
+      List<SimpleString> candidates = new ArrayList<SimpleString>(unindexed);
+
+      for (Map.Entry<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>> entry : index.entrySet())
+      {
+         Object value = message.getObjectProperty(entry.getKey());
+
+         if (value instanceof SimpleString)
+         {
+            Set<SimpleString> routingNames = entry.getValue().get(value);
+
+            if (routingNames != null)
+            {
+               candidates.addAll(routingNames);
+            }
+         }
+      }
+
+      return candidates;
+   }
+
+   private void remove(final SimpleString routingName)
+   {
+      if (unindexed.remove(routingName))
+      {
+         return;
+      }
+
+      FilterExpression.Equality equality = entries.remove(routingName);
+
+      if (equality == null)
+      {
+         return;
+      }
+
+      ConcurrentMap<SimpleString, Set<SimpleString>> values = index.get(equality.getProperty());
+
+      for (SimpleString value : equality.getValues())
+      {
+         Set<SimpleString> routingNames = values.get(value);
+
+         routingNames.remove(routingName);
+
+         if (routingNames.isEmpty())
+         {
+            values.remove(value);
+         }
+      }
+
+      if (values.isEmpty())
+      {
+         index.remove(equality.getProperty());
+      }
+   }
+
+   /**
+    * @return the equality shared by the filters of all the bindings, or {@code null}
+    */
+   private static FilterExpression.Equality getEquality(final List<Binding> bindings)
+   {
+      SimpleString property = null;
+
+      Set<SimpleString> values = new HashSet<SimpleString>();
+
+      for (Binding binding : bindings)
+      {
+         Filter filter = binding.getFilter();
+
+         if (!(filter instanceof FilterImpl))
+         {
+            return null;
+         }
+
+         FilterExpression.Equality equality = ((FilterImpl)filter).getEquality();
+
+         if (equality == null || property != null && !property.equals(equality.getProperty()))
+         {
+            return null;
+         }
+
+         property = equality.getProperty();
+
+         values.addAll(equality.getValues());
+      }
+
+      return new FilterExpression.Equality(property, values);
+   }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.SimpleString;
+
+/**
+ * A map of addresses to values organised as a tree of the words of the addresses, so that the
+ * addresses matching a wildcard, or the wildcards matching an address, are found by walking down
+ * the words instead of testing every entry.
+ * <p>
+ * {@code *} matches exactly one word and {@code #} matches zero or more words. Only a word made of
+ * the wildcard character alone is a wildcard, {@code a.b#} is a plain address.
+ * <p>
+ * Updates are serialized, lookups are lock free and see a consistent node for every word but may
+ * or may not see concurrent updates.
+ *
+ * @see WildcardAddressManager
+ */
+public final class AddressTrie<T>
+{
+   private final Node<T> root = new Node<T>();
+
+   public T get(final SimpleString address)
+   {
+      Node<T> node = root;
+
+      for (SimpleString word : address.split(WildcardAddressManager.DELIM))
+      {
+         node = node.children.get(word);
+
+         if (node == null)
+         {
+            return null;
+         }
+      }
+
+      return node.value;
+   }
+
+   /**
+    * @return the value previously associated with the address, in which case the value is not
+    *         replaced, or {@code null}
+    */
+   public synchronized T putIfAbsent(final SimpleString address, final T value)
+   {
+      Node<T> node = root;
+
+      for (SimpleString word : address.split(WildcardAddressManager.DELIM))
+      {
+         Node<T> child = node.children.get(word);
+
+         if (child == null)
+         {
+            child = new Node<T>();
+            node.children.put(word, child);
+         }
+
+         node = child;
+      }
+
+      if (node.value != null)
+      {
+         return node.value;
+      }
+
+      node.value = value;
+
+      return null;
+   }
+
+   /**
+    * Removes the value of the address, and every node left without a value or children.
+    *
+    * @return the removed value or {@code null}
+    */
+   public synchronized T remove(final SimpleString address)
+   {
+      SimpleString[] words = address.split(WildcardAddressManager.DELIM);
+
+      List<Node<T>> path = new ArrayList<Node<T>>(words.length + 1);
+
+      Node<T> node = root;
+
+      path.add(node);
+
+      for (SimpleString word : words)
+      {
+         node = node.children.get(word);
+
+         if (node == null)
+         {
+            return null;
+         }
+
+         path.add(node);
+      }
+
+      T value = node.value;
+
+      node.value = null;
+
+      for (int i = words.length; i > 0; i--)
+      {
+         Node<T> current = path.get(i);
+
+         if (current.value != null || !current.children.isEmpty())
+         {
+            break;
+         }
+
+         path.get(i - 1).children.remove(words[i - 1]);
+      }
+
+      return value;
+   }
+
+   public boolean isEmpty()
+   {
+      return root.value == null && root.children.isEmpty();
+   }
+
+   public synchronized void clear()
+   {
+      root.value = null;
+      root.children.clear();
+   }
+
+   /**
+    * Collects the values of the stored wildcards matching an address.
+    */
+   public void getMatchingWildcards(final SimpleString address, final Set<T> result)
+   {
+      matchWildcards(root, address.split(WildcardAddressManager.DELIM), 0, result);
+   }
+
+   /**
+    * Collects the values of the stored addresses matching a wildcard. Stored words are compared
+    * literally, so a stored wildcard is only returned if the wildcard matches its text.
+    */
+   public void getMatchingAddresses(final SimpleString wildcard, final Set<T> result)
+   {
+      matchAddresses(root, wildcard.split(WildcardAddressManager.DELIM), 0, result);
+   }
+
+   private static <T> void matchWildcards(final Node<T> node,
+                                          final SimpleString[] words,
+                                          final int pos,
+                                          final Set<T> result)
+   {
+      if (pos == words.length)
+      {
+         if (node.value != null)
+         {
+            result.add(node.value);
+         }
+      }
+      else
+      {
+         Node<T> child = node.children.get(words[pos]);
+
+         if (child != null)
+         {
+            matchWildcards(child, words, pos + 1, result);
+         }
+
+         Node<T> single = node.children.get(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING);
+
+         if (single != null)
+         {
+            matchWildcards(single, words, pos + 1, result);
+         }
+      }
+
+      Node<T> any = node.children.get(WildcardAddressManager.ANY_WORDS_SIMPLESTRING);
+
+      if (any != null)
+      {
+         for (int next = pos; next <= words.length; next++)
+         {
+            matchWildcards(any, words, next, result);
+         }
+      }
+   }
+
+   private static <T> void matchAddresses(final Node<T> node,
+                                          final SimpleString[] words,
+                                          final int pos,
+                                          final Set<T> result)
+   {
+      if (pos == words.length)
+      {
+         if (node.value != null)
+         {
+            result.add(node.value);
+         }
+         return;
+      }
+
+      SimpleString word = words[pos];
+
+      if (word.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING))
+      {
+         for (Node<T> child : node.children.values())
+         {
+            matchAddresses(child, words, pos + 1, result);
+         }
+      }
+      else if (word.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+      {
+         // either the wildcard stops here or it takes one more word
+         matchAddresses(node, words, pos + 1, result);
+
+         for (Node<T> child : node.children.values())
+         {
+            matchAddresses(child, words, pos, result);
+         }
+      }
+      else
+      {
+         Node<T> child = node.children.get(word);
+
+         if (child != null)
+         {
+            matchAddresses(child, words, pos + 1, result);
+         }
+      }
+   }
+
+   private static final class Node<T>
+   {
+      final ConcurrentMap<SimpleString, Node<T>> children = new ConcurrentHashMap<SimpleString, Node<T>>();
+
+      volatile T value;
+   }
+}
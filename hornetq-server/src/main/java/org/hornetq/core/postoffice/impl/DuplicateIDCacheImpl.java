@@ -13,10 +13,11 @@
 
 package org.hornetq.core.postoffice.impl;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.hornetq.api.core.Pair;
 import org.hornetq.api.core.SimpleString;
@@ -32,22 +33,26 @@ import org.hornetq.core.transaction.TransactionOperationAbstract;
  *
  * A fixed size rotating cache of last X duplicate ids.
  *
+ * No lock is taken to look up or add an id: the ids are kept in a circular log, where each id
+ * added takes the place of the oldest one, and are indexed by a concurrent map.
+ *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  * Created 8 Dec 2008 16:35:55
  */
 public class DuplicateIDCacheImpl implements DuplicateIDCache
 {
-   // ByteHolder, position
-   private final Map<ByteArrayHolder, Integer> cache = new ConcurrentHashMap<ByteArrayHolder, Integer>();
+   // Each id maps to the entry of its latest add, holding its position and record. Entries are only equal to
+   // themselves, so an entry is removed by identity and the later entry of an id added again is kept
+   private final ConcurrentMap<ByteArrayHolder, DuplicateIDEntry> cache = new ConcurrentHashMap<ByteArrayHolder, DuplicateIDEntry>();
 
    private final SimpleString address;
 
-   // Note - deliberately typed as ArrayList since we want to ensure fast indexed
-   // based array access
-   private final ArrayList<Pair<ByteArrayHolder, Long>> ids;
+   // The ids in the order they were added, a slot is null until used or if its id was explicitly deleted
+   private final AtomicReferenceArray<DuplicateIDEntry> ids;
 
-   private int pos;
+   // The sequence of the next id added, its position in ids is sequence % cacheSize
+   private final AtomicLong sequence = new AtomicLong();
 
    private final int cacheSize;
 
@@ -64,7 +69,7 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
 
       cacheSize = size;
 
-      ids = new ArrayList<Pair<ByteArrayHolder, Long>>(size);
+      ids = new AtomicReferenceArray<DuplicateIDEntry>(size);
 
       this.storageManager = storageManager;
 
@@ -81,13 +86,11 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       {
          if (count < cacheSize)
          {
-            ByteArrayHolder bah = new ByteArrayHolder(id.getA());
-
-            Pair<ByteArrayHolder, Long> pair = new Pair<ByteArrayHolder, Long>(bah, id.getB());
+            DuplicateIDEntry entry = new DuplicateIDEntry(new ByteArrayHolder(id.getA()), id.getB(), count);
 
-            cache.put(bah, ids.size());
+            cache.put(entry.id, entry);
 
-            ids.add(pair);
+            ids.set(count, entry);
          }
          else
          {
@@ -108,48 +111,28 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
          storageManager.commit(txID);
       }
 
-      pos = ids.size();
-
-      if (pos == cacheSize)
-      {
-         pos = 0;
-      }
-
+      sequence.set(Math.min(count, cacheSize));
    }
 
 
    public void deleteFromCache(byte [] duplicateID) throws Exception
    {
-      ByteArrayHolder bah = new ByteArrayHolder(duplicateID);
-
-      Integer posUsed = cache.remove(bah);
+      DuplicateIDEntry entry = cache.remove(new ByteArrayHolder(duplicateID));
 
-      if (posUsed != null)
+      // If the slot was taken over meanwhile, the id that took it deletes the record
+      if (entry != null && ids.compareAndSet(entry.pos, entry, null) && entry.recordID >= 0)
       {
-         Pair<ByteArrayHolder, Long> id;
-
-         synchronized (this)
-         {
-            id = ids.get(posUsed.intValue());
-
-            if (id.getA().equals(bah))
-            {
-               id.setA(null);
-               storageManager.deleteDuplicateID(id.getB());
-               id.setB(null);
-            }
-         }
+         storageManager.deleteDuplicateID(entry.recordID);
       }
-
    }
 
 
    public boolean contains(final byte[] duplID)
    {
-      return cache.get(new ByteArrayHolder(duplID)) != null;
+      return cache.containsKey(new ByteArrayHolder(duplID));
    }
 
-   public synchronized void addToCache(final byte[] duplID, final Transaction tx) throws Exception
+   public void addToCache(final byte[] duplID, final Transaction tx) throws Exception
    {
       long recordID = -1;
 
@@ -184,61 +167,44 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       tx.addOperation(new AddDuplicateIDOperation(duplID, tx.getID()));
    }
 
-   private synchronized void addToCacheInMemory(final byte[] duplID, final long recordID)
+   private void addToCacheInMemory(final byte[] duplID, final long recordID)
    {
-      ByteArrayHolder holder = new ByteArrayHolder(duplID);
+      int pos = (int)(sequence.getAndIncrement() % cacheSize);
 
-      cache.put(holder, pos);
+      // The recordID could be negative if the duplicateCache is configured to not persist,
+      // -1 would mean no record on this case
+      DuplicateIDEntry entry = new DuplicateIDEntry(new ByteArrayHolder(duplID), recordID, pos);
 
-      Pair<ByteArrayHolder, Long> id;
+      DuplicateIDEntry evicted = ids.getAndSet(pos, entry);
 
-      if (pos < ids.size())
+      // The evicted id might be null if it was explicitly deleted
+      if (evicted != null)
       {
-         // Need fast array style access here -hence ArrayList typing
-         id = ids.get(pos);
+         // Only if its id wasn't added again since, the later add owns the id now
+         cache.remove(evicted.id, evicted);
 
-         // The id here might be null if it was explicit deleted
-         if (id.getA() != null)
+         // Record already exists - we delete the old one and add the new one
+         // Note we can't use update since journal update doesn't let older records get
+         // reclaimed
+         if (evicted.recordID >= 0)
          {
-            cache.remove(id.getA());
-
-            // Record already exists - we delete the old one and add the new one
-            // Note we can't use update since journal update doesn't let older records get
-            // reclaimed
-
-            if (id.getB() != null)
+            try
             {
-               try
-               {
-                  storageManager.deleteDuplicateID(id.getB());
-               }
-               catch (Exception e)
-               {
-                  HornetQServerLogger.LOGGER.errorDeletingDuplicateCache(e);
-               }
+               storageManager.deleteDuplicateID(evicted.recordID);
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.errorDeletingDuplicateCache(e);
             }
          }
-
-         id.setA(holder);
-
-         // The recordID could be negative if the duplicateCache is configured to not persist,
-         // -1 would mean null on this case
-         id.setB(recordID >= 0 ? recordID : null);
-
-         holder.pos = pos;
       }
-      else
-      {
-         id = new Pair<ByteArrayHolder, Long>(holder, recordID >= 0 ? recordID : null);
 
-         ids.add(id);
+      cache.put(entry.id, entry);
 
-         holder.pos = pos;
-      }
-
-      if (pos++ == cacheSize - 1)
+      // A concurrent add a lap ahead may have taken the slot over before the id was indexed
+      if (ids.get(pos) != entry)
       {
-         pos = 0;
+         cache.remove(entry.id, entry);
       }
    }
 
@@ -279,6 +245,25 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       }
    }
 
+   /**
+    * One add of an id, with the identity equality of Object.
+    */
+   private static final class DuplicateIDEntry
+   {
+      DuplicateIDEntry(final ByteArrayHolder id, final long recordID, final int pos)
+      {
+         this.id = id;
+         this.recordID = recordID;
+         this.pos = pos;
+      }
+
+      final ByteArrayHolder id;
+
+      final long recordID;
+
+      final int pos;
+   }
+
    private static final class ByteArrayHolder
    {
       ByteArrayHolder(final byte[] bytes)
@@ -290,8 +275,6 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
 
       int hash;
 
-      int pos;
-
       @Override
       public boolean equals(final Object other)
       {
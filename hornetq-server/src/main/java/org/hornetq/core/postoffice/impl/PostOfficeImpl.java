@@ -203,6 +203,22 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
          reaperThread = null;
       }
 
+      // the queues give back what they hold, such as the messages kept off the heap
+      for (Binding binding : addressManager.getBindings().values())
+      {
+         if (binding.getType() == BindingType.LOCAL_QUEUE)
+         {
+            try
+            {
+               binding.close();
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
+            }
+         }
+      }
+
       addressManager.clear();
 
       queueInfos.clear();
@@ -1423,6 +1439,10 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
    public Bindings createBindings(final SimpleString address) throws Exception
    {
-      return new Bindings(address, server.getGroupingHandler(), pagingManager.getPageStore(address));
+      Bindings bindings = new Bindings(address, server.getGroupingHandler(), pagingManager.getPageStore(address));
+
+      bindings.setFilterIndex(addressSettingsRepository.getMatch(address.toString()).isFilterIndex());
+
+      return bindings;
    }
 }
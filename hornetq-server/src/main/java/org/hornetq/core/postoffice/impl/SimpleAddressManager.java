@@ -12,7 +12,10 @@
  */
 package org.hornetq.core.postoffice.impl;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -44,6 +47,11 @@ public class SimpleAddressManager implements AddressManager
     */
    private final ConcurrentMap<SimpleString, Binding> nameMap = new ConcurrentHashMap<SimpleString, Binding>();
 
+   /**
+    * The bindings by the address they were created with, used to find the bindings matching a wildcard
+    */
+   private final AddressTrie<Map<SimpleString, Binding>> bindingAddresses = new AddressTrie<Map<SimpleString, Binding>>();
+
    private final BindingsFactory bindingsFactory;
 
    public SimpleAddressManager(final BindingsFactory bindingsFactory)
@@ -58,6 +66,8 @@ public class SimpleAddressManager implements AddressManager
          throw HornetQMessageBundle.BUNDLE.bindingAlreadyExists(binding);
       }
 
+      addBindingAddress(binding);
+
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
       {
          HornetQServerLogger.LOGGER.debug("Adding binding " + binding + " with address = " + binding.getUniqueName(), new Exception ("trace"));
@@ -75,6 +85,8 @@ public class SimpleAddressManager implements AddressManager
          return null;
       }
 
+      removeBindingAddress(binding);
+
       removeBindingInternal(binding.getAddress(), uniqueName);
 
       return binding;
@@ -101,13 +113,29 @@ public class SimpleAddressManager implements AddressManager
 
       Bindings bindings = bindingsFactory.createBindings(address);
 
-      for (Binding binding : nameMap.values())
+      Set<Map<SimpleString, Binding>> matches = Collections.newSetFromMap(new IdentityHashMap<Map<SimpleString, Binding>, Boolean>());
+
+      Map<SimpleString, Binding> sameAddress = bindingAddresses.get(address);
+
+      if (sameAddress != null)
       {
-         Address addCheck = new AddressImpl(binding.getAddress());
+         matches.add(sameAddress);
+      }
 
-         if (addCheck.matches(add))
+      if (add.containsWildCard())
+      {
+         bindingAddresses.getMatchingAddresses(address, matches);
+      }
+
+      for (Map<SimpleString, Binding> addressBindings : matches)
+      {
+         for (Binding binding : addressBindings.values())
          {
-            bindings.addBinding(binding);
+            // a wildcard only matches plain addresses, or the very same wildcard
+            if (binding.getAddress().equals(address) || !new AddressImpl(binding.getAddress()).containsWildCard())
+            {
+               bindings.addBinding(binding);
+            }
          }
       }
 
@@ -118,6 +146,36 @@ public class SimpleAddressManager implements AddressManager
    {
       nameMap.clear();
       mappings.clear();
+      bindingAddresses.clear();
+   }
+
+   private synchronized void addBindingAddress(final Binding binding)
+   {
+      Map<SimpleString, Binding> addressBindings = bindingAddresses.get(binding.getAddress());
+
+      if (addressBindings == null)
+      {
+         addressBindings = new ConcurrentHashMap<SimpleString, Binding>();
+
+         bindingAddresses.putIfAbsent(binding.getAddress(), addressBindings);
+      }
+
+      addressBindings.put(binding.getUniqueName(), binding);
+   }
+
+   private synchronized void removeBindingAddress(final Binding binding)
+   {
+      Map<SimpleString, Binding> addressBindings = bindingAddresses.get(binding.getAddress());
+
+      if (addressBindings != null)
+      {
+         addressBindings.remove(binding.getUniqueName());
+
+         if (addressBindings.isEmpty())
+         {
+            bindingAddresses.remove(binding.getAddress());
+         }
+      }
    }
 
    protected void removeBindingInternal(final SimpleString address, final SimpleString bindableName)
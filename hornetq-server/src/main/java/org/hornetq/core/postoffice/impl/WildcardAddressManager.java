@@ -13,9 +13,8 @@
 package org.hornetq.core.postoffice.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.postoffice.Address;
@@ -44,9 +43,9 @@ public class WildcardAddressManager extends SimpleAddressManager
     * These are all the addresses, we use this so we can link back from the actual address to its linked wilcard addresses
     * or vice versa
     */
-   private final Map<SimpleString, Address> addresses = new HashMap<SimpleString, Address>();
+   private final AddressTrie<Address> addresses = new AddressTrie<Address>();
 
-   private final Map<SimpleString, Address> wildCardAddresses = new HashMap<SimpleString, Address>();
+   private final AddressTrie<Address> wildCardAddresses = new AddressTrie<Address>();
 
    public WildcardAddressManager(final BindingsFactory bindingsFactory)
    {
@@ -201,28 +200,19 @@ public class WildcardAddressManager extends SimpleAddressManager
          actualAddress = add;
          addAddress(address, actualAddress);
       }
+      Set<Address> matches = new HashSet<Address>();
       if (actualAddress.containsWildCard())
       {
-         for (Address destAdd : addresses.values())
-         {
-            if (destAdd.matches(actualAddress))
-            {
-               destAdd.addLinkedAddress(actualAddress);
-               actualAddress.addLinkedAddress(destAdd);
-            }
-         }
+         addresses.getMatchingAddresses(address, matches);
       }
       else
       {
-         for (Address destAdd : wildCardAddresses.values())
-         {
-            if (actualAddress.matches(destAdd))
-            {
-               destAdd.addLinkedAddress(actualAddress);
-               actualAddress.addLinkedAddress(destAdd);
-
-            }
-         }
+         wildCardAddresses.getMatchingWildcards(address, matches);
+      }
+      for (Address destAdd : matches)
+      {
+         destAdd.addLinkedAddress(actualAddress);
+         actualAddress.addLinkedAddress(destAdd);
       }
       return actualAddress;
    }
@@ -231,11 +221,11 @@ public class WildcardAddressManager extends SimpleAddressManager
    {
       if (actualAddress.containsWildCard())
       {
-         wildCardAddresses.put(address, actualAddress);
+         wildCardAddresses.putIfAbsent(address, actualAddress);
       }
       else
       {
-         addresses.put(address, actualAddress);
+         addresses.putIfAbsent(address, actualAddress);
       }
    }
 
@@ -245,7 +235,7 @@ public class WildcardAddressManager extends SimpleAddressManager
       Bindings bindings = super.getBindingsForRoutingAddress(address.getAddress());
       if (bindings == null || bindings.getBindings().size() == 0)
       {
-         List<Address> addresses = address.getLinkedAddresses();
+         Collection<Address> addresses = address.getLinkedAddresses();
          for (Address address1 : addresses)
          {
             address1.removeLinkedAddress(address);
@@ -34,9 +34,11 @@ import static org.hornetq.core.protocol.core.impl.PacketImpl.REPLICATION_PAGE_WR
 import static org.hornetq.core.protocol.core.impl.PacketImpl.REPLICATION_PREPARE;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.REPLICATION_RESPONSE;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_SEND;
+import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_SEND_BATCH;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_SEND_LARGE;
 
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.PacketDecoder;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
@@ -57,6 +59,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.ReplicationPrepareMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.ReplicationResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.ReplicationStartSyncMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.ReplicationSyncFileMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
 import org.hornetq.core.server.impl.ServerMessageImpl;
@@ -70,6 +73,16 @@ public class ServerPacketDecoder extends PacketDecoder
    private static final long serialVersionUID = 3348673114388400766L;
    public static final ServerPacketDecoder INSTANCE = new ServerPacketDecoder();
 
+   /** the messages of a batch are decoded as server messages, as a single message sent is */
+   private static final SessionSendBatchMessage.MessageFactory SERVER_MESSAGE_FACTORY =
+            new SessionSendBatchMessage.MessageFactory()
+            {
+               public MessageInternal createMessage()
+               {
+                  return new ServerMessageImpl();
+               }
+            };
+
    @Override
    public Packet decode(final HornetQBuffer in)
    {
@@ -85,6 +98,11 @@ public class ServerPacketDecoder extends PacketDecoder
             packet = new SessionSendMessage(new ServerMessageImpl());
             break;
          }
+         case SESS_SEND_BATCH:
+         {
+            packet = new SessionSendBatchMessage(SERVER_MESSAGE_FACTORY);
+            break;
+         }
          case SESS_SEND_LARGE:
          {
             packet = new SessionSendLargeMessage(new ServerMessageImpl());
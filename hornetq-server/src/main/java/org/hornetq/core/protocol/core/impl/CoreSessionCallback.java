@@ -12,11 +12,17 @@
  */
 package org.hornetq.core.protocol.core.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsFailMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
@@ -34,8 +40,16 @@ import org.hornetq.spi.core.remoting.ReadyListener;
  */
 public final class CoreSessionCallback implements SessionCallback
 {
+   /**
+    * The size past which a batch of deliveries is sent without waiting to be flushed.
+    */
+   private static final int MAX_BATCH_SIZE = 64 * 1024;
+
    private final Channel channel;
 
+   /** the batch being filled for each consumer, only ever touched under the lock of the consumer */
+   private final ConcurrentMap<Long, SessionReceiveBatchMessage> batches = new ConcurrentHashMap<Long, SessionReceiveBatchMessage>();
+
    private ProtocolManager protocolManager;
 
    private String name;
@@ -69,6 +83,15 @@ public final class CoreSessionCallback implements SessionCallback
 
    public int sendMessage(ServerMessage message, long consumerID, int deliveryCount)
    {
+      if (message.containsProperty(Message.HDR_BODY_CODEC) &&
+          channel.getConnection().getClientVersion() < BodyCodecs.SINCE_VERSION)
+      {
+         // the client can't decompress the body, the stored message stays compressed
+         message = message.copy();
+
+         message.decompressBody();
+      }
+
       Packet packet = new SessionReceiveMessage(consumerID, message, deliveryCount);
 
       int size = 0;
@@ -81,6 +104,42 @@ public final class CoreSessionCallback implements SessionCallback
       return size;
    }
 
+   public boolean isBatchDeliverySupported()
+   {
+      return channel.supports(PacketImpl.SESS_RECEIVE_MSG_BATCH);
+   }
+
+   public int batchMessage(ServerMessage message, long consumerID, int deliveryCount)
+   {
+      SessionReceiveBatchMessage batch = batches.get(consumerID);
+
+      if (batch == null)
+      {
+         batch = new SessionReceiveBatchMessage(consumerID);
+
+         batches.put(consumerID, batch);
+      }
+
+      int size = batch.addMessage(message, deliveryCount);
+
+      if (batch.getEncodeSize() >= MAX_BATCH_SIZE)
+      {
+         flushBatch(consumerID);
+      }
+
+      return size;
+   }
+
+   public void flushBatch(long consumerID)
+   {
+      SessionReceiveBatchMessage batch = batches.remove(consumerID);
+
+      if (batch != null)
+      {
+         channel.sendBatched(batch);
+      }
+   }
+
    public void sendProducerCreditsMessage(int credits, SimpleString address)
    {
       Packet packet = new SessionProducerCreditsMessage(credits, address);
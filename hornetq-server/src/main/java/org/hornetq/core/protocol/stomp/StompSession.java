@@ -117,6 +117,20 @@ public class StompSession implements SessionCallback
 
    }
 
+   public boolean isBatchDeliverySupported()
+   {
+      return false;
+   }
+
+   public int batchMessage(ServerMessage serverMessage, long consumerID, int deliveryCount)
+   {
+      return sendMessage(serverMessage, consumerID, deliveryCount);
+   }
+
+   public void flushBatch(long consumerID)
+   {
+   }
+
    public int sendLargeMessageContinuation(long consumerID, byte[] body, boolean continues, boolean requiresResponse)
    {
       return 0;
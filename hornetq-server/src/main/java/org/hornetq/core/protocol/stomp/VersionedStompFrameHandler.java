@@ -312,6 +312,14 @@ public abstract class VersionedStompFrameHandler
                subscription.getID());
       }
 
+      if (serverMessage.containsProperty(Message.HDR_BODY_CODEC))
+      {
+         // STOMP clients get the body as it was sent, the message itself stays compressed
+         serverMessage = serverMessage.copy();
+
+         serverMessage.decompressBody();
+      }
+
       HornetQBuffer buffer = serverMessage.getBodyBufferCopy();
 
       int bodyPos = serverMessage.getEndOfBodyPosition() == -1 ? buffer
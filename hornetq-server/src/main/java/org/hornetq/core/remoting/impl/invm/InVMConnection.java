@@ -138,7 +138,10 @@ public class InVMConnection implements Connection
 
    public void write(final HornetQBuffer buffer, final boolean flush, final boolean batch)
    {
-      final HornetQBuffer copied = buffer.copy(0, buffer.capacity());
+      // The copy must be self-expanding (as Netty frames are), a received message may be encoded again in place
+      final HornetQBuffer copied = HornetQBuffers.dynamicBuffer(buffer.capacity());
+
+      copied.writeBytes(buffer, 0, buffer.capacity());
 
       copied.setIndex(buffer.readerIndex(), buffer.writerIndex());
 
@@ -255,6 +255,10 @@ public interface HornetQServerLogger extends BasicLogger
             format = Message.Format.MESSAGE_FORMAT)
    void deprecatedConfigurationOption(String deprecatedOption);
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221039, value = "Using Mapped Journal", format = Message.Format.MESSAGE_FORMAT)
+   void journalUseMapped();
+
    @LogMessage(level = Logger.Level.WARN)
    @Message(id = 222000, value = "HornetQServer is being finalized and has not been stopped. Please remember to stop the server before letting it go out of scope",
          format = Message.Format.MESSAGE_FORMAT)
@@ -983,6 +987,15 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 222166, value = "Error stopping naming server", format = Message.Format.MESSAGE_FORMAT)
    void unableToStopNamingServer(@Cause Exception e);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222167, value = "Unable to allocate direct memory to keep the messages of queue {0} off the heap, further messages are kept on the heap",
+            format = Message.Format.MESSAGE_FORMAT)
+   void offHeapStoreExhausted(@Cause Throwable e, SimpleString queue);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222168, value = "Error closing the reader of page {0}", format = Message.Format.MESSAGE_FORMAT)
+   void pageReaderCloseError(@Cause Exception e, int pageId);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 224000, value = "Failure in initialisation", format = Message.Format.MESSAGE_FORMAT)
    void initializationError(@Cause Throwable e);
@@ -108,6 +108,14 @@ public interface ServerSession
 
    void send(ServerMessage message, boolean direct) throws Exception;
 
+   /**
+    * Sends a batch of messages, routing all of them or none. Outside of a transaction they are
+    * routed in a transaction of their own, so the ones routed before a failure are rolled back.
+    * Within the transaction of the session a failure marks it as rollback only. Management
+    * messages are handled as they are sent, whatever happens to the rest of the batch.
+    */
+   void sendBatch(List<ServerMessage> messages, boolean direct) throws Exception;
+
    void sendLarge(MessageInternal msg) throws Exception;
 
    void forceConsumerDelivery(long consumerID, long sequence) throws Exception;
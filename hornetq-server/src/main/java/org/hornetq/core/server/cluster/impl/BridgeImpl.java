@@ -34,6 +34,7 @@ import org.hornetq.api.core.management.NotificationType;
 import org.hornetq.core.client.impl.ClientSessionFactoryInternal;
 import org.hornetq.core.client.impl.ClientSessionInternal;
 import org.hornetq.core.client.impl.ServerLocatorInternal;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.message.impl.MessageImpl;
@@ -470,8 +471,18 @@ public class BridgeImpl implements Bridge, SessionFailureListener, SendAcknowled
    // Consumer implementation ---------------------------------------
 
    /* Hook for processing message before forwarding */
-   protected ServerMessage beforeForward(final ServerMessage message)
+   protected ServerMessage beforeForward(ServerMessage message)
    {
+      if (message.containsProperty(Message.HDR_BODY_CODEC) &&
+          (transformer != null || session.getVersion() < BodyCodecs.SINCE_VERSION))
+      {
+         // The transformer and the servers older than the body codecs read the body as it was sent,
+         // the stored message stays compressed
+         message = message.copy();
+
+         message.decompressBody();
+      }
+
       if (useDuplicateDetection)
       {
          // We keep our own DuplicateID for the Bridge, so bouncing back and forths will work fine
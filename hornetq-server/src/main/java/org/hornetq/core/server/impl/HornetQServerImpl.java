@@ -78,6 +78,7 @@ import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.journal.IOCriticalErrorListener;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.journal.impl.SyncSpeedTest;
 import org.hornetq.core.management.impl.HornetQServerControlImpl;
 import org.hornetq.core.paging.PagingManager;
@@ -215,6 +216,9 @@ public class HornetQServerImpl implements HornetQServer
 
    private volatile QueueFactory queueFactory;
 
+   /** the segments of the messages kept off the heap by the queues, given back as the queues close */
+   private volatile DirectBufferPool offHeapBufferPool;
+
    private volatile PagingManager pagingManager;
 
    private volatile PostOffice postOffice;
@@ -647,6 +651,11 @@ public class HornetQServerImpl implements HornetQServer
 
          stopComponent(postOffice);
 
+         if (offHeapBufferPool != null)
+         {
+            offHeapBufferPool.stop();
+         }
+
          if (scheduledPool != null)
          {
             // we just interrupt all running tasks, these are supposed to be pings and the like.
@@ -692,6 +701,7 @@ public class HornetQServerImpl implements HornetQServer
          replicationEndpoint = null;
          postOffice = null;
          queueFactory = null;
+         offHeapBufferPool = null;
          resourceManager = null;
          messagingServerControl = null;
          memoryManager = null;
@@ -1286,7 +1296,8 @@ public class HornetQServerImpl implements HornetQServer
          scheduledPool,
          executorFactory,
          configuration.isJournalSyncNonTransactional(),
-         shutdownOnCriticalIO),
+         shutdownOnCriticalIO,
+         configuration.getJournalType() == JournalType.MAPPED),
       addressSettingsRepository);
    }
 
@@ -1395,7 +1406,13 @@ public class HornetQServerImpl implements HornetQServer
          configuration.getClusterPassword(),
          managementService);
 
-      queueFactory = new QueueFactoryImpl(executorFactory, scheduledPool, addressSettingsRepository, storageManager);
+      offHeapBufferPool = new DirectBufferPool();
+
+      queueFactory = new QueueFactoryImpl(executorFactory,
+                                          scheduledPool,
+                                          addressSettingsRepository,
+                                          storageManager,
+                                          offHeapBufferPool);
 
       pagingManager = createPagingManager();
 
@@ -74,11 +74,27 @@ public class MessageReferenceImpl implements MessageReference
 
       scheduledDeliveryTime = other.scheduledDeliveryTime;
 
-      message = other.message;
+      message = other.getMessage();
 
       this.queue = queue;
    }
 
+   /*
+    * Takes over the delivery state of a reference, for a subclass keeping its message elsewhere
+    */
+   protected MessageReferenceImpl(final MessageReferenceImpl other)
+   {
+      deliveryCount.set(other.deliveryCount.get());
+
+      persistedCount = other.persistedCount;
+
+      scheduledDeliveryTime = other.scheduledDeliveryTime;
+
+      message = null;
+
+      queue = other.queue;
+   }
+
    protected MessageReferenceImpl(final ServerMessage message, final Queue queue)
    {
       this.message = message;
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * A reference whose message is kept in an {@link OffHeapMessageStore} while it waits in its queue.
+ * <p>
+ * The queue can look up, order and expire the reference from what is kept here. The message is
+ * loaded back the first time it is needed, which is normally when it is about to be delivered.
+ */
+public class OffHeapMessageReference extends MessageReferenceImpl
+{
+   private final OffHeapMessageStore store;
+
+   private final long messageID;
+
+   private final long expiration;
+
+   private final byte priority;
+
+   private final boolean durable;
+
+   private final int memoryEstimate;
+
+   private final int durableRefCount;
+
+   private final PagingStore pagingStore;
+
+   private final int position;
+
+   private final int length;
+
+   /** where the message is stored, null once it is loaded. Guarded by this */
+   private OffHeapMessageStore.Segment segment;
+
+   private volatile ServerMessage message;
+
+   OffHeapMessageReference(final OffHeapMessageStore store,
+                           final MessageReferenceImpl ref,
+                           final ServerMessageImpl message,
+                           final OffHeapMessageStore.Segment segment,
+                           final int position,
+                           final int length)
+   {
+      super(ref);
+
+      this.store = store;
+
+      messageID = message.getMessageID();
+
+      expiration = message.getExpiration();
+
+      priority = message.getPriority();
+
+      durable = message.isDurable();
+
+      memoryEstimate = message.getMemoryEstimate();
+
+      durableRefCount = message.getDurableRefCount();
+
+      pagingStore = message.getPagingStore();
+
+      this.segment = segment;
+
+      this.position = position;
+
+      this.length = length;
+   }
+
+   public long getMessageID()
+   {
+      return messageID;
+   }
+
+   public byte getPriority()
+   {
+      return priority;
+   }
+
+   public boolean isExpired()
+   {
+      if (expiration == 0)
+      {
+         return false;
+      }
+
+      return System.currentTimeMillis() - expiration >= 0;
+   }
+
+   public boolean isDurable()
+   {
+      return durable;
+   }
+
+   /**
+    * @return whether the message is still off the heap
+    */
+   public boolean isOffHeap()
+   {
+      return message == null;
+   }
+
+   @Override
+   public ServerMessage getMessage()
+   {
+      ServerMessage msg = message;
+
+      if (msg == null)
+      {
+         synchronized (this)
+         {
+            msg = message;
+
+            if (msg == null)
+            {
+               msg = load();
+
+               message = msg;
+            }
+         }
+      }
+
+      return msg;
+   }
+
+   /**
+    * Drops the message without loading it, when the reference is acknowledged while its message is
+    * still off the heap. As the message was only referenced from here, nothing else needs to be
+    * released.
+    * @return false if the message was loaded, and has to be released as usual
+    */
+   public synchronized boolean discard()
+   {
+      if (message != null)
+      {
+         return false;
+      }
+
+      if (segment != null)
+      {
+         store.discard(segment, length);
+
+         segment = null;
+      }
+
+      return true;
+   }
+
+   @Override
+   public int getMessageMemoryEstimate()
+   {
+      return memoryEstimate;
+   }
+
+   @Override
+   public String toString()
+   {
+      if (message == null)
+      {
+         return "Reference[" + messageID + "]:OFF-HEAP";
+      }
+
+      return super.toString();
+   }
+
+   private ServerMessage load()
+   {
+      if (segment == null)
+      {
+         throw new IllegalStateException("Message " + messageID + " was discarded");
+      }
+
+      ServerMessageImpl msg = store.load(segment, position, length, messageID);
+
+      segment = null;
+
+      // the message was only referenced from here when it was stored
+      msg.restoreRefCounts(1, durableRefCount, memoryEstimate);
+
+      if (pagingStore != null)
+      {
+         msg.setPagingStore(pagingStore);
+
+         pagingStore.addSize(memoryEstimate);
+      }
+
+      return msg;
+   }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.impl.DirectBufferPool;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * Keeps the encoded messages of the references waiting in a queue off the heap.
+ * <p>
+ * Messages are appended to direct buffer segments, and a segment is given back once none of the
+ * messages written to it is still stored. Loading a message back frees its space. While a message
+ * is stored its memory estimate is not accounted in the paging store of its address.
+ * <p>
+ * The segments come from a pool the server keeps for the queues, apart from the storage manager's.
+ * They are given back when the store is closed with its queue, the messages still stored being
+ * dropped then.
+ */
+public class OffHeapMessageStore
+{
+   public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+   private final SimpleString queueName;
+
+   private final DirectBufferPool pool;
+
+   private final int segmentSize;
+
+   /** the segment messages are appended to */
+   private Segment current;
+
+   /** the segments taken from the pool */
+   private final Set<Segment> segments = new HashSet<Segment>();
+
+   private int storedCount;
+
+   private long storedBytes;
+
+   /** set when direct memory ran out, until a segment is given back */
+   private boolean exhausted;
+
+   private boolean closed;
+
+   public OffHeapMessageStore(final SimpleString queueName, final DirectBufferPool pool)
+   {
+      this(queueName, pool, DEFAULT_SEGMENT_SIZE);
+   }
+
+   public OffHeapMessageStore(final SimpleString queueName, final DirectBufferPool pool, final int segmentSize)
+   {
+      if (segmentSize <= 0)
+      {
+         throw new IllegalArgumentException("segmentSize must be > 0, it is " + segmentSize);
+      }
+
+      this.queueName = queueName;
+
+      this.pool = pool;
+
+      this.segmentSize = segmentSize;
+   }
+
+   /**
+    * Only plain references to a message routed to a single queue are kept off the heap, as the
+    * message is decoded back into a new instance.
+    *
+    * @return a reference keeping the message of ref off the heap, or null if it can't be stored
+    */
+   public synchronized MessageReference offload(final MessageReference ref)
+   {
+      if (closed || ref.getClass() != MessageReferenceImpl.class)
+      {
+         return null;
+      }
+
+      ServerMessage message = ref.getMessage();
+
+      if (message.getClass() != ServerMessageImpl.class || message.getRefCount() != 1)
+      {
+         return null;
+      }
+
+      ServerMessageImpl serverMessage = (ServerMessageImpl)message;
+
+      int length = serverMessage.getEncodeSize();
+
+      Segment segment = allocate(length);
+
+      if (segment == null)
+      {
+         return null;
+      }
+
+      int position = segment.position;
+
+      HornetQBuffer buffer = segment.view();
+
+      buffer.writerIndex(position);
+
+      serverMessage.encode(buffer);
+
+      segment.position += length;
+
+      segment.live++;
+
+      storedCount++;
+
+      storedBytes += length;
+
+      OffHeapMessageReference offHeap = new OffHeapMessageReference(this,
+                                                                    (MessageReferenceImpl)ref,
+                                                                    serverMessage,
+                                                                    segment,
+                                                                    position,
+                                                                    length);
+
+      PagingStore pagingStore = serverMessage.getPagingStore();
+
+      if (pagingStore != null)
+      {
+         pagingStore.addSize(-offHeap.getMessageMemoryEstimate());
+      }
+
+      return offHeap;
+   }
+
+   /**
+    * Decodes a stored message and frees its space.
+    */
+   synchronized ServerMessageImpl load(final Segment segment,
+                                       final int position,
+                                       final int length,
+                                       final long messageID)
+   {
+      // read under the lock as close() gives the segment back
+      if (closed)
+      {
+         throw new IllegalStateException("Message " + messageID +
+                                         " was dropped when queue " +
+                                         queueName +
+                                         " was closed");
+      }
+
+      HornetQBuffer buffer = segment.view();
+
+      buffer.setIndex(position, position + length);
+
+      ServerMessageImpl message = new ServerMessageImpl(messageID, length);
+
+      message.decode(buffer);
+
+      free(segment, length);
+
+      return message;
+   }
+
+   /**
+    * Frees the space of a stored message without decoding it, when its reference is dropped.
+    */
+   synchronized void discard(final Segment segment, final int length)
+   {
+      if (!closed)
+      {
+         free(segment, length);
+      }
+   }
+
+   /**
+    * Gives all the segments back to the pool. The messages still stored can't be loaded anymore,
+    * and no message is stored afterwards.
+    */
+   public synchronized void close()
+   {
+      if (closed)
+      {
+         return;
+      }
+
+      closed = true;
+
+      for (Segment segment : segments)
+      {
+         pool.release(segment.buffer);
+      }
+
+      segments.clear();
+
+      current = null;
+
+      storedCount = 0;
+
+      storedBytes = 0;
+   }
+
+   public synchronized int getStoredCount()
+   {
+      return storedCount;
+   }
+
+   public synchronized long getStoredBytes()
+   {
+      return storedBytes;
+   }
+
+   public synchronized int getSegmentCount()
+   {
+      return segments.size();
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "OffHeapMessageStore[queue=" + queueName +
+             ", storedCount=" +
+             storedCount +
+             ", storedBytes=" +
+             storedBytes +
+             ", segmentCount=" +
+             segments.size() +
+             "]";
+   }
+
+   private synchronized void free(final Segment segment, final int length)
+   {
+      storedCount--;
+
+      storedBytes -= length;
+
+      if (--segment.live == 0)
+      {
+         if (segment == current)
+         {
+            segment.position = 0;
+         }
+         else
+         {
+            release(segment);
+         }
+      }
+   }
+
+   private Segment allocate(final int length)
+   {
+      if (current != null && current.position + length <= current.capacity)
+      {
+         return current;
+      }
+
+      if (exhausted)
+      {
+         return null;
+      }
+
+      // the current segment is left to the messages written to it
+      Segment previous = current;
+
+      current = null;
+
+      if (previous != null && previous.live == 0)
+      {
+         release(previous);
+      }
+
+      ByteBuffer buffer;
+
+      try
+      {
+         int size = Math.max(length, segmentSize);
+
+         buffer = pool.acquire(size);
+      }
+      catch (OutOfMemoryError e)
+      {
+         // Trying again on every message would stall the queue, as the JDK collects and waits before giving up
+         exhausted = true;
+
+         HornetQServerLogger.LOGGER.offHeapStoreExhausted(e, queueName);
+
+         return null;
+      }
+
+      current = new Segment(buffer);
+
+      segments.add(current);
+
+      return current;
+   }
+
+   private void release(final Segment segment)
+   {
+      pool.release(segment.buffer);
+
+      segments.remove(segment);
+
+      exhausted = false;
+   }
+
+   static final class Segment
+   {
+      private final ByteBuffer buffer;
+
+      private final int capacity;
+
+      /** where the next message is written */
+      private int position;
+
+      /** the messages still stored */
+      private int live;
+
+      private Segment(final ByteBuffer buffer)
+      {
+         this.buffer = buffer;
+
+         capacity = buffer.limit();
+      }
+
+      private HornetQBuffer view()
+      {
+         return HornetQBuffers.wrappedBuffer(buffer.duplicate());
+      }
+   }
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.PostOffice;
@@ -47,10 +48,14 @@ public class QueueFactoryImpl implements QueueFactory
 
    private final ExecutorFactory executorFactory;
 
+   /** The segments of the messages the queues keep off the heap come from here */
+   private final DirectBufferPool offHeapBufferPool;
+
    public QueueFactoryImpl(final ExecutorFactory executorFactory,
                            final ScheduledExecutorService scheduledExecutor,
                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
-                           final StorageManager storageManager)
+                           final StorageManager storageManager,
+                           final DirectBufferPool offHeapBufferPool)
    {
       this.addressSettingsRepository = addressSettingsRepository;
 
@@ -59,6 +64,8 @@ public class QueueFactoryImpl implements QueueFactory
       this.storageManager = storageManager;
 
       this.executorFactory = executorFactory;
+
+      this.offHeapBufferPool = offHeapBufferPool;
    }
 
    public void setPostOffice(final PostOffice postOffice)
@@ -105,7 +112,8 @@ public class QueueFactoryImpl implements QueueFactory
                                postOffice,
                                storageManager,
                                addressSettingsRepository,
-                               executorFactory.getExecutor());
+                               executorFactory.getExecutor(),
+                               offHeapBufferPool);
       }
 
       return queue;
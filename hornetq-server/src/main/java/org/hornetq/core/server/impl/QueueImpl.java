@@ -16,8 +16,10 @@ package org.hornetq.core.server.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,12 +33,14 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.persistence.StorageManager;
@@ -86,6 +90,9 @@ public class QueueImpl implements Queue
 
    public static final int MAX_DELIVERIES_IN_LOOP = 1000;
 
+   /** References visited by a management scan per acquisition of the queue lock with fine grained locking */
+   public static final int SCAN_BATCH_SIZE = 1000;
+
    public static final int CHECK_QUEUE_SIZE_PERIOD = 100;
 
    /** If The system gets slow for any reason, this is the maximum time an Delivery or
@@ -175,6 +182,26 @@ public class QueueImpl implements Queue
 
    private volatile boolean directDeliver = true;
 
+   /** @see AddressSettings#isFineGrainedLocking() */
+   private volatile boolean fineGrainedLocking;
+
+   /** set while a poller is pending with fine grained locking, so producers don't schedule one per message */
+   private final AtomicBoolean pollerScheduled = new AtomicBoolean();
+
+   private final Runnable intakeDrainer = new IntakeDrainer();
+
+   /** scans releasing the lock between batches, each skipping the references added since it started. Guarded by this */
+   private final List<IncrementalScan> incrementalScans = new ArrayList<IncrementalScan>();
+
+   /** @see AddressSettings#getOffHeapThreshold() */
+   private volatile int offHeapThreshold = AddressSettings.DEFAULT_OFF_HEAP_THRESHOLD;
+
+   /** where the segments of the off-heap store come from, null if messages aren't kept off the heap */
+   private final DirectBufferPool offHeapBufferPool;
+
+   /** created with the first message kept off the heap. Guarded by this */
+   private OffHeapMessageStore offHeapStore;
+
    private AddressSettingsRepositoryListener addressSettingsRepositoryListener;
 
    public String debug()
@@ -261,6 +288,35 @@ public class QueueImpl implements Queue
                     final StorageManager storageManager,
                     final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                     final Executor executor)
+   {
+      this(id,
+           address,
+           name,
+           filter,
+           pageSubscription,
+           durable,
+           temporary,
+           scheduledExecutor,
+           postOffice,
+           storageManager,
+           addressSettingsRepository,
+           executor,
+           null);
+   }
+
+   public QueueImpl(final long id,
+                    final SimpleString address,
+                    final SimpleString name,
+                    final Filter filter,
+                    final PageSubscription pageSubscription,
+                    final boolean durable,
+                    final boolean temporary,
+                    final ScheduledExecutorService scheduledExecutor,
+                    final PostOffice postOffice,
+                    final StorageManager storageManager,
+                    final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                    final Executor executor,
+                    final DirectBufferPool offHeapBufferPool)
    {
       this.id = id;
 
@@ -284,11 +340,16 @@ public class QueueImpl implements Queue
 
       this.scheduledExecutor = scheduledExecutor;
 
+      this.offHeapBufferPool = offHeapBufferPool;
+
       scheduledDeliveryHandler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
 
       if (addressSettingsRepository != null)
       {
-         expiryAddress = addressSettingsRepository.getMatch(address.toString()).getExpiryAddress();
+         AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
+         expiryAddress = settings.getExpiryAddress();
+         fineGrainedLocking = settings.isFineGrainedLocking();
+         offHeapThreshold = settings.getOffHeapThreshold();
          addressSettingsRepositoryListener = new AddressSettingsRepositoryListener();
          addressSettingsRepository.registerListener(addressSettingsRepositoryListener);
       }
@@ -462,7 +523,10 @@ public class QueueImpl implements Queue
 
       directDeliver = false;
 
-      getExecutor().execute(concurrentPoller);
+      if (!fineGrainedLocking || pollerScheduled.compareAndSet(false, true))
+      {
+         getExecutor().execute(concurrentPoller);
+      }
    }
 
    public void forceDelivery()
@@ -523,6 +587,14 @@ public class QueueImpl implements Queue
       {
          addressSettingsRepository.unRegisterListener(addressSettingsRepositoryListener);
       }
+
+      synchronized (this)
+      {
+         if (offHeapStore != null)
+         {
+            offHeapStore.close();
+         }
+      }
    }
 
    public Executor getExecutor()
@@ -734,7 +806,7 @@ public class QueueImpl implements Queue
          {
             MessageReference ref = iterator.next();
 
-            if (ref.getMessage().getMessageID() == id1)
+            if (getMessageID(ref) == id1)
             {
                iterator.remove();
                refRemoved(ref);
@@ -770,7 +842,7 @@ public class QueueImpl implements Queue
          {
             MessageReference ref = iterator.next();
 
-            if (ref.getMessage().getMessageID() == id1)
+            if (getMessageID(ref) == id1)
             {
                return ref;
             }
@@ -876,13 +948,11 @@ public class QueueImpl implements Queue
       }
       else
       {
-         ServerMessage message = ref.getMessage();
-
-         boolean durableRef = message.isDurable() && durable;
+         boolean durableRef = isDurable(ref) && durable;
 
          if (durableRef)
          {
-            storageManager.storeAcknowledge(id, message.getMessageID());
+            storageManager.storeAcknowledge(id, getMessageID(ref));
          }
          postAcknowledge(ref);
       }
@@ -899,13 +969,11 @@ public class QueueImpl implements Queue
       }
       else
       {
-         ServerMessage message = ref.getMessage();
-
-         boolean durableRef = message.isDurable() && durable;
+         boolean durableRef = isDurable(ref) && durable;
 
          if (durableRef)
          {
-            storageManager.storeAcknowledgeTransactional(tx.getID(), id, message.getMessageID());
+            storageManager.storeAcknowledgeTransactional(tx.getID(), id, getMessageID(ref));
 
             tx.setContainsPersistent();
          }
@@ -1046,7 +1114,7 @@ public class QueueImpl implements Queue
       return deleteMatchingReferences(null);
    }
 
-   public synchronized int deleteMatchingReferences(final Filter filter1) throws Exception
+   public int deleteMatchingReferences(final Filter filter1) throws Exception
    {
       return iterQueue(filter1, new QueueIterateAction()
       {
@@ -1071,109 +1139,221 @@ public class QueueImpl implements Queue
     * @return
     * @throws Exception
     */
-   private synchronized int iterQueue(final Filter filter1, QueueIterateAction messageAction) throws Exception
+   private int iterQueue(final Filter filter1, final QueueIterateAction messageAction) throws Exception
    {
-      int count = 0;
+      if (fineGrainedLocking)
+      {
+         return iterQueue(filter1, messageAction, true);
+      }
+
+      synchronized (this)
+      {
+         return iterQueue(filter1, messageAction, false);
+      }
+   }
+
+   private int iterQueue(final Filter filter1,
+                         final QueueIterateAction messageAction,
+                         final boolean incremental) throws Exception
+   {
+      int count = scanReferences(filter1, true, messageAction, incremental);
+
       int txCount = 0;
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      LinkedListIterator<MessageReference> iter = iterator();
-      try
+      synchronized (this)
       {
+         List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter1);
+         for (MessageReference messageReference : cancelled)
+         {
+            messageAction.actMessage(tx, messageReference);
+            count++;
+            txCount++;
+         }
+      }
 
-         while (iter.hasNext())
+      if (txCount > 0)
+      {
+         tx.commit();
+         tx = new TransactionImpl(storageManager);
+         txCount = 0;
+      }
+
+      boolean more = true;
+
+      while (more)
+      {
+         synchronized (this)
          {
-            MessageReference ref = iter.next();
+            more = false;
 
-            if (ref.isPaged() && pageIterator == null)
+            if (pageIterator != null)
             {
-               // this means the queue is being removed
-               // hence paged references are just going away through
-               // page cleanup
-               continue;
-            }
+               int visited = 0;
 
-            if (filter1 == null || filter1.match(ref.getMessage()))
-            {
-               messageAction.actMessage(tx, ref);
-               iter.remove();
-               txCount++;
-               count++;
-            }
-         }
+               // System.out.println("QueueMemorySize before depage = " + queueMemorySize.get());
+               while (pageIterator.hasNext())
+               {
+                  if (incremental && visited++ == SCAN_BATCH_SIZE)
+                  {
+                     more = true;
+                     break;
+                  }
 
-         if (txCount > 0)
-         {
-            tx.commit();
+                  PagedReference reference = pageIterator.next();
+                  pageIterator.remove();
 
-            tx = new TransactionImpl(storageManager);
+                  if (filter1 == null || filter1.match(reference.getMessage()))
+                  {
+                     count++;
+                     txCount++;
+                     messageAction.actMessage(tx, reference);
+                  }
+                  else
+                  {
+                     addTail(reference, false);
+                  }
 
-            txCount = 0;
+                  if (txCount > 0 && txCount % 500 == 0)
+                  {
+                     tx.commit();
+                     tx = new TransactionImpl(storageManager);
+                     txCount = 0;
+                  }
+               }
+            }
          }
+      }
 
-         List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter1);
-         for (MessageReference messageReference : cancelled)
+      if (txCount > 0)
+      {
+         tx.commit();
+         tx = null;
+      }
+
+      synchronized (this)
+      {
+         if (filter1 != null && pageIterator != null)
          {
-            messageAction.actMessage(tx, messageReference);
-            count++;
-            txCount++;
+            scheduleDepage(false);
          }
+      }
+
+      return count;
+   }
 
-         if (txCount > 0)
+   /**
+    * Applies an action to the references in the queue matching a filter and removes them from the
+    * queue.
+    * <p>
+    * With fine grained locking the queue lock is released every {@link #SCAN_BATCH_SIZE}
+    * references, so deliveries carry on during long scans, and the transaction is committed after
+    * every batch. References added to the queue while the scan runs, including the ones the action
+    * adds back, are delivered as usual but not visited.
+    */
+   private int scanReferences(final Filter filter1,
+                              final boolean transacted,
+                              final QueueIterateAction messageAction) throws Exception
+   {
+      if (fineGrainedLocking)
+      {
+         return scanReferences(filter1, transacted, messageAction, true);
+      }
+
+      synchronized (this)
+      {
+         return scanReferences(filter1, transacted, messageAction, false);
+      }
+   }
+
+   private int scanReferences(final Filter filter1,
+                              final boolean transacted,
+                              final QueueIterateAction messageAction,
+                              final boolean incremental) throws Exception
+   {
+      int count = 0;
+      int txCount = 0;
+
+      Transaction tx = transacted ? new TransactionImpl(storageManager) : null;
+
+      LinkedListIterator<MessageReference> iter;
+
+      IncrementalScan scan = incremental ? new IncrementalScan() : null;
+
+      synchronized (this)
+      {
+         if (incremental)
          {
-            tx.commit();
-            tx = new TransactionImpl(storageManager);
-            txCount = 0;
+            incrementalScans.add(scan);
          }
 
+         iter = messageReferences.iterator();
+      }
+
+      try
+      {
+         boolean more = true;
 
-         if (pageIterator != null)
+         while (more)
          {
-            // System.out.println("QueueMemorySize before depage = " + queueMemorySize.get());
-            while (pageIterator.hasNext())
+            synchronized (this)
             {
-               PagedReference reference = pageIterator.next();
-               pageIterator.remove();
+               int visited = 0;
 
-               if (filter1 == null || filter1.match(reference.getMessage()))
+               while ((more = iter.hasNext()) && (!incremental || visited++ < SCAN_BATCH_SIZE))
                {
-                  count++;
-                  txCount++;
-                  messageAction.actMessage(tx, reference);
-               }
-               else
-               {
-                  addTail(reference, false);
-               }
+                  MessageReference ref = iter.next();
 
-               if (txCount > 0 && txCount % 500 == 0)
-               {
-                  tx.commit();
-                  tx = new TransactionImpl(storageManager);
-                  txCount = 0;
+                  if (ref.isPaged() && pageIterator == null)
+                  {
+                     // this means the queue is being removed
+                     // hence paged references are just going away through
+                     // page cleanup
+                     continue;
+                  }
+
+                  if (incremental && scan.added.contains(ref))
+                  {
+                     continue;
+                  }
+
+                  if (filter1 == null || filter1.match(ref.getMessage()))
+                  {
+                     messageAction.actMessage(tx, ref);
+                     iter.remove();
+                     txCount++;
+                     count++;
+                  }
                }
             }
-         }
 
-         if (txCount > 0)
-         {
-            tx.commit();
-            tx = null;
+            if (transacted && incremental && txCount > 0)
+            {
+               tx.commit();
+               tx = new TransactionImpl(storageManager);
+               txCount = 0;
+            }
          }
 
-
-
-         if (filter1 != null && pageIterator != null)
+         if (transacted && txCount > 0)
          {
-            scheduleDepage(false);
+            tx.commit();
          }
 
          return count;
       }
       finally
       {
-         iter.close();
+         synchronized (this)
+         {
+            iter.close();
+
+            if (incremental)
+            {
+               incrementalScans.remove(scan);
+            }
+         }
       }
    }
 
@@ -1201,7 +1381,7 @@ public class QueueImpl implements Queue
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            if (getMessageID(ref) == messageID)
             {
                deliveringCount.incrementAndGet();
                acknowledge(tx, ref);
@@ -1231,7 +1411,7 @@ public class QueueImpl implements Queue
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            if (getMessageID(ref) == messageID)
             {
                deliveringCount.incrementAndGet();
                expire(ref);
@@ -1248,37 +1428,18 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int expireReferences(final Filter filter) throws Exception
+   public int expireReferences(final Filter filter) throws Exception
    {
-      Transaction tx = new TransactionImpl(storageManager);
-
-      int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
-
-      try
+      return scanReferences(filter, true, new QueueIterateAction()
       {
-
-         while (iter.hasNext())
+         @Override
+         public void actMessage(Transaction tx, MessageReference ref) throws Exception
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               deliveringCount.incrementAndGet();
-               expire(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
-            }
+            deliveringCount.incrementAndGet();
+            expire(tx, ref);
+            refRemoved(ref);
          }
-
-         tx.commit();
-
-         return count;
-      }
-      finally
-      {
-         iter.close();
-      }
+      });
    }
 
    public void expireReferences()
@@ -1300,7 +1461,7 @@ public class QueueImpl implements Queue
                      MessageReference ref = iter.next();
                      try
                      {
-                        if (ref.getMessage().isExpired())
+                        if (isExpired(ref))
                         {
                            deliveringCount.incrementAndGet();
                            expired = true;
@@ -1339,7 +1500,7 @@ public class QueueImpl implements Queue
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            if (getMessageID(ref) == messageID)
             {
                deliveringCount.incrementAndGet();
                sendToDeadLetterAddress(ref);
@@ -1356,31 +1517,18 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
+   public int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
    {
-      int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
-
-      try
+      return scanReferences(filter, false, new QueueIterateAction()
       {
-         while (iter.hasNext())
+         @Override
+         public void actMessage(Transaction tx, MessageReference ref) throws Exception
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               deliveringCount.incrementAndGet();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
-            }
+            deliveringCount.incrementAndGet();
+            sendToDeadLetterAddress(ref);
+            refRemoved(ref);
          }
-         return count;
-      }
-      finally
-      {
-         iter.close();
-      }
+      });
    }
 
    public boolean moveReference(final long messageID, final SimpleString toAddress) throws Exception
@@ -1399,7 +1547,7 @@ public class QueueImpl implements Queue
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            if (getMessageID(ref) == messageID)
             {
                iter.remove();
                refRemoved(ref);
@@ -1429,9 +1577,9 @@ public class QueueImpl implements Queue
       return moveReferences(filter, toAddress, false);
    }
 
-   public synchronized int moveReferences(final Filter filter,
-                                          final SimpleString toAddress,
-                                          final boolean rejectDuplicates) throws Exception
+   public int moveReferences(final Filter filter,
+                             final SimpleString toAddress,
+                             final boolean rejectDuplicates) throws Exception
    {
       final DuplicateIDCache targetDuplicateCache = postOffice.getDuplicateIDCache(toAddress);
 
@@ -1476,7 +1624,7 @@ public class QueueImpl implements Queue
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
+            if (getMessageID(ref) == messageID)
             {
                iter.remove();
                refRemoved(ref);
@@ -1494,31 +1642,18 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   public int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
-
-      try
+      return scanReferences(filter, false, new QueueIterateAction()
       {
-         int count = 0;
-         while (iter.hasNext())
+         @Override
+         public void actMessage(Transaction tx, MessageReference ref) throws Exception
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               count++;
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
-            }
+            refRemoved(ref);
+            ref.getMessage().setPriority(newPriority);
+            addTail(ref, false);
          }
-         return count;
-      }
-      finally
-      {
-         iter.close();
-      }
+      });
    }
 
    public synchronized void resetAllIterators()
@@ -1609,7 +1744,88 @@ public class QueueImpl implements Queue
    private void internalAddTail(final MessageReference ref)
    {
       refAdded(ref);
-      messageReferences.addTail(ref, ref.getMessage().getPriority());
+      messageReferences.addTail(ref, getPriority(ref));
+      addedDuringScans(ref);
+   }
+
+   /**
+    * Records a reference added to the queue for the running incremental scans to skip. The caller
+    * of this method requires synchronized on the queue.
+    */
+   private void addedDuringScans(final MessageReference ref)
+   {
+      for (int i = 0; i < incrementalScans.size(); i++)
+      {
+         incrementalScans.get(i).added.add(ref);
+      }
+   }
+
+   /**
+    * Keeps the message of a reference sent to the queue off the heap, once the queue holds
+    * offHeapThreshold messages. The caller of this method requires synchronized on the queue.
+    * @return the reference to add to the queue
+    */
+   private MessageReference offload(final MessageReference ref)
+   {
+      int threshold = offHeapThreshold;
+
+      if (threshold < 0 || offHeapBufferPool == null || messageReferences.size() < threshold)
+      {
+         return ref;
+      }
+
+      if (offHeapStore == null)
+      {
+         offHeapStore = new OffHeapMessageStore(name, offHeapBufferPool);
+      }
+
+      MessageReference offHeap = offHeapStore.offload(ref);
+
+      return offHeap != null ? offHeap : ref;
+   }
+
+   /*
+    * The lookups below don't load a message kept off the heap
+    */
+
+   private static long getMessageID(final MessageReference ref)
+   {
+      if (ref instanceof OffHeapMessageReference)
+      {
+         return ((OffHeapMessageReference)ref).getMessageID();
+      }
+
+      return ref.getMessage().getMessageID();
+   }
+
+   private static byte getPriority(final MessageReference ref)
+   {
+      if (ref instanceof OffHeapMessageReference)
+      {
+         return ((OffHeapMessageReference)ref).getPriority();
+      }
+
+      return ref.getMessage().getPriority();
+   }
+
+   private static boolean isDurable(final MessageReference ref)
+   {
+      if (ref instanceof OffHeapMessageReference)
+      {
+         return ((OffHeapMessageReference)ref).isDurable();
+      }
+
+      return ref.getMessage().isDurable();
+   }
+
+   private static boolean isExpired(final MessageReference ref)
+   {
+      if (ref instanceof OffHeapMessageReference)
+      {
+         return ((OffHeapMessageReference)ref).isExpired();
+      }
+
+      return ref.getMessage().isExpired();
    }
 
    /**
@@ -1622,23 +1838,62 @@ public class QueueImpl implements Queue
    {
       queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
       refAdded(ref);
-      messageReferences.addHead(ref, ref.getMessage().getPriority());
+      messageReferences.addHead(ref, getPriority(ref));
+      addedDuringScans(ref);
    }
 
-   private synchronized void doPoll()
+   private synchronized void doPoll(final boolean batch)
    {
-      MessageReference ref = intermediateMessageReferences.poll();
+      pollerScheduled.set(false);
 
-      if (ref != null)
+      if (!batch)
       {
-         internalAddTail(ref);
+         MessageReference ref = intermediateMessageReferences.poll();
 
-         messagesAdded++;
-
-         if (consumerWithFilterCount.get() > 0 || messageReferences.size() == 1)
+         if (ref != null)
          {
-            deliver();
+            internalAddTail(offload(ref));
+
+            messagesAdded++;
+
+            if (consumerWithFilterCount.get() > 0 || messageReferences.size() == 1)
+            {
+               deliver();
+            }
          }
+
+         return;
+      }
+
+      boolean wasEmpty = messageReferences.isEmpty();
+
+      int added = 0;
+
+      MessageReference ref;
+
+      while (added < MAX_DELIVERIES_IN_LOOP && (ref = intermediateMessageReferences.poll()) != null)
+      {
+         internalAddTail(offload(ref));
+
+         added++;
+      }
+
+      if (added == 0)
+      {
+         return;
+      }
+
+      messagesAdded += added;
+
+      if (added == MAX_DELIVERIES_IN_LOOP)
+      {
+         // Schedule another one so a single thread isn't caught up here for too long
+         getExecutor().execute(intakeDrainer);
+      }
+
+      if (consumerWithFilterCount.get() > 0 || wasEmpty)
+      {
+         deliver();
       }
    }
 
@@ -2264,6 +2519,19 @@ public class QueueImpl implements Queue
          return;
       }
 
+      if (ref instanceof OffHeapMessageReference && ((OffHeapMessageReference)ref).discard())
+      {
+         // the queue held the only reference to the message, so it's dropped without being loaded
+         OffHeapMessageReference offHeapRef = (OffHeapMessageReference)ref;
+
+         if (offHeapRef.isDurable() && queue.durable)
+         {
+            deleteMessage(offHeapRef.getMessageID());
+         }
+
+         return;
+      }
+
       final ServerMessage message = ref.getMessage();
 
       boolean durableRef = message.isDurable() && queue.durable;
@@ -2297,18 +2565,23 @@ public class QueueImpl implements Queue
             // Also note that this delete shouldn't sync to disk, or else we would build up the executor's queue
             // as we can't delete each messaging with sync=true while adding messages transactionally.
             // There is a startup check to remove non referenced messages case these deletes fail
-            try
-            {
-               storageManager.deleteMessage(message.getMessageID());
-            }
-            catch (Exception e)
-            {
-               HornetQServerLogger.LOGGER.errorRemovingMessage(e, message.getMessageID());
-            }
+            deleteMessage(message.getMessageID());
          }
       }
    }
 
+   private void deleteMessage(final long messageID)
+   {
+      try
+      {
+         storageManager.deleteMessage(messageID);
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorRemovingMessage(e, messageID);
+      }
+   }
+
    void postRollback(final LinkedList<MessageReference> refs)
    {
       addHead(refs);
@@ -2508,10 +2781,27 @@ public class QueueImpl implements Queue
    {
       public void run()
       {
-         doPoll();
+         doPoll(fineGrainedLocking);
       }
    }
 
+   private final class IntakeDrainer implements Runnable
+   {
+      public void run()
+      {
+         doPoll(true);
+      }
+   }
+
+   /**
+    * A scan releasing the queue lock between batches, see {@link QueueImpl#scanReferences(Filter, boolean, QueueIterateAction)}
+    */
+   private static final class IncrementalScan
+   {
+      /** the references added to the queue since the scan started, by identity. Guarded by the queue */
+      final Set<MessageReference> added = Collections.newSetFromMap(new IdentityHashMap<MessageReference, Boolean>());
+   }
+
    /**
     * This will determine the actions that could be done while iterate the queue through iterQueue
     *
@@ -2579,7 +2869,10 @@ public class QueueImpl implements Queue
       @Override
       public void onChange()
       {
-         expiryAddress = addressSettingsRepository.getMatch(address.toString()).getExpiryAddress();
+         AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
+         expiryAddress = settings.getExpiryAddress();
+         fineGrainedLocking = settings.isFineGrainedLocking();
+         offHeapThreshold = settings.getOffHeapThreshold();
       }
    }
 }
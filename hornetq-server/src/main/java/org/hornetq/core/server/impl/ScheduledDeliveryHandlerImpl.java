@@ -18,7 +18,9 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.core.filter.Filter;
@@ -26,9 +28,14 @@ import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.ScheduledDeliveryHandler;
+import org.hornetq.utils.LongLinkedHashMap;
 
 /**
  * Handles scheduling deliveries to a queue at the correct time.
+ * <p>
+ * The scheduled references are indexed by message ID and bucketed by delivery time, and a single
+ * task on the scheduled executor is armed for the earliest delivery time. When it fires, every due
+ * reference is handed back to its queue in one batch.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
@@ -43,7 +50,17 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    private final Object lockDelivery = new Object();
 
-   private final LinkedList<MessageReference> scheduledReferences = new LinkedList<MessageReference>();
+   /** by message ID in scheduling order, the lock for everything below */
+   private final LongLinkedHashMap<ScheduledReference> scheduledReferences = new LongLinkedHashMap<ScheduledReference>();
+
+   private final TreeMap<Long, ScheduledReference> buckets = new TreeMap<Long, ScheduledReference>();
+
+   private final Runnable deliveryRunnable = new ScheduledDeliveryRunnable();
+
+   private ScheduledFuture<?> future;
+
+   /** when the future fires, valid if future != null */
+   private long futureTime;
 
    public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor)
    {
@@ -61,23 +78,33 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
             HornetQServerLogger.LOGGER.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(ref.getScheduledDeliveryTime());
+         ScheduledReference scheduled = new ScheduledReference(ref, deliveryTime, tail);
 
          synchronized (scheduledReferences)
          {
-            if (tail)
+            scheduledReferences.put(ref.getMessage().getMessageID(), scheduled);
+
+            ScheduledReference first = buckets.get(deliveryTime);
+
+            if (first == null)
             {
-               // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.addFirst(ref);
+               scheduled.previous = scheduled.next = scheduled;
+
+               buckets.put(deliveryTime, scheduled);
             }
             else
             {
-               // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.add(ref);
+               scheduled.next = first;
+               scheduled.previous = first.previous;
+               first.previous.next = scheduled;
+               first.previous = scheduled;
             }
-         }
 
-         scheduleDelivery(runnable, deliveryTime);
+            if (future == null || deliveryTime < futureTime)
+            {
+               scheduleDelivery(deliveryTime);
+            }
+         }
 
          return true;
       }
@@ -98,7 +125,10 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
       synchronized (scheduledReferences)
       {
-         refs.addAll(scheduledReferences);
+         for (ScheduledReference scheduled : scheduledReferences)
+         {
+            refs.add(scheduled.ref);
+         }
       }
       return refs;
    }
@@ -109,15 +139,16 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
       synchronized (scheduledReferences)
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
+         Iterator<ScheduledReference> iter = scheduledReferences.iterator();
 
          while (iter.hasNext())
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            ScheduledReference scheduled = iter.next();
+            if (filter == null || filter.match(scheduled.ref.getMessage()))
             {
                iter.remove();
-               refs.add(ref);
+               unlink(scheduled);
+               refs.add(scheduled.ref);
             }
          }
       }
@@ -128,23 +159,52 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
    {
       synchronized (scheduledReferences)
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
-         while (iter.hasNext())
+         ScheduledReference scheduled = scheduledReferences.remove(id);
+
+         if (scheduled != null)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == id)
-            {
-               iter.remove();
-               return ref;
-            }
+            unlink(scheduled);
+
+            return scheduled.ref;
          }
       }
 
       return null;
    }
 
-   private void scheduleDelivery(final ScheduledDeliveryRunnable runnable, final long deliveryTime)
+   /**
+    * Removes a reference from its delivery time bucket, the caller holds the lock.
+    */
+   private void unlink(final ScheduledReference scheduled)
+   {
+      if (scheduled.next == scheduled)
+      {
+         buckets.remove(scheduled.deliveryTime);
+      }
+      else
+      {
+         if (buckets.get(scheduled.deliveryTime) == scheduled)
+         {
+            buckets.put(scheduled.deliveryTime, scheduled.next);
+         }
+
+         scheduled.previous.next = scheduled.next;
+         scheduled.next.previous = scheduled.previous;
+      }
+
+      scheduled.previous = scheduled.next = null;
+   }
+
+   /**
+    * Arms the delivery task, the caller holds the lock.
+    */
+   private void scheduleDelivery(final long deliveryTime)
    {
+      if (future != null)
+      {
+         future.cancel(false);
+      }
+
       long now = System.currentTimeMillis();
 
       long delay = deliveryTime - now;
@@ -154,18 +214,34 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          delay = 0;
       }
 
-      scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+      futureTime = deliveryTime;
+
+      future = scheduledExecutor.schedule(deliveryRunnable, delay, TimeUnit.MILLISECONDS);
    }
 
-   private class ScheduledDeliveryRunnable implements Runnable
+   private static final class ScheduledReference
    {
-      private final long scheduledTime;
+      final MessageReference ref;
+
+      final long deliveryTime;
+
+      final boolean tail;
 
-      public ScheduledDeliveryRunnable(final long scheduledTime)
+      /** the references due at the same time, in scheduling order */
+      ScheduledReference previous;
+
+      ScheduledReference next;
+
+      ScheduledReference(final MessageReference ref, final long deliveryTime, final boolean tail)
       {
-         this.scheduledTime = scheduledTime;
+         this.ref = ref;
+         this.deliveryTime = deliveryTime;
+         this.tail = tail;
       }
+   }
 
+   private class ScheduledDeliveryRunnable implements Runnable
+   {
       public void run()
       {
          HashMap<Queue, LinkedList<MessageReference>> refs = new HashMap<Queue, LinkedList<MessageReference>>();
@@ -174,14 +250,29 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          {
             synchronized (scheduledReferences)
             {
+               future = null;
+
+               long now = System.currentTimeMillis();
+
+               Map.Entry<Long, ScheduledReference> bucket;
 
-               Iterator<MessageReference> iter = scheduledReferences.iterator();
-               while (iter.hasNext())
+               while ((bucket = buckets.firstEntry()) != null && bucket.getKey() <= now)
                {
-                  MessageReference reference = iter.next();
-                  if (reference.getScheduledDeliveryTime() <= this.scheduledTime)
+                  buckets.pollFirstEntry();
+
+                  ScheduledReference first = bucket.getValue();
+
+                  ScheduledReference scheduled = first;
+
+                  do
                   {
-                     iter.remove();
+                     ScheduledReference next = scheduled.next;
+
+                     scheduled.previous = scheduled.next = null;
+
+                     MessageReference reference = scheduled.ref;
+
+                     scheduledReferences.remove(reference.getMessage().getMessageID());
 
                      reference.setScheduledDeliveryTime(0);
 
@@ -193,8 +284,25 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
                         refs.put(reference.getQueue(), references);
                      }
 
-                     references.add(reference);
+                     // The queue adds the list one by one to its head, so the references added to the tail go first
+                     // in reverse order to end up in order
+                     if (scheduled.tail)
+                     {
+                        references.addFirst(reference);
+                     }
+                     else
+                     {
+                        references.add(reference);
+                     }
+
+                     scheduled = next;
                   }
+                  while (scheduled != first);
+               }
+
+               if (bucket != null)
+               {
+                  scheduleDelivery(bucket.getKey());
                }
             }
 
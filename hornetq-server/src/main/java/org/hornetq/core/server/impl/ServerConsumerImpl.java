@@ -16,7 +16,6 @@ package org.hornetq.core.server.impl;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -33,6 +32,7 @@ import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.QueueBinding;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveBatchMessage;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -50,6 +50,7 @@ import org.hornetq.spi.core.protocol.SessionCallback;
 import org.hornetq.spi.core.remoting.ReadyListener;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.LongLinkedHashMap;
 import org.hornetq.utils.TypedProperties;
 
 /**
@@ -106,7 +107,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private final StorageManager storageManager;
 
-   private final java.util.Queue<MessageReference> deliveringRefs = new ConcurrentLinkedQueue<MessageReference>();
+   /** in delivery order and indexed by message ID so individual acks don't scan the window, guarded by itself */
+   private final LongLinkedHashMap<MessageReference> deliveringRefs = new LongLinkedHashMap<MessageReference>();
 
    private final SessionCallback callback;
 
@@ -126,6 +128,12 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private final long creationTime;
 
+   /** whether the messages are delivered in batches, see {@link SessionReceiveBatchMessage} */
+   private final boolean batchDelivery;
+
+   /** whether the batch being filled is to be flushed by the executor of the queue, guarded by lock */
+   private boolean batchFlushScheduled;
+
    // Constructors ---------------------------------------------------------------------------------
 
    public ServerConsumerImpl(final long id,
@@ -170,6 +178,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       this.creationTime = System.currentTimeMillis();
 
+      batchDelivery = !browseOnly && callback.isBatchDeliverySupported() &&
+                      Boolean.parseBoolean(session.getMetaData(SessionReceiveBatchMessage.BATCH_DELIVERY_METADATA));
+
       if (browseOnly)
       {
          browserDeliverer = new BrowserDeliverer(messageQueue.iterator());
@@ -212,7 +223,13 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
    {
       synchronized(lock)
       {
-         refList.addAll(deliveringRefs);
+         synchronized (deliveringRefs)
+         {
+            for (MessageReference ref : deliveringRefs)
+            {
+               refList.add(ref);
+            }
+         }
       }
    }
 
@@ -280,7 +297,10 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
          {
             if (!preAcknowledge)
             {
-               deliveringRefs.add(ref);
+               synchronized (deliveringRefs)
+               {
+                  deliveringRefs.put(message.getMessageID(), ref);
+               }
             }
 
             ref.handled();
@@ -434,6 +454,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                   }
                   else
                   {
+                     flushBatch();
+
                      ServerMessage forcedDeliveryMessage = new ServerMessageImpl(storageManager.generateUniqueID(), 50);
 
                      forcedDeliveryMessage.putLongProperty(ClientConsumerImpl.FORCED_DELIVERY_MESSAGE, sequence);
@@ -456,8 +478,6 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                                                   final boolean lastConsumedAsDelivered,
                                                   final Transaction tx) throws Exception
    {
-      boolean performACK = lastConsumedAsDelivered;
-
       try
       {
          if (largeMessageDeliverer != null)
@@ -476,35 +496,39 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       LinkedList<MessageReference> refs = new LinkedList<MessageReference>();
 
-      if (!deliveringRefs.isEmpty())
+      if (lastConsumedAsDelivered)
       {
-         for (MessageReference ref : deliveringRefs)
+         MessageReference first;
+
+         synchronized (deliveringRefs)
          {
-            if (isTrace)
-            {
-               HornetQServerLogger.LOGGER.trace("Cancelling reference for messageID = " + ref.getMessage().getMessageID() + ", ref = " + ref);
-            }
-            if (performACK)
-            {
-               acknowledge(false, tx, ref.getMessage().getMessageID());
+            first = deliveringRefs.peek();
+         }
 
-               performACK = false;
-            }
-            else
-            {
-               if (!failed)
-               {
-                  // We don't decrement delivery count if the client failed, since there's a possibility that refs
-                  // were actually delivered but we just didn't get any acks for them
-                  // before failure
-                  ref.decrementDeliveryCount();
-               }
+         if (first != null)
+         {
+            acknowledge(false, tx, first.getMessage().getMessageID());
+         }
+      }
 
-               refs.add(ref);
-            }
+      MessageReference ref;
+
+      while ((ref = pollDeliveringRef()) != null)
+      {
+         if (isTrace)
+         {
+            HornetQServerLogger.LOGGER.trace("Cancelling reference for messageID = " + ref.getMessage().getMessageID() + ", ref = " + ref);
          }
 
-         deliveringRefs.clear();
+         if (!failed)
+         {
+            // We don't decrement delivery count if the client failed, since there's a possibility that refs
+            // were actually delivered but we just didn't get any acks for them
+            // before failure
+            ref.decrementDeliveryCount();
+         }
+
+         refs.add(ref);
       }
 
       return refs;
@@ -515,6 +539,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       synchronized (lock)
       {
          this.started = browseOnly || started;
+
+         if (!this.started)
+         {
+            flushBatch();
+         }
       }
 
       // Outside the lock
@@ -529,6 +558,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       synchronized (lock)
       {
          this.transferring = transferring;
+
+         if (transferring)
+         {
+            flushBatch();
+         }
       }
 
       // Outside the lock
@@ -633,7 +667,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
          MessageReference ref;
          do
          {
-            ref = deliveringRefs.poll();
+            ref = pollDeliveringRef();
 
             if (HornetQServerLogger.LOGGER.isTraceEnabled())
             {
@@ -715,25 +749,18 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       // Expiries can come in out of sequence with respect to delivery order
 
-      Iterator<MessageReference> iter = deliveringRefs.iterator();
-
-      MessageReference ref = null;
-
-      while (iter.hasNext())
+      synchronized (deliveringRefs)
       {
-         MessageReference theRef = iter.next();
-
-         if (theRef.getMessage().getMessageID() == messageID)
-         {
-            iter.remove();
-
-            ref = theRef;
-
-            break;
-         }
+         return deliveringRefs.remove(messageID);
       }
+   }
 
-      return ref;
+   private MessageReference pollDeliveringRef()
+   {
+      synchronized (deliveringRefs)
+      {
+         return deliveringRefs.poll();
+      }
    }
 
    public void readyForWriting(final boolean ready)
@@ -805,6 +832,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private void deliverLargeMessage(final MessageReference ref, final ServerMessage message) throws Exception
    {
+      // the messages batched before must reach the client first
+      flushBatch();
+
       final LargeMessageDeliverer localDeliverer = new LargeMessageDeliverer((LargeServerMessage)message, ref);
 
       // it doesn't need lock because deliverLargeMesasge is already inside the lock()
@@ -818,7 +848,24 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
     */
    private void deliverStandardMessage(final MessageReference ref, final ServerMessage message)
    {
-      int packetSize = callback.sendMessage(message, id, ref.getDeliveryCount());
+      int packetSize;
+
+      if (batchDelivery)
+      {
+         packetSize = callback.batchMessage(message, id, ref.getDeliveryCount());
+
+         if (!batchFlushScheduled)
+         {
+            // The batch goes once the queue is done delivering what it has at hand
+            batchFlushScheduled = true;
+
+            messageQueue.getExecutor().execute(flushBatchRunnable);
+         }
+      }
+      else
+      {
+         packetSize = callback.sendMessage(message, id, ref.getDeliveryCount());
+      }
 
       if (availableCredits != null)
       {
@@ -834,9 +881,33 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   /**
+    * Sends the messages batched so far, must be called under the lock.
+    */
+   private void flushBatch()
+   {
+      if (batchDelivery)
+      {
+         callback.flushBatch(id);
+      }
+   }
+
    // Inner classes
    // ------------------------------------------------------------------------
 
+   private final Runnable flushBatchRunnable = new Runnable()
+   {
+      public void run()
+      {
+         synchronized (lock)
+         {
+            batchFlushScheduled = false;
+
+            flushBatch();
+         }
+      }
+   };
+
    private final Runnable resumeLargeMessageRunnable = new Runnable()
    {
       public void run()
@@ -173,6 +173,24 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
       return refCount.get();
    }
 
+   int getDurableRefCount()
+   {
+      return durableRefCount.get();
+   }
+
+   /**
+    * Restores the counts of a message decoded back from an {@link OffHeapMessageStore}, without accounting them again
+    * in the paging store.
+    */
+   void restoreRefCounts(final int refCount, final int durableRefCount, final int memoryEstimate)
+   {
+      this.refCount.set(refCount);
+
+      this.durableRefCount.set(durableRefCount);
+
+      this.memoryEstimate = memoryEstimate;
+   }
+
    public boolean isLargeMessage()
    {
       return false;
@@ -323,8 +341,16 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
 
    // Encoding stuff
 
-   public void encodeMessageIDToBuffer()
+   public synchronized void encodeMessageIDToBuffer()
    {
+      if (isBufferUsed())
+      {
+         // The buffer is shared, the headers will be encoded again in a buffer of our own
+         bufferValid = false;
+
+         return;
+      }
+
       // We first set the message id - this needs to be set on the buffer since this buffer will be re-used
 
       buffer.setLong(buffer.getInt(MessageImpl.BUFFER_HEADER_SPACE) + DataConstants.SIZE_INT, messageID);
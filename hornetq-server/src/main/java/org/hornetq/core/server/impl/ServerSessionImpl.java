@@ -29,12 +29,14 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.Xid;
 
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.HornetQInternalErrorException;
 import org.hornetq.api.core.HornetQNonExistentQueueException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.Pair;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.management.ManagementHelper;
 import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.compression.impl.BodyCodecs;
 import org.hornetq.core.exception.HornetQXAException;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
@@ -66,6 +68,7 @@ import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.server.ServerSession;
 import org.hornetq.core.server.management.ManagementService;
 import org.hornetq.core.server.management.Notification;
+import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.core.transaction.ResourceManager;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.Transaction.State;
@@ -1242,6 +1245,69 @@ public class ServerSessionImpl implements ServerSession, FailureListener
    }
 
    public void send(final ServerMessage message, final boolean direct) throws Exception
+   {
+      send(message, direct, null);
+   }
+
+   public void sendBatch(final List<ServerMessage> messages, final boolean direct) throws Exception
+   {
+      if (tx != null && !autoCommitSends)
+      {
+         try
+         {
+            for (ServerMessage message : messages)
+            {
+               send(message, direct, null);
+            }
+         }
+         catch (HornetQException e)
+         {
+            tx.markAsRollbackOnly(e);
+
+            throw e;
+         }
+         catch (Exception e)
+         {
+            HornetQException hqe = new HornetQInternalErrorException();
+
+            hqe.initCause(e);
+
+            tx.markAsRollbackOnly(hqe);
+
+            throw e;
+         }
+
+         return;
+      }
+
+      Transaction batchTx = new TransactionImpl(storageManager);
+
+      try
+      {
+         for (ServerMessage message : messages)
+         {
+            send(message, direct, batchTx);
+         }
+      }
+      catch (Exception e)
+      {
+         // the failed route may have left the transaction of the batch in the context
+         routingContext.clear();
+
+         batchTx.rollback();
+
+         throw e;
+      }
+
+      // fails if a duplicate was detected, which rolls back the whole batch
+      batchTx.commit();
+   }
+
+   /**
+    * @param batchTx the transaction of the batch the message is sent in, if it isn't sent in the
+    *           one of the session
+    */
+   private void send(final ServerMessage message, final boolean direct, final Transaction batchTx) throws Exception
    {
       long id = storageManager.generateUniqueID();
 
@@ -1289,7 +1355,7 @@ public class ServerSessionImpl implements ServerSession, FailureListener
       }
       else
       {
-         doSend(message, direct);
+         doSend(message, direct, batchTx);
       }
    }
 
@@ -1317,7 +1383,7 @@ public class ServerSessionImpl implements ServerSession, FailureListener
             currentLargeMessage.putLongProperty(Message.HDR_LARGE_BODY_SIZE, messageBodySize);
          }
 
-         doSend(currentLargeMessage, false);
+         doSend(currentLargeMessage, false, null);
 
          currentLargeMessage = null;
       }
@@ -1524,6 +1590,9 @@ public class ServerSessionImpl implements ServerSession, FailureListener
          throw e;
       }
 
+      // The management operation reads its parameters from the body
+      message.decompressBody();
+
       ServerMessage reply = managementService.handleMessage(message);
 
       SimpleString replyTo = message.getSimpleStringProperty(ClientMessageImpl.REPLYTO_HEADER_NAME);
@@ -1532,7 +1601,7 @@ public class ServerSessionImpl implements ServerSession, FailureListener
       {
          reply.setAddress(replyTo);
 
-         doSend(reply, direct);
+         doSend(reply, direct, null);
       }
    }
 
@@ -1577,7 +1646,7 @@ public class ServerSessionImpl implements ServerSession, FailureListener
       theTx.rollback();
    }
 
-   private void doSend(final ServerMessage msg, final boolean direct) throws Exception
+   private void doSend(final ServerMessage msg, final boolean direct, final Transaction batchTx) throws Exception
    {
       // check the user has write access to this address.
       try
@@ -1593,14 +1662,28 @@ public class ServerSessionImpl implements ServerSession, FailureListener
          throw e;
       }
 
-      if (tx == null || autoCommitSends)
+      if (batchTx != null)
       {
+         routingContext.setTransaction(batchTx);
       }
-      else
+      else if (tx != null && !autoCommitSends)
       {
          routingContext.setTransaction(tx);
       }
 
+      if (!msg.isLargeMessage())
+      {
+         AddressSettings settings = server.getAddressSettingsRepository().getMatch(msg.getAddress().toString());
+
+         String codec = settings.getBodyCompressionCodec();
+
+         if (codec != null)
+         {
+            // Stored and delivered compressed, unless the producer already compressed it
+            msg.compressBody(BodyCodecs.getCodec(codec), settings.getMinBodyCompressionSize());
+         }
+      }
+
       postOffice.route(msg, routingContext, direct);
 
       Pair<UUID, AtomicLong> value = targetAddressInfos.get(msg.getAddress());
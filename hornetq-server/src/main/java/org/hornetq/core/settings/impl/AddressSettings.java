@@ -17,6 +17,7 @@ import java.io.Serializable;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.HornetQClient;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.settings.Mergeable;
 import org.hornetq.utils.BufferHelper;
@@ -59,6 +60,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_SEND_TO_DLA_ON_NO_ROUTE = false;
 
+   public static final boolean DEFAULT_FILTER_INDEX = false;
+
+   public static final boolean DEFAULT_FINE_GRAINED_LOCKING = false;
+
+   public static final long DEFAULT_PAGE_MAX_CACHE_BYTES = -1;
+
+   public static final int DEFAULT_OFF_HEAP_THRESHOLD = -1;
+
+   public static final String DEFAULT_BODY_COMPRESSION_CODEC = null;
+
+   public static final int DEFAULT_MIN_BODY_COMPRESSION_SIZE = HornetQClient.DEFAULT_MIN_BODY_COMPRESSION_SIZE;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -91,6 +104,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean sendToDLAOnNoRoute = null;
 
+   private Boolean filterIndex = null;
+
+   private Boolean fineGrainedLocking = null;
+
+   private Long pageMaxCacheBytes = null;
+
+   private Integer offHeapThreshold = null;
+
+   private String bodyCompressionCodec = null;
+
+   private Integer minBodyCompressionSize = null;
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -132,6 +157,16 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.pageMaxCache = pageMaxCache;
    }
 
+   public long getPageCacheMaxBytes()
+   {
+      return pageMaxCacheBytes != null ? pageMaxCacheBytes : AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES;
+   }
+
+   public void setPageCacheMaxBytes(final long pageMaxCacheBytes)
+   {
+      this.pageMaxCacheBytes = pageMaxCacheBytes;
+   }
+
    public long getMaxSizeBytes()
    {
       return maxSizeBytes != null ? maxSizeBytes : AddressSettings.DEFAULT_MAX_SIZE_BYTES;
@@ -233,6 +268,69 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       sendToDLAOnNoRoute = value;
    }
 
+   public boolean isFilterIndex()
+   {
+      return filterIndex != null ? filterIndex : AddressSettings.DEFAULT_FILTER_INDEX;
+   }
+
+   public void setFilterIndex(final boolean filterIndex)
+   {
+      this.filterIndex = filterIndex;
+   }
+
+   public boolean isFineGrainedLocking()
+   {
+      return fineGrainedLocking != null ? fineGrainedLocking : AddressSettings.DEFAULT_FINE_GRAINED_LOCKING;
+   }
+
+   public void setFineGrainedLocking(final boolean fineGrainedLocking)
+   {
+      this.fineGrainedLocking = fineGrainedLocking;
+   }
+
+   /**
+    * @return the number of messages a queue keeps on the heap before it keeps further messages off
+    *         the heap, -1 if it never does
+    */
+   public int getOffHeapThreshold()
+   {
+      return offHeapThreshold != null ? offHeapThreshold : AddressSettings.DEFAULT_OFF_HEAP_THRESHOLD;
+   }
+
+   public void setOffHeapThreshold(final int offHeapThreshold)
+   {
+      this.offHeapThreshold = offHeapThreshold;
+   }
+
+   /**
+    * @return the name of the codec compressing the bodies of the regular messages sent to the address,
+    *         null if they are stored as they were sent
+    */
+   public String getBodyCompressionCodec()
+   {
+      return bodyCompressionCodec != null ? bodyCompressionCodec : AddressSettings.DEFAULT_BODY_COMPRESSION_CODEC;
+   }
+
+   public void setBodyCompressionCodec(final String bodyCompressionCodec)
+   {
+      this.bodyCompressionCodec = bodyCompressionCodec;
+   }
+
+   /**
+    * @return the body size in bytes below which the bodies of the messages sent to the address are stored
+    *         uncompressed
+    */
+   public int getMinBodyCompressionSize()
+   {
+      return minBodyCompressionSize != null ? minBodyCompressionSize
+                                            : AddressSettings.DEFAULT_MIN_BODY_COMPRESSION_SIZE;
+   }
+
+   public void setMinBodyCompressionSize(final int minBodyCompressionSize)
+   {
+      this.minBodyCompressionSize = minBodyCompressionSize;
+   }
+
    public long getRedistributionDelay()
    {
       return redistributionDelay != null ? redistributionDelay : AddressSettings.DEFAULT_REDISTRIBUTION_DELAY;
@@ -309,6 +407,30 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
       }
+      if (filterIndex == null)
+      {
+         filterIndex = merged.filterIndex;
+      }
+      if (fineGrainedLocking == null)
+      {
+         fineGrainedLocking = merged.fineGrainedLocking;
+      }
+      if (pageMaxCacheBytes == null)
+      {
+         pageMaxCacheBytes = merged.pageMaxCacheBytes;
+      }
+      if (offHeapThreshold == null)
+      {
+         offHeapThreshold = merged.offHeapThreshold;
+      }
+      if (bodyCompressionCodec == null)
+      {
+         bodyCompressionCodec = merged.bodyCompressionCodec;
+      }
+      if (minBodyCompressionSize == null)
+      {
+         minBodyCompressionSize = merged.minBodyCompressionSize;
+      }
    }
 
    @Override
@@ -354,6 +476,39 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      // settings persisted by older versions end here
+      if (buffer.readable())
+      {
+         filterIndex = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         fineGrainedLocking = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageMaxCacheBytes = BufferHelper.readNullableLong(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         offHeapThreshold = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         SimpleString codecStr = buffer.readNullableSimpleString();
+
+         bodyCompressionCodec = codecStr != null ? codecStr.toString() : null;
+      }
+
+      if (buffer.readable())
+      {
+         minBodyCompressionSize = BufferHelper.readNullableInteger(buffer);
+      }
    }
 
    @Override
@@ -375,7 +530,13 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              BufferHelper.sizeOfNullableLong(expiryDelay) +
              BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
              BufferHelper.sizeOfNullableLong(redistributionDelay) +
-             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+             BufferHelper.sizeOfNullableBoolean(filterIndex) +
+             BufferHelper.sizeOfNullableBoolean(fineGrainedLocking) +
+             BufferHelper.sizeOfNullableLong(pageMaxCacheBytes) +
+             BufferHelper.sizeOfNullableInteger(offHeapThreshold) +
+             BufferHelper.sizeOfNullableSimpleString(bodyCompressionCodec) +
+             BufferHelper.sizeOfNullableInteger(minBodyCompressionSize);
    }
 
    @Override
@@ -413,6 +574,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableBoolean(buffer, filterIndex);
+
+      BufferHelper.writeNullableBoolean(buffer, fineGrainedLocking);
+
+      BufferHelper.writeNullableLong(buffer, pageMaxCacheBytes);
+
+      BufferHelper.writeNullableInteger(buffer, offHeapThreshold);
+
+      buffer.writeNullableSimpleString(bodyCompressionCodec != null ? new SimpleString(bodyCompressionCodec) : null);
+
+      BufferHelper.writeNullableInteger(buffer, minBodyCompressionSize);
    }
 
    /* (non-Javadoc)
@@ -440,6 +613,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((maxRedeliveryDelay == null) ? 0 : maxRedeliveryDelay.hashCode());
       result = prime * result + ((redistributionDelay == null) ? 0 : redistributionDelay.hashCode());
       result = prime * result + ((sendToDLAOnNoRoute == null) ? 0 : sendToDLAOnNoRoute.hashCode());
+      result = prime * result + ((filterIndex == null) ? 0 : filterIndex.hashCode());
+      result = prime * result + ((fineGrainedLocking == null) ? 0 : fineGrainedLocking.hashCode());
+      result = prime * result + ((pageMaxCacheBytes == null) ? 0 : pageMaxCacheBytes.hashCode());
+      result = prime * result + ((offHeapThreshold == null) ? 0 : offHeapThreshold.hashCode());
+      result = prime * result + ((bodyCompressionCodec == null) ? 0 : bodyCompressionCodec.hashCode());
+      result = prime * result + ((minBodyCompressionSize == null) ? 0 : minBodyCompressionSize.hashCode());
       return result;
    }
 
@@ -568,6 +747,48 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!sendToDLAOnNoRoute.equals(other.sendToDLAOnNoRoute))
          return false;
+      if (filterIndex == null)
+      {
+         if (other.filterIndex != null)
+            return false;
+      }
+      else if (!filterIndex.equals(other.filterIndex))
+         return false;
+      if (fineGrainedLocking == null)
+      {
+         if (other.fineGrainedLocking != null)
+            return false;
+      }
+      else if (!fineGrainedLocking.equals(other.fineGrainedLocking))
+         return false;
+      if (pageMaxCacheBytes == null)
+      {
+         if (other.pageMaxCacheBytes != null)
+            return false;
+      }
+      else if (!pageMaxCacheBytes.equals(other.pageMaxCacheBytes))
+         return false;
+      if (offHeapThreshold == null)
+      {
+         if (other.offHeapThreshold != null)
+            return false;
+      }
+      else if (!offHeapThreshold.equals(other.offHeapThreshold))
+         return false;
+      if (bodyCompressionCodec == null)
+      {
+         if (other.bodyCompressionCodec != null)
+            return false;
+      }
+      else if (!bodyCompressionCodec.equals(other.bodyCompressionCodec))
+         return false;
+      if (minBodyCompressionSize == null)
+      {
+         if (other.minBodyCompressionSize != null)
+            return false;
+      }
+      else if (!minBodyCompressionSize.equals(other.minBodyCompressionSize))
+         return false;
       return true;
    }
 
@@ -608,6 +829,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              redistributionDelay +
              ", sendToDLAOnNoRoute=" +
              sendToDLAOnNoRoute +
+             ", filterIndex=" +
+             filterIndex +
+             ", fineGrainedLocking=" +
+             fineGrainedLocking +
+             ", pageMaxCacheBytes=" +
+             pageMaxCacheBytes +
+             ", offHeapThreshold=" +
+             offHeapThreshold +
+             ", bodyCompressionCodec=" +
+             bodyCompressionCodec +
+             ", minBodyCompressionSize=" +
+             minBodyCompressionSize +
              "]";
    }
 }
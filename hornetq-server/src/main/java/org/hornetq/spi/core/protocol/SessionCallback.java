@@ -32,6 +32,23 @@ public interface SessionCallback
 
    int sendMessage(ServerMessage message, long consumerID, int deliveryCount);
 
+   /**
+    * @return whether several messages of a consumer can be delivered in one batch
+    */
+   boolean isBatchDeliverySupported();
+
+   /**
+    * Adds a message to the batch of the consumer, which is sent once it is full or
+    * {@link #flushBatch(long)} is called.
+    * @return the number of bytes the message takes in the batch
+    */
+   int batchMessage(ServerMessage message, long consumerID, int deliveryCount);
+
+   /**
+    * Sends the batch of the consumer, if it has any message.
+    */
+   void flushBatch(long consumerID);
+
    int sendLargeMessage(ServerMessage message, long consumerID, long bodySize, int deliveryCount);
 
    int sendLargeMessageContinuation(long consumerID, byte[] body, boolean continues, boolean requiresResponse);
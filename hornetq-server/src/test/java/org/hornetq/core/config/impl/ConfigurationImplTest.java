@@ -84,6 +84,10 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PAGING_DIR, conf.getPagingDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_LARGE_MESSAGES_DIR, conf.getLargeMessagesDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_PERCENTAGE, conf.getJournalCompactPercentage());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_PARALLEL_ENCODING, conf.isJournalParallelEncoding());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOAD_THREADS, conf.getJournalLoadThreads());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_MAX_FILES, conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_ADAPTIVE, conf.isJournalBufferAdaptive());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO, conf.getJournalBufferTimeout_NIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO, conf.getJournalBufferSize_AIO());
@@ -154,6 +158,22 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalSyncNonTransactional(b);
          Assert.assertEquals(b, conf.isJournalSyncNonTransactional());
 
+         b = RandomUtil.randomBoolean();
+         conf.setJournalParallelEncoding(b);
+         Assert.assertEquals(b, conf.isJournalParallelEncoding());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalLoadThreads(i);
+         Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactMaxFiles(i);
+         Assert.assertEquals(i, conf.getJournalCompactMaxFiles());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalBufferAdaptive(b);
+         Assert.assertEquals(b, conf.isJournalBufferAdaptive());
+
          i = RandomUtil.randomInt();
          conf.setJournalFileSize(i);
          Assert.assertEquals(i, conf.getJournalFileSize());
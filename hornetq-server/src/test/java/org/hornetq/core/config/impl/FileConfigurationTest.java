@@ -86,6 +86,10 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(100, conf.getJournalMinFiles());
       Assert.assertEquals(123, conf.getJournalCompactMinFiles());
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
+      Assert.assertEquals(true, conf.isJournalParallelEncoding());
+      Assert.assertEquals(4, conf.getJournalLoadThreads());
+      Assert.assertEquals(8, conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(true, conf.isJournalBufferAdaptive());
 
       Assert.assertEquals("largemessagesdir", conf.getLargeMessagesDirectory());
       Assert.assertEquals(95, conf.getMemoryWarningThreshold());
@@ -13,6 +13,8 @@
 
 package org.hornetq.core.filter.impl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.Assert;
 
 import org.hornetq.api.core.HornetQException;
@@ -686,6 +688,54 @@ public class FilterTest extends SilentTestCase
       parse.getNextToken();
    }
 
+   public void testConcurrentMatch() throws Exception
+   {
+      filter = FilterImpl.createFilter(new SimpleString("color = 'RED' AND weight > 10"));
+
+      final ServerMessage red = new ServerMessageImpl(1, 1000);
+      red.putStringProperty(new SimpleString("color"), new SimpleString("RED"));
+      red.putIntProperty(new SimpleString("weight"), 20);
+
+      final ServerMessage blue = new ServerMessageImpl(2, 1000);
+      blue.putStringProperty(new SimpleString("color"), new SimpleString("BLUE"));
+      blue.putIntProperty(new SimpleString("weight"), 20);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] threads = new Thread[10];
+
+      for (int t = 0; t < threads.length; t++)
+      {
+         final boolean useRed = t % 2 == 0;
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               for (int i = 0; i < 10000; i++)
+               {
+                  if (filter.match(useRed ? red : blue) != useRed)
+                  {
+                     errors.incrementAndGet();
+                  }
+               }
+            }
+         };
+      }
+
+      for (Thread thread : threads)
+      {
+         thread.start();
+      }
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+   }
+
    // Private -----------------------------------------------------------------------------------
 
    private void doPutStringProperty(final String key, final String value)
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.PageCache;
+
+public class PageCacheMapTest extends TestCase
+{
+   public void testBoundedByElements() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(3, -1);
+
+      for (long i = 1; i <= 3; i++)
+      {
+         map.put(i, new FakeCache(i, 100));
+      }
+
+      // 1 becomes the most recently used
+      Assert.assertNotNull(map.get(1));
+
+      map.put(4, new FakeCache(4, 100));
+
+      Assert.assertEquals(3, map.size());
+      Assert.assertNull(map.peek(2));
+      Assert.assertNotNull(map.peek(1));
+      Assert.assertEquals(1, map.getEvictions());
+   }
+
+   public void testBoundedByBytes() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(0, 1000);
+
+      map.put(1, new FakeCache(1, 400));
+      map.put(2, new FakeCache(2, 400));
+
+      Assert.assertEquals(800, map.getSizeBytes());
+
+      map.put(3, new FakeCache(3, 400));
+
+      Assert.assertEquals(2, map.size());
+      Assert.assertEquals(800, map.getSizeBytes());
+      Assert.assertNull(map.peek(1));
+
+      map.setMaxBytes(100);
+
+      // the most recently used one stays, even when it is bigger than the bound on its own
+      Assert.assertEquals(1, map.size());
+      Assert.assertNotNull(map.peek(3));
+      Assert.assertEquals(2, map.getEvictions());
+
+      map.setMaxBytes(-1);
+
+      for (long i = 4; i < 100; i++)
+      {
+         map.put(i, new FakeCache(i, 400));
+      }
+
+      Assert.assertEquals(97, map.size());
+   }
+
+   public void testLivePagesNotEvicted() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(1, -1);
+
+      FakeCache live = new FakeCache(1, 0);
+      live.live = true;
+
+      map.put(1, live);
+      map.put(2, new FakeCache(2, 100));
+      map.put(3, new FakeCache(3, 100));
+
+      Assert.assertEquals(2, map.size());
+      Assert.assertSame(live, map.peek(1));
+      Assert.assertNull(map.peek(2));
+
+      // once it is complete it is like any other page
+      live.live = false;
+      map.checkCacheSize();
+
+      Assert.assertEquals(1, map.size());
+      Assert.assertNotNull(map.peek(3));
+   }
+
+   public void testPeekKeepsTheOrder() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(2, -1);
+
+      FakeCache first = new FakeCache(1, 100);
+
+      map.put(1, first);
+      map.put(2, new FakeCache(2, 100));
+
+      Assert.assertSame(first, map.peek(1));
+
+      map.put(3, new FakeCache(3, 100));
+
+      // still the least recently used one
+      Assert.assertNull(map.peek(1));
+      Assert.assertTrue(first.closed);
+      Assert.assertNotNull(map.peek(2));
+   }
+
+   public void testDecodedSizeGrows() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(0, 1000);
+
+      FakeCache first = new FakeCache(1, 100);
+
+      map.put(1, first);
+      map.put(2, new FakeCache(2, 100));
+
+      // the cursors decoded more messages of the first page
+      first.size = 900;
+
+      Assert.assertEquals(1000, map.getSizeBytes());
+
+      // a hit checks the bounds again
+      first.size = 950;
+      Assert.assertNotNull(map.get(2));
+
+      Assert.assertNull(map.peek(1));
+      Assert.assertEquals(100, map.getSizeBytes());
+      Assert.assertEquals(1, map.getEvictions());
+   }
+
+   public void testRemoveCloses() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(2, -1);
+
+      FakeCache cache = new FakeCache(1, 100);
+
+      map.put(1, cache);
+
+      Assert.assertSame(cache, map.remove(1));
+      Assert.assertTrue(cache.closed);
+      Assert.assertNull(map.peek(1));
+      Assert.assertNull(map.remove(1));
+   }
+
+   public void testHitsAndMisses() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(2, -1);
+
+      Assert.assertNull(map.get(1));
+      map.put(1, new FakeCache(1, 100));
+      Assert.assertNotNull(map.get(1));
+      Assert.assertNotNull(map.get(1));
+
+      // not counted
+      map.peek(1);
+      map.peek(2);
+
+      Assert.assertEquals(2, map.getHits());
+      Assert.assertEquals(1, map.getMisses());
+   }
+
+   private static final class FakeCache implements PageCache
+   {
+      private final long pageId;
+
+      long size;
+
+      boolean live;
+
+      boolean closed;
+
+      FakeCache(final long pageId, final long size)
+      {
+         this.pageId = pageId;
+         this.size = size;
+      }
+
+      public long getPageId()
+      {
+         return pageId;
+      }
+
+      public int getNumberOfMessages()
+      {
+         return 0;
+      }
+
+      public long getSize()
+      {
+         return size;
+      }
+
+      public void setMessages(final PagedMessage[] messages)
+      {
+      }
+
+      public PagedMessage[] getMessages()
+      {
+         return new PagedMessage[0];
+      }
+
+      public boolean isLive()
+      {
+         return live;
+      }
+
+      public PagedMessage getMessage(final int messageNumber)
+      {
+         return null;
+      }
+
+      public void lock()
+      {
+      }
+
+      public void unlock()
+      {
+      }
+
+      public void close()
+      {
+         closed = true;
+      }
+   }
+}
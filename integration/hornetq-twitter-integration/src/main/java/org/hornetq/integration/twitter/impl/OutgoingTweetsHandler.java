@@ -12,6 +12,7 @@
  */
 package org.hornetq.integration.twitter.impl;
 
+import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.postoffice.Binding;
@@ -169,6 +170,14 @@ public class OutgoingTweetsHandler implements Consumer, ConnectorService
 
          ServerMessage message = ref.getMessage();
 
+         if (message.containsProperty(Message.HDR_BODY_CODEC))
+         {
+            // the address compresses the bodies, the stored message stays compressed
+            message = message.copy();
+
+            message.decompressBody();
+         }
+
          StatusUpdate status = new StatusUpdate(message.getBodyBuffer().readString());
 
          // set optional property
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.HornetQClient;
+import org.hornetq.api.core.client.MessageHandler;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.client.impl.ClientConsumerInternal;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.util.ServiceTestBase;
+
+public class AdaptiveConsumerWindowTest extends ServiceTestBase
+{
+   private static final int WINDOW_SIZE = 100 * 1024;
+
+   private static final int BODY_SIZE = 1024;
+
+   private final SimpleString address = new SimpleString("address");
+
+   private final SimpleString queueName = new SimpleString("queue");
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      server = createServer(false);
+      server.start();
+
+      locator = createInVMNonHALocator();
+
+      locator.setConsumerWindowSize(WINDOW_SIZE);
+
+      locator.setConsumerWindowTargetTime(50);
+   }
+
+   public void testFixedWindowByDefault() throws Exception
+   {
+      locator.setConsumerWindowTargetTime(HornetQClient.DEFAULT_CONSUMER_WINDOW_TARGET_TIME);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      Assert.assertEquals(((ClientConsumerInternal)consumer).getClientWindowSize(), consumer.getCurrentWindowSize());
+
+      Assert.assertEquals(0, consumer.getDrainRate(), 0);
+   }
+
+   public void testFastConsumerKeepsWindow() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      sendMessages(session, 1000);
+
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      session.start();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      Assert.assertTrue(consumer.getCurrentWindowSize() > WINDOW_SIZE / 5);
+
+      Assert.assertTrue(consumer.getCurrentWindowSize() <= WINDOW_SIZE);
+   }
+
+   public void testSlowConsumerLeavesMessagesToFastConsumer() throws Exception
+   {
+      final int numMessages = 300;
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession slowSession = addClientSession(sf.createSession(false, true, true));
+
+      slowSession.createQueue(address, queueName, false);
+
+      sendMessages(slowSession, numMessages);
+
+      final AtomicInteger slowReceived = new AtomicInteger();
+
+      final CountDownLatch slowLatch = new CountDownLatch(120);
+
+      ClientConsumer slowConsumer = slowSession.createConsumer(queueName);
+
+      slowConsumer.setMessageHandler(new MessageHandler()
+      {
+         public void onMessage(final ClientMessage message)
+         {
+            try
+            {
+               Thread.sleep(10);
+
+               message.acknowledge();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            catch (HornetQException e)
+            {
+               e.printStackTrace();
+            }
+
+            slowReceived.incrementAndGet();
+
+            slowLatch.countDown();
+         }
+      });
+
+      slowSession.start();
+
+      // The slow consumer took the whole window at first, which it consumed down to its measured one
+      Assert.assertTrue(slowLatch.await(30, TimeUnit.SECONDS));
+
+      Assert.assertTrue(slowConsumer.getDrainRate() > 0);
+
+      Assert.assertTrue(slowConsumer.getCurrentWindowSize() < WINDOW_SIZE / 5);
+
+      Assert.assertTrue(((ClientConsumerInternal)slowConsumer).getBufferSize() < 20);
+
+      ClientSession fastSession = addClientSession(sf.createSession(false, true, true));
+
+      ClientConsumer fastConsumer = fastSession.createConsumer(queueName);
+
+      fastSession.start();
+
+      int fastReceived = 0;
+
+      ClientMessage message;
+
+      while ((message = fastConsumer.receive(1000)) != null)
+      {
+         message.acknowledge();
+
+         fastReceived++;
+      }
+
+      // With the fixed window, more than half of the window would have stayed with the slow consumer
+      Assert.assertTrue("fast consumer received " + fastReceived, fastReceived > 150);
+
+      // The slow consumer is left with its buffer
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (slowReceived.get() + fastReceived < numMessages && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(numMessages, slowReceived.get() + fastReceived);
+   }
+
+   private void sendMessages(final ClientSession session, final int numMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+
+         message.getBodyBuffer().writeBytes(new byte[BODY_SIZE]);
+
+         producer.send(message);
+      }
+   }
+}
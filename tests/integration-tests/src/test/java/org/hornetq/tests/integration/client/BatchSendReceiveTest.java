@@ -0,0 +1,442 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Interceptor;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.protocol.core.Packet;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.tests.util.ServiceTestBase;
+
+public class BatchSendReceiveTest extends ServiceTestBase
+{
+   private static final int NUM_MESSAGES = 100;
+
+   private final SimpleString address = new SimpleString("address");
+
+   private final SimpleString queueName = new SimpleString("queue");
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      server = createServer(false);
+      server.start();
+
+      locator = createInVMNonHALocator();
+   }
+
+   public void testBatchSend() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_SEND_BATCH);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBlockOnNonDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      producer.send(createMessages(session, 0, NUM_MESSAGES, 100));
+
+      Assert.assertEquals(1, counter.count.get());
+
+      Assert.assertEquals(NUM_MESSAGES, getMessageCount(server, address.toString()));
+
+      receiveMessages(session, NUM_MESSAGES);
+   }
+
+   public void testBatchSendWithLargeMessage() throws Exception
+   {
+      locator.setMinLargeMessageSize(1024);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      List<ClientMessage> messages = createMessages(session, 0, NUM_MESSAGES / 2, 100);
+
+      ClientMessage large = session.createMessage(false);
+
+      large.getBodyBuffer().writeBytes(new byte[10 * 1024]);
+
+      large.putIntProperty("count", NUM_MESSAGES / 2);
+
+      messages.add(large);
+
+      messages.addAll(createMessages(session, NUM_MESSAGES / 2 + 1, NUM_MESSAGES / 2, 100));
+
+      producer.send(messages);
+
+      receiveMessages(session, NUM_MESSAGES + 1);
+   }
+
+   public void testBatchSendAcknowledgements() throws Exception
+   {
+      locator.setConfirmationWindowSize(1024);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      final CountDownLatch latch = new CountDownLatch(NUM_MESSAGES);
+
+      session.setSendAcknowledgementHandler(new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            latch.countDown();
+         }
+      });
+
+      ClientProducer producer = session.createProducer(address);
+
+      producer.send(createMessages(session, 0, NUM_MESSAGES, 100));
+
+      Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+   }
+
+   public void testBatchSendHandler() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      final List<Integer> acknowledged = new ArrayList<Integer>();
+
+      ClientProducer producer = session.createProducer(address);
+
+      producer.send(createMessages(session, 0, NUM_MESSAGES, 100), new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            acknowledged.add(message.getIntProperty("count"));
+         }
+      });
+
+      // called before the send returns, in order
+      Assert.assertEquals(NUM_MESSAGES, acknowledged.size());
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         Assert.assertEquals(i, acknowledged.get(i).intValue());
+      }
+
+      receiveMessages(session, NUM_MESSAGES);
+   }
+
+   public void testNonBlockingBatchSend() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_SEND_BATCH);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBlockOnNonDurableSend(false);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      producer.send(createMessages(session, 0, NUM_MESSAGES, 100));
+
+      receiveMessages(session, NUM_MESSAGES);
+
+      Assert.assertEquals(1, counter.count.get());
+
+      Assert.assertEquals(0, counter.blocking.get());
+   }
+
+   public void testDurableMessageBlocksBatch() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_SEND_BATCH);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBlockOnNonDurableSend(false);
+
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      List<ClientMessage> messages = createMessages(session, 0, NUM_MESSAGES, 100);
+
+      messages.get(NUM_MESSAGES / 2).setDurable(true);
+
+      producer.send(messages);
+
+      Assert.assertEquals(1, counter.blocking.get());
+
+      receiveMessages(session, NUM_MESSAGES);
+   }
+
+   public void testBatchSendHandlerWithConfirmationWindow() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_SEND_BATCH);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setConfirmationWindowSize(1024 * 1024);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      final List<Message> acknowledged = Collections.synchronizedList(new ArrayList<Message>());
+
+      final CountDownLatch latch = new CountDownLatch(NUM_MESSAGES);
+
+      ClientProducer producer = session.createProducer(address);
+
+      List<ClientMessage> messages = createMessages(session, 0, NUM_MESSAGES, 100);
+
+      producer.send(messages, new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            acknowledged.add(message);
+
+            latch.countDown();
+         }
+      });
+
+      Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+      // sent without waiting, each message confirmed in order
+      Assert.assertEquals(0, counter.blocking.get());
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         Assert.assertSame(messages.get(i), acknowledged.get(i));
+      }
+
+      receiveMessages(session, NUM_MESSAGES);
+   }
+
+   public void testBatchRejectedAsAWhole() throws Exception
+   {
+      // the failure is only thrown from a blocking send
+      locator.setBlockOnNonDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      List<ClientMessage> first = createMessages(session, 0, 1, 100);
+
+      first.get(0).putStringProperty(Message.HDR_DUPLICATE_DETECTION_ID, new SimpleString("dup"));
+
+      producer.send(first.get(0));
+
+      List<ClientMessage> batch = createMessages(session, 1, NUM_MESSAGES - 1, 100);
+
+      batch.get(NUM_MESSAGES / 2).putStringProperty(Message.HDR_DUPLICATE_DETECTION_ID, new SimpleString("dup"));
+
+      try
+      {
+         producer.send(batch);
+
+         Assert.fail("the batch holds a duplicate");
+      }
+      catch (HornetQException expected)
+      {
+      }
+
+      // none of the batch was routed, including the messages ahead of the duplicate
+      Assert.assertEquals(1, getMessageCount(server, address.toString()));
+
+      batch.get(NUM_MESSAGES / 2).removeProperty(Message.HDR_DUPLICATE_DETECTION_ID);
+
+      producer.send(batch);
+
+      receiveMessages(session, NUM_MESSAGES);
+   }
+
+   public void testBatchDelivery() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_RECEIVE_MSG_BATCH);
+
+      locator.addIncomingInterceptor(counter);
+
+      locator.setBatchDelivery(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (ClientMessage message : createMessages(session, 0, NUM_MESSAGES, 100))
+      {
+         producer.send(message);
+      }
+
+      receiveMessages(session, NUM_MESSAGES);
+
+      Assert.assertTrue(counter.count.get() > 0);
+
+      Assert.assertEquals(0, getMessageCount(server, address.toString()));
+   }
+
+   public void testNoBatchDeliveryByDefault() throws Exception
+   {
+      PacketCounter counter = new PacketCounter(PacketImpl.SESS_RECEIVE_MSG_BATCH);
+
+      locator.addIncomingInterceptor(counter);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer producer = session.createProducer(address);
+
+      producer.send(createMessages(session, 0, NUM_MESSAGES, 100));
+
+      receiveMessages(session, NUM_MESSAGES);
+
+      Assert.assertEquals(0, counter.count.get());
+   }
+
+   private List<ClientMessage> createMessages(final ClientSession session,
+                                              final int first,
+                                              final int numMessages,
+                                              final int bodySize)
+   {
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+
+      for (int i = first; i < first + numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+
+         byte[] body = new byte[bodySize];
+
+         Arrays.fill(body, (byte)i);
+
+         message.getBodyBuffer().writeBytes(body);
+
+         message.putIntProperty("count", i);
+
+         messages.add(message);
+      }
+
+      return messages;
+   }
+
+   private void receiveMessages(final ClientSession session, final int numMessages) throws Exception
+   {
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         if (!message.isLargeMessage())
+         {
+            Assert.assertEquals(100, message.getBodyBuffer().readableBytes());
+
+            Assert.assertEquals((byte)i, message.getBodyBuffer().readByte());
+         }
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      consumer.close();
+   }
+
+   private static final class PacketCounter implements Interceptor
+   {
+      private final byte type;
+
+      final AtomicInteger count = new AtomicInteger();
+
+      final AtomicInteger blocking = new AtomicInteger();
+
+      PacketCounter(final byte type)
+      {
+         this.type = type;
+      }
+
+      public boolean intercept(final Packet packet, final RemotingConnection connection) throws HornetQException
+      {
+         if (packet.getType() == type)
+         {
+            count.incrementAndGet();
+
+            if (packet instanceof SessionSendBatchMessage && ((SessionSendBatchMessage)packet).isRequiresResponse())
+            {
+               blocking.incrementAndGet();
+            }
+         }
+
+         return true;
+      }
+   }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Interceptor;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.SendAcknowledgementHandler;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.compression.impl.BodyCodecs;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.CoreRemotingConnection;
+import org.hornetq.core.protocol.core.Packet;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.MessagePacket;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.tests.util.ServiceTestBase;
+
+public class BodyCompressionTest extends ServiceTestBase
+{
+   private static final int NUM_MESSAGES = 20;
+
+   private static final int BODY_SIZE = 10 * 1024;
+
+   private final SimpleString address = new SimpleString("address");
+
+   private final SimpleString compressedAddress = new SimpleString("compressed");
+
+   private final SimpleString smallBodiesAddress = new SimpleString("small");
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      AddressSettings settings = new AddressSettings();
+
+      settings.setBodyCompressionCodec(BodyCodecs.DEFLATE);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+
+      settingsMap.put(compressedAddress.toString(), settings);
+
+      AddressSettings smallBodiesSettings = new AddressSettings();
+
+      smallBodiesSettings.setBodyCompressionCodec(BodyCodecs.LZF);
+
+      smallBodiesSettings.setMinBodyCompressionSize(100);
+
+      settingsMap.put(smallBodiesAddress.toString(), smallBodiesSettings);
+
+      server = createServer(true, createDefaultConfig(), -1, -1, settingsMap);
+
+      server.start();
+
+      server.createQueue(address, address, null, true, false);
+
+      server.createQueue(compressedAddress, compressedAddress, null, true, false);
+
+      server.createQueue(smallBodiesAddress, smallBodiesAddress, null, true, false);
+
+      locator = createInVMNonHALocator();
+   }
+
+   public void testProducerCompression() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_SEND);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBodyCompressionCodec(BodyCodecs.LZF);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, BODY_SIZE));
+      }
+
+      Assert.assertEquals(NUM_MESSAGES, counter.compressed.get());
+
+      Assert.assertEquals(0, counter.uncompressed.get());
+
+      receiveMessages(session, address, NUM_MESSAGES, BODY_SIZE);
+   }
+
+   public void testProducerCompressionOfBatches() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_SEND_BATCH);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBodyCompressionCodec(BodyCodecs.DEFLATE);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(address);
+
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         messages.add(createMessage(session, i, 2 * 1024));
+      }
+
+      producer.send(messages);
+
+      Assert.assertEquals(NUM_MESSAGES, counter.compressed.get());
+
+      receiveMessages(session, address, NUM_MESSAGES, 2 * 1024);
+   }
+
+   public void testSmallBodiesNotCompressed() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_SEND);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBodyCompressionCodec(BodyCodecs.LZF);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, 100));
+      }
+
+      Assert.assertEquals(0, counter.compressed.get());
+
+      Assert.assertEquals(NUM_MESSAGES, counter.uncompressed.get());
+
+      receiveMessages(session, address, NUM_MESSAGES, 100);
+   }
+
+   public void testAddressCompression() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_RECEIVE_MSG);
+
+      server.getRemotingService().addOutgoingInterceptor(counter);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(compressedAddress);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, BODY_SIZE));
+      }
+
+      receiveMessages(session, compressedAddress, NUM_MESSAGES, BODY_SIZE);
+
+      Assert.assertEquals(NUM_MESSAGES, counter.compressed.get());
+   }
+
+   public void testAddressMinBodyCompressionSize() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_RECEIVE_MSG);
+
+      server.getRemotingService().addOutgoingInterceptor(counter);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(smallBodiesAddress);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, 512));
+      }
+
+      receiveMessages(session, smallBodiesAddress, NUM_MESSAGES, 512);
+
+      Assert.assertEquals(NUM_MESSAGES, counter.compressed.get());
+   }
+
+   public void testOlderClientReceivesDecompressedBodies() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_RECEIVE_MSG);
+
+      server.getRemotingService().addOutgoingInterceptor(counter);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(compressedAddress);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, BODY_SIZE));
+      }
+
+      for (RemotingConnection connection : server.getRemotingService().getConnections())
+      {
+         ((CoreRemotingConnection)connection).setClientVersion(BodyCodecs.SINCE_VERSION - 1);
+      }
+
+      ClientConsumer consumer = session.createConsumer(compressedAddress);
+
+      session.start();
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertFalse(message.containsProperty(Message.HDR_BODY_CODEC));
+
+         Assert.assertEquals(BODY_SIZE, message.getBodySize());
+      }
+
+      Assert.assertEquals(0, counter.compressed.get());
+
+      Assert.assertEquals(NUM_MESSAGES, counter.uncompressed.get());
+
+      // Closed without acknowledging, the stored messages stay compressed for the clients which can decompress them
+      session.close();
+
+      receiveMessages(createSession(), compressedAddress, NUM_MESSAGES, BODY_SIZE);
+
+      Assert.assertEquals(NUM_MESSAGES, counter.compressed.get());
+   }
+
+   public void testCompressedMessagesSurviveRestart() throws Exception
+   {
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(compressedAddress);
+
+      for (int i = 0; i < NUM_MESSAGES; i++)
+      {
+         producer.send(createMessage(session, i, BODY_SIZE));
+      }
+
+      session.close();
+
+      server.stop();
+
+      server.start();
+
+      session = createSession();
+
+      receiveMessages(session, compressedAddress, NUM_MESSAGES, BODY_SIZE);
+   }
+
+   public void testSentMessageLeftAsItWas() throws Exception
+   {
+      CompressionCounter counter = new CompressionCounter(PacketImpl.SESS_SEND);
+
+      server.getRemotingService().addIncomingInterceptor(counter);
+
+      locator.setBodyCompressionCodec(BodyCodecs.LZF);
+
+      locator.setConfirmationWindowSize(1024 * 1024);
+
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(address);
+
+      ClientMessage message = createMessage(session, 0, BODY_SIZE);
+
+      producer.send(message);
+
+      assertBodyLeftAsItWas(message);
+
+      // Sent again as it was first
+      producer.send(message);
+
+      assertBodyLeftAsItWas(message);
+
+      final CountDownLatch latch = new CountDownLatch(1);
+
+      final AtomicReference<Message> acknowledged = new AtomicReference<Message>();
+
+      producer.send(message, new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            acknowledged.set(message);
+
+            latch.countDown();
+         }
+      });
+
+      Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+      Assert.assertSame(message, acknowledged.get());
+
+      assertBodyLeftAsItWas(message);
+
+      producer.send(Collections.singletonList(message));
+
+      assertBodyLeftAsItWas(message);
+
+      Assert.assertEquals(3, counter.compressed.get());
+
+      ClientConsumer consumer = session.createConsumer(address);
+
+      session.start();
+
+      for (int i = 0; i < 4; i++)
+      {
+         ClientMessage received = consumer.receive(5000);
+
+         Assert.assertNotNull(received);
+
+         // Decompressed once read
+         Assert.assertEquals(BODY_SIZE, received.getBodySize());
+
+         assertBodyLeftAsItWas(received);
+
+         received.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+   }
+
+   public void testReceivedBodyAccessors() throws Exception
+   {
+      ClientSession session = createSession();
+
+      ClientProducer producer = session.createProducer(compressedAddress);
+
+      for (int i = 0; i < 2; i++)
+      {
+         producer.send(createMessage(session, i, BODY_SIZE));
+      }
+
+      ClientConsumer consumer = session.createConsumer(compressedAddress);
+
+      session.start();
+
+      ClientMessage message = consumer.receive(5000);
+
+      Assert.assertTrue(message.containsProperty(Message.HDR_BODY_CODEC));
+
+      HornetQBuffer copy = message.getBodyBufferCopy();
+
+      byte[] body = new byte[BODY_SIZE];
+
+      copy.readBytes(body);
+
+      assertEqualsByteArrays(createBody(0, BODY_SIZE), body);
+
+      Assert.assertFalse(copy.readable());
+
+      Assert.assertFalse(message.containsProperty(Message.HDR_BODY_CODEC));
+
+      message = consumer.receive(5000);
+
+      Assert.assertTrue(message.containsProperty(Message.HDR_BODY_CODEC));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      message.saveToOutputStream(out);
+
+      assertEqualsByteArrays(createBody(1, BODY_SIZE), out.toByteArray());
+
+      Assert.assertFalse(message.containsProperty(Message.HDR_BODY_CODEC));
+   }
+
+   private static void assertBodyLeftAsItWas(final ClientMessage message)
+   {
+      Assert.assertFalse(message.containsProperty(Message.HDR_BODY_CODEC));
+
+      Assert.assertFalse(message.containsProperty(Message.HDR_BODY_SIZE));
+
+      message.getBodyBuffer().resetReaderIndex();
+
+      Assert.assertEquals(BODY_SIZE, message.getBodySize());
+
+      byte[] body = new byte[BODY_SIZE];
+
+      message.getBodyBuffer().readBytes(body);
+
+      assertEqualsByteArrays(createBody(0, BODY_SIZE), body);
+   }
+
+   private ClientSession createSession() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      return addClientSession(sf.createSession(false, true, true));
+   }
+
+   private ClientMessage createMessage(final ClientSession session, final int count, final int bodySize)
+   {
+      ClientMessage message = session.createMessage(true);
+
+      message.getBodyBuffer().writeBytes(createBody(count, bodySize));
+
+      message.putIntProperty("count", count);
+
+      return message;
+   }
+
+   private void receiveMessages(final ClientSession session,
+                                final SimpleString queueName,
+                                final int numMessages,
+                                final int bodySize) throws Exception
+   {
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         Assert.assertEquals(bodySize, message.getBodySize());
+
+         byte[] body = new byte[bodySize];
+
+         message.getBodyBuffer().readBytes(body);
+
+         assertEqualsByteArrays(createBody(i, bodySize), body);
+
+         Assert.assertFalse(message.containsProperty(Message.HDR_BODY_CODEC));
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      consumer.close();
+   }
+
+   private static byte[] createBody(final int count, final int bodySize)
+   {
+      byte[] body = new byte[bodySize];
+
+      for (int i = 0; i < bodySize; i++)
+      {
+         body[i] = (byte)('a' + (i + count) % 16);
+      }
+
+      return body;
+   }
+
+   private static final class CompressionCounter implements Interceptor
+   {
+      private final byte type;
+
+      final AtomicInteger compressed = new AtomicInteger();
+
+      final AtomicInteger uncompressed = new AtomicInteger();
+
+      CompressionCounter(final byte type)
+      {
+         this.type = type;
+      }
+
+      public boolean intercept(final Packet packet, final RemotingConnection connection) throws HornetQException
+      {
+         if (packet.getType() == type)
+         {
+            if (packet instanceof SessionSendBatchMessage)
+            {
+               for (MessageInternal message : ((SessionSendBatchMessage)packet).getMessages())
+               {
+                  count(message);
+               }
+            }
+            else
+            {
+               count(((MessagePacket)packet).getMessage());
+            }
+         }
+
+         return true;
+      }
+
+      private void count(final Message message)
+      {
+         if (message.containsProperty(Message.HDR_BODY_CODEC))
+         {
+            compressed.incrementAndGet();
+         }
+         else
+         {
+            uncompressed.incrementAndGet();
+         }
+      }
+   }
+}
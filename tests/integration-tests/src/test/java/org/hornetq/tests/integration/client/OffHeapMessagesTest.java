@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.ServiceTestBase;
+
+public class OffHeapMessagesTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("OffHeapAddress");
+
+   private static final int THRESHOLD = 10;
+
+   private static final int BODY_SIZE = 10 * 1024;
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      AddressSettings settings = new AddressSettings();
+
+      settings.setOffHeapThreshold(THRESHOLD);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, createDefaultConfig(), -1, -1, settingsMap);
+
+      server.start();
+
+      server.createQueue(ADDRESS, ADDRESS, null, true, false);
+
+      locator = createInVMNonHALocator();
+
+      locator.setConsumerWindowSize(0);
+   }
+
+   public void testDurableMessages() throws Exception
+   {
+      final int numMessages = 100;
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+
+         message.getBodyBuffer().writeBytes(new byte[BODY_SIZE]);
+
+         message.putIntProperty("count", i);
+
+         producer.send(message);
+      }
+
+      Assert.assertEquals(numMessages, getMessageCount(server, ADDRESS.toString()));
+
+      // only the messages kept on the heap count
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      Assert.assertTrue("size=" + store.getAddressSize(), store.getAddressSize() < 2 * THRESHOLD * BODY_SIZE);
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      for (int i = 0; i < numMessages / 2; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         Assert.assertEquals(BODY_SIZE, message.getBodySize());
+
+         message.acknowledge();
+      }
+
+      session.close();
+
+      server.stop();
+
+      server.start();
+
+      Assert.assertEquals(numMessages / 2, getMessageCount(server, ADDRESS.toString()));
+
+      sf = createSessionFactory(locator);
+
+      session = addClientSession(sf.createSession(false, true, true));
+
+      session.start();
+
+      consumer = session.createConsumer(ADDRESS);
+
+      for (int i = numMessages / 2; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+
+      Assert.assertEquals(0, getMessageCount(server, ADDRESS.toString()));
+
+      Assert.assertEquals(0, server.getPagingManager().getPageStore(ADDRESS).getAddressSize());
+   }
+
+   public void testDeleteQueue() throws Exception
+   {
+      final int numMessages = 100;
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+
+         message.getBodyBuffer().writeBytes(new byte[BODY_SIZE]);
+
+         producer.send(message);
+      }
+
+      session.close();
+
+      Assert.assertEquals(numMessages, getMessageCount(server, ADDRESS.toString()));
+
+      server.destroyQueue(ADDRESS);
+
+      Assert.assertEquals(0, server.getPagingManager().getPageStore(ADDRESS).getAddressSize());
+
+      server.stop();
+
+      server.start();
+
+      Assert.assertNull(server.getPostOffice().getBinding(ADDRESS));
+
+      // the messages were deleted with the queue
+      server.createQueue(ADDRESS, ADDRESS, null, true, false);
+
+      Assert.assertEquals(0, getMessageCount(server, ADDRESS.toString()));
+   }
+}
@@ -13,6 +13,9 @@
 
 package org.hornetq.tests.integration.client;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -141,4 +144,118 @@ public class SessionSendAcknowledgementHandlerTest extends ServiceTestBase
 
       Assert.assertTrue(ok);
    }
+
+   public void testSendAcknowledgementsPerSendNoWindow() throws Exception
+   {
+      testSendAcknowledgementsPerSend(-1);
+   }
+
+   public void testSendAcknowledgementsPerSend() throws Exception
+   {
+      testSendAcknowledgementsPerSend(1024);
+   }
+
+   public void testSendAcknowledgementsPerSend(int windowSize) throws Exception
+   {
+      ServerLocator locator = createInVMNonHALocator();
+
+      locator.setConfirmationWindowSize(windowSize);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory csf = createSessionFactory(locator);
+      ClientSession session = csf.createSession(null, null, false, true, true, false, 1);
+
+      session.createQueue(address, queueName, true);
+
+      ClientProducer prod = session.createProducer(address);
+
+      final int numMessages = 1000;
+
+      final CountDownLatch latch = new CountDownLatch(numMessages);
+
+      final List<Integer> acknowledged = Collections.synchronizedList(new ArrayList<Integer>());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         final ClientMessage msg = session.createMessage(true);
+
+         msg.putIntProperty("count", i);
+
+         prod.send(msg, new SendAcknowledgementHandler()
+         {
+            public void sendAcknowledged(final Message message)
+            {
+               assertSame(msg, message);
+
+               acknowledged.add(message.getIntProperty("count"));
+
+               latch.countDown();
+            }
+         });
+      }
+
+      Assert.assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         Assert.assertEquals(i, acknowledged.get(i).intValue());
+      }
+
+      Assert.assertEquals(numMessages, getMessageCount(server, address.toString()));
+
+      session.close();
+
+      locator.close();
+   }
+
+   public void testSendAcknowledgementsPerSendOverSessionHandler() throws Exception
+   {
+      ServerLocator locator = createInVMNonHALocator();
+
+      locator.setConfirmationWindowSize(1024);
+
+      ClientSessionFactory csf = createSessionFactory(locator);
+      ClientSession session = csf.createSession(null, null, false, true, true, false, 1);
+
+      session.createQueue(address, queueName, false);
+
+      ClientProducer prod = session.createProducer(address);
+
+      final int numMessages = 100;
+
+      final CountDownLatch sessionLatch = new CountDownLatch(numMessages);
+
+      final CountDownLatch sendLatch = new CountDownLatch(numMessages);
+
+      session.setSendAcknowledgementHandler(new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            sessionLatch.countDown();
+         }
+      });
+
+      SendAcknowledgementHandler handler = new SendAcknowledgementHandler()
+      {
+         public void sendAcknowledged(final Message message)
+         {
+            sendLatch.countDown();
+         }
+      };
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         prod.send(session.createMessage(false));
+
+         prod.send(session.createMessage(false), handler);
+      }
+
+      Assert.assertTrue(sessionLatch.await(5000, TimeUnit.MILLISECONDS));
+
+      Assert.assertTrue(sendLatch.await(5000, TimeUnit.MILLISECONDS));
+
+      session.close();
+
+      locator.close();
+   }
 }
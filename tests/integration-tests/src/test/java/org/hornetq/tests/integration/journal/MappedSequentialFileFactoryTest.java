@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalConstants;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.SequentialFileFactoryTestBase;
+
+public class MappedSequentialFileFactoryTest extends SequentialFileFactoryTestBase
+{
+   // small enough for the records on the tests to cross segments
+   private static final int SEGMENT_SIZE = 16;
+
+   public void testWriteAcrossSegments() throws Exception
+   {
+      SequentialFile sf = factory.createSequentialFile("segments.hq", 1);
+
+      sf.open();
+
+      sf.fill(0, 10 * SEGMENT_SIZE, (byte)0);
+
+      byte[] bytes = new byte[5 * SEGMENT_SIZE + 3];
+
+      for (int i = 0; i < bytes.length; i++)
+      {
+         bytes[i] = (byte)i;
+      }
+
+      sf.position(SEGMENT_SIZE - 1);
+
+      sf.writeDirect(ByteBuffer.wrap(bytes), true);
+
+      sf.close();
+
+      sf.open();
+
+      sf.position(SEGMENT_SIZE - 1);
+
+      ByteBuffer read = factory.newBuffer(bytes.length);
+
+      Assert.assertEquals(bytes.length, sf.read(read));
+
+      for (int i = 0; i < bytes.length; i++)
+      {
+         Assert.assertEquals(bytes[i], read.get(i));
+      }
+
+      Assert.assertEquals(10 * SEGMENT_SIZE, sf.size());
+
+      sf.close();
+   }
+
+   public void testAppendPastEnd() throws Exception
+   {
+      SequentialFile sf = factory.createSequentialFile("append.hq", 1);
+
+      sf.open();
+
+      for (int i = 0; i < 10; i++)
+      {
+         ByteBuffer bytes = ByteBuffer.allocate(SEGMENT_SIZE / 2 + 1);
+
+         while (bytes.hasRemaining())
+         {
+            bytes.put((byte)i);
+         }
+
+         bytes.flip();
+
+         sf.writeDirect(bytes, false);
+
+         // what was appended can be read straight away
+         Assert.assertEquals((i + 1) * (SEGMENT_SIZE / 2 + 1), sf.size());
+      }
+
+      sf.sync();
+
+      sf.position(0);
+
+      int size = (int)sf.size();
+
+      ByteBuffer read = factory.newBuffer(size);
+
+      Assert.assertEquals(size, sf.read(read));
+
+      for (int i = 0; i < size; i++)
+      {
+         Assert.assertEquals(i / (SEGMENT_SIZE / 2 + 1), read.get(i));
+      }
+
+      // nothing past the end
+      Assert.assertEquals(-1, sf.read(factory.newBuffer(1)));
+
+      sf.close();
+
+      Assert.assertEquals(10 * (SEGMENT_SIZE / 2 + 1), new File(getTestDir(), "append.hq").length());
+   }
+
+   public void testRemapGrowingSegment() throws Exception
+   {
+      SequentialFile sf = factory.createSequentialFile("remap.hq", 1);
+
+      sf.open();
+
+      for (int i = 1; i <= 3; i++)
+      {
+         // appended past the end of the mapping, then rewritten through it as a whole: the segment is mapped
+         // again, over a dirty mapping after the first time
+         sf.writeDirect(filled(4, (byte)0), false);
+
+         sf.position(0);
+
+         sf.writeDirect(filled(4 * i, (byte)i), false);
+      }
+
+      sf.sync();
+
+      sf.close();
+
+      sf.open();
+
+      ByteBuffer read = factory.newBuffer(12);
+
+      Assert.assertEquals(12, sf.read(read));
+
+      for (int i = 0; i < 12; i++)
+      {
+         Assert.assertEquals(3, read.get(i));
+      }
+
+      sf.close();
+   }
+
+   public void testEncodeIntoMapping() throws Exception
+   {
+      SequentialFileFactory unbuffered = new MappedSequentialFileFactory(getTestDir(), null);
+
+      SequentialFile sf = unbuffered.createSequentialFile("encode.hq", 1);
+
+      sf.open();
+
+      sf.fill(0, 1024, (byte)0);
+
+      sf.position(10);
+
+      sf.write(new Record(100, (byte)'a'), true);
+
+      // past the end of the file
+      sf.position(1000);
+
+      sf.write(new Record(100, (byte)'b'), true);
+
+      Assert.assertEquals(1100, sf.position());
+
+      sf.close();
+
+      sf.open();
+
+      ByteBuffer read = unbuffered.newBuffer(1100);
+
+      Assert.assertEquals(1100, sf.read(read));
+
+      for (int i = 0; i < 1100; i++)
+      {
+         byte expected = i >= 10 && i < 110 ? (byte)'a' : i >= 1000 ? (byte)'b' : 0;
+         Assert.assertEquals(expected, read.get(i));
+      }
+
+      sf.close();
+   }
+
+   private static ByteBuffer filled(final int size, final byte value)
+   {
+      ByteBuffer bytes = ByteBuffer.allocate(size);
+
+      while (bytes.hasRemaining())
+      {
+         bytes.put(value);
+      }
+
+      bytes.flip();
+
+      return bytes;
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+   }
+
+   @Override
+   protected SequentialFileFactory createFactory()
+   {
+      return new MappedSequentialFileFactory(getTestDir(),
+                                             true,
+                                             JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO,
+                                             JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
+                                             false,
+                                             null,
+                                             SEGMENT_SIZE);
+   }
+
+   private static final class Record implements EncodingSupport
+   {
+      private final int size;
+
+      private final byte value;
+
+      Record(final int size, final byte value)
+      {
+         this.size = size;
+         this.value = value;
+      }
+
+      public int getEncodeSize()
+      {
+         return size;
+      }
+
+      public void encode(final HornetQBuffer buffer)
+      {
+         for (int i = 0; i < size; i++)
+         {
+            buffer.writeByte(value);
+         }
+      }
+
+      public void decode(final HornetQBuffer buffer)
+      {
+      }
+   }
+}
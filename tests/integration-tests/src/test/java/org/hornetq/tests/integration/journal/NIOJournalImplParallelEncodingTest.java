@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+
+/**
+ * Runs the whole journal suite with records encoded into their reserved space outside of the append lock.
+ */
+public class NIOJournalImplParallelEncodingTest extends NIOJournalImplTest
+{
+   private static final int THREADS = 8;
+
+   private static final int RECORDS_PER_THREAD = 200;
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setParallelEncoding(true);
+   }
+
+   public void testConcurrentAppends() throws Exception
+   {
+      // small files so the threads switch files while others are encoding
+      setup(10, 100 * 1024, true);
+
+      createJournal();
+
+      startJournal();
+
+      load();
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+      List<Thread> threads = new ArrayList<Thread>();
+
+      for (int t = 0; t < THREADS; t++)
+      {
+         final int thread = t;
+
+         Thread appender = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (int i = 0; i < RECORDS_PER_THREAD; i++)
+                  {
+                     long id = thread * RECORDS_PER_THREAD + i;
+
+                     journal.appendAddRecord(id, (byte)0, recordData(id, 0), false);
+
+                     journal.appendUpdateRecord(id, (byte)0, recordData(id, 1), i % 10 == 0);
+
+                     if (id % 2 == 0)
+                     {
+                        journal.appendDeleteRecord(id, false);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  failure.set(e);
+               }
+            }
+         };
+
+         appender.start();
+
+         threads.add(appender);
+      }
+
+      start.countDown();
+
+      for (Thread appender : threads)
+      {
+         appender.join();
+      }
+
+      if (failure.get() != null)
+      {
+         throw new Exception(failure.get());
+      }
+
+      stopJournal();
+
+      createJournal();
+
+      startJournal();
+
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      journal.load(committedRecords, new ArrayList<PreparedTransactionInfo>(), null);
+
+      Map<Long, List<byte[]>> loaded = new HashMap<Long, List<byte[]>>();
+
+      for (RecordInfo info : committedRecords)
+      {
+         List<byte[]> data = loaded.get(info.id);
+
+         if (data == null)
+         {
+            data = new ArrayList<byte[]>();
+
+            loaded.put(info.id, data);
+         }
+
+         data.add(info.data);
+      }
+
+      Assert.assertEquals(THREADS * RECORDS_PER_THREAD / 2, loaded.size());
+
+      for (long id = 1; id < THREADS * RECORDS_PER_THREAD; id += 2)
+      {
+         List<byte[]> data = loaded.get(id);
+
+         Assert.assertNotNull("missing record " + id, data);
+
+         Assert.assertEquals(2, data.size());
+
+         assertEqualsByteArrays(recordData(id, 0), data.get(0));
+
+         assertEqualsByteArrays(recordData(id, 1), data.get(1));
+      }
+
+      stopJournal();
+   }
+
+   private byte[] recordData(final long id, final int version)
+   {
+      byte[] data = new byte[100 + (int)(id % 50)];
+
+      for (int i = 0; i < data.length; i++)
+      {
+         data[i] = (byte)(id + version + i);
+      }
+
+      return data;
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.JournalImplTestBase;
+
+/**
+ * Compacting a few of the oldest files at a time, see {@link JournalImpl#setCompactMaxFiles(int)}.
+ */
+public class NIOJournalIncrementalCompactTest extends JournalImplTestBase
+{
+   private static final int RECORDS_PER_FILE = 10;
+
+   private long nextID;
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setCompactMaxFiles(4);
+   }
+
+   public void testCompactOldestFiles() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      fillFiles(6);
+
+      // only one record is left on each of the first four files
+      deleteAllButFirst(4);
+
+      JournalFile[] before = journal.getDataFiles();
+
+      Assert.assertEquals(6, before.length);
+
+      journal.testCompact();
+
+      JournalFile[] after = journal.getDataFiles();
+
+      Assert.assertTrue("the step should free files, there are " + after.length, after.length < before.length);
+
+      // the files after the step are not touched
+      for (int i = 1; i <= 2; i++)
+      {
+         Assert.assertSame(before[before.length - i], after[after.length - i]);
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      // the counts taken on the compacted files still allow them to be reclaimed
+      delete(0, 10, 20, 30);
+
+      for (long id = 4 * RECORDS_PER_FILE; id < 6 * RECORDS_PER_FILE; id++)
+      {
+         delete(id);
+      }
+
+      journal.forceMoveNextFile();
+      checkAndReclaimFiles();
+
+      Assert.assertEquals(0, journal.getDataFilesCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testUpdatesAndDeletesDuringCompact() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      fillFiles(6);
+
+      deleteAllButFirst(4);
+
+      journal.forceMoveNextFile();
+
+      startCompact();
+
+      // records being compacted, and records on the files after the step
+      update(0, 10, 50);
+      delete(20, 51);
+
+      addTx(1, 100);
+      updateTx(1, 10);
+      deleteTx(1, 30, 52);
+      commit(1);
+
+      finishCompact();
+
+      update(0, 100);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testTransactionCompletedAfterStep() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      addTx(1, 1000, 1001);
+
+      fillFiles(6);
+
+      commit(1);
+
+      addTx(2, 1002);
+
+      journal.forceMoveNextFile();
+
+      rollback(2);
+
+      deleteAllButFirst(6);
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      update(1000);
+      delete(1001);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testTransactionCompletedOnCurrentFile() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      addTx(1, 1000);
+
+      fillFiles(6);
+
+      commit(1);
+
+      deleteAllButFirst(6);
+
+      JournalFile[] before = journal.getDataFiles();
+
+      // the step can't include the commit, so it is given up
+      journal.testCompact();
+
+      JournalFile[] after = journal.getDataFiles();
+
+      Assert.assertEquals(before.length, after.length);
+
+      for (int i = 0; i < before.length; i++)
+      {
+         Assert.assertSame(before[i], after[i]);
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testPendingTransactionLimitsStep() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      fillFiles(3);
+
+      addTx(1, 1000);
+
+      fillFiles(3);
+
+      deleteAllButFirst(6);
+
+      JournalFile[] before = journal.getDataFiles();
+
+      journal.testCompact();
+
+      JournalFile[] after = journal.getDataFiles();
+
+      Assert.assertTrue(after.length < before.length);
+
+      // nothing from the file with the pending transaction on is compacted
+      for (int i = 1; i <= 3; i++)
+      {
+         Assert.assertSame(before[before.length - i], after[after.length - i]);
+      }
+
+      commit(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   /**
+    * Adds {@link #RECORDS_PER_FILE} records on each new file, numbered from the last one added.
+    */
+   private void fillFiles(final int numberOfFiles) throws Exception
+   {
+      for (int i = 0; i < numberOfFiles * RECORDS_PER_FILE; i++)
+      {
+         add(nextID++);
+
+         if (nextID % RECORDS_PER_FILE == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+   }
+
+   /**
+    * Deletes the records on the first filled files, but the first record of each one.
+    */
+   private void deleteAllButFirst(final int numberOfFiles) throws Exception
+   {
+      for (long id = 0; id < numberOfFiles * RECORDS_PER_FILE; id++)
+      {
+         if (id % RECORDS_PER_FILE != 0)
+         {
+            delete(id);
+         }
+      }
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+   }
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new NIOSequentialFileFactory(getTestDir());
+   }
+}
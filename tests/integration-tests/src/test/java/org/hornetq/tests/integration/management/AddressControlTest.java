@@ -23,6 +23,7 @@ import junit.framework.Assert;
 import org.hornetq.api.config.HornetQDefaultConfiguration;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientConsumer;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
@@ -269,6 +270,81 @@ public class AddressControlTest extends ManagementTestBase
          Assert.assertEquals("# of pages is 2", 2, addressControl.getNumberOfPages());
    }
 
+   public void testGetPageCacheStatistics() throws Exception
+   {
+      session.close();
+      server.stop();
+      server.getConfiguration().setPersistenceEnabled(true);
+
+      SimpleString address = RandomUtil.randomSimpleString();
+
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setPageSizeBytes(1024);
+      addressSettings.setMaxSizeBytes(10 * 1024);
+      addressSettings.setPageCacheMaxBytes(4 * 1024);
+
+      server.getAddressSettingsRepository().addMatch(address.toString(), addressSettings);
+      server.start();
+      ServerLocator locator2 =
+               HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(
+                                                                                     UnitTestCase.INVM_CONNECTOR_FACTORY));
+      addServerLocator(locator2);
+      ClientSessionFactory sf2 = createSessionFactory(locator2);
+
+      session = sf2.createSession(false, true, false);
+      session.start();
+      session.createQueue(address, address, true);
+
+      AddressControl addressControl = createManagementControl(address);
+      Assert.assertEquals(0, addressControl.getPageCacheHits());
+      Assert.assertEquals(0, addressControl.getPageCacheMisses());
+      Assert.assertEquals(0, addressControl.getPageCacheEvictions());
+      Assert.assertEquals(0, addressControl.getPageCacheSize());
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < 100; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         producer.send(msg);
+      }
+      session.commit();
+
+      Assert.assertTrue(addressControl.getNumberOfPages() > 5);
+
+      // restarting so the pages are read back from the files
+      session.close();
+      server.stop();
+      server.start();
+
+      ServerLocator locator3 =
+               HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(
+                                                                                     UnitTestCase.INVM_CONNECTOR_FACTORY));
+      addServerLocator(locator3);
+      ClientSessionFactory sf3 = createSessionFactory(locator3);
+
+      session = sf3.createSession(false, true, false);
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(address);
+
+      for (int i = 0; i < 100; i++)
+      {
+         ClientMessage msg = consumer.receive(5000);
+         Assert.assertNotNull(msg);
+         msg.acknowledge();
+      }
+      session.commit();
+
+      addressControl = createManagementControl(address);
+      Assert.assertTrue(addressControl.getPageCacheMisses() > 5);
+      Assert.assertTrue(addressControl.getPageCacheHits() > 0);
+      Assert.assertTrue(addressControl.getPageCacheEvictions() > 0);
+      // the page a cursor is on may have decoded one more message since the last check
+      Assert.assertTrue(addressControl.getPageCacheSize() <= 6 * 1024);
+   }
+
    public void testGetNumberOfBytesPerPage() throws Exception
    {
       SimpleString address = RandomUtil.randomSimpleString();
@@ -465,6 +465,26 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public long getJournalBufferFlushWindow()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBufferFlushWindow", Long.class);
+         }
+
+         public String listJournalBufferBatchSizesAsJSON() throws Exception
+         {
+            return (String)proxy.invokeOperation("listJournalBufferBatchSizesAsJSON");
+         }
+
+         public String listJournalBufferSyncLatenciesAsJSON() throws Exception
+         {
+            return (String)proxy.invokeOperation("listJournalBufferSyncLatenciesAsJSON");
+         }
+
+         public String listDirectBufferPoolStatisticsAsJSON() throws Exception
+         {
+            return (String)proxy.invokeOperation("listDirectBufferPoolStatisticsAsJSON");
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer)proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.HornetQClient;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.hornetq.tests.benchmarks.util.NullConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sends non durable messages through the core client to a server without persistence over the in
+ * VM transport, the whole path with neither the network nor the disk.
+ * <p>
+ * {@link #send()} goes to a queue whose messages are thrown away on the server by a
+ * {@link NullConsumer}, {@link #sendReceive()} has every message received back by the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class InVMSendReceiveBenchmark
+{
+   private static final SimpleString DISCARD_ADDRESS = new SimpleString("benchmark.discard");
+
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   @Param({"1024"})
+   public int bodySize;
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   private ClientSession session;
+
+   private ClientProducer discardProducer;
+
+   private ClientProducer producer;
+
+   private ClientConsumer consumer;
+
+   private byte[] body;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      server = BenchmarkUtil.createInVMServer();
+
+      server.start();
+
+      server.createQueue(DISCARD_ADDRESS, DISCARD_ADDRESS, null, false, false);
+
+      server.locateQueue(DISCARD_ADDRESS).addConsumer(new NullConsumer());
+
+      server.createQueue(ADDRESS, ADDRESS, null, false, false);
+
+      locator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(InVMConnectorFactory.class.getName()));
+
+      ClientSessionFactory sf = locator.createSessionFactory();
+
+      session = sf.createSession(false, true, true);
+
+      discardProducer = session.createProducer(DISCARD_ADDRESS);
+
+      producer = session.createProducer(ADDRESS);
+
+      consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      body = new byte[bodySize];
+   }
+
+   @TearDown
+   public void tearDown() throws Exception
+   {
+      session.close();
+
+      locator.close();
+
+      server.stop();
+   }
+
+   @Benchmark
+   public void send() throws Exception
+   {
+      discardProducer.send(createMessage());
+   }
+
+   @Benchmark
+   public ClientMessage sendReceive() throws Exception
+   {
+      producer.send(createMessage());
+
+      ClientMessage message = consumer.receive(5000);
+
+      if (message == null)
+      {
+         throw new IllegalStateException("Message not received");
+      }
+
+      message.acknowledge();
+
+      return message;
+   }
+
+   private ClientMessage createMessage()
+   {
+      ClientMessage message = session.createMessage(false);
+
+      message.getBodyBuffer().writeBytes(body);
+
+      return message;
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matches a set of messages against a filter shared by all the benchmark threads, as the filter of
+ * a queue is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FilterMatchBenchmark
+{
+   private static final int NUMBER_OF_MESSAGES = 1000;
+
+   // the filters, by the names they are selected with
+   private static final String EQUALS = "color = 'RED'";
+
+   private static final String COMPOUND = "color = 'RED' AND (weight > 100 OR HQPriority >= 7) AND shape IN ('square', 'round')";
+
+   private static final String LIKE = "name LIKE 'msg-1%'";
+
+   @Param({"EQUALS", "COMPOUND", "LIKE"})
+   public String expression;
+
+   private Filter filter;
+
+   private ServerMessage[] messages;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      if ("EQUALS".equals(expression))
+      {
+         filter = FilterImpl.createFilter(EQUALS);
+      }
+      else if ("COMPOUND".equals(expression))
+      {
+         filter = FilterImpl.createFilter(COMPOUND);
+      }
+      else
+      {
+         filter = FilterImpl.createFilter(LIKE);
+      }
+
+      messages = new ServerMessage[NUMBER_OF_MESSAGES];
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(i, 1000);
+         message.setPriority((byte)(i % 10));
+         message.putStringProperty(new SimpleString("color"), new SimpleString(i % 2 == 0 ? "RED" : "BLUE"));
+         message.putIntProperty(new SimpleString("weight"), i % 200);
+         message.putStringProperty(new SimpleString("shape"), new SimpleString(i % 3 == 0 ? "square" : "round"));
+         message.putStringProperty(new SimpleString("name"), new SimpleString("msg-" + i));
+         messages[i] = message;
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(NUMBER_OF_MESSAGES)
+   public int match()
+   {
+      int matches = 0;
+
+      for (ServerMessage message : messages)
+      {
+         if (filter.match(message))
+         {
+            matches++;
+         }
+      }
+
+      return matches;
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appends records to a {@link JournalImpl} on NIO files or on the in-memory files of the unit
+ * tests.
+ * <p>
+ * Every record added is deleted again so the journal can reclaim its files, which keeps the fake
+ * files from growing through the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class JournalAppendBenchmark
+{
+   private static final byte RECORD_TYPE = 1;
+
+   @Param({"FAKE", "NIO"})
+   public String factory;
+
+   @Param({"false", "true"})
+   public boolean sync;
+
+   @Param({"1024"})
+   public int recordSize;
+
+   private File directory;
+
+   private JournalImpl journal;
+
+   private byte[] record;
+
+   private long id;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      SequentialFileFactory fileFactory;
+
+      if ("NIO".equals(factory))
+      {
+         directory = BenchmarkUtil.createTempDirectory("journal");
+
+         fileFactory = new NIOSequentialFileFactory(directory.getAbsolutePath(), true);
+      }
+      else
+      {
+         fileFactory = new FakeSequentialFileFactory();
+      }
+
+      journal = new JournalImpl(10 * 1024 * 1024, 2, 0, 0, fileFactory, "hornetq-data", "hq", 500);
+
+      journal.start();
+
+      journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+      record = new byte[recordSize];
+   }
+
+   @TearDown
+   public void tearDown() throws Exception
+   {
+      journal.stop();
+
+      if (directory != null)
+      {
+         BenchmarkUtil.deleteDirectory(directory);
+      }
+   }
+
+   @Benchmark
+   public void appendAdd() throws Exception
+   {
+      long recordID = id++;
+
+      journal.appendAddRecord(recordID, RECORD_TYPE, record, sync);
+
+      journal.appendDeleteRecord(recordID, false);
+   }
+
+   @Benchmark
+   public void appendAddUpdate() throws Exception
+   {
+      long recordID = id++;
+
+      journal.appendAddRecord(recordID, RECORD_TYPE, record, false);
+
+      journal.appendUpdateRecord(recordID, RECORD_TYPE, record, sync);
+
+      journal.appendDeleteRecord(recordID, false);
+   }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.message;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes messages in the form the journal stores them, and copies them as diverting
+ * or expiring a message does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class MessageEncodingBenchmark
+{
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   @Param({"100", "1024", "10240"})
+   public int bodySize;
+
+   private ServerMessage message;
+
+   private HornetQBuffer encoded;
+
+   private HornetQBuffer buffer;
+
+   @Setup
+   public void setUp()
+   {
+      message = BenchmarkUtil.createMessage(1, ADDRESS, bodySize);
+
+      encoded = HornetQBuffers.fixedBuffer(message.getEncodeSize());
+
+      message.encode(encoded);
+
+      buffer = HornetQBuffers.fixedBuffer(message.getEncodeSize());
+   }
+
+   @Benchmark
+   public HornetQBuffer encode()
+   {
+      buffer.clear();
+
+      message.encode(buffer);
+
+      return buffer;
+   }
+
+   @Benchmark
+   public ServerMessage decode()
+   {
+      encoded.resetReaderIndex();
+
+      ServerMessage decoded = new ServerMessageImpl(1, encoded.readableBytes());
+
+      decoded.decode(encoded);
+
+      return decoded;
+   }
+
+   @Benchmark
+   public ServerMessage copy()
+   {
+      return message.copy();
+   }
+}
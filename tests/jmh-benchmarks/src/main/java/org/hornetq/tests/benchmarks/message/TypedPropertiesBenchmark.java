@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.message;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.utils.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes {@link TypedProperties}, and reads properties back from decoded ones the way
+ * a filter or a consumer would.
+ * <p>
+ * Decoded properties are kept in their encoded form until modified, so decoding and re-encoding
+ * them untouched is measured apart from encoding properties that were built with puts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TypedPropertiesBenchmark
+{
+   private static final SimpleString MISSING = new SimpleString("missing");
+
+   @Param({"5", "20"})
+   public int numberOfProperties;
+
+   private SimpleString[] keys;
+
+   private TypedProperties properties;
+
+   private HornetQBuffer encoded;
+
+   private HornetQBuffer buffer;
+
+   private TypedProperties decoded;
+
+   @Setup
+   public void setUp()
+   {
+      keys = new SimpleString[numberOfProperties];
+
+      properties = new TypedProperties();
+
+      for (int i = 0; i < numberOfProperties; i++)
+      {
+         keys[i] = new SimpleString("property-" + i);
+
+         switch (i % 3)
+         {
+            case 0:
+               properties.putSimpleStringProperty(keys[i], new SimpleString("value-" + i));
+               break;
+            case 1:
+               properties.putIntProperty(keys[i], i);
+               break;
+            default:
+               properties.putLongProperty(keys[i], System.currentTimeMillis());
+         }
+      }
+
+      encoded = HornetQBuffers.fixedBuffer(properties.getEncodeSize());
+
+      properties.encode(encoded);
+
+      buffer = HornetQBuffers.fixedBuffer(properties.getEncodeSize());
+
+      decoded = decode();
+   }
+
+   @Benchmark
+   public HornetQBuffer encode()
+   {
+      buffer.clear();
+
+      properties.encode(buffer);
+
+      return buffer;
+   }
+
+   @Benchmark
+   public TypedProperties decode()
+   {
+      encoded.resetReaderIndex();
+
+      TypedProperties props = new TypedProperties();
+
+      props.decode(encoded);
+
+      return props;
+   }
+
+   @Benchmark
+   public HornetQBuffer decodeAndEncode()
+   {
+      TypedProperties props = decode();
+
+      buffer.clear();
+
+      props.encode(buffer);
+
+      return buffer;
+   }
+
+   @Benchmark
+   public Object decodeAndGet()
+   {
+      return decode().getProperty(keys[numberOfProperties / 2]);
+   }
+
+   @Benchmark
+   public Object get()
+   {
+      return decoded.getProperty(keys[numberOfProperties / 2]);
+   }
+
+   @Benchmark
+   public boolean containsMissing()
+   {
+      return decoded.containsProperty(MISSING);
+   }
+}
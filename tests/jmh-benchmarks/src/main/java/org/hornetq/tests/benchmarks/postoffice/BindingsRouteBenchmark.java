@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.postoffice;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.postoffice.Bindings;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.server.impl.RoutingContextImpl;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routes a message through the {@link Bindings} of an address with one queue per subscriber,
+ * each filtering on its own region, with and without the filter index.
+ * <p>
+ * Only the queues a message goes to are worked out, nothing is added to them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BindingsRouteBenchmark
+{
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   private static final SimpleString NODE_ID = new SimpleString("benchmark.node");
+
+   private static final SimpleString REGION = new SimpleString("region");
+
+   @Param({"1", "10", "100"})
+   public int subscribers;
+
+   @Param({"false", "true"})
+   public boolean filterIndex;
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   private Bindings bindings;
+
+   private ServerMessage message;
+
+   private RoutingContextImpl context;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      executor = Executors.newSingleThreadExecutor();
+
+      bindings = new Bindings(ADDRESS, null, null);
+
+      for (int i = 0; i < subscribers; i++)
+      {
+         SimpleString name = new SimpleString("benchmark.queue." + i);
+
+         QueueImpl queue = new QueueImpl(i,
+                                         ADDRESS,
+                                         name,
+                                         FilterImpl.createFilter(REGION + " = 'region-" + i + "'"),
+                                         false,
+                                         true,
+                                         scheduledExecutor,
+                                         null,
+                                         null,
+                                         null,
+                                         executor);
+
+         bindings.addBinding(new LocalQueueBinding(ADDRESS, queue, NODE_ID));
+      }
+
+      bindings.setFilterIndex(filterIndex);
+
+      message = BenchmarkUtil.createMessage(1, ADDRESS, 1024);
+
+      message.putStringProperty(REGION, new SimpleString("region-" + subscribers / 2));
+
+      context = new RoutingContextImpl(null);
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      scheduledExecutor.shutdownNow();
+
+      executor.shutdownNow();
+   }
+
+   @Benchmark
+   public int route() throws Exception
+   {
+      context.clear();
+
+      bindings.route(message, context);
+
+      return context.getQueueCount();
+   }
+}
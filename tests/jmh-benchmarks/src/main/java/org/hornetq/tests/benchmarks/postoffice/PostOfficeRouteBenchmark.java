@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.postoffice;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.hornetq.tests.benchmarks.util.NullConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routes messages through the {@link PostOffice} of a server without persistence to queues
+ * delivering straight to a {@link NullConsumer}, the path a non transactional send takes once it
+ * is on the server.
+ * <p>
+ * Each operation builds the message it routes, as the post office doesn't route a message twice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PostOfficeRouteBenchmark
+{
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   @Param({"1", "10"})
+   public int queues;
+
+   @Param({"1024"})
+   public int bodySize;
+
+   private HornetQServer server;
+
+   private PostOffice postOffice;
+
+   private long id;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      server = BenchmarkUtil.createInVMServer();
+
+      server.start();
+
+      for (int i = 0; i < queues; i++)
+      {
+         SimpleString name = new SimpleString("benchmark.queue." + i);
+
+         server.createQueue(ADDRESS, name, null, false, false);
+
+         Queue queue = server.locateQueue(name);
+
+         queue.addConsumer(new NullConsumer());
+      }
+
+      postOffice = server.getPostOffice();
+   }
+
+   @TearDown
+   public void tearDown() throws Exception
+   {
+      server.stop();
+   }
+
+   @Benchmark
+   public void route() throws Exception
+   {
+      postOffice.route(BenchmarkUtil.createMessage(id++, ADDRESS, bodySize), true);
+   }
+}
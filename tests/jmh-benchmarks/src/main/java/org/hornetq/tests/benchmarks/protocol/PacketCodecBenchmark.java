@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.protocol;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.protocol.ClientPacketDecoder;
+import org.hornetq.core.protocol.ServerPacketDecoder;
+import org.hornetq.core.protocol.core.Packet;
+import org.hornetq.core.protocol.core.impl.PacketDecoder;
+import org.hornetq.core.protocol.core.impl.RemotingConnectionImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionAcknowledgeMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
+import org.hornetq.core.remoting.impl.invm.InVMConnection;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.hornetq.utils.DataConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes and decodes the core packets of the message flow: a send from a client, a delivery to a
+ * client and an acknowledgement.
+ * <p>
+ * Packets are encoded through a connection over an {@link InVMConnection} and decoded by the
+ * decoder of the side receiving them, from the frame less its length as the transports hand it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PacketCodecBenchmark
+{
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   @Param({"SEND", "RECEIVE", "ACKNOWLEDGE"})
+   public String packet;
+
+   @Param({"1024"})
+   public int bodySize;
+
+   private RemotingConnection connection;
+
+   private ClientMessageImpl clientMessage;
+
+   private ServerMessage serverMessage;
+
+   private PacketDecoder decoder;
+
+   private HornetQBuffer frame;
+
+   @Setup
+   public void setUp()
+   {
+      connection = new RemotingConnectionImpl(ClientPacketDecoder.INSTANCE,
+                                              new InVMConnection(0, null, null, null),
+                                              -1,
+                                              -1,
+                                              null,
+                                              null);
+
+      clientMessage = new ClientMessageImpl(ClientMessage.DEFAULT_TYPE, false, 0, System.currentTimeMillis(), (byte)4, 1500);
+
+      clientMessage.setAddress(ADDRESS);
+      clientMessage.putStringProperty(new SimpleString("color"), new SimpleString("RED"));
+      clientMessage.putIntProperty(new SimpleString("weight"), 100);
+      clientMessage.getBodyBuffer().writeBytes(new byte[bodySize]);
+
+      serverMessage = BenchmarkUtil.createMessage(1, ADDRESS, bodySize);
+
+      decoder = "SEND".equals(packet) ? ServerPacketDecoder.INSTANCE : ClientPacketDecoder.INSTANCE;
+
+      frame = encode().copy();
+   }
+
+   @Benchmark
+   public HornetQBuffer encode()
+   {
+      Packet toEncode;
+
+      if ("SEND".equals(packet))
+      {
+         toEncode = new SessionSendMessage(clientMessage, false);
+      }
+      else if ("RECEIVE".equals(packet))
+      {
+         toEncode = new SessionReceiveMessage(1, serverMessage, 0);
+      }
+      else
+      {
+         toEncode = new SessionAcknowledgeMessage(1, 1, false);
+      }
+
+      toEncode.setChannelID(10);
+
+      return toEncode.encode(connection);
+   }
+
+   @Benchmark
+   public Packet decode()
+   {
+      HornetQBuffer buffer = frame.duplicate();
+
+      buffer.readerIndex(DataConstants.SIZE_INT);
+
+      return decoder.decode(buffer);
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
+import org.hornetq.tests.benchmarks.util.BenchmarkUtil;
+import org.hornetq.tests.benchmarks.util.NullConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds references to a {@link QueueImpl} on the {@link NullStorageManager} and delivers them to a
+ * {@link NullConsumer}, either directly from the adding thread or through the queue's executor.
+ * <p>
+ * The same message is referenced over and over, so only the queue is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class QueueBenchmark
+{
+   private static final int BATCH_SIZE = 1000;
+
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   private static final SimpleString QUEUE = new SimpleString("benchmark.queue");
+
+   @Param({"false", "true"})
+   public boolean fineGrainedLocking;
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   private QueueImpl queue;
+
+   private ServerMessage message;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      executor = Executors.newSingleThreadExecutor();
+
+      AddressSettings settings = new AddressSettings();
+
+      settings.setFineGrainedLocking(fineGrainedLocking);
+
+      HierarchicalObjectRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+
+      repository.setDefault(settings);
+
+      queue = new QueueImpl(1,
+                            ADDRESS,
+                            QUEUE,
+                            null,
+                            false,
+                            true,
+                            scheduledExecutor,
+                            null,
+                            new NullStorageManager(),
+                            repository,
+                            executor);
+
+      queue.addConsumer(new NullConsumer());
+
+      message = BenchmarkUtil.createMessage(1, ADDRESS, 1024);
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      scheduledExecutor.shutdownNow();
+
+      executor.shutdownNow();
+   }
+
+   @Benchmark
+   public void addTailDirect() throws Exception
+   {
+      message.incrementRefCount();
+
+      queue.addTail(message.createReference(queue), true);
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public void addTailThenDeliver() throws Exception
+   {
+      for (int i = 0; i < BATCH_SIZE; i++)
+      {
+         message.incrementRefCount();
+
+         queue.addTail(message.createReference(queue));
+      }
+
+      queue.deliverNow();
+   }
+}
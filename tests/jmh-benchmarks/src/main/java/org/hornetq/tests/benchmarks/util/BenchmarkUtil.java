@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.core.config.impl.ConfigurationImpl;
+import org.hornetq.core.remoting.impl.invm.InVMAcceptorFactory;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+public final class BenchmarkUtil
+{
+   private BenchmarkUtil()
+   {
+      // Utility class
+   }
+
+   /**
+    * Creates a server only reachable in VM, without persistence so it runs on the
+    * {@link org.hornetq.core.persistence.impl.nullpm.NullStorageManager}.
+    */
+   public static HornetQServer createInVMServer()
+   {
+      ConfigurationImpl configuration = new ConfigurationImpl();
+
+      configuration.setPersistenceEnabled(false);
+      configuration.setSecurityEnabled(false);
+      configuration.setJMXManagementEnabled(false);
+      configuration.setFileDeploymentEnabled(false);
+
+      configuration.getAcceptorConfigurations().clear();
+      configuration.getAcceptorConfigurations()
+                   .add(new TransportConfiguration(InVMAcceptorFactory.class.getName()));
+
+      return HornetQServers.newHornetQServer(configuration, false);
+   }
+
+   /**
+    * @return a message to address with a body of bodySize bytes and a few properties
+    */
+   public static ServerMessage createMessage(final long id, final SimpleString address, final int bodySize)
+   {
+      ServerMessage message = new ServerMessageImpl(id, 1500 + bodySize);
+
+      message.setAddress(address);
+      message.setDurable(false);
+      message.setTimestamp(System.currentTimeMillis());
+      message.putStringProperty(new SimpleString("color"), new SimpleString(id % 2 == 0 ? "RED" : "BLUE"));
+      message.putIntProperty(new SimpleString("weight"), (int)(id % 200));
+      message.putLongProperty(new SimpleString("sequence"), id);
+      message.getBodyBuffer().writeBytes(new byte[bodySize]);
+
+      return message;
+   }
+
+   public static File createTempDirectory(final String prefix) throws IOException
+   {
+      File directory = File.createTempFile(prefix, "");
+
+      if (!directory.delete() || !directory.mkdir())
+      {
+         throw new IOException("Could not create " + directory);
+      }
+
+      return directory;
+   }
+
+   public static void deleteDirectory(final File directory)
+   {
+      File[] files = directory.listFiles();
+
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            if (file.isDirectory())
+            {
+               deleteDirectory(file);
+            }
+            else
+            {
+               file.delete();
+            }
+         }
+      }
+
+      directory.delete();
+   }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.util;
+
+import java.util.List;
+
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.HandleStatus;
+import org.hornetq.core.server.MessageReference;
+
+/**
+ * A server side consumer acknowledging every reference as soon as it is handed one, so the queue
+ * never fills up and nothing goes over the wire.
+ */
+public class NullConsumer implements Consumer
+{
+   public HandleStatus handle(final MessageReference reference) throws Exception
+   {
+      reference.handled();
+
+      reference.getQueue().acknowledge(reference);
+
+      return HandleStatus.HANDLED;
+   }
+
+   public Filter getFilter()
+   {
+      return null;
+   }
+
+   public void getDeliveringMessages(final List<MessageReference> refList)
+   {
+   }
+
+   public String debug()
+   {
+      return toString();
+   }
+
+   public String toManagementString()
+   {
+      return "NullConsumer";
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.benchmarks.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashes and compares {@link SimpleString}s, the keys of the address, binding and property maps.
+ * <p>
+ * A SimpleString caches its hash, so hashing is measured on new instances over the same bytes, as
+ * decoding an address or a property name gives.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SimpleStringBenchmark
+{
+   @Param({"8", "32", "128"})
+   public int length;
+
+   private byte[] data;
+
+   private SimpleString string;
+
+   private SimpleString equal;
+
+   @Setup
+   public void setUp()
+   {
+      StringBuilder builder = new StringBuilder(length);
+
+      for (int i = 0; i < length; i++)
+      {
+         builder.append((char)('a' + i % 26));
+      }
+
+      string = new SimpleString(builder.toString());
+
+      data = string.getData();
+
+      equal = new SimpleString(builder.toString());
+   }
+
+   @Benchmark
+   public int hashCodeUncached()
+   {
+      return new SimpleString(data).hashCode();
+   }
+
+   @Benchmark
+   public int hashCodeCached()
+   {
+      return string.hashCode();
+   }
+
+   @Benchmark
+   public boolean equalsEqual()
+   {
+      return string.equals(equal);
+   }
+
+   @Benchmark
+   public SimpleString fromString()
+   {
+      return new SimpleString("benchmark.address");
+   }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.filter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Measures the match rate of a single shared filter, from one thread and from many threads.
+ */
+public class MeasureFilterMatchTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final String FILTER = "color = 'RED' AND (weight > 100 OR HQPriority >= 7) AND shape IN ('square', 'round') AND name LIKE 'msg-1%'";
+
+   private static final int NUMBER_OF_MESSAGES = 1000;
+
+   private static final int ITERATIONS = 1000;
+
+   private static final int NUMBER_OF_THREADS = 8;
+
+   private Filter filter;
+
+   private ServerMessage[] messages;
+
+   private int expectedMatches;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      filter = FilterImpl.createFilter(new SimpleString(FILTER));
+
+      messages = new ServerMessage[NUMBER_OF_MESSAGES];
+
+      expectedMatches = 0;
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(i, 1000);
+         message.setPriority((byte)(i % 10));
+         message.putStringProperty(new SimpleString("color"), new SimpleString(i % 2 == 0 ? "RED" : "BLUE"));
+         message.putIntProperty(new SimpleString("weight"), i % 200);
+         message.putStringProperty(new SimpleString("shape"), new SimpleString(i % 3 == 0 ? "square" : "round"));
+         message.putStringProperty(new SimpleString("name"), new SimpleString("msg-" + i));
+         messages[i] = message;
+
+         if (i % 2 == 0 && (i % 200 > 100 || i % 10 >= 7) && Integer.toString(i).startsWith("1"))
+         {
+            expectedMatches++;
+         }
+      }
+   }
+
+   public void testSingleThreadMatch() throws Exception
+   {
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < ITERATIONS; i++)
+      {
+         Assert.assertEquals(expectedMatches, matchAll());
+      }
+
+      long end = System.currentTimeMillis();
+
+      log.info("Single thread rate = " + rate(ITERATIONS * NUMBER_OF_MESSAGES, end - start) + " matches/sec");
+   }
+
+   public void testMultiThreadMatch() throws Exception
+   {
+      final CountDownLatch ready = new CountDownLatch(NUMBER_OF_THREADS);
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] threads = new Thread[NUMBER_OF_THREADS];
+
+      for (int t = 0; t < NUMBER_OF_THREADS; t++)
+      {
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  ready.countDown();
+                  start.await();
+                  for (int i = 0; i < ITERATIONS; i++)
+                  {
+                     if (matchAll() != expectedMatches)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         threads[t].start();
+      }
+
+      ready.await();
+
+      long begin = System.currentTimeMillis();
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      long end = System.currentTimeMillis();
+
+      Assert.assertEquals(0, errors.get());
+
+      log.info(NUMBER_OF_THREADS + " threads rate = " +
+               rate(NUMBER_OF_THREADS * ITERATIONS * NUMBER_OF_MESSAGES, end - begin) +
+               " matches/sec");
+   }
+
+   private int matchAll()
+   {
+      int matches = 0;
+      for (ServerMessage message : messages)
+      {
+         if (filter.match(message))
+         {
+            matches++;
+         }
+      }
+      return matches;
+   }
+
+   private static double rate(final long operations, final long elapsed)
+   {
+      return 1000 * (double)operations / Math.max(1, elapsed);
+   }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.persistence;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import junit.framework.Assert;
+
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.StripedReadWriteLock;
+
+/**
+ * Measures how the read side of the storage manager lock scales with the number of sending
+ * threads, for the fair {@link ReentrantReadWriteLock} it used to be and for the
+ * {@link StripedReadWriteLock} it is now.
+ * <p>
+ * Every operation takes the read lock twice, as a transactional store does, around a short piece
+ * of work standing for the journal append.
+ */
+public class MeasureStorageManagerLockTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int OPERATIONS_PER_THREAD = 1000000;
+
+   private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+   public void testFairReentrantReadWriteLock() throws Exception
+   {
+      measure("fair ReentrantReadWriteLock", new ReentrantReadWriteLock(true));
+   }
+
+   public void testStripedReadWriteLock() throws Exception
+   {
+      measure("StripedReadWriteLock", new StripedReadWriteLock());
+   }
+
+   private void measure(final String name, final ReadWriteLock lock) throws Exception
+   {
+      // warm up
+      run(lock, 4, OPERATIONS_PER_THREAD / 10);
+
+      for (int threads : THREADS)
+      {
+         long elapsed = run(lock, threads, OPERATIONS_PER_THREAD);
+
+         log.info(name + ", " + threads + " threads rate = " +
+                  rate((long)threads * OPERATIONS_PER_THREAD, elapsed) +
+                  " operations/sec");
+      }
+   }
+
+   private long run(final ReadWriteLock lock, final int numberOfThreads, final int operations) throws Exception
+   {
+      final Lock readLock = lock.readLock();
+      final CountDownLatch ready = new CountDownLatch(numberOfThreads);
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int t = 0; t < numberOfThreads; t++)
+      {
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  long work = 0;
+
+                  ready.countDown();
+                  start.await();
+
+                  for (int i = 0; i < operations; i++)
+                  {
+                     readLock.lock();
+                     try
+                     {
+                        readLock.lock();
+                        try
+                        {
+                           work += i ^ work >>> 3;
+                        }
+                        finally
+                        {
+                           readLock.unlock();
+                        }
+                     }
+                     finally
+                     {
+                        readLock.unlock();
+                     }
+                  }
+
+                  if (work == 42)
+                  {
+                     // just so the work isn't optimized away
+                     log.info("work = " + work);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         threads[t].start();
+      }
+
+      ready.await();
+
+      long begin = System.currentTimeMillis();
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      long end = System.currentTimeMillis();
+
+      Assert.assertEquals(0, errors.get());
+
+      return end - begin;
+   }
+
+   private static double rate(final long operations, final long elapsed)
+   {
+      return 1000 * (double)operations / Math.max(1, elapsed);
+   }
+}
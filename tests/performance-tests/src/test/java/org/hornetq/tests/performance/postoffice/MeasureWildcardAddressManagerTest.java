@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.postoffice;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.postoffice.Binding;
+import org.hornetq.core.postoffice.BindingType;
+import org.hornetq.core.postoffice.Bindings;
+import org.hornetq.core.postoffice.BindingsFactory;
+import org.hornetq.core.postoffice.impl.WildcardAddressManager;
+import org.hornetq.core.server.Bindable;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Measures binding churn and routing lookups on a {@link WildcardAddressManager} holding a large
+ * number of addresses, a few of them bound through wildcards.
+ */
+public class MeasureWildcardAddressManagerTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int NUMBER_OF_ADDRESSES = 100000;
+
+   private static final int NUMBER_OF_REGIONS = 10;
+
+   private static final int NUMBER_OF_OPERATIONS = 10000;
+
+   private WildcardAddressManager manager;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      manager = new WildcardAddressManager(new BindingsFactory()
+      {
+         public Bindings createBindings(final SimpleString address) throws Exception
+         {
+            return new Bindings(address, null, null);
+         }
+      });
+
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < NUMBER_OF_ADDRESSES; i++)
+      {
+         manager.addBinding(new FakeBinding(address(i), new SimpleString("queue" + i)));
+      }
+
+      for (int region = 0; region < NUMBER_OF_REGIONS; region++)
+      {
+         manager.addBinding(new FakeBinding(new SimpleString("market." + region + ".#"),
+                                            new SimpleString("region" + region)));
+      }
+
+      manager.addBinding(new FakeBinding(new SimpleString("market.*.symbol7"), new SimpleString("symbol7")));
+
+      log.info("Created " + NUMBER_OF_ADDRESSES + " addresses in " + (System.currentTimeMillis() - start) + " ms");
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      manager.clear();
+
+      super.tearDown();
+   }
+
+   public void testBindingChurn() throws Exception
+   {
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < NUMBER_OF_OPERATIONS; i++)
+      {
+         SimpleString name = new SimpleString("churn" + i);
+
+         manager.addBinding(new FakeBinding(address(NUMBER_OF_ADDRESSES + i), name));
+
+         manager.removeBinding(name);
+      }
+
+      for (int i = 0; i < NUMBER_OF_OPERATIONS; i++)
+      {
+         SimpleString name = new SimpleString("churn-wildcard" + i);
+
+         manager.addBinding(new FakeBinding(new SimpleString("market.*.symbol" + i), name));
+
+         manager.removeBinding(name);
+      }
+
+      long end = System.currentTimeMillis();
+
+      log.info("Binding churn rate = " + rate(4 * NUMBER_OF_OPERATIONS, end - start) + " operations/sec");
+   }
+
+   public void testRouteLookup() throws Exception
+   {
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < NUMBER_OF_OPERATIONS; i++)
+      {
+         Bindings bindings = manager.getBindingsForRoutingAddress(address(i * 7 % NUMBER_OF_ADDRESSES));
+
+         // its own queue plus the region wildcard
+         Assert.assertTrue(bindings.getBindings().size() >= 2);
+      }
+
+      long end = System.currentTimeMillis();
+
+      log.info("Route lookup rate = " + rate(NUMBER_OF_OPERATIONS, end - start) + " lookups/sec");
+
+      start = System.currentTimeMillis();
+
+      for (int i = 0; i < NUMBER_OF_OPERATIONS; i++)
+      {
+         // addresses without bindings of their own are linked to the wildcards on the first lookup
+         Bindings bindings = manager.getBindingsForRoutingAddress(address(NUMBER_OF_ADDRESSES + i));
+
+         Assert.assertNotNull(bindings);
+      }
+
+      end = System.currentTimeMillis();
+
+      log.info("First route lookup rate = " + rate(NUMBER_OF_OPERATIONS, end - start) + " lookups/sec");
+   }
+
+   public void testMatchingBindings() throws Exception
+   {
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < 100; i++)
+      {
+         // starts past symbol7, which is also bound through the very same wildcard
+         Bindings bindings = manager.getMatchingBindings(new SimpleString("market.*.symbol" + (100 + i)));
+
+         Assert.assertEquals(1, bindings.getBindings().size());
+      }
+
+      long end = System.currentTimeMillis();
+
+      log.info("Matching bindings rate = " + rate(100, end - start) + " queries/sec");
+   }
+
+   private static SimpleString address(final int i)
+   {
+      return new SimpleString("market." + (i % NUMBER_OF_REGIONS) + ".symbol" + i);
+   }
+
+   private static double rate(final long operations, final long elapsed)
+   {
+      return 1000 * (double)operations / Math.max(1, elapsed);
+   }
+
+   private static final class FakeBinding implements Binding
+   {
+      private final SimpleString address;
+
+      private final SimpleString name;
+
+      FakeBinding(final SimpleString address, final SimpleString name)
+      {
+         this.address = address;
+         this.name = name;
+      }
+
+      public SimpleString getAddress()
+      {
+         return address;
+      }
+
+      public Bindable getBindable()
+      {
+         return null;
+      }
+
+      public BindingType getType()
+      {
+         return BindingType.LOCAL_QUEUE;
+      }
+
+      public SimpleString getUniqueName()
+      {
+         return name;
+      }
+
+      public SimpleString getRoutingName()
+      {
+         return name;
+      }
+
+      public SimpleString getClusterName()
+      {
+         return name;
+      }
+
+      public Filter getFilter()
+      {
+         return null;
+      }
+
+      public boolean isHighAcceptPriority(final ServerMessage message)
+      {
+         return true;
+      }
+
+      public boolean isExclusive()
+      {
+         return false;
+      }
+
+      public long getID()
+      {
+         return name.hashCode();
+      }
+
+      public int getDistance()
+      {
+         return 0;
+      }
+
+      public void route(final ServerMessage message, final RoutingContext context) throws Exception
+      {
+      }
+
+      public void close() throws Exception
+      {
+      }
+
+      public String toManagementString()
+      {
+         return "FakeBinding [address=" + address + ", name=" + name + "]";
+      }
+   }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.client.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.client.impl.AdaptiveConsumerWindow;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class AdaptiveConsumerWindowTest extends UnitTestCase
+{
+   private static final int WINDOW_SIZE = 100 * 1000;
+
+   private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+   private long now;
+
+   private AdaptiveConsumerWindow window;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      now = 0;
+
+      window = new AdaptiveConsumerWindow(WINDOW_SIZE, 100);
+   }
+
+   public void testFullWindowUntilMeasured()
+   {
+      Assert.assertEquals(WINDOW_SIZE, window.getWindowSize());
+
+      Assert.assertEquals(WINDOW_SIZE / 2, window.getCreditThreshold());
+
+      Assert.assertEquals(0, window.getDrainRate(), 0);
+
+      Assert.assertEquals(WINDOW_SIZE / 2, window.creditsFor(WINDOW_SIZE / 2, now));
+   }
+
+   public void testSlowConsumerShrinksWindow()
+   {
+      // 1000 bytes every 10 ms, 100 ms of which are 10000 bytes
+      consume(5, 1000, 10, true);
+
+      Assert.assertEquals(100 * 1000, window.getDrainRate(), 1);
+
+      Assert.assertEquals(10000, window.getWindowSize(), 1);
+
+      Assert.assertEquals(window.getWindowSize() / 2, window.getCreditThreshold());
+   }
+
+   public void testNoCreditsUntilConsumedUnderWindow()
+   {
+      consume(5, 1000, 10, true);
+
+      int size = window.getWindowSize();
+
+      // The server still holds or delivered most of the initial window
+      Assert.assertEquals(0, window.creditsFor(5000, now));
+
+      int credits = window.creditsFor(WINDOW_SIZE - 5000 - size / 2, now);
+
+      Assert.assertEquals(size / 2, credits, 1);
+   }
+
+   public void testFastMeasureAveragedIn()
+   {
+      consume(5, 1000, 10, true);
+
+      double slow = window.getDrainRate();
+
+      consume(5, 1000, 5, true);
+
+      Assert.assertTrue(window.getDrainRate() > slow);
+
+      Assert.assertTrue(window.getDrainRate() < 2 * slow);
+   }
+
+   public void testSlowMeasureAppliedAtOnce()
+   {
+      consume(5, 1000, 5, true);
+
+      consume(5, 1000, 20, true);
+
+      Assert.assertEquals(50 * 1000, window.getDrainRate(), 1);
+   }
+
+   public void testWaitingConsumerGrowsWindow()
+   {
+      consume(5, 1000, 10, true);
+
+      int size = window.getWindowSize();
+
+      // Messages consumed as they come, a window's worth each time the rate is doubled
+      consume(3 * size / 1000, 1000, 1, false);
+
+      Assert.assertTrue(window.getWindowSize() >= 4 * size);
+
+      consume(WINDOW_SIZE, 1000, 1, false);
+
+      Assert.assertEquals(WINDOW_SIZE, window.getWindowSize());
+   }
+
+   public void testWindowHoldsLargestMessage()
+   {
+      // 5000 bytes every second
+      consume(3, 5000, 1000, true);
+
+      Assert.assertEquals(5000, window.getWindowSize());
+   }
+
+   public void testWindowCoversRoundTrips()
+   {
+      consume(5, 1000, 10, true);
+
+      // Everything consumed, the next credits bring a message after 80 ms
+      Assert.assertTrue(window.creditsFor(WINDOW_SIZE, now) > 0);
+
+      now += 80 * MILLIS;
+
+      window.messageReceived(now);
+
+      Assert.assertEquals(80 * MILLIS, window.getRoundTripTime());
+
+      Assert.assertEquals(16000, window.getWindowSize(), 1);
+
+      // A longer time includes time the queue was empty
+      window.creditsFor(window.getWindowSize(), now);
+
+      now += 500 * MILLIS;
+
+      window.messageReceived(now);
+
+      Assert.assertEquals(80 * MILLIS, window.getRoundTripTime());
+   }
+
+   public void testReset()
+   {
+      consume(5, 1000, 10, true);
+
+      window.reset(WINDOW_SIZE / 2);
+
+      Assert.assertEquals(10000, window.getWindowSize(), 1);
+
+      // The server holds more than the window again
+      Assert.assertEquals(0, window.creditsFor(1000, now));
+   }
+
+   private void consume(final int messages, final int bytes, final long interval, final boolean more)
+   {
+      for (int i = 0; i < messages; i++)
+      {
+         now += interval * MILLIS;
+
+         window.messageConsumed(bytes, more, now);
+      }
+   }
+}
@@ -842,6 +842,16 @@ public class LargeMessageBufferTest extends UnitTestCase
          return 0;
       }
 
+      public int getCurrentWindowSize()
+      {
+         return 0;
+      }
+
+      public double getDrainRate()
+      {
+         return 0;
+      }
+
       public int getClientWindowSize()
       {
 
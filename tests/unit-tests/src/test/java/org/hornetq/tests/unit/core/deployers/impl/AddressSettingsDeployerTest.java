@@ -45,6 +45,12 @@ public class AddressSettingsDeployerTest extends UnitTestCase
                                + "      <redelivery-delay-multiplier>2</redelivery-delay-multiplier>\n"
                                + "      <max-redelivery-delay>12000</max-redelivery-delay>\n"
                                + "      <send-to-dla-on-no-route>true</send-to-dla-on-no-route>\n"
+                               + "      <filter-index>true</filter-index>\n"
+                               + "      <fine-grained-locking>true</fine-grained-locking>\n"
+                               + "      <page-max-cache-bytes>1048576</page-max-cache-bytes>\n"
+                               + "      <off-heap-threshold>100000</off-heap-threshold>\n"
+                               + "      <body-compression-codec>lzf</body-compression-codec>\n"
+                               + "      <min-body-compression-size>512</min-body-compression-size>\n"
                                + "   </address-setting>";
 
    private AddressSettingsDeployer addressSettingsDeployer;
@@ -79,6 +85,12 @@ public class AddressSettingsDeployerTest extends UnitTestCase
       Assert.assertEquals(2.0, as.getRedeliveryMultiplier());
       Assert.assertEquals(12000, as.getMaxRedeliveryDelay());
       Assert.assertTrue(as.isSendToDLAOnNoRoute());
+      Assert.assertTrue(as.isFilterIndex());
+      Assert.assertTrue(as.isFineGrainedLocking());
+      Assert.assertEquals(1048576, as.getPageCacheMaxBytes());
+      Assert.assertEquals(100000, as.getOffHeapThreshold());
+      Assert.assertEquals("lzf", as.getBodyCompressionCodec());
+      Assert.assertEquals(512, as.getMinBodyCompressionSize());
 
    }
 
@@ -110,6 +122,12 @@ public class AddressSettingsDeployerTest extends UnitTestCase
       Assert.assertTrue(as.isLastValueQueue());
       Assert.assertEquals(38383, as.getRedistributionDelay());
       Assert.assertTrue(as.isSendToDLAOnNoRoute());
+      Assert.assertTrue(as.isFilterIndex());
+      Assert.assertTrue(as.isFineGrainedLocking());
+      Assert.assertEquals(1048576, as.getPageCacheMaxBytes());
+      Assert.assertEquals(100000, as.getOffHeapThreshold());
+      Assert.assertEquals("lzf", as.getBodyCompressionCodec());
+      Assert.assertEquals(512, as.getMinBodyCompressionSize());
    }
 
    public void testUndeploy() throws Exception
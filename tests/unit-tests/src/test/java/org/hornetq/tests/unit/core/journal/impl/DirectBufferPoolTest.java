@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.impl.DirectBufferPool;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class DirectBufferPoolTest extends UnitTestCase
+{
+   public void testSizeClasses() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool(64 * 1024, 1024 * 1024);
+
+      ByteBuffer small = pool.acquire(10);
+      Assert.assertTrue(small.isDirect());
+      Assert.assertEquals(0, small.position());
+      Assert.assertEquals(10, small.limit());
+      Assert.assertEquals(DirectBufferPool.MIN_CAPACITY, small.capacity());
+
+      ByteBuffer medium = pool.acquire(1025);
+      Assert.assertEquals(1025, medium.limit());
+      Assert.assertEquals(2048, medium.capacity());
+
+      // not pooled, only aligned
+      ByteBuffer big = pool.acquire(100 * 1024 + 1);
+      Assert.assertEquals(100 * 1024 + DirectBufferPool.MIN_CAPACITY, big.capacity());
+
+      Assert.assertEquals(3, pool.getAcquiredCount());
+
+      pool.release(small);
+      pool.release(medium);
+      pool.release(big);
+
+      Assert.assertEquals(0, pool.getAcquiredCount());
+      Assert.assertEquals(DirectBufferPool.MIN_CAPACITY + 2048, pool.getPooledBytes());
+      Assert.assertEquals(1, pool.getFreeCount());
+   }
+
+   public void testReuseIsZeroed() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      ByteBuffer buffer = pool.acquire(1000);
+
+      while (buffer.hasRemaining())
+      {
+         buffer.put((byte)'x');
+      }
+
+      pool.release(buffer);
+
+      ByteBuffer reused = pool.acquire(600);
+
+      // the same memory, through a buffer of its own
+      Assert.assertNotSame(buffer, reused);
+      Assert.assertEquals(1, pool.getAllocationCount());
+      Assert.assertEquals(1, pool.getReuseCount());
+      Assert.assertEquals(0, reused.position());
+      Assert.assertEquals(600, reused.limit());
+
+      for (int i = 0; i < reused.limit(); i++)
+      {
+         Assert.assertEquals(0, reused.get(i));
+      }
+
+      pool.release(reused);
+   }
+
+   public void testReferenceCount() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      ByteBuffer buffer = pool.acquire(100);
+
+      pool.retain(buffer);
+
+      pool.release(buffer);
+      Assert.assertEquals(1, pool.getAcquiredCount());
+      Assert.assertEquals(0, pool.getPooledBytes());
+
+      pool.release(buffer);
+      Assert.assertEquals(0, pool.getAcquiredCount());
+      Assert.assertEquals(buffer.capacity(), pool.getPooledBytes());
+
+      try
+      {
+         pool.release(buffer);
+         Assert.fail("exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      Assert.assertEquals(0, pool.getAcquiredCount());
+
+      try
+      {
+         pool.retain(buffer);
+         Assert.fail("exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+   }
+
+   public void testReleaseTwiceAfterReuse() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      ByteBuffer first = pool.acquire(100);
+
+      pool.release(first);
+
+      ByteBuffer second = pool.acquire(100);
+
+      Assert.assertEquals(1, pool.getReuseCount());
+
+      // the stale buffer must not release the one of the second holder
+      try
+      {
+         pool.release(first);
+         Assert.fail("exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      Assert.assertEquals(1, pool.getAcquiredCount());
+      Assert.assertTrue(pool.release(second));
+      Assert.assertEquals(0, pool.getAcquiredCount());
+   }
+
+   public void testForeignBuffers() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      Assert.assertFalse(pool.release(ByteBuffer.allocate(100)));
+
+      Assert.assertFalse(pool.release(ByteBuffer.allocateDirect(100)));
+
+      ByteBuffer buffer = pool.acquire(100);
+
+      // views of a pooled buffer are not the buffer
+      try
+      {
+         pool.release(buffer.duplicate());
+         Assert.fail("exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      try
+      {
+         pool.release(buffer.slice());
+         Assert.fail("exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      Assert.assertEquals(1, pool.getAcquiredCount());
+      Assert.assertTrue(pool.release(buffer));
+   }
+
+   public void testMaxPooledBytes() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool(4096, 8192);
+
+      ByteBuffer[] buffers = new ByteBuffer[4];
+
+      for (int i = 0; i < buffers.length; i++)
+      {
+         buffers[i] = pool.acquire(4096);
+      }
+
+      for (ByteBuffer buffer : buffers)
+      {
+         pool.release(buffer);
+      }
+
+      Assert.assertEquals(8192, pool.getPooledBytes());
+      Assert.assertEquals(2, pool.getFreeCount());
+
+      pool.trim();
+
+      Assert.assertEquals(0, pool.getPooledBytes());
+      Assert.assertEquals(4, pool.getFreeCount());
+   }
+
+   public void testStopped() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      ByteBuffer pooled = pool.acquire(100);
+      ByteBuffer leaked = pool.acquire(100);
+
+      pool.release(pooled);
+
+      pool.stop();
+
+      Assert.assertEquals(0, pool.getPooledBytes());
+      Assert.assertEquals(1, pool.getAcquiredCount());
+
+      // released after the stop, it is freed
+      pool.release(leaked);
+
+      Assert.assertEquals(0, pool.getPooledBytes());
+      Assert.assertEquals(0, pool.getAcquiredCount());
+      Assert.assertEquals(2, pool.getFreeCount());
+
+      pool.start();
+
+      pool.release(pool.acquire(100));
+
+      Assert.assertEquals(DirectBufferPool.MIN_CAPACITY, pool.getPooledBytes());
+   }
+}
@@ -17,6 +17,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -138,6 +141,89 @@ public class TimedBufferTest extends UnitTestCase
 
    }
 
+   public void testReservedWritesFlushedOnceReleased() throws Exception
+   {
+      final ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      final AtomicInteger flushTimes = new AtomicInteger(0);
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            buffers.add(buffer);
+            flushTimes.incrementAndGet();
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      final TimedBuffer timedBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS, false);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         timedBuffer.checkSize(10);
+         HornetQBuffer first = timedBuffer.reserve(10, false, dummyCallback);
+
+         timedBuffer.checkSize(10);
+         HornetQBuffer second = timedBuffer.reserve(10, false, dummyCallback);
+
+         // encoded in the opposite order of their reservations
+         second.writeBytes(new byte[] { 2, 2, 2, 2, 2, 2, 2, 2, 2, 2 });
+         timedBuffer.release();
+
+         final CountDownLatch flushed = new CountDownLatch(1);
+
+         Thread flusher = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               timedBuffer.flush(true);
+               flushed.countDown();
+            }
+         };
+
+         flusher.start();
+
+         Assert.assertFalse(flushed.await(100, TimeUnit.MILLISECONDS));
+
+         Assert.assertEquals(0, flushTimes.get());
+
+         first.writeBytes(new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 });
+         timedBuffer.release();
+
+         Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+
+         Assert.assertEquals(1, flushTimes.get());
+
+         ByteBuffer flushedBuffer = buffers.get(0);
+
+         Assert.assertEquals(20, flushedBuffer.limit());
+
+         flushedBuffer.rewind();
+
+         for (int i = 0; i < 20; i++)
+         {
+            Assert.assertEquals(i < 10 ? 1 : 2, flushedBuffer.get());
+         }
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
+
    public void testTimingAndFlush() throws Exception
    {
       final ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
@@ -397,4 +483,178 @@ public class TimedBufferTest extends UnitTestCase
          timedBuffer.stop();
       }
    }
+
+   public void testAdaptiveFlushesSingleSyncStraightAway() throws Exception
+   {
+      SlowSyncObserver observer = new SlowSyncObserver(0);
+
+      // the timeout is far too long for the test to pass if it was waited for
+      TimedBuffer timedBuffer = new TimedBuffer(1024, TimedBufferTest.ONE_SECOND_IN_NANOS * 10, false);
+
+      timedBuffer.setAdaptive(true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(observer);
+
+         for (int i = 0; i < 10; i++)
+         {
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+            Assert.assertEquals(i + 1, observer.flushes.get());
+
+            // a single sender, waiting on each sync
+            Assert.assertTrue(observer.waitSyncs(i + 1));
+         }
+
+         Assert.assertEquals(0, timedBuffer.getFlushWindow());
+
+         long[] batchSizes = timedBuffer.getBatchSizeHistogram();
+
+         Assert.assertEquals(10, batchSizes[0]);
+
+         long syncs = 0;
+
+         for (long count : timedBuffer.getFlushLatencyHistogram())
+         {
+            syncs += count;
+         }
+
+         Assert.assertEquals(10, syncs);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         observer.stop();
+      }
+   }
+
+   public void testAdaptiveBatchesConcurrentSyncs() throws Exception
+   {
+      SlowSyncObserver observer = new SlowSyncObserver(20);
+
+      int timeout = TimedBufferTest.ONE_SECOND_IN_NANOS / 200;
+
+      TimedBuffer timedBuffer = new TimedBuffer(100 * 1024, timeout, false);
+
+      timedBuffer.setAdaptive(true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(observer);
+
+         // one sync to learn how long syncs take
+         timedBuffer.checkSize(10);
+         timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+         Assert.assertTrue(observer.waitSyncs(1));
+
+         // many senders, a sync requested every millisecond
+         for (int i = 0; i < 200; i++)
+         {
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+
+            Thread.sleep(1);
+         }
+
+         long window = timedBuffer.getFlushWindow();
+
+         Assert.assertTrue("window " + window, window > 0);
+         Assert.assertTrue("window " + window, window <= (long)timeout * TimedBuffer.MAX_ADAPTIVE_TIMEOUTS);
+
+         Assert.assertTrue("flushes " + observer.flushes.get(), observer.flushes.get() < 100);
+
+         long[] batchSizes = timedBuffer.getBatchSizeHistogram();
+
+         long batched = 0;
+
+         for (int i = 1; i < batchSizes.length; i++)
+         {
+            batched += batchSizes[i];
+         }
+
+         Assert.assertTrue(batched > 0);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         observer.stop();
+      }
+   }
+
+   /**
+    * Completes the callbacks of sync flushes on a single thread, each sync taking the given time.
+    */
+   private static final class SlowSyncObserver implements TimedBufferObserver
+   {
+      private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+
+      private final long syncMillis;
+
+      final AtomicInteger flushes = new AtomicInteger(0);
+
+      private final Semaphore syncsDone = new Semaphore(0);
+
+      SlowSyncObserver(final long syncMillis)
+      {
+         this.syncMillis = syncMillis;
+      }
+
+      public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+      {
+         flushes.incrementAndGet();
+
+         syncExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  Thread.sleep(syncMillis);
+               }
+               catch (InterruptedException e)
+               {
+               }
+
+               for (IOAsyncTask callback : callbacks)
+               {
+                  callback.done();
+               }
+
+               syncsDone.release();
+            }
+         });
+      }
+
+      public ByteBuffer newBuffer(final int minSize, final int maxSize)
+      {
+         return ByteBuffer.allocate(maxSize);
+      }
+
+      public int getRemainingBytes()
+      {
+         return 1024 * 1024;
+      }
+
+      boolean waitSyncs(final int syncs) throws InterruptedException
+      {
+         if (syncsDone.tryAcquire(syncs, 10, TimeUnit.SECONDS))
+         {
+            syncsDone.release(syncs);
+            return true;
+         }
+         return false;
+      }
+
+      void stop()
+      {
+         syncExecutor.shutdown();
+      }
+   }
 }
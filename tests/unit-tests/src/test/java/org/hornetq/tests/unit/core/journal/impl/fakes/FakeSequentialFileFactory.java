@@ -29,6 +29,7 @@ import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.DirectBufferPool;
 import org.hornetq.core.journal.impl.TimedBuffer;
 
 /**
@@ -640,6 +641,16 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
          write(outbuffer, sync);
       }
 
+      public HornetQBuffer reserve(final int size, final boolean sync, final IOAsyncTask callback)
+      {
+         // there is no buffer to reserve the space in
+         return null;
+      }
+
+      public void release()
+      {
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.SequentialFile#exists()
        */
@@ -705,6 +716,12 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
    {
    }
 
+   @Override
+   public DirectBufferPool getBufferPool()
+   {
+      return null;
+   }
+
    @Override
    public void flush()
    {
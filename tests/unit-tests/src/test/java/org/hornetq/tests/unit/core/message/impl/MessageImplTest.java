@@ -13,15 +13,25 @@
 
 package org.hornetq.tests.unit.core.message.impl;
 
+import java.nio.ReadOnlyBufferException;
 import java.util.Set;
 
 import junit.framework.Assert;
 
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.DataConstants;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
 
 /**
  *
@@ -221,6 +231,146 @@ public class MessageImplTest extends UnitTestCase
       }
    }
 
+   public void testEncodedBufferSharedBetweenPackets() throws Exception
+   {
+      byte[] body = RandomUtil.randomBytes(10 * 1024);
+
+      ServerMessageImpl message = newServerMessage(1, body);
+
+      HornetQBuffer first = new SessionReceiveMessage(10, message, 1).encode(null);
+      HornetQBuffer second = new SessionReceiveMessage(20, message, 2).encode(null);
+
+      // the second packet only has its own header and trailer
+      Assert.assertTrue(second.channelBuffer() instanceof CompositeChannelBuffer);
+
+      SessionReceiveMessage received1 = receive(first);
+      SessionReceiveMessage received2 = receive(second);
+
+      Assert.assertEquals(10, received1.getConsumerID());
+      Assert.assertEquals(1, received1.getDeliveryCount());
+      Assert.assertEquals(20, received2.getConsumerID());
+      Assert.assertEquals(2, received2.getDeliveryCount());
+
+      UnitTestCase.assertEqualsByteArrays(body, readBody(received1.getMessage()));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(received2.getMessage()));
+      Assert.assertEquals(message.getAddress(), received2.getMessage().getAddress());
+   }
+
+   public void testCopySharesBody() throws Exception
+   {
+      byte[] body = RandomUtil.randomBytes(10 * 1024);
+
+      ServerMessageImpl message = newServerMessage(1, body);
+      message.encode(HornetQBuffers.dynamicBuffer(message.getEncodeSize()));
+
+      ServerMessage copy = message.copy(2);
+      copy.putStringProperty(new SimpleString("prop"), new SimpleString("value"));
+      copy.setAddress(new SimpleString("other"));
+
+      ServerMessage decodedCopy = reload(copy);
+
+      Assert.assertTrue(copy.getWholeBuffer().channelBuffer() instanceof CompositeChannelBuffer);
+
+      // the original keeps its encoding
+      ServerMessage decoded = reload(message);
+
+      Assert.assertEquals(new SimpleString("address"), decoded.getAddress());
+      Assert.assertFalse(decoded.containsProperty(new SimpleString("prop")));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(decoded));
+
+      Assert.assertEquals(new SimpleString("other"), decodedCopy.getAddress());
+      Assert.assertEquals(new SimpleString("value"), decodedCopy.getSimpleStringProperty(new SimpleString("prop")));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(decodedCopy));
+
+      // and both can still be sent
+      SessionReceiveMessage sent = receive(new SessionReceiveMessage(1, message, 1).encode(null));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(sent.getMessage()));
+      SessionReceiveMessage sentCopy = receive(new SessionReceiveMessage(1, copy, 1).encode(null));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(sentCopy.getMessage()));
+      Assert.assertEquals(new SimpleString("value"), sentCopy.getMessage().getSimpleStringProperty("prop"));
+   }
+
+   public void testCopyBodyChange() throws Exception
+   {
+      byte[] body = RandomUtil.randomBytes(1024);
+
+      ServerMessageImpl message = newServerMessage(1, body);
+      message.encode(HornetQBuffers.dynamicBuffer(message.getEncodeSize()));
+
+      ServerMessage copy = message.copy(2);
+      copy.getBodyBuffer().writeBytes(new byte[]{1, 2, 3});
+
+      UnitTestCase.assertEqualsByteArrays(body, readBody(reload(message)));
+
+      byte[] copyBody = readBody(reload(copy));
+      Assert.assertEquals(body.length + 3, copyBody.length);
+      Assert.assertEquals(3, copyBody[body.length + 2]);
+   }
+
+   public void testSharedBodyIsReadOnly() throws Exception
+   {
+      byte[] body = RandomUtil.randomBytes(1024);
+
+      ServerMessageImpl message = newServerMessage(1, body);
+
+      new SessionReceiveMessage(10, message, 1).encode(null);
+      HornetQBuffer second = new SessionReceiveMessage(20, message, 2).encode(null);
+
+      try
+      {
+         second.setByte(MessageImpl.BODY_OFFSET, (byte)0);
+         Assert.fail("exception expected");
+      }
+      catch (ReadOnlyBufferException expected)
+      {
+      }
+
+      // and neither is the view of a view
+      ServerMessage copy = message.copy(2);
+      copy.putStringProperty(new SimpleString("prop"), new SimpleString("value"));
+
+      HornetQBuffer copyBuffer = copy.getEncodedBuffer(0);
+
+      try
+      {
+         copyBuffer.setByte(MessageImpl.BODY_OFFSET, (byte)0);
+         Assert.fail("exception expected");
+      }
+      catch (ReadOnlyBufferException expected)
+      {
+      }
+
+      UnitTestCase.assertEqualsByteArrays(body, readBody(reload(message)));
+   }
+
+   public void testSharedEncodingTrailerSize() throws Exception
+   {
+      byte[] body = RandomUtil.randomBytes(1024);
+
+      ServerMessageImpl message = newServerMessage(1, body);
+      message.encode(HornetQBuffers.dynamicBuffer(message.getEncodeSize()));
+
+      ServerMessage copy = message.copy(2);
+      copy.putStringProperty(new SimpleString("prop"), new SimpleString("value"));
+
+      // more than a consumer ID and a delivery count after the message
+      for (int trailerSize : new int[]{0, 12, 64, 12})
+      {
+         HornetQBuffer buffer = copy.getEncodedBuffer(trailerSize);
+
+         Assert.assertEquals(copy.getEndOfMessagePosition(), buffer.writerIndex());
+
+         for (int i = 0; i < trailerSize; i++)
+         {
+            buffer.writeByte((byte)i);
+         }
+      }
+
+      SessionReceiveMessage sent = receive(new SessionReceiveMessage(1, copy, 1).encode(null));
+      UnitTestCase.assertEqualsByteArrays(body, readBody(sent.getMessage()));
+      Assert.assertEquals(new SimpleString("value"), sent.getMessage().getSimpleStringProperty("prop"));
+   }
+
    // Protected -------------------------------------------------------------------------------
 
    protected void assertMessagesEquivalent(final Message msg1, final Message msg2)
@@ -259,4 +409,42 @@ public class MessageImplTest extends UnitTestCase
 
    // Private ----------------------------------------------------------------------------------
 
+   private ServerMessageImpl newServerMessage(final long id, final byte[] body)
+   {
+      ServerMessageImpl message = new ServerMessageImpl(id, 1024);
+      message.setAddress(new SimpleString("address"));
+      message.putIntProperty(new SimpleString("count"), 10);
+      message.getBodyBuffer().writeBytes(body);
+      return message;
+   }
+
+   private ServerMessage reload(final ServerMessage message)
+   {
+      HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(message.getEncodeSize());
+      message.encode(buffer);
+
+      ServerMessage decoded = new ServerMessageImpl(message.getMessageID(), 50);
+      decoded.decode(buffer);
+      return decoded;
+   }
+
+   private SessionReceiveMessage receive(final HornetQBuffer buffer)
+   {
+      // positioned after the size and type, as the decoder would leave it
+      buffer.readerIndex(DataConstants.SIZE_INT + DataConstants.SIZE_BYTE);
+
+      SessionReceiveMessage packet = new SessionReceiveMessage(new ClientMessageImpl());
+      packet.decode(buffer);
+      return packet;
+   }
+
+   private byte[] readBody(final Message message)
+   {
+      MessageInternal internal = (MessageInternal)message;
+      HornetQBuffer buffer = internal.getWholeBuffer();
+      byte[] body = new byte[internal.getEndOfBodyPosition() - MessageImpl.BODY_OFFSET];
+      buffer.getBytes(MessageImpl.BODY_OFFSET, body);
+      return body;
+   }
+
 }
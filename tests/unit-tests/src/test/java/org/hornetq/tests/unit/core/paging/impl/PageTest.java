@@ -67,6 +67,49 @@ public class PageTest extends UnitTestCase
       testAdd(new FakeSequentialFileFactory(1, false), 10);
    }
 
+   public void testIndexWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testIndex(new NIOSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   public void testIndexFake() throws Exception
+   {
+      testIndex(new FakeSequentialFileFactory(1, false), 100);
+   }
+
+   public void testIndexDamagedPage() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      addPageElements(new SimpleString("Test"), impl, 10);
+
+      // a record cut in half
+      ByteBuffer buffer = ByteBuffer.allocate(3);
+      buffer.put((byte)'{');
+      buffer.put((byte)0);
+      buffer.put((byte)0);
+      buffer.rewind();
+      file.writeDirect(buffer, true);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      Assert.assertEquals(10, impl.readIndex(new NullStorageManager()).length);
+      Assert.assertEquals(10, impl.getNumberOfMessages());
+
+      impl.close();
+   }
+
    /** Validate if everything we add is recovered */
    public void testDamagedPage() throws Exception
    {
@@ -121,6 +164,91 @@ public class PageTest extends UnitTestCase
 
    }
 
+   /** Validate if messages read through the index are the ones read with the whole page */
+   protected void testIndex(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 100);
+
+         // a few of them bigger than a single read
+         int bodySize = i % 10 == 0 ? 100 * 1024 + i : 10 + i;
+
+         for (int j = 0; j < bodySize; j++)
+         {
+            msg.getBodyBuffer().writeByte(UnitTestCase.getSamplebyte(j));
+         }
+
+         msg.setAddress(simpleDestination);
+
+         impl.write(new PagedMessageImpl(msg, new long[0]));
+      }
+
+      impl.sync();
+      impl.close();
+
+      impl.open();
+
+      List<PagedMessage> expected = impl.read(new NullStorageManager());
+
+      int[] index = impl.readIndex(new NullStorageManager());
+
+      Assert.assertEquals(numberOfElements, index.length);
+
+      impl.close();
+
+      PagedMessage[] msgs = new PagedMessage[index.length];
+
+      // from the end, so most reads only decode a single message
+      for (int i = msgs.length - 1; i >= 0; i--)
+      {
+         if (msgs[i] == null)
+         {
+            Assert.assertTrue(impl.read(new NullStorageManager(), index, i, msgs) > 0);
+         }
+      }
+
+      // the file stays open between the reads, until the reader is closed
+      Assert.assertTrue(file.isOpen());
+
+      impl.closeReader();
+
+      Assert.assertFalse(file.isOpen());
+
+      for (int i = 0; i < msgs.length; i++)
+      {
+         Assert.assertEquals(i, msgs[i].getMessage().getMessageID());
+
+         UnitTestCase.assertEqualsByteArrays(expected.get(i).getMessage().getBodyBuffer().toByteBuffer().array(),
+                                             msgs[i].getMessage().getBodyBuffer().toByteBuffer().array());
+      }
+
+      // a batch read from the start fills the rest of the read buffer
+      PagedMessage[] batch = new PagedMessage[index.length];
+
+      int decoded = impl.read(new NullStorageManager(), index, 1, batch);
+
+      Assert.assertTrue(decoded > 1);
+      Assert.assertNull(batch[0]);
+
+      for (int i = 1; i <= decoded; i++)
+      {
+         Assert.assertEquals(i, batch[i].getMessage().getMessageID());
+      }
+
+      impl.closeReader();
+
+      Assert.assertFalse(file.isOpen());
+   }
+
    protected void testDamagedPage(final SequentialFileFactory factory, final int numberOfElements) throws Exception
    {
 
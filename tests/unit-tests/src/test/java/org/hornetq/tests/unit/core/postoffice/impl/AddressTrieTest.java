@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.postoffice.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.impl.AddressTrie;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class AddressTrieTest extends UnitTestCase
+{
+   private AddressTrie<String> trie;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      trie = new AddressTrie<String>();
+   }
+
+   public void testPutGetRemove()
+   {
+      Assert.assertTrue(trie.isEmpty());
+
+      Assert.assertNull(trie.putIfAbsent(new SimpleString("a.b.c"), "a.b.c"));
+      Assert.assertNull(trie.putIfAbsent(new SimpleString("a.b"), "a.b"));
+      Assert.assertEquals("a.b", trie.putIfAbsent(new SimpleString("a.b"), "other"));
+
+      Assert.assertEquals("a.b.c", trie.get(new SimpleString("a.b.c")));
+      Assert.assertEquals("a.b", trie.get(new SimpleString("a.b")));
+      Assert.assertNull(trie.get(new SimpleString("a")));
+      Assert.assertNull(trie.get(new SimpleString("a.b.c.d")));
+
+      Assert.assertEquals("a.b", trie.remove(new SimpleString("a.b")));
+      Assert.assertNull(trie.get(new SimpleString("a.b")));
+      Assert.assertEquals("a.b.c", trie.get(new SimpleString("a.b.c")));
+      Assert.assertNull(trie.remove(new SimpleString("a.b")));
+
+      Assert.assertEquals("a.b.c", trie.remove(new SimpleString("a.b.c")));
+      Assert.assertTrue(trie.isEmpty());
+   }
+
+   public void testMatchingWildcards()
+   {
+      put("a.b.c", "a.*.c", "a.#", "#", "#.c", "a.#.c", "*.*", "a.b.*.d", "b.#", "a.b#");
+
+      assertWildcards("a.b.c", "a.b.c", "a.*.c", "a.#", "#", "#.c", "a.#.c");
+      assertWildcards("a", "a.#", "#");
+      assertWildcards("a.c", "a.#", "#", "#.c", "a.#.c", "*.*");
+      assertWildcards("a.x.y.c", "a.#", "#", "#.c", "a.#.c");
+      assertWildcards("a.b.x.d", "a.#", "#", "a.b.*.d");
+      assertWildcards("x.y.z", "#");
+   }
+
+   public void testMatchingAddresses()
+   {
+      put("a", "a.b", "a.b.c", "a.x.c", "a.b.c.d", "b.c", "c");
+
+      assertAddresses("a.*", "a.b");
+      assertAddresses("a.*.c", "a.b.c", "a.x.c");
+      assertAddresses("a.#", "a", "a.b", "a.b.c", "a.x.c", "a.b.c.d");
+      assertAddresses("#.c", "a.b.c", "a.x.c", "b.c", "c");
+      assertAddresses("#", "a", "a.b", "a.b.c", "a.x.c", "a.b.c.d", "b.c", "c");
+      assertAddresses("*.*.c.#", "a.b.c", "a.x.c", "a.b.c.d");
+      assertAddresses("a.b", "a.b");
+      assertAddresses("x.#");
+   }
+
+   public void testRemovePrunesWildcards()
+   {
+      put("a.#", "a.b.#");
+
+      trie.remove(new SimpleString("a.#"));
+
+      assertWildcards("a.b.c", "a.b.#");
+
+      trie.remove(new SimpleString("a.b.#"));
+
+      assertWildcards("a.b.c");
+
+      Assert.assertTrue(trie.isEmpty());
+   }
+
+   private void put(final String... addresses)
+   {
+      for (String address : addresses)
+      {
+         trie.putIfAbsent(new SimpleString(address), address);
+      }
+   }
+
+   private void assertWildcards(final String address, final String... expected)
+   {
+      Set<String> result = new HashSet<String>();
+      trie.getMatchingWildcards(new SimpleString(address), result);
+      Assert.assertEquals(asSet(expected), result);
+   }
+
+   private void assertAddresses(final String wildcard, final String... expected)
+   {
+      Set<String> result = new HashSet<String>();
+      trie.getMatchingAddresses(new SimpleString(wildcard), result);
+      Assert.assertEquals(asSet(expected), result);
+   }
+
+   private static Set<String> asSet(final String... values)
+   {
+      Set<String> set = new HashSet<String>();
+      for (String value : values)
+      {
+         set.add(value);
+      }
+      return set;
+   }
+}
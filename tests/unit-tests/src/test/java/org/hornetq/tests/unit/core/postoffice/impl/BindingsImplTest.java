@@ -19,9 +19,12 @@ import java.util.Set;
 
 import javax.transaction.xa.Xid;
 
+import junit.framework.Assert;
+
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.BindingType;
 import org.hornetq.core.postoffice.Bindings;
@@ -74,6 +77,85 @@ public class BindingsImplTest extends UnitTestCase
       }
    }
 
+   public void testFilterIndex() throws Exception
+   {
+      internalTestFilters(true);
+   }
+
+   public void testNoFilterIndex() throws Exception
+   {
+      internalTestFilters(false);
+   }
+
+   private void internalTestFilters(final boolean filterIndex) throws Exception
+   {
+      Bindings bind = new Bindings(null, null, null);
+
+      FakeBinding eu = new FakeBinding(new SimpleString("eu"), FilterImpl.createFilter("region = 'EU'"));
+      FakeBinding usBig = new FakeBinding(new SimpleString("us-big"),
+                                          FilterImpl.createFilter("region = 'US' AND price > 10"));
+      FakeBinding euUs = new FakeBinding(new SimpleString("eu-us"), FilterImpl.createFilter("region IN ('EU', 'US')"));
+      FakeBinding expensive = new FakeBinding(new SimpleString("expensive"), FilterImpl.createFilter("price > 100"));
+      FakeBinding all = new FakeBinding(new SimpleString("all"), null);
+
+      bind.addBinding(eu);
+      bind.addBinding(usBig);
+
+      // enabling the index has to pick up the existing bindings
+      bind.setFilterIndex(filterIndex);
+
+      bind.addBinding(euUs);
+      bind.addBinding(expensive);
+      bind.addBinding(all);
+
+      routeWithRegion(bind, "EU", 5);
+      assertRouted(1, 0, 1, 0, 1, eu, usBig, euUs, expensive, all);
+
+      routeWithRegion(bind, "US", 50);
+      assertRouted(1, 1, 2, 0, 2, eu, usBig, euUs, expensive, all);
+
+      routeWithRegion(bind, "US", 200);
+      assertRouted(1, 2, 3, 1, 3, eu, usBig, euUs, expensive, all);
+
+      routeWithRegion(bind, null, 200);
+      assertRouted(1, 2, 3, 2, 4, eu, usBig, euUs, expensive, all);
+
+      ServerMessage message = new ServerMessageImpl(1, 100);
+      message.putIntProperty(new SimpleString("region"), 1);
+      bind.route(message, new RoutingContextImpl(new FakeTransaction()));
+      assertRouted(1, 2, 3, 2, 5, eu, usBig, euUs, expensive, all);
+
+      bind.removeBinding(eu);
+
+      routeWithRegion(bind, "EU", 5);
+      assertRouted(1, 2, 4, 2, 6, eu, usBig, euUs, expensive, all);
+   }
+
+   private void routeWithRegion(final Bindings bind, final String region, final int price) throws Exception
+   {
+      ServerMessage message = new ServerMessageImpl(1, 100);
+      if (region != null)
+      {
+         message.putStringProperty(new SimpleString("region"), new SimpleString(region));
+      }
+      message.putIntProperty(new SimpleString("price"), price);
+      bind.route(message, new RoutingContextImpl(new FakeTransaction()));
+   }
+
+   private void assertRouted(final int eu,
+                             final int usBig,
+                             final int euUs,
+                             final int expensive,
+                             final int all,
+                             final FakeBinding... bindings)
+   {
+      Assert.assertEquals(eu, bindings[0].routed);
+      Assert.assertEquals(usBig, bindings[1].routed);
+      Assert.assertEquals(euUs, bindings[2].routed);
+      Assert.assertEquals(expensive, bindings[3].routed);
+      Assert.assertEquals(all, bindings[4].routed);
+   }
+
    private void internalTest(final boolean route) throws Exception
    {
       final FakeBinding fake = new FakeBinding(new SimpleString("a"));
@@ -277,9 +359,19 @@ public class BindingsImplTest extends UnitTestCase
 
       final SimpleString name;
 
+      final Filter filter;
+
+      int routed;
+
       FakeBinding(final SimpleString name)
+      {
+         this(name, new FakeFilter());
+      }
+
+      FakeBinding(final SimpleString name, final Filter filter)
       {
          this.name = name;
+         this.filter = filter;
       }
 
       public SimpleString getAddress()
@@ -318,7 +410,7 @@ public class BindingsImplTest extends UnitTestCase
        */
       public Filter getFilter()
       {
-         return new FakeFilter();
+         return filter;
       }
 
       public long getID()
@@ -363,7 +455,7 @@ public class BindingsImplTest extends UnitTestCase
 
       public void route(final ServerMessage message, final RoutingContext context) throws Exception
       {
-
+         routed++;
       }
 
       /* (non-Javadoc)
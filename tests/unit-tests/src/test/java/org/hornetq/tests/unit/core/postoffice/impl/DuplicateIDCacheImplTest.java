@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.impl.DuplicateIDCacheImpl;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class DuplicateIDCacheImplTest extends UnitTestCase
+{
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   public void testEviction() throws Exception
+   {
+      DuplicateIDCacheImpl cache = new DuplicateIDCacheImpl(ADDRESS, 10, null, false);
+
+      for (int i = 0; i < 25; i++)
+      {
+         cache.addToCache(id(i), null);
+      }
+
+      for (int i = 0; i < 25; i++)
+      {
+         Assert.assertEquals("id " + i, i >= 15, cache.contains(id(i)));
+      }
+   }
+
+   public void testDelete() throws Exception
+   {
+      DuplicateIDCacheImpl cache = new DuplicateIDCacheImpl(ADDRESS, 3, null, false);
+
+      cache.addToCache(id(0), null);
+      cache.addToCache(id(1), null);
+      cache.addToCache(id(2), null);
+
+      cache.deleteFromCache(id(1));
+
+      Assert.assertFalse(cache.contains(id(1)));
+
+      // the deleted id's slot comes round without evicting anything
+      cache.addToCache(id(3), null);
+      cache.addToCache(id(4), null);
+
+      Assert.assertFalse(cache.contains(id(0)));
+      Assert.assertTrue(cache.contains(id(2)));
+      Assert.assertTrue(cache.contains(id(3)));
+      Assert.assertTrue(cache.contains(id(4)));
+   }
+
+   public void testEvictionOfReAddedID() throws Exception
+   {
+      DuplicateIDCacheImpl cache = new DuplicateIDCacheImpl(ADDRESS, 3, null, false);
+
+      cache.addToCache(id(0), null);
+      cache.addToCache(id(1), null);
+
+      // id 0 takes a second slot, its first one is evicted next
+      cache.addToCache(id(0), null);
+
+      cache.addToCache(id(2), null);
+
+      Assert.assertTrue(cache.contains(id(0)));
+      Assert.assertTrue(cache.contains(id(1)));
+      Assert.assertTrue(cache.contains(id(2)));
+
+      cache.addToCache(id(3), null);
+
+      Assert.assertTrue(cache.contains(id(0)));
+      Assert.assertFalse(cache.contains(id(1)));
+
+      // and then its second one
+      cache.addToCache(id(4), null);
+
+      Assert.assertFalse(cache.contains(id(0)));
+      Assert.assertTrue(cache.contains(id(2)));
+      Assert.assertTrue(cache.contains(id(3)));
+      Assert.assertTrue(cache.contains(id(4)));
+   }
+
+   public void testLoad() throws Exception
+   {
+      DuplicateIDCacheImpl cache = new DuplicateIDCacheImpl(ADDRESS, 5, null, false);
+
+      List<Pair<byte[], Long>> ids = new ArrayList<Pair<byte[], Long>>();
+
+      for (int i = 0; i < 3; i++)
+      {
+         ids.add(new Pair<byte[], Long>(id(i), -1L));
+      }
+
+      cache.load(ids);
+
+      // the loaded ids are the oldest ones
+      for (int i = 3; i < 8; i++)
+      {
+         cache.addToCache(id(i), null);
+      }
+
+      for (int i = 0; i < 8; i++)
+      {
+         Assert.assertEquals("id " + i, i >= 3, cache.contains(id(i)));
+      }
+   }
+
+   public void testConcurrentAdds() throws Exception
+   {
+      final int cacheSize = 1000;
+
+      final int numThreads = 8;
+
+      final int idsPerThread = 10000;
+
+      final DuplicateIDCacheImpl cache = new DuplicateIDCacheImpl(ADDRESS, cacheSize, null, false);
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final List<Throwable> errors = new ArrayList<Throwable>();
+
+      Thread[] threads = new Thread[numThreads];
+
+      for (int t = 0; t < numThreads; t++)
+      {
+         final int thread = t;
+
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (int i = 0; i < idsPerThread; i++)
+                  {
+                     byte[] id = id(thread * idsPerThread + i);
+
+                     cache.addToCache(id, null);
+
+                     cache.contains(id);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  synchronized (errors)
+                  {
+                     errors.add(e);
+                  }
+               }
+            }
+         };
+
+         threads[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+      int contained = 0;
+
+      for (int i = 0; i < numThreads * idsPerThread; i++)
+      {
+         if (cache.contains(id(i)))
+         {
+            contained++;
+         }
+      }
+
+      // the cache stays bounded whatever the interleaving
+      Assert.assertEquals(cacheSize, contained);
+   }
+
+   private static byte[] id(final int i)
+   {
+      return ("id-" + i).getBytes();
+   }
+}
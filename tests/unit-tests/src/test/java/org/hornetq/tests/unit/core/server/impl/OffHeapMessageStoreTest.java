@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.impl.DirectBufferPool;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.OffHeapMessageReference;
+import org.hornetq.core.server.impl.OffHeapMessageStore;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class OffHeapMessageStoreTest extends UnitTestCase
+{
+   private static final SimpleString QUEUE = new SimpleString("queue");
+
+   public void testOffloadAndLoad() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      OffHeapMessageStore store = new OffHeapMessageStore(QUEUE, pool);
+
+      ServerMessage message = generateMessage(1);
+
+      message.putStringProperty("color", "red");
+      message.setPriority((byte)7);
+      message.setExpiration(System.currentTimeMillis() - 1);
+      message.incrementRefCount();
+
+      String body = message.getBodyBuffer().readString();
+
+      MessageReference ref = message.createReference(null);
+
+      ref.setDeliveryCount(3);
+
+      OffHeapMessageReference offHeap = (OffHeapMessageReference)store.offload(ref);
+
+      Assert.assertNotNull(offHeap);
+      Assert.assertTrue(offHeap.isOffHeap());
+      Assert.assertEquals(1, offHeap.getMessageID());
+      Assert.assertEquals(7, offHeap.getPriority());
+      Assert.assertTrue(offHeap.isExpired());
+      Assert.assertEquals(3, offHeap.getDeliveryCount());
+      Assert.assertEquals(message.getMemoryEstimate(), offHeap.getMessageMemoryEstimate());
+      Assert.assertEquals(1, store.getStoredCount());
+      Assert.assertEquals(message.getEncodeSize(), store.getStoredBytes());
+      Assert.assertEquals(1, pool.getAcquiredCount());
+
+      ServerMessage loaded = offHeap.getMessage();
+
+      Assert.assertNotSame(message, loaded);
+      Assert.assertSame(loaded, offHeap.getMessage());
+      Assert.assertFalse(offHeap.isOffHeap());
+      Assert.assertEquals(1, loaded.getMessageID());
+      Assert.assertEquals(message.getAddress(), loaded.getAddress());
+      Assert.assertEquals(new SimpleString("red"), loaded.getSimpleStringProperty("color"));
+      Assert.assertEquals(7, loaded.getPriority());
+      Assert.assertEquals(body, loaded.getBodyBuffer().readString());
+      Assert.assertEquals(1, loaded.getRefCount());
+      Assert.assertEquals(message.getMemoryEstimate(), loaded.getMemoryEstimate());
+
+      Assert.assertEquals(0, store.getStoredCount());
+      Assert.assertEquals(0, store.getStoredBytes());
+   }
+
+   public void testNotOffloaded() throws Exception
+   {
+      OffHeapMessageStore store = new OffHeapMessageStore(QUEUE, new DirectBufferPool());
+
+      // routed to two queues
+      ServerMessage message = generateMessage(1);
+
+      message.incrementRefCount();
+      message.incrementRefCount();
+
+      Assert.assertNull(store.offload(message.createReference(null)));
+
+      Assert.assertEquals(0, store.getStoredCount());
+      Assert.assertEquals(0, store.getSegmentCount());
+   }
+
+   public void testSegmentsReleased() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      OffHeapMessageStore store = new OffHeapMessageStore(QUEUE, pool, 1024);
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ServerMessage message = generateMessage(i);
+
+         message.incrementRefCount();
+
+         refs.add(store.offload(message.createReference(null)));
+      }
+
+      Assert.assertEquals(100, store.getStoredCount());
+      Assert.assertTrue(store.getSegmentCount() > 1);
+      Assert.assertEquals(store.getSegmentCount(), pool.getAcquiredCount());
+
+      for (int i = 0; i < refs.size(); i++)
+      {
+         Assert.assertEquals(i, refs.get(i).getMessage().getMessageID());
+      }
+
+      // only the segment being written to is kept
+      Assert.assertEquals(0, store.getStoredCount());
+      Assert.assertEquals(1, store.getSegmentCount());
+      Assert.assertEquals(1, pool.getAcquiredCount());
+   }
+
+   public void testDiscard() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      OffHeapMessageStore store = new OffHeapMessageStore(QUEUE, pool, 1024);
+
+      List<OffHeapMessageReference> refs = new ArrayList<OffHeapMessageReference>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ServerMessage message = generateMessage(i);
+
+         message.incrementRefCount();
+
+         refs.add((OffHeapMessageReference)store.offload(message.createReference(null)));
+      }
+
+      for (OffHeapMessageReference ref : refs)
+      {
+         Assert.assertTrue(ref.discard());
+         Assert.assertTrue(ref.isOffHeap());
+      }
+
+      Assert.assertEquals(0, store.getStoredCount());
+      Assert.assertEquals(1, pool.getAcquiredCount());
+
+      try
+      {
+         refs.get(0).getMessage();
+
+         Assert.fail("the message was discarded");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // a loaded message is released as usual
+      ServerMessage message = generateMessage(100);
+
+      message.incrementRefCount();
+
+      OffHeapMessageReference loaded = (OffHeapMessageReference)store.offload(message.createReference(null));
+
+      Assert.assertEquals(100, loaded.getMessage().getMessageID());
+      Assert.assertFalse(loaded.discard());
+   }
+
+   public void testClose() throws Exception
+   {
+      DirectBufferPool pool = new DirectBufferPool();
+
+      OffHeapMessageStore store = new OffHeapMessageStore(QUEUE, pool, 1024);
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ServerMessage message = generateMessage(i);
+
+         message.incrementRefCount();
+
+         refs.add(store.offload(message.createReference(null)));
+      }
+
+      Assert.assertTrue(pool.getAcquiredCount() > 1);
+
+      store.close();
+
+      Assert.assertEquals(0, pool.getAcquiredCount());
+      Assert.assertEquals(0, store.getStoredCount());
+      Assert.assertEquals(0, store.getSegmentCount());
+
+      try
+      {
+         refs.get(0).getMessage();
+
+         Assert.fail("the message was dropped with the store");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // dropping a reference afterwards doesn't touch the pool
+      Assert.assertTrue(((OffHeapMessageReference)refs.get(1)).discard());
+
+      ServerMessage message = generateMessage(100);
+
+      message.incrementRefCount();
+
+      Assert.assertNull(store.offload(message.createReference(null)));
+   }
+}
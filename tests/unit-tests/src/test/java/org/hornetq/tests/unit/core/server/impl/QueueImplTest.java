@@ -18,6 +18,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -27,16 +28,22 @@ import junit.framework.Assert;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.journal.impl.DirectBufferPool;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.server.Consumer;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.OffHeapMessageReference;
 import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeFilter;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
 import org.hornetq.tests.util.UnitTestCase;
 import org.hornetq.utils.FutureLatch;
+import org.hornetq.utils.LinkedListIterator;
 
 /**
  * A QueueTest
@@ -1463,6 +1470,343 @@ public class QueueImplTest extends UnitTestCase
 
    }
 
+   public void testChangeReferencesPriorityWithFineGrainedLocking() throws Exception
+   {
+      QueueImpl queue = createFineGrainedQueue();
+
+      final int numMessages = QueueImpl.SCAN_BATCH_SIZE * 5 / 2;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.getMessage().putStringProperty("color", i % 2 == 0 ? "red" : "green");
+
+         queue.addTail(ref);
+      }
+
+      awaitMessageCount(queue, numMessages);
+
+      Assert.assertEquals(numMessages / 2, queue.changeReferencesPriority(FilterImpl.createFilter("color = 'red'"),
+                                                                         (byte)9));
+
+      awaitMessageCount(queue, numMessages);
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      List<MessageReference> delivered = consumer.getReferences();
+
+      // deliveries are split in tasks of MAX_DELIVERIES_IN_LOOP
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (delivered.size() < numMessages && System.currentTimeMillis() < timeout)
+      {
+         queue.deliverNow();
+      }
+
+      Assert.assertEquals(numMessages, delivered.size());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ServerMessage message = delivered.get(i).getMessage();
+
+         Assert.assertEquals(i < numMessages / 2 ? "red" : "green", message.getStringProperty("color"));
+         Assert.assertEquals(i < numMessages / 2 ? 9 : 0, message.getPriority());
+      }
+   }
+
+   public void testReferencesAddedDuringScanWithFineGrainedLocking() throws Exception
+   {
+      final QueueImpl queue = createFineGrainedQueue();
+
+      final int numMessages = QueueImpl.SCAN_BATCH_SIZE * 3;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      awaitMessageCount(queue, numMessages);
+
+      final List<MessageReference> added = new ArrayList<MessageReference>();
+
+      // every reference sent during the scan would match, but none of them should be visited
+      Filter filter = new FakeFilter()
+      {
+         @Override
+         public boolean match(final ServerMessage message)
+         {
+            MessageReference ref = generateReference(queue, numMessages + added.size());
+
+            added.add(ref);
+
+            queue.addTail(ref);
+
+            return message.getMessageID() >= numMessages || message.getMessageID() % 3 == 0;
+         }
+      };
+
+      Assert.assertEquals(numMessages / 3, queue.changeReferencesPriority(filter, (byte)9));
+
+      Assert.assertEquals(numMessages, added.size());
+
+      awaitMessageCount(queue, 2 * numMessages);
+   }
+
+   public void testMessagesSentDuringScanWithFineGrainedLocking() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+
+      settings.setFineGrainedLocking(true);
+
+      // the intake is drained by the thread sending, within the scan
+      final QueueImpl queue = createQueue(settings, null, new Executor()
+      {
+         public void execute(final Runnable command)
+         {
+            command.run();
+         }
+      });
+
+      final int numMessages = QueueImpl.SCAN_BATCH_SIZE * 3;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      Assert.assertEquals(numMessages, queue.getInstantMessageCount());
+
+      final List<Long> counts = new ArrayList<Long>();
+
+      Filter filter = new FakeFilter()
+      {
+         @Override
+         public boolean match(final ServerMessage message)
+         {
+            if (message.getMessageID() % QueueImpl.SCAN_BATCH_SIZE == 0)
+            {
+               queue.addTail(generateReference(queue, numMessages + counts.size()));
+
+               counts.add(queue.getInstantMessageCount());
+            }
+
+            return true;
+         }
+      };
+
+      Assert.assertEquals(numMessages, queue.deleteMatchingReferences(filter));
+
+      // each message sent was in the queue straight away, and left there by the scan
+      Assert.assertEquals(3, counts.size());
+
+      for (int i = 0; i < counts.size(); i++)
+      {
+         Assert.assertEquals(numMessages - i * QueueImpl.SCAN_BATCH_SIZE + i + 1, counts.get(i).longValue());
+      }
+
+      Assert.assertEquals(3, queue.getInstantMessageCount());
+   }
+
+   public void testOffHeapThreshold() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+
+      settings.setOffHeapThreshold(10);
+
+      QueueImpl queue = createQueue(settings, new DirectBufferPool());
+
+      final int numMessages = 50;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.getMessage().putIntProperty("count", i);
+
+         // as the post office does when routing
+         ref.getMessage().incrementRefCount();
+
+         queue.addTail(ref);
+      }
+
+      awaitMessageCount(queue, numMessages);
+
+      int offHeap = 0;
+
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+
+      try
+      {
+         while (iterator.hasNext())
+         {
+            MessageReference ref = iterator.next();
+
+            if (ref instanceof OffHeapMessageReference)
+            {
+               Assert.assertTrue(((OffHeapMessageReference)ref).isOffHeap());
+
+               offHeap++;
+            }
+         }
+      }
+      finally
+      {
+         iterator.close();
+      }
+
+      Assert.assertEquals(numMessages - 10, offHeap);
+
+      // looked up without loading the message
+      OffHeapMessageReference lookedUp = (OffHeapMessageReference)queue.getReference(30);
+
+      Assert.assertEquals(30, lookedUp.getMessageID());
+      Assert.assertTrue(lookedUp.isOffHeap());
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      List<MessageReference> delivered = consumer.getReferences();
+
+      Assert.assertEquals(numMessages, delivered.size());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ServerMessage message = delivered.get(i).getMessage();
+
+         Assert.assertEquals(i, message.getMessageID());
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         Assert.assertEquals(1, message.getRefCount());
+      }
+
+      Assert.assertFalse(lookedUp.isOffHeap());
+   }
+
+   public void testOffHeapDeleteAndClose() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+
+      settings.setOffHeapThreshold(10);
+
+      DirectBufferPool pool = new DirectBufferPool();
+
+      QueueImpl queue = createQueue(settings, pool);
+
+      final int numMessages = 50;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.getMessage().incrementRefCount();
+
+         queue.addTail(ref);
+      }
+
+      awaitMessageCount(queue, numMessages);
+
+      List<OffHeapMessageReference> offHeap = new ArrayList<OffHeapMessageReference>();
+
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+
+      try
+      {
+         while (iterator.hasNext())
+         {
+            MessageReference ref = iterator.next();
+
+            if (ref instanceof OffHeapMessageReference)
+            {
+               offHeap.add((OffHeapMessageReference)ref);
+            }
+         }
+      }
+      finally
+      {
+         iterator.close();
+      }
+
+      Assert.assertEquals(numMessages - 10, offHeap.size());
+
+      Assert.assertEquals(numMessages, queue.deleteAllReferences());
+
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      // dropped without being loaded
+      for (OffHeapMessageReference ref : offHeap)
+      {
+         Assert.assertTrue(ref.isOffHeap());
+      }
+
+      // the segment being written to is kept until the queue is closed
+      Assert.assertEquals(1, pool.getAcquiredCount());
+
+      queue.close();
+
+      Assert.assertEquals(0, pool.getAcquiredCount());
+   }
+
+   private QueueImpl createFineGrainedQueue()
+   {
+      AddressSettings settings = new AddressSettings();
+
+      settings.setFineGrainedLocking(true);
+
+      return createQueue(settings);
+   }
+
+   private QueueImpl createQueue(final AddressSettings settings)
+   {
+      return createQueue(settings, null);
+   }
+
+   private QueueImpl createQueue(final AddressSettings settings, final DirectBufferPool offHeapBufferPool)
+   {
+      return createQueue(settings, offHeapBufferPool, executor);
+   }
+
+   private QueueImpl createQueue(final AddressSettings settings,
+                                 final DirectBufferPool offHeapBufferPool,
+                                 final Executor queueExecutor)
+   {
+      HierarchicalObjectRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+
+      repository.setDefault(new AddressSettings());
+
+      repository.addMatch("#", settings);
+
+      return new QueueImpl(1,
+                           QueueImplTest.address1,
+                           QueueImplTest.queue1,
+                           null,
+                           null,
+                           false,
+                           true,
+                           scheduledExecutor,
+                           null,
+                           new NullStorageManager(),
+                           repository,
+                           queueExecutor,
+                           offHeapBufferPool);
+   }
+
+   private void awaitMessageCount(final QueueImpl queue, final long count) throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (queue.getMessageCount() != count && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(count, queue.getMessageCount());
+   }
+
    class AddtoQueueRunner implements Runnable
    {
       QueueImpl queue;
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+
+public class ScheduledDeliveryHandlerTest extends UnitTestCase
+{
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ScheduledDeliveryHandlerImpl handler;
+
+   private DeliveredQueue queue;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+
+      queue = new DeliveredQueue();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   public void testNotScheduled() throws Exception
+   {
+      Assert.assertFalse(handler.checkAndSchedule(generateReference(queue, 1), true));
+
+      Assert.assertFalse(new ScheduledDeliveryHandlerImpl(null).checkAndSchedule(schedule(2, 1000), true));
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+   }
+
+   public void testDeliveredAtScheduledTime() throws Exception
+   {
+      final int numMessages = 1000;
+
+      Map<Long, Long> scheduledTimes = new HashMap<Long, Long>();
+
+      queue.expect(numMessages);
+
+      for (long i = 0; i < numMessages; i++)
+      {
+         // some of them out of order and some due already
+         MessageReference ref = schedule(i, (i * 7919) % 300 - 50);
+
+         scheduledTimes.put(i, ref.getScheduledDeliveryTime());
+
+         Assert.assertTrue(handler.checkAndSchedule(ref, true));
+      }
+
+      Assert.assertTrue(queue.await());
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+
+      Assert.assertEquals(numMessages, queue.delivered.size());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = queue.delivered.get(i);
+
+         Assert.assertEquals(0, ref.getScheduledDeliveryTime());
+
+         Assert.assertTrue(queue.deliveryTimes.get(i) >= scheduledTimes.get(ref.getMessage().getMessageID()));
+      }
+   }
+
+   public void testDueTogetherKeepOrder() throws Exception
+   {
+      long time = System.currentTimeMillis() + 100;
+
+      queue.expect(4);
+
+      handler.checkAndSchedule(scheduleAt(1, time), true);
+      handler.checkAndSchedule(scheduleAt(2, time), true);
+      handler.checkAndSchedule(scheduleAt(3, time), false);
+      handler.checkAndSchedule(scheduleAt(4, time), false);
+
+      Assert.assertTrue(queue.await());
+
+      // each reference of the batch is added to the head of the queue
+      assertIDs(queue.delivered, 2, 1, 3, 4);
+   }
+
+   public void testRemoveAndCancel() throws Exception
+   {
+      for (long i = 0; i < 100; i++)
+      {
+         MessageReference ref = schedule(i, TimeUnit.HOURS.toMillis(1) + i % 10);
+
+         ref.getMessage().putBooleanProperty("even", i % 2 == 0);
+
+         handler.checkAndSchedule(ref, true);
+      }
+
+      Assert.assertEquals(100, handler.getScheduledCount());
+
+      Assert.assertEquals(7, handler.removeReferenceWithID(7).getMessage().getMessageID());
+      Assert.assertNull(handler.removeReferenceWithID(7));
+      Assert.assertNull(handler.removeReferenceWithID(100));
+
+      Assert.assertEquals(99, handler.getScheduledCount());
+      Assert.assertEquals(99, handler.getScheduledReferences().size());
+
+      List<MessageReference> cancelled = handler.cancel(FilterImpl.createFilter("even = true"));
+
+      Assert.assertEquals(50, cancelled.size());
+
+      for (MessageReference ref : cancelled)
+      {
+         Assert.assertEquals(0, ref.getMessage().getMessageID() % 2);
+      }
+
+      Assert.assertEquals(49, handler.getScheduledCount());
+
+      Assert.assertEquals(49, handler.cancel(null).size());
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+      Assert.assertTrue(handler.getScheduledReferences().isEmpty());
+   }
+
+   public void testRemovedNotDelivered() throws Exception
+   {
+      queue.expect(1);
+
+      handler.checkAndSchedule(schedule(1, 100), true);
+      handler.checkAndSchedule(schedule(2, 100), true);
+      handler.checkAndSchedule(schedule(3, 200), true);
+
+      Assert.assertNotNull(handler.removeReferenceWithID(1));
+      Assert.assertNotNull(handler.removeReferenceWithID(3));
+
+      Assert.assertTrue(queue.await());
+
+      Thread.sleep(300);
+
+      assertIDs(queue.delivered, 2);
+   }
+
+   private MessageReference schedule(final long id, final long delay)
+   {
+      return scheduleAt(id, System.currentTimeMillis() + delay);
+   }
+
+   private MessageReference scheduleAt(final long id, final long time)
+   {
+      MessageReference ref = generateReference(queue, id);
+
+      ref.setScheduledDeliveryTime(time);
+
+      return ref;
+   }
+
+   private static void assertIDs(final List<MessageReference> refs, final long... ids)
+   {
+      List<Long> actual = new ArrayList<Long>();
+
+      for (MessageReference ref : refs)
+      {
+         actual.add(ref.getMessage().getMessageID());
+      }
+
+      List<Long> expected = new ArrayList<Long>();
+
+      for (long id : ids)
+      {
+         expected.add(id);
+      }
+
+      Assert.assertEquals(expected, actual);
+   }
+
+   private static final class DeliveredQueue extends FakeQueue
+   {
+      final List<MessageReference> delivered = new ArrayList<MessageReference>();
+
+      final List<Long> deliveryTimes = new ArrayList<Long>();
+
+      private volatile CountDownLatch latch;
+
+      DeliveredQueue()
+      {
+         super(new SimpleString("queue"));
+      }
+
+      void expect(final int count)
+      {
+         latch = new CountDownLatch(count);
+      }
+
+      boolean await() throws InterruptedException
+      {
+         return latch.await(10, TimeUnit.SECONDS);
+      }
+
+      @Override
+      public synchronized void addHead(final List<MessageReference> refs)
+      {
+         long now = System.currentTimeMillis();
+
+         for (MessageReference ref : refs)
+         {
+            delivered.add(ref);
+
+            deliveryTimes.add(now);
+
+            latch.countDown();
+         }
+      }
+   }
+}
@@ -38,6 +38,12 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(AddressSettings.DEFAULT_REDELIVER_DELAY, addressSettings.getRedeliveryDelay());
       Assert.assertEquals(AddressSettings.DEFAULT_REDELIVER_MULTIPLIER,
                           addressSettings.getRedeliveryMultiplier());
+      Assert.assertEquals(AddressSettings.DEFAULT_FILTER_INDEX, addressSettings.isFilterIndex());
+      Assert.assertEquals(AddressSettings.DEFAULT_FINE_GRAINED_LOCKING, addressSettings.isFineGrainedLocking());
+      Assert.assertEquals(AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES, addressSettings.getPageCacheMaxBytes());
+      Assert.assertEquals(AddressSettings.DEFAULT_OFF_HEAP_THRESHOLD, addressSettings.getOffHeapThreshold());
+      Assert.assertEquals(AddressSettings.DEFAULT_BODY_COMPRESSION_CODEC, addressSettings.getBodyCompressionCodec());
+      Assert.assertEquals(AddressSettings.DEFAULT_MIN_BODY_COMPRESSION_SIZE, addressSettings.getMinBodyCompressionSize());
 
    }
 